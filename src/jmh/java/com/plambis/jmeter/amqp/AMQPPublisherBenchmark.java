@@ -0,0 +1,71 @@
+package com.plambis.jmeter.amqp;
+
+import com.plambis.jmeter.amqp.client.AMQPClient;
+import com.plambis.jmeter.amqp.client.FakeChannels;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.samplers.SampleResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a complete publisher sample, from the sampler call to the finished SampleResult, against a fake channel.
+ * The sampler is configured like a GUI-built one: static message, no confirms, no transactions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AMQPPublisherBenchmark {
+
+    @Param({"1", "100"})
+    public String iterations;
+
+    @Param({"false", "true"})
+    public boolean stampSendTime;
+
+    private AMQPPublisher publisher;
+
+    @Setup
+    public void setUp() throws Exception {
+        publisher = new AMQPPublisher();
+        publisher.setName("publisher");
+        publisher.setExchange("exchange");
+        publisher.setExchangeType("direct");
+        publisher.setQueue("queue");
+        publisher.setRoutingKey("routing.key");
+        publisher.setMessageRoutingKey("routing.key");
+        publisher.setVirtualHost("/");
+        publisher.setHost("localhost");
+        publisher.setIterations(iterations);
+        publisher.setMessage(new String(new char[1024]).replace('\0', 'x'));
+        publisher.setStampSendTime(stampSendTime);
+        publisher.setHeaders(new Arguments());
+        publisher.setExchangeArguments(new Arguments());
+        publisher.setQueueArguments(new Arguments());
+        publisher.setMessageClient(new AMQPClient(publisher.createChannelConfiguration(), FakeChannels.create()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        publisher.threadFinished();
+    }
+
+    @Benchmark
+    public SampleResult sample() {
+        return publisher.sample(null);
+    }
+}
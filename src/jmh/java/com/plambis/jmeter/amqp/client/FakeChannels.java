@@ -0,0 +1,81 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * In-process {@link Channel} stand-ins for benchmarks. Publishes are dropped, {@code basicGet} always returns the same
+ * response, every other call returns null, false or zero.
+ * <p>
+ * Every call goes through a dynamic proxy, which allocates the argument array; that constant cost is part of every
+ * measurement and cancels out when comparing runs.
+ */
+public final class FakeChannels {
+    private FakeChannels() {
+    }
+
+    public static Channel create() {
+        return create(null);
+    }
+
+    /**
+     * @param getResponse returned by every {@code basicGet}
+     */
+    public static Channel create(GetResponse getResponse) {
+        long[] nextPublishSeqNo = {1};
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return true;
+                        case "getChannelNumber":
+                            return 1;
+                        case "getNextPublishSeqNo":
+                            return nextPublishSeqNo[0];
+                        case "basicPublish":
+                            nextPublishSeqNo[0]++;
+                            return null;
+                        case "basicGet":
+                            return getResponse;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "FakeChannel";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        return (char) 0;
+    }
+}
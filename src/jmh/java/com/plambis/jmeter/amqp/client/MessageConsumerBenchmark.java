@@ -0,0 +1,64 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of taking one message from a pull consumer and formatting its headers for the sample result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageConsumerBenchmark {
+
+    @Param({"0", "10"})
+    public int headerCount;
+
+    private MessageConsumerImpl consumer;
+
+    @Setup
+    public void setUp() throws Exception {
+        Map<String, Object> headers = new HashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put("header-" + i, "value-" + i);
+        }
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .timestamp(new Date())
+                .headers(headers)
+                .build();
+        GetResponse response = new GetResponse(new Envelope(1, false, "exchange", "routing.key"), properties,
+                new byte[1024], 0);
+        AMQPClient client = new AMQPClient(MessagePublisherBenchmark.newChannelConfiguration(), FakeChannels.create(response));
+        consumer = new MessageConsumerImpl(client, "queue", 1, null);
+    }
+
+    @Benchmark
+    public MessageData consume() throws Exception {
+        return consumer.consumeMessages(0);
+    }
+
+    @Benchmark
+    public String consumeAndFormatHeaders() throws Exception {
+        return consumer.consumeMessages(0).getHeaders();
+    }
+}
@@ -0,0 +1,79 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ExchangeConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.MessagePublisherConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.QueueConfigurationImpl;
+import com.rabbitmq.client.AMQP;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building message properties and publishing one message, without any I/O.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessagePublisherBenchmark {
+
+    @Param({"false", "true"})
+    public boolean stampSendTime;
+
+    @Param({"0", "10"})
+    public int headerCount;
+
+    private MessagePublisherImpl publisher;
+    private final byte[] body = new byte[1024];
+
+    @Setup
+    public void setUp() throws Exception {
+        ChannelConfigurationImpl channelConf = newChannelConfiguration();
+        AMQPClient client = new AMQPClient(channelConf, FakeChannels.create());
+
+        MessagePublisherConfigurationImpl configuration = new MessagePublisherConfigurationImpl("text/plain", "correlation",
+                "reply", "type", "id", false);
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put("header-" + i, "value-" + i);
+        }
+        configuration.addHeaders(headers);
+        configuration.setStampSendTime(stampSendTime);
+        configuration.setRunId(MessageStamp.DEFAULT_RUN_ID);
+        publisher = new MessagePublisherImpl(client, configuration);
+    }
+
+    static ChannelConfigurationImpl newChannelConfiguration() {
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl("/", Collections.singletonList("localhost"),
+                5672, "guest", "guest", false);
+        channelConf.setQueueConfiguration(new QueueConfigurationImpl("", false, false, true));
+        channelConf.setExchangeConfiguration(new ExchangeConfigurationImpl("", "direct", false, true));
+        return channelConf;
+    }
+
+    @Benchmark
+    public AMQP.BasicProperties getProperties() {
+        return publisher.getProperties(System.nanoTime());
+    }
+
+    @Benchmark
+    public void publish() throws Exception {
+        publisher.publish("exchange", "routing.key", body);
+    }
+}
@@ -0,0 +1,45 @@
+package com.plambis.jmeter.amqp.client.conf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting the queue arguments of the GUI, done every time a sampler builds its channel configuration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueueConfigurationBenchmark {
+
+    private final Map<String, String> arguments = new HashMap<>();
+    private QueueConfigurationImpl queueConf;
+
+    @Setup
+    public void setUp() {
+        arguments.put("x-message-ttl", "60000");
+        arguments.put("x-max-length", "100000");
+        arguments.put("x-queue-mode", "lazy");
+        queueConf = new QueueConfigurationImpl("queue", true, false, false);
+    }
+
+    @Benchmark
+    public QueueConfigurationImpl addQueueArguments() {
+        queueConf.addQueueArguments(arguments);
+        return queueConf;
+    }
+}
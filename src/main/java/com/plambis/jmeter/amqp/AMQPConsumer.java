@@ -1,21 +1,38 @@
 package com.plambis.jmeter.amqp;
 
 import java.io.IOException;
-
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.plambis.jmeter.amqp.client.AckBatcher;
+import com.plambis.jmeter.amqp.client.EndToEndLatencyRecorder;
+import com.plambis.jmeter.amqp.client.EpochClock;
 import com.plambis.jmeter.amqp.client.MessageConsumer;
 import com.plambis.jmeter.amqp.client.MessageConsumerImpl;
 import com.plambis.jmeter.amqp.client.MessageData;
+import com.plambis.jmeter.amqp.client.PushMessageConsumer;
+import com.plambis.jmeter.amqp.client.SequenceCheck;
+import com.plambis.jmeter.amqp.client.SequenceTracker;
+import com.plambis.jmeter.amqp.client.ShardStats;
+import com.plambis.jmeter.amqp.client.TopologyCoordinator;
+import com.plambis.jmeter.amqp.client.conf.ConsumeMode;
+import com.plambis.jmeter.amqp.client.payload.Compression;
+import com.plambis.jmeter.amqp.client.payload.PayloadCodec;
 import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.Interruptible;
 import org.apache.jmeter.samplers.SampleResult;
-import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.threads.JMeterContextService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.rabbitmq.client.ConsumerCancelledException;
 import com.rabbitmq.client.ShutdownSignalException;
 
-public class AMQPConsumer extends AMQPSampler implements Interruptible, TestStateListener {
+public class AMQPConsumer extends AMQPSampler implements Interruptible {
     private static final int DEFAULT_PREFETCH_COUNT = 0; // unlimited
 
     public static final boolean DEFAULT_READ_RESPONSE = true;
@@ -31,11 +48,33 @@ public class AMQPConsumer extends AMQPSampler implements Interruptible, TestStat
     private static final String PURGE_QUEUE = "AMQPConsumer.PurgeQueue";
     private static final String AUTO_ACK = "AMQPConsumer.AutoAck";
     private static final String RECEIVE_TIMEOUT = "AMQPConsumer.ReceiveTimeout";
+    private static final String CONSUME_MODE = "AMQPConsumer.ConsumeMode";
+    private static final String LATENCY_REPORT_FILE = "AMQPConsumer.LatencyReportFile";
+    private static final String BODY_MAX_BYTES = "AMQPConsumer.BodyMaxBytes";
+    private static final String BODY_SAMPLE_RATE = "AMQPConsumer.BodySampleRate";
+    private static final String FORMAT_HEADERS = "AMQPConsumer.FormatHeaders";
+    private static final String ACK_BATCH_SIZE = "AMQPConsumer.AckBatchSize";
+    private static final String ACK_BATCH_INTERVAL = "AMQPConsumer.AckBatchInterval";
+
+    public static final int DEFAULT_BODY_MAX_BYTES = 0; // whole body
+    public static final String DEFAULT_BODY_MAX_BYTES_STRING = Integer.toString(DEFAULT_BODY_MAX_BYTES);
+    public static final double DEFAULT_BODY_SAMPLE_RATE = 1.0;
+    public static final String DEFAULT_BODY_SAMPLE_RATE_STRING = Double.toString(DEFAULT_BODY_SAMPLE_RATE);
+    public static final boolean DEFAULT_FORMAT_HEADERS = true;
+    public static final int DEFAULT_ACK_BATCH_SIZE = 1; // ack every message on its own
+    public static final String DEFAULT_ACK_BATCH_SIZE_STRING = Integer.toString(DEFAULT_ACK_BATCH_SIZE);
+    public static final int DEFAULT_ACK_BATCH_INTERVAL = 100;
+    public static final String DEFAULT_ACK_BATCH_INTERVAL_STRING = Integer.toString(DEFAULT_ACK_BATCH_INTERVAL);
+
+    public static final String DEFAULT_CONSUME_MODE = ConsumeMode.PULL.getLabel();
 
     public static boolean DEFAULT_USE_TX = false;
     private static final String USE_TX = "AMQPConsumer.UseTx";
 
-    private transient String consumerTag;
+    private transient MessageConsumer consumer;
+    /** The thread running {@link #sample(Entry)}, woken up by {@link #interrupt()}. */
+    private transient volatile Thread samplingThread;
+    private transient Map<Compression, PayloadCodec> codecs;
 
     /**
      * {@inheritDoc}
@@ -44,7 +83,7 @@ public class AMQPConsumer extends AMQPSampler implements Interruptible, TestStat
     public SampleResult sample(Entry entry) {
         SampleResult result = new SampleResult();
         result.sampleStart();
-        result.setSampleLabel(getName());
+        result.setSampleLabel(getTitle());
         result.setSuccessful(false);
         result.setResponseCode("500");
 
@@ -56,20 +95,51 @@ public class AMQPConsumer extends AMQPSampler implements Interruptible, TestStat
             return result;
         }
 
+        Exception failure = null;
+        boolean shutdown = false;
         try {
-            MessageConsumer consumer = new MessageConsumerImpl( getMessageClient());
-            MessageData get = consumer.consumeMessages(getQueue(), getPrefetchCountAsInt(), autoAck());
-            if (getReadResponseAsBoolean()) {
-                String response = new String(get.getBody(), "UTF-8");
-                result.setSamplerData(String.valueOf(get.getMessageCount()));
-                result.setResponseData(response, "UTF-8");
+            MessageData get;
+            samplingThread = Thread.currentThread();
+            try {
+                get = getConsumer().consumeMessages(getReceiveTimeoutAsInt());
+            } finally {
+                samplingThread = null;
+            }
+            if (get == null) {
+                result.setResponseCode("204");
+                result.setResponseMessage("No message received within " + getReceiveTimeoutAsInt() + " ms");
+                return result;
+            }
+            recordEndToEndLatency(result, get);
+            SequenceCheck sequenceCheck = checkSequence(get);
+            byte[] body = get.getBody();
+            if (getShardCountAsInt() > 0) {
+                ShardStats.recordConsumed(getAssignedShard(), body.length);
+            }
+            StringBuilder extraHeaders = new StringBuilder();
+            if (getReadResponseAsBoolean() && keepBody()) {
+                result.setSamplerData(get.getMessageCount() == MessageData.UNKNOWN_MESSAGE_COUNT
+                        ? "Message count unknown in push mode" : String.valueOf(get.getMessageCount()));
+                result.setResponseData(truncate(decode(get, extraHeaders), getBodyMaxBytesAsInt()));
+                result.setDataEncoding("UTF-8");
                 result.setResponseMessage("OK");
+            } else if (getReadResponseAsBoolean()) {
+                result.setSamplerData("Body not sampled (rate " + getBodySampleRateAsDouble() + ").");
             } else {
                 result.setSamplerData("Read response is false.");
             }
+            result.setBodySize((long) body.length);
 
             result.setDataType(SampleResult.TEXT);
-            result.setResponseHeaders(get.getHeaders());
+            if (getFormatHeaders()) {
+                result.setResponseHeaders(get.getHeaders());
+            }
+            if (sequenceCheck != null && sequenceCheck != SequenceCheck.IN_ORDER) {
+                extraHeaders.append("Sequence-Check: ").append(sequenceCheck.getLabel()).append("\n");
+            }
+            if (extraHeaders.length() > 0) {
+                result.setResponseHeaders(result.getResponseHeaders() + extraHeaders);
+            }
             result.setResponseCodeOK();
             result.setSuccessful(true);
 
@@ -78,22 +148,156 @@ public class AMQPConsumer extends AMQPSampler implements Interruptible, TestStat
             log.warn("AMQP consumer failed to ShutdownSignalException", e);
             result.setResponseCode("400");
             result.setResponseMessage(e.getMessage());
-            interrupt();
+            failure = e;
+            shutdown = true;
         } catch (ConsumerCancelledException e) {
             log.warn("AMQP consumer failed to ConsumerCancelledException", e);
             result.setResponseCode("300");
             result.setResponseMessage(e.getMessage());
-            interrupt();
+            closeConsumer();
+        } catch (InterruptedIOException e) {
+            // woken up by interrupt(), the thread is being stopped and closes its consumer in cleanup()
+            Thread.interrupted();
+            result.setResponseCode("100");
+            result.setResponseMessage(e.getMessage());
         } catch (IOException e) {
             log.warn("AMQP consumer failed to IOException", e);
             result.setResponseCode("100");
             result.setResponseMessage(e.getMessage());
+            failure = e;
         } finally {
             result.sampleEnd(); // End timimg
         }
+        // with recovery on, a lost connection pauses the thread instead of ending its consumer
+        boolean recovering = failure != null && getMessageClient().awaitRecovery(failure, getReceiveTimeoutAsInt());
+        if (shutdown && !recovering) {
+            closeConsumer();
+        }
         return result;
     }
 
+    /**
+     * @return whether this message's body is kept in the result, according to the body sample rate
+     */
+    private boolean keepBody() {
+        double rate = getBodySampleRateAsDouble();
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Decompresses a body with a content-encoding of one of the publisher's codecs. Bodies that fail to decode are
+     * kept as received.
+     *
+     * @param decoding receives the Decoded-* response headers
+     * @return the decoded body, or the body as received
+     */
+    private byte[] decode(MessageData message, StringBuilder decoding) {
+        byte[] body = message.getBody();
+        Compression compression = Compression.byEncoding(message.getContentEncoding());
+        if (compression == Compression.NONE) {
+            return body;
+        }
+        long start = System.nanoTime();
+        try {
+            if (codecs == null) {
+                codecs = new EnumMap<>(Compression.class);
+            }
+            PayloadCodec codec = codecs.get(compression);
+            if (codec == null) {
+                codec = compression.newCodec(0);
+                codecs.put(compression, codec);
+            }
+            byte[] decoded = codec.decode(body);
+            decoding.append("Decoded-Encoding: ").append(compression.getLabel()).append("\n");
+            decoding.append("Decoded-Bytes: ").append(decoded.length).append("\n");
+            decoding.append("Decode-Time-Micros: ").append(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)).append("\n");
+            return decoded;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Failed to decode {} body", compression.getLabel(), e);
+            decoding.append("Decode-Error: ").append(e.getMessage()).append("\n");
+            return body;
+        }
+    }
+
+    private static byte[] truncate(byte[] body, int maxBytes) {
+        if (maxBytes < 1 || body.length <= maxBytes) {
+            return body;
+        }
+        return Arrays.copyOf(body, maxBytes);
+    }
+
+    private void recordEndToEndLatency(SampleResult result, MessageData message) {
+        long sendTime = message.getSendTimeNanos();
+        if (sendTime < 0) {
+            return;
+        }
+        long latencyNanos = EpochClock.nanos() - sendTime;
+        EndToEndLatencyRecorder.record(getLatencyReportFile(), message.getRunId(), latencyNanos);
+        result.setLatency(TimeUnit.NANOSECONDS.toMillis(Math.max(0, latencyNanos)));
+    }
+
+    /**
+     * @return how the message's sequence number relates to the ones received before, null when it carries none
+     */
+    private static SequenceCheck checkSequence(MessageData message) {
+        long sequence = message.getSequence();
+        String publisherId = message.getPublisherId();
+        if (sequence < 0 || publisherId == null) {
+            return null;
+        }
+        return SequenceTracker.record(publisherId, sequence, message.isRedelivered());
+    }
+
+    /**
+     * Consumer threads attach to the shards in turn, thread N consumes from shard N modulo the shard count.
+     */
+    @Override
+    protected int getAssignedShard() {
+        return JMeterContextService.getContext().getThreadNum() % getShardCountAsInt();
+    }
+
+    /**
+     * @return the sample label, with the shard appended when sharding is on so listeners report every shard on its own
+     */
+    @Override
+    protected String getTitle() {
+        if (getShardCountAsInt() < 1) {
+            return super.getTitle();
+        }
+        return super.getTitle() + " [shard " + getAssignedShard() + "]";
+    }
+
+    private MessageConsumer getConsumer() throws IOException {
+        if (consumer == null) {
+            String queueName = getMessageClient().getQueueName();
+            AckBatcher acks = autoAck() ? null
+                    : new AckBatcher(getMessageClient(), getAckBatchSizeAsInt(), getAckBatchIntervalAsInt());
+            if (getConsumeModeAsEnum() == ConsumeMode.PUSH) {
+                consumer = new PushMessageConsumer(getMessageClient(), queueName, getPrefetchCountAsInt(), acks);
+            } else {
+                consumer = new MessageConsumerImpl(getMessageClient(), queueName, getPrefetchCountAsInt(), acks);
+            }
+        }
+        return consumer;
+    }
+
+    /**
+     * Closes the consumer, flushing its batched acks before the channel goes away. Only called on the sampler thread.
+     */
+    private void closeConsumer() {
+        if (consumer != null) {
+            consumer.close();
+            consumer = null;
+        }
+    }
+
+    @Override
+    protected void cleanup() {
+        closeConsumer();
+        codecs = null;
+        super.cleanup();
+    }
+
     /**
      * @return the whether or not to purge the queue
      */
@@ -147,6 +351,104 @@ public class AMQPConsumer extends AMQPSampler implements Interruptible, TestStat
         setProperty(RECEIVE_TIMEOUT, s);
     }
 
+    public String getConsumeMode() {
+        return getPropertyAsString(CONSUME_MODE, DEFAULT_CONSUME_MODE);
+    }
+
+    public void setConsumeMode(String consumeMode) {
+        setProperty(CONSUME_MODE, consumeMode);
+    }
+
+    public ConsumeMode getConsumeModeAsEnum() {
+        return ConsumeMode.valueByLabel(getConsumeMode());
+    }
+
+    /**
+     * @return the file the end-to-end latency distributions are appended to at test end, blank to only log them
+     */
+    public String getLatencyReportFile() {
+        return getPropertyAsString(LATENCY_REPORT_FILE);
+    }
+
+    public void setLatencyReportFile(String latencyReportFile) {
+        setProperty(LATENCY_REPORT_FILE, latencyReportFile);
+    }
+
+    /**
+     * @return the maximum number of body bytes kept in the result, 0 keeps the whole body
+     */
+    public String getBodyMaxBytes() {
+        return getPropertyAsString(BODY_MAX_BYTES, DEFAULT_BODY_MAX_BYTES_STRING);
+    }
+
+    public void setBodyMaxBytes(String bodyMaxBytes) {
+        setProperty(BODY_MAX_BYTES, bodyMaxBytes);
+    }
+
+    public int getBodyMaxBytesAsInt() {
+        return Math.max(0, getPropertyAsInt(BODY_MAX_BYTES, DEFAULT_BODY_MAX_BYTES));
+    }
+
+    /**
+     * @return the fraction of messages whose body is kept in the result, between 0 and 1
+     */
+    public String getBodySampleRate() {
+        return getPropertyAsString(BODY_SAMPLE_RATE, DEFAULT_BODY_SAMPLE_RATE_STRING);
+    }
+
+    public void setBodySampleRate(String bodySampleRate) {
+        setProperty(BODY_SAMPLE_RATE, bodySampleRate);
+    }
+
+    public double getBodySampleRateAsDouble() {
+        try {
+            return Double.parseDouble(getBodySampleRate().trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_BODY_SAMPLE_RATE;
+        }
+    }
+
+    /**
+     * @return whether message headers are formatted into the result's response headers
+     */
+    public boolean getFormatHeaders() {
+        return getPropertyAsBoolean(FORMAT_HEADERS, DEFAULT_FORMAT_HEADERS);
+    }
+
+    public void setFormatHeaders(Boolean formatHeaders) {
+        setProperty(FORMAT_HEADERS, formatHeaders);
+    }
+
+    /**
+     * @return the number of deliveries acknowledged at once with a single multiple ack
+     */
+    public String getAckBatchSize() {
+        return getPropertyAsString(ACK_BATCH_SIZE, DEFAULT_ACK_BATCH_SIZE_STRING);
+    }
+
+    public void setAckBatchSize(String ackBatchSize) {
+        setProperty(ACK_BATCH_SIZE, ackBatchSize);
+    }
+
+    public int getAckBatchSizeAsInt() {
+        return Math.max(1, getPropertyAsInt(ACK_BATCH_SIZE, DEFAULT_ACK_BATCH_SIZE));
+    }
+
+    /**
+     * @return the maximum time in milliseconds a delivery waits for its batched ack
+     */
+    public String getAckBatchInterval() {
+        return getPropertyAsString(ACK_BATCH_INTERVAL, DEFAULT_ACK_BATCH_INTERVAL_STRING);
+    }
+
+    public void setAckBatchInterval(String ackBatchInterval) {
+        setProperty(ACK_BATCH_INTERVAL, ackBatchInterval);
+    }
+
+    public int getAckBatchIntervalAsInt() {
+        return Math.max(0, getPropertyAsInt(ACK_BATCH_INTERVAL, DEFAULT_ACK_BATCH_INTERVAL));
+    }
+
     public String getPrefetchCount() {
         return getPropertyAsString(PREFETCH_COUNT, DEFAULT_PREFETCH_COUNT_STRING);
     }
@@ -194,43 +496,47 @@ public class AMQPConsumer extends AMQPSampler implements Interruptible, TestStat
         return getPropertyAsBoolean(READ_RESPONSE);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Called from the thread stopping the test: it only wakes up a sample waiting for a delivery. The consumer is
+     * closed on the sampler thread, by {@link #cleanup()} once the thread finishes.
+     */
     @Override
     public boolean interrupt() {
-        testEnded();
+        Thread thread = samplingThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
         return true;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Runs once per test on the sampler of the test plan, after all threads finished. The queue is purged through a
+     * short-lived connection, once even when several consumers share it.
      */
     @Override
     public void testEnded() {
+        EndToEndLatencyRecorder.report(getLatencyReportFile());
+        SequenceTracker.report();
 
         if (purgeQueue()) {
-            log.info("Purging queue {}", getQueue());
             try {
-                getMessageClient().queuePurge();
-            } catch (IOException e) {
+                TopologyCoordinator.purgeOnce(createChannelConfiguration());
+            } catch (Exception e) {
                 log.error("Failed to purge queue " + getQueue(), e);
             }
         }
+        super.testEnded();
     }
 
     @Override
     public void testStarted() {
         log.info("testStarted");
-
-    }
-
-    @Override
-    public void testStarted(String host) {
-        log.info("testStarted  {}", host);
-
-    }
-
-    @Override
-    public void testEnded(String host) {
-        log.info("testEnded  {}", host);
-
+        super.testStarted();
+        EndToEndLatencyRecorder.reset();
+        SequenceTracker.reset();
     }
 }
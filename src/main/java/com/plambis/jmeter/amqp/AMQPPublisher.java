@@ -1,17 +1,56 @@
 package com.plambis.jmeter.amqp;
 
+import com.plambis.jmeter.amqp.client.BatchPublisher;
+import com.plambis.jmeter.amqp.client.BatchResult;
+import com.plambis.jmeter.amqp.client.ConfirmStats;
+import com.plambis.jmeter.amqp.client.ConfirmTracker;
+import com.plambis.jmeter.amqp.client.EpochClock;
 import com.plambis.jmeter.amqp.client.MessagePublisher;
-import com.plambis.jmeter.amqp.client.conf.MessagePublisherConfiguration;
+import com.plambis.jmeter.amqp.client.MessageTimings;
+import com.plambis.jmeter.amqp.client.MessageSequence;
+import com.plambis.jmeter.amqp.client.MessageStamp;
+import com.plambis.jmeter.amqp.client.PublishTemplate;
+import com.plambis.jmeter.amqp.client.ShardRouter;
+import com.plambis.jmeter.amqp.client.async.AsyncMessagePublisher;
+import com.plambis.jmeter.amqp.client.async.PublishPipeline;
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ConfirmMode;
 import com.plambis.jmeter.amqp.client.conf.MessagePublisherConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.MessageTimingMode;
+import com.plambis.jmeter.amqp.client.payload.Compression;
+import com.plambis.jmeter.amqp.client.payload.CorpusFormat;
+import com.plambis.jmeter.amqp.client.payload.CorpusOrder;
+import com.plambis.jmeter.amqp.client.payload.CorpusPayloadSource;
+import com.plambis.jmeter.amqp.client.payload.GeneratedPayloadSource;
+import com.plambis.jmeter.amqp.client.payload.MappedPayloadCorpus;
+import com.plambis.jmeter.amqp.client.payload.PayloadCodec;
+import com.plambis.jmeter.amqp.client.payload.PayloadCompressor;
+import com.plambis.jmeter.amqp.client.payload.PayloadSource;
+import com.plambis.jmeter.amqp.client.payload.PayloadTemplate;
+import com.plambis.jmeter.amqp.client.payload.SizeDistribution;
+import com.plambis.jmeter.amqp.client.payload.TemplateContext;
+import com.plambis.jmeter.amqp.client.schedule.ArrivalSchedule;
+import com.plambis.jmeter.amqp.client.schedule.RateProfile;
 import com.plambis.jmeter.amqp.client.MessagePublisherImpl;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.Interruptible;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.util.JMeterUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
 /**
  * JMeter creates an instance of a sampler class for every occurrence of the
  * element in every thread. [some additional copies may be created before the
@@ -44,6 +83,84 @@ public class AMQPPublisher extends AMQPSampler implements Interruptible {
     public static boolean DEFAULT_USE_TX = false;
     private final static String USE_TX = "AMQPPublisher.UseTx";
 
+    public static final String DEFAULT_CONFIRM_MODE = ConfirmMode.NONE.getLabel();
+    private final static String CONFIRM_MODE = "AMQPPublisher.ConfirmMode";
+
+    public static final int DEFAULT_CONFIRM_WINDOW = 100;
+    public static final String DEFAULT_CONFIRM_WINDOW_STRING = Integer.toString(DEFAULT_CONFIRM_WINDOW);
+    private final static String CONFIRM_WINDOW = "AMQPPublisher.ConfirmWindow";
+
+    public static final boolean DEFAULT_STAMP_SEND_TIME = false;
+    private final static String STAMP_SEND_TIME = "AMQPPublisher.StampSendTime";
+    private final static String RUN_ID = "AMQPPublisher.RunId";
+    public static final boolean DEFAULT_STAMP_SEQUENCE = false;
+    private final static String STAMP_SEQUENCE = "AMQPPublisher.StampSequence";
+    public static final boolean DEFAULT_MANDATORY = false;
+    private final static String MANDATORY = "AMQPPublisher.Mandatory";
+
+    public static final String MESSAGE_SOURCE_STATIC = "Static";
+    public static final String MESSAGE_SOURCE_FILE = "File";
+    public static final String MESSAGE_SOURCE_GENERATED = "Generated";
+    public static final String MESSAGE_SOURCE_TEMPLATE = "Template";
+    public static final String[] MESSAGE_SOURCES = {MESSAGE_SOURCE_STATIC, MESSAGE_SOURCE_FILE, MESSAGE_SOURCE_GENERATED,
+            MESSAGE_SOURCE_TEMPLATE};
+    public static final String DEFAULT_MESSAGE_SOURCE = MESSAGE_SOURCE_STATIC;
+    private final static String MESSAGE_SOURCE = "AMQPPublisher.MessageSource";
+    private final static String CORPUS_PATH = "AMQPPublisher.CorpusPath";
+    public static final String DEFAULT_CORPUS_FORMAT = CorpusFormat.LINES.getLabel();
+    private final static String CORPUS_FORMAT = "AMQPPublisher.CorpusFormat";
+    public static final String DEFAULT_CORPUS_ORDER = CorpusOrder.SEQUENTIAL.getLabel();
+    private final static String CORPUS_ORDER = "AMQPPublisher.CorpusOrder";
+    public static final String DEFAULT_PAYLOAD_SIZE_DISTRIBUTION = SizeDistribution.FIXED.getLabel();
+    private final static String PAYLOAD_SIZE_DISTRIBUTION = "AMQPPublisher.PayloadSizeDistribution";
+    private final static String PAYLOAD_SIZE_PARAMETERS = "AMQPPublisher.PayloadSizeParameters";
+
+    public static final boolean DEFAULT_OPEN_LOOP = false;
+    private final static String OPEN_LOOP = "AMQPPublisher.OpenLoop";
+    public static final String DEFAULT_RATE_PROFILE = RateProfile.CONSTANT.getLabel();
+    private final static String RATE_PROFILE = "AMQPPublisher.RateProfile";
+    private final static String RATE_PROFILE_PARAMETERS = "AMQPPublisher.RateProfileParameters";
+
+    public static final boolean DEFAULT_ASYNC_PUBLISH = false;
+    private final static String ASYNC_PUBLISH = "AMQPPublisher.AsyncPublish";
+    public static final int DEFAULT_ASYNC_RING_SIZE = 8192;
+    public static final String DEFAULT_ASYNC_RING_SIZE_STRING = Integer.toString(DEFAULT_ASYNC_RING_SIZE);
+    private final static String ASYNC_RING_SIZE = "AMQPPublisher.AsyncRingSize";
+    public static final int DEFAULT_ASYNC_WRITERS = 1;
+    public static final String DEFAULT_ASYNC_WRITERS_STRING = Integer.toString(DEFAULT_ASYNC_WRITERS);
+    private final static String ASYNC_WRITERS = "AMQPPublisher.AsyncWriters";
+
+    public static final String DEFAULT_MESSAGE_TIMINGS = MessageTimingMode.NONE.getLabel();
+    private final static String MESSAGE_TIMINGS = "AMQPPublisher.MessageTimings";
+    public static final int DEFAULT_SLOWEST_MESSAGES = 10;
+    public static final String DEFAULT_SLOWEST_MESSAGES_STRING = Integer.toString(DEFAULT_SLOWEST_MESSAGES);
+    private final static String SLOWEST_MESSAGES = "AMQPPublisher.SlowestMessages";
+
+    public static final String DEFAULT_COMPRESSION = Compression.NONE.getLabel();
+    private final static String COMPRESSION = "AMQPPublisher.Compression";
+    public static final int DEFAULT_COMPRESSION_LEVEL = 0; // codec default
+    public static final String DEFAULT_COMPRESSION_LEVEL_STRING = Integer.toString(DEFAULT_COMPRESSION_LEVEL);
+    private final static String COMPRESSION_LEVEL = "AMQPPublisher.CompressionLevel";
+
+    /** Mirrors SampleResult: whether sample time stamps are start times rather than end times. */
+    private static final boolean START_TIMESTAMP = JMeterUtils.getPropDefault("sampleresult.timestamp.start", false);
+
+    private transient PublishTemplate publishTemplate;
+    private transient MessagePublisher publisher;
+    private transient boolean publisherDynamic;
+    private transient ArrivalSchedule schedule;
+    private transient MessageTimings messageTimings;
+    private transient PayloadCompressor compressor;
+    private transient TemplateContext templateContext;
+    /** The last static or template body published, before compression, shown as the sampler data. */
+    private transient byte[] sentBody;
+    private transient Charset sentBodyCharset;
+    /** Numbers the sequences of the JVM, so samplers sharing a name still get distinct publisher ids. */
+    private static final AtomicLong SEQUENCES = new AtomicLong();
+
+    /** Kept across cleanups, a publisher id never restarts its sequence. */
+    private transient MessageSequence sequence;
+
     /**
      * {@inheritDoc}
      */
@@ -62,45 +179,374 @@ public class AMQPPublisher extends AMQPSampler implements Interruptible {
             return result;
         }
 
-        String data = getMessage(); // Sampler data
-
+        PublishTemplate template;
+        ArrivalSchedule schedule;
+        try {
+            template = getPublishTemplate();
+            schedule = getSchedule();
+        } catch (IOException ex) {
+            log.error("Failed to prepare message source : ", ex);
+            result.setResponseMessage(ex.toString());
+            return result;
+        }
         result.setSampleLabel(getTitle());
 
         // aggregate samples.
         int loop = getIterationsAsInt();
-        result.sampleStart(); // Start timing
+        MessageTimings timings = getMessageTimings();
+        long started = System.nanoTime();
+        BatchResult batch = null;
+        if (schedule == null) {
+            result.sampleStart(); // Start timing
+        }
+        Exception failure = null;
         try {
-            MessagePublisherConfiguration publisherConfiguration = new MessagePublisherConfigurationImpl(getContentType(),
-                    getCorrelationId(), getReplyToQueue(), getMessageType(), getMessageId(), getPersistent());
-            ((MessagePublisherConfigurationImpl) publisherConfiguration).addHeaders(getHeaders().getArgumentsAsMap());
-            MessagePublisher publisher = new MessagePublisherImpl(getMessageClient(), publisherConfiguration);
-
-            for (int idx = 0; idx < loop; idx++) {
-                publisher.publish(getExchange(), getMessageRoutingKey(), getMessageBytes());
-            }
-
-            // commit the sample.
-            publisher.commitTransaction();
+            batch = new BatchPublisher(getPublisher()).publish(template, loop, schedule, timings);
 
             // Set up the sample result details
+            String data = describeSentBody();
             result.setSamplerData(data);
-            result.setResponseData(getMessage(), null);
+            result.setResponseData(data, null);
             result.setDataType(SampleResult.TEXT);
 
             result.setResponseCodeOK();
             result.setResponseMessage("OK");
             result.setSuccessful(true);
+            applyBatch(result, batch);
+            if (timings != null) {
+                applyTimings(result, timings);
+            }
+            if (compressor != null) {
+                applyCompression(result, compressor);
+            }
         } catch (Exception ex) {
             log.debug(ex.getMessage(), ex);
             result.setResponseCode("000");
             result.setResponseMessage(ex.toString());
+            failure = ex;
         } finally {
-            result.sampleEnd(); // End timimg
+            if (compressor != null) {
+                compressor.reset();
+            }
+            if (schedule == null) {
+                result.sampleEnd(); // End timimg
+            } else {
+                stampFromSchedule(result, batch == null ? started : batch.getStartNanos());
+            }
+        }
+        if (failure != null) {
+            // with recovery on, a lost connection pauses the thread instead of failing sample after sample
+            getMessageClient().awaitRecovery(failure, getTimeoutAsInt());
         }
 
         return result;
     }
 
+    /**
+     * Open-loop samples are timed from the due time of their first message, so time spent behind a slow publish
+     * counts as latency instead of silently delaying the next sample.
+     */
+    private static void stampFromSchedule(SampleResult result, long startNanos) {
+        stamp(result, startNanos, System.nanoTime() - startNanos);
+    }
+
+    private static void stamp(SampleResult result, long startNanos, long elapsedNanos) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        long startMillis = TimeUnit.NANOSECONDS.toMillis(EpochClock.toEpochNanos(startNanos));
+        result.setStampAndTime(START_TIMESTAMP ? startMillis : startMillis + elapsed, elapsed);
+    }
+
+    /**
+     * @return the reset per-message timings of the thread, or null when they are off
+     */
+    private MessageTimings getMessageTimings() {
+        MessageTimingMode mode = MessageTimingMode.valueByLabel(getMessageTimingsMode());
+        if (mode == MessageTimingMode.NONE) {
+            return null;
+        }
+        if (messageTimings == null) {
+            messageTimings = new MessageTimings(mode == MessageTimingMode.SLOWEST ? getSlowestMessagesAsInt() : 0);
+        }
+        messageTimings.reset();
+        return messageTimings;
+    }
+
+    /**
+     * Appends the publish time distribution of the messages to the response headers and adds the slowest messages as
+     * sub-results, in batch order. Only those few messages get a SampleResult of their own.
+     */
+    private void applyTimings(SampleResult result, MessageTimings timings) {
+        StringBuilder headers = new StringBuilder(result.getResponseHeaders());
+        headers.append("Message-Time-Min-Micros: ").append(timings.getMinMicros()).append("\n");
+        for (double percentile : ConfirmTracker.PERCENTILES) {
+            headers.append("Message-Time-").append(ConfirmTracker.percentileLabel(percentile)).append("-Micros: ")
+                    .append(timings.getPercentileMicros(percentile)).append("\n");
+        }
+        headers.append("Message-Time-Max-Micros: ").append(timings.getMaxMicros()).append("\n");
+        result.setResponseHeaders(headers.toString());
+
+        int[] slots = new int[timings.getSlowestSize()];
+        for (int i = 0; i < slots.length; i++) {
+            int slot = i;
+            int j = i;
+            while (j > 0 && timings.getSlowestIndex(slots[j - 1]) > timings.getSlowestIndex(slot)) {
+                slots[j] = slots[j - 1];
+                j--;
+            }
+            slots[j] = slot;
+        }
+        for (int slot : slots) {
+            long elapsedNanos = timings.getSlowestElapsedNanos(slot);
+            SampleResult message = new SampleResult();
+            message.setSampleLabel(result.getSampleLabel() + " message " + timings.getSlowestIndex(slot));
+            stamp(message, timings.getSlowestStartNanos(slot), elapsedNanos);
+            message.setResponseCodeOK();
+            message.setResponseMessage("Publish time " + TimeUnit.NANOSECONDS.toMicros(elapsedNanos) + " us");
+            message.setDataType(SampleResult.TEXT);
+            message.setSuccessful(true);
+            result.addRawSubResult(message);
+        }
+    }
+
+    /**
+     * Appends the compression of the sample's bodies to the response headers. The codec time is part of the sample
+     * time, it is reported on its own so it can be told apart from the time spent publishing.
+     */
+    private static void applyCompression(SampleResult result, PayloadCompressor compressor) {
+        StringBuilder headers = new StringBuilder(result.getResponseHeaders());
+        headers.append("Compression-Codec: ").append(compressor.getEncoding()).append("\n");
+        headers.append("Compression-Raw-Bytes: ").append(compressor.getRawBytes()).append("\n");
+        headers.append("Compression-Encoded-Bytes: ").append(compressor.getEncodedBytes()).append("\n");
+        headers.append("Compression-Ratio: ").append(String.format(Locale.ROOT, "%.2f", compressor.getRatio())).append("\n");
+        headers.append("Compression-Time-Micros: ")
+                .append(TimeUnit.NANOSECONDS.toMicros(compressor.getCodecNanos())).append("\n");
+        result.setResponseHeaders(headers.toString());
+    }
+
+    /**
+     * @return the send schedule shared by all threads of this publisher, or null when publishing closed-loop
+     */
+    private ArrivalSchedule getSchedule() throws IOException {
+        if (schedule == null && getOpenLoop()) {
+            try {
+                schedule = ArrivalSchedule.shared(getName(), RateProfile.valueByLabel(getRateProfile()), getRateProfileParameters());
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid rate profile: " + ex.getMessage(), ex);
+            }
+        }
+        return schedule;
+    }
+
+
+    /**
+     * The template is compiled on the first sample of the thread: properties without JMeter variables or functions are
+     * evaluated once, the others on every message. With sharding on, the {shard} placeholder of the message routing key
+     * is resolved for every message. With compression on, static bodies are compressed once as well. Templates are
+     * parsed once and rendered for every message.
+     */
+    protected PublishTemplate getPublishTemplate() throws IOException {
+        if (publishTemplate == null) {
+            int threadNumber = JMeterContextService.getContext().getThreadNum();
+            ShardRouter shardRouter = getShardCountAsInt() < 1 ? null
+                    : new ShardRouter(getShardStrategyAsEnum(), getShardCountAsInt(), threadNumber);
+            // compiling the body creates the template context the routing key placeholders share
+            Supplier<byte[]> body = compileBody();
+            publishTemplate = new PublishTemplate(
+                    PublishTemplate.compile(isDynamic(EXCHANGE), this::getExchange),
+                    PublishTemplate.compile(isDynamic(MESSAGE_ROUTING_KEY), this::getMessageRoutingKey),
+                    body,
+                    shardRouter,
+                    templateContext);
+        }
+        return publishTemplate;
+    }
+
+    private Supplier<byte[]> compileBody() throws IOException {
+        compressor = newCompressor();
+        templateContext = newTemplateContext();
+        if (MESSAGE_SOURCE_FILE.equals(getMessageSource())) {
+            return compress(true, newCorpusSource()::nextPayload);
+        }
+        if (MESSAGE_SOURCE_TEMPLATE.equals(getMessageSource())) {
+            TemplateContext context = templateContext;
+            if (isDynamic(MESSAGE)) {
+                return compress(true, recordSentBody(StandardCharsets.UTF_8,
+                        () -> PayloadTemplate.parse(getMessage()).render(context)));
+            }
+            PayloadTemplate template = parseTemplate(getMessage());
+            return compress(true, recordSentBody(StandardCharsets.UTF_8, () -> template.render(context)));
+        }
+        if (MESSAGE_SOURCE_GENERATED.equals(getMessageSource())) {
+            PayloadSource source;
+            try {
+                source = new GeneratedPayloadSource(SizeDistribution.valueByLabel(getPayloadSizeDistribution()),
+                        getPayloadSizeParameters());
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid payload size distribution: " + ex.getMessage(), ex);
+            }
+            return compress(true, source::nextPayload);
+        }
+        return compress(isDynamic(MESSAGE), recordSentBody(Charset.defaultCharset(), this::getMessageBytes));
+    }
+
+    /**
+     * Keeps the body as rendered, so the sampler data shows what was sent rather than a fresh evaluation of the
+     * message content, whose functions may return something else.
+     */
+    private Supplier<byte[]> recordSentBody(Charset charset, Supplier<byte[]> body) {
+        sentBodyCharset = charset;
+        return () -> {
+            byte[] rendered = body.get();
+            sentBody = rendered;
+            return rendered;
+        };
+    }
+
+    /**
+     * @return the last static or template body sent, otherwise a description of the message source
+     */
+    private String describeSentBody() {
+        if (MESSAGE_SOURCE_FILE.equals(getMessageSource()) || MESSAGE_SOURCE_GENERATED.equals(getMessageSource())) {
+            return describeMessageSource();
+        }
+        return sentBody == null ? "" : new String(sentBody, sentBodyCharset);
+    }
+
+    private PayloadSource newCorpusSource() throws IOException {
+        MappedPayloadCorpus corpus = MappedPayloadCorpus.open(getCorpusPath(), CorpusFormat.valueByLabel(getCorpusFormat()));
+        return new CorpusPayloadSource(corpus, CorpusOrder.valueByLabel(getCorpusOrder()),
+                JMeterContextService.getContext().getThreadNum());
+    }
+
+    /**
+     * @return the template state of the thread, or null when neither the body nor the message id or correlation id
+     * is a template. It reads the corpus files when a template uses the corpus placeholder.
+     */
+    private TemplateContext newTemplateContext() throws IOException {
+        boolean templateBody = MESSAGE_SOURCE_TEMPLATE.equals(getMessageSource());
+        boolean templateMessageId = PayloadTemplate.hasPlaceholders(getMessageId());
+        boolean templateCorrelationId = PayloadTemplate.hasPlaceholders(getCorrelationId());
+        if (!templateBody && !templateMessageId && !templateCorrelationId) {
+            return null;
+        }
+        TemplateContext context = new TemplateContext(JMeterContextService.getContext().getThreadNum());
+        if ((templateBody && parseTemplate(getMessage()).usesCorpus())
+                || (templateMessageId && parseTemplate(getMessageId()).usesCorpus())
+                || (templateCorrelationId && parseTemplate(getCorrelationId()).usesCorpus())) {
+            context.setCorpus(newCorpusSource());
+        }
+        return context;
+    }
+
+    private static PayloadTemplate parseTemplate(String text) throws IOException {
+        try {
+            return PayloadTemplate.parse(text);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid payload template: " + ex.getMessage(), ex);
+        }
+    }
+
+    private Supplier<byte[]> compress(boolean dynamic, Supplier<byte[]> body) throws IOException {
+        if (compressor == null) {
+            return PublishTemplate.compile(dynamic, body);
+        }
+        return compressor.compile(dynamic, body);
+    }
+
+    /**
+     * @return the compressor of the thread's bodies, or null when compression is off
+     */
+    private PayloadCompressor newCompressor() throws IOException {
+        PayloadCodec codec;
+        try {
+            codec = getCompressionAsEnum().newCodec(getCompressionLevelAsInt());
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid compression: " + ex.getMessage(), ex);
+        }
+        return codec == null ? null : new PayloadCompressor(codec);
+    }
+
+    private String describeMessageSource() {
+        if (MESSAGE_SOURCE_GENERATED.equals(getMessageSource())) {
+            return getMessageSource() + " message source: " + getPayloadSizeDistribution() + " (" + getPayloadSizeParameters() + ")";
+        }
+        return getMessageSource() + " message source: " + getCorpusPath() + " (" + getCorpusFormat() + ", " + getCorpusOrder() + ")";
+    }
+
+    /**
+     * The publisher, and with it the message properties, is reused across samples unless one of its settings
+     * contains JMeter variables or functions. In async mode the messages are handed to the thread's publish pipeline.
+     */
+    protected MessagePublisher getPublisher() {
+        if (publisher != null && !publisherDynamic) {
+            return publisher;
+        }
+        MessagePublisherConfigurationImpl publisherConfiguration = new MessagePublisherConfigurationImpl(getContentType(),
+                getCorrelationId(), getReplyToQueue(), getMessageType(), getMessageId(), getPersistent());
+        publisherConfiguration.addHeaders(getHeaders().getArgumentsAsMap());
+        publisherConfiguration.setStampSendTime(getStampSendTime());
+        publisherConfiguration.setRunId(getRunIdOrDefault());
+        publisherConfiguration.setSequence(getStampSequence() ? getSequence() : null);
+        publisherConfiguration.setContentEncoding(getCompressionAsEnum().getEncoding());
+        publisherConfiguration.setMandatory(getMandatory());
+        publisher = new MessagePublisherImpl(getMessageClient(), publisherConfiguration, templateContext);
+        if (getAsyncPublish()) {
+            PublishPipeline pipeline = PublishPipeline.get(createChannelConfiguration(), getConfirmModeAsEnum(),
+                    getConfirmWindowAsInt(), getAsyncRingSizeAsInt(), getAsyncWritersAsInt(),
+                    JMeterContextService.getContext().getThreadNum());
+            publisher = new AsyncMessagePublisher(publisher, pipeline, getTimeoutAsInt());
+        }
+        publisherDynamic = isDynamic(CONTENT_TYPE) || isDynamic(CORRELATION_ID) || isDynamic(REPLY_TO_QUEUE)
+                || isDynamic(MESSAGE_TYPE) || isDynamic(MESSAGE_ID) || isDynamic(PERSISTENT) || isDynamic(STAMP_SEND_TIME)
+                || isDynamic(RUN_ID) || isDynamic(STAMP_SEQUENCE) || isDynamic(MANDATORY) || isDynamic(getHeaders());
+        return publisher;
+    }
+
+    /**
+     * @return the sequence of the thread, its publisher id is the run id, sampler name, thread number and a number
+     * unique to this sampler instance in the JVM
+     */
+    private MessageSequence getSequence() {
+        if (sequence == null) {
+            sequence = new MessageSequence(getRunIdOrDefault() + "/" + getName() + "/"
+                    + JMeterContextService.getContext().getThreadNum() + "/" + SEQUENCES.incrementAndGet());
+        }
+        return sequence;
+    }
+
+    private void applyBatch(SampleResult result, BatchResult batch) {
+        result.setSentBytes(batch.getBytes());
+        StringBuilder headers = new StringBuilder();
+        headers.append("Batch-Messages: ").append(batch.getMessages()).append("\n");
+        headers.append("Batch-Bytes: ").append(batch.getBytes()).append("\n");
+        headers.append("Batch-Msgs-Per-Sec: ").append(Math.round(batch.getMessagesPerSecond())).append("\n");
+        headers.append("Batch-Bytes-Per-Sec: ").append(Math.round(batch.getBytesPerSecond())).append("\n");
+        if (batch.getMaxScheduleLagNanos() >= 0) {
+            headers.append("Schedule-Lag-Max-Micros: ")
+                    .append(TimeUnit.NANOSECONDS.toMicros(batch.getMaxScheduleLagNanos())).append("\n");
+        }
+
+        ConfirmStats confirms = batch.getConfirms();
+        if (confirms != null) {
+            headers.append("Confirm-Acks: ").append(confirms.getAcks()).append("\n");
+            headers.append("Confirm-Nacks: ").append(confirms.getNacks()).append("\n");
+            headers.append("Confirm-Latency-Avg-Micros: ")
+                    .append(TimeUnit.NANOSECONDS.toMicros(confirms.getAverageLatencyNanos())).append("\n");
+            for (int i = 0; i < ConfirmTracker.PERCENTILES.length; i++) {
+                headers.append("Confirm-Latency-").append(ConfirmTracker.percentileLabel(ConfirmTracker.PERCENTILES[i]))
+                        .append("-Micros: ").append(confirms.getLatencyPercentileMicros(i)).append("\n");
+            }
+            headers.append("Confirm-Latency-Max-Micros: ")
+                    .append(TimeUnit.NANOSECONDS.toMicros(confirms.getMaxLatencyNanos())).append("\n");
+            result.setLatency(TimeUnit.NANOSECONDS.toMillis(confirms.getAverageLatencyNanos()));
+            if (confirms.getNacks() > 0) {
+                result.setResponseCode("500");
+                result.setResponseMessage(confirms.getNacks() + " message(s) nacked by the broker");
+                result.setSuccessful(false);
+            }
+        }
+        result.setResponseHeaders(headers.toString());
+    }
 
     private byte[] getMessageBytes() {
         return getMessage().getBytes();
@@ -128,6 +574,196 @@ public class AMQPPublisher extends AMQPSampler implements Interruptible {
         setProperty(MESSAGE, content);
     }
 
+    /**
+     * @return whether messages are sent at the scheduled rate instead of back to back
+     */
+    public boolean getOpenLoop() {
+        return getPropertyAsBoolean(OPEN_LOOP, DEFAULT_OPEN_LOOP);
+    }
+
+    public void setOpenLoop(Boolean openLoop) {
+        setProperty(OPEN_LOOP, openLoop);
+    }
+
+    public String getRateProfile() {
+        return getPropertyAsString(RATE_PROFILE, DEFAULT_RATE_PROFILE);
+    }
+
+    public void setRateProfile(String rateProfile) {
+        setProperty(RATE_PROFILE, rateProfile);
+    }
+
+    /**
+     * @return the rate profile parameters in messages per second across all threads, see {@link RateProfile}
+     */
+    public String getRateProfileParameters() {
+        return getPropertyAsString(RATE_PROFILE_PARAMETERS);
+    }
+
+    public void setRateProfileParameters(String rateProfileParameters) {
+        setProperty(RATE_PROFILE_PARAMETERS, rateProfileParameters);
+    }
+
+    /**
+     * @return whether messages are handed to a writer thread instead of being published by the sampler thread
+     */
+    public boolean getAsyncPublish() {
+        return getPropertyAsBoolean(ASYNC_PUBLISH, DEFAULT_ASYNC_PUBLISH);
+    }
+
+    public void setAsyncPublish(Boolean asyncPublish) {
+        setProperty(ASYNC_PUBLISH, asyncPublish);
+    }
+
+    /**
+     * @return the number of messages a publish pipeline buffers, rounded up to a power of two
+     */
+    public String getAsyncRingSize() {
+        return getPropertyAsString(ASYNC_RING_SIZE, DEFAULT_ASYNC_RING_SIZE_STRING);
+    }
+
+    public void setAsyncRingSize(String asyncRingSize) {
+        setProperty(ASYNC_RING_SIZE, asyncRingSize);
+    }
+
+    public int getAsyncRingSizeAsInt() {
+        if (getPropertyAsInt(ASYNC_RING_SIZE) < 1) {
+            return DEFAULT_ASYNC_RING_SIZE;
+        }
+        return getPropertyAsInt(ASYNC_RING_SIZE);
+    }
+
+    /**
+     * @return the number of writer threads, each with its own connection, the sampler threads are spread over
+     */
+    public String getAsyncWriters() {
+        return getPropertyAsString(ASYNC_WRITERS, DEFAULT_ASYNC_WRITERS_STRING);
+    }
+
+    public void setAsyncWriters(String asyncWriters) {
+        setProperty(ASYNC_WRITERS, asyncWriters);
+    }
+
+    public int getAsyncWritersAsInt() {
+        if (getPropertyAsInt(ASYNC_WRITERS) < 1) {
+            return DEFAULT_ASYNC_WRITERS;
+        }
+        return getPropertyAsInt(ASYNC_WRITERS);
+    }
+
+    /**
+     * @return which per-message timings samples carry, see {@link MessageTimingMode}
+     */
+    public String getMessageTimingsMode() {
+        return getPropertyAsString(MESSAGE_TIMINGS, DEFAULT_MESSAGE_TIMINGS);
+    }
+
+    public void setMessageTimingsMode(String messageTimings) {
+        setProperty(MESSAGE_TIMINGS, messageTimings);
+    }
+
+    /**
+     * @return how many of the slowest messages of a sample are added as sub-results
+     */
+    public String getSlowestMessages() {
+        return getPropertyAsString(SLOWEST_MESSAGES, DEFAULT_SLOWEST_MESSAGES_STRING);
+    }
+
+    public void setSlowestMessages(String slowestMessages) {
+        setProperty(SLOWEST_MESSAGES, slowestMessages);
+    }
+
+    public int getSlowestMessagesAsInt() {
+        if (getPropertyAsInt(SLOWEST_MESSAGES) < 1) {
+            return DEFAULT_SLOWEST_MESSAGES;
+        }
+        return getPropertyAsInt(SLOWEST_MESSAGES);
+    }
+
+    /**
+     * @return the codec message bodies are compressed with, see {@link Compression}
+     */
+    public String getCompression() {
+        return getPropertyAsString(COMPRESSION, DEFAULT_COMPRESSION);
+    }
+
+    public void setCompression(String compression) {
+        setProperty(COMPRESSION, compression);
+    }
+
+    public Compression getCompressionAsEnum() {
+        return Compression.valueByLabel(getCompression());
+    }
+
+    /**
+     * @return the compression level of the codec, 0 for its default
+     */
+    public String getCompressionLevel() {
+        return getPropertyAsString(COMPRESSION_LEVEL, DEFAULT_COMPRESSION_LEVEL_STRING);
+    }
+
+    public void setCompressionLevel(String compressionLevel) {
+        setProperty(COMPRESSION_LEVEL, compressionLevel);
+    }
+
+    public int getCompressionLevelAsInt() {
+        return getPropertyAsInt(COMPRESSION_LEVEL, DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    public String getMessageSource() {
+        return getPropertyAsString(MESSAGE_SOURCE, DEFAULT_MESSAGE_SOURCE);
+    }
+
+    public void setMessageSource(String messageSource) {
+        setProperty(MESSAGE_SOURCE, messageSource);
+    }
+
+    /**
+     * @return comma separated corpus files or directories used by the File message source
+     */
+    public String getCorpusPath() {
+        return getPropertyAsString(CORPUS_PATH);
+    }
+
+    public void setCorpusPath(String corpusPath) {
+        setProperty(CORPUS_PATH, corpusPath);
+    }
+
+    public String getCorpusFormat() {
+        return getPropertyAsString(CORPUS_FORMAT, DEFAULT_CORPUS_FORMAT);
+    }
+
+    public void setCorpusFormat(String corpusFormat) {
+        setProperty(CORPUS_FORMAT, corpusFormat);
+    }
+
+    public String getCorpusOrder() {
+        return getPropertyAsString(CORPUS_ORDER, DEFAULT_CORPUS_ORDER);
+    }
+
+    public void setCorpusOrder(String corpusOrder) {
+        setProperty(CORPUS_ORDER, corpusOrder);
+    }
+
+    public String getPayloadSizeDistribution() {
+        return getPropertyAsString(PAYLOAD_SIZE_DISTRIBUTION, DEFAULT_PAYLOAD_SIZE_DISTRIBUTION);
+    }
+
+    public void setPayloadSizeDistribution(String payloadSizeDistribution) {
+        setProperty(PAYLOAD_SIZE_DISTRIBUTION, payloadSizeDistribution);
+    }
+
+    /**
+     * @return the parameters of the payload size distribution, see {@link SizeDistribution}
+     */
+    public String getPayloadSizeParameters() {
+        return getPropertyAsString(PAYLOAD_SIZE_PARAMETERS);
+    }
+
+    public void setPayloadSizeParameters(String payloadSizeParameters) {
+        setProperty(PAYLOAD_SIZE_PARAMETERS, payloadSizeParameters);
+    }
+
     /**
      * @return the message type for the sample
      */
@@ -204,6 +840,126 @@ public class AMQPPublisher extends AMQPSampler implements Interruptible {
         setProperty(USE_TX, tx);
     }
 
+    public String getConfirmMode() {
+        return getPropertyAsString(CONFIRM_MODE, DEFAULT_CONFIRM_MODE);
+    }
+
+    public void setConfirmMode(String confirmMode) {
+        setProperty(CONFIRM_MODE, confirmMode);
+    }
+
+    public ConfirmMode getConfirmModeAsEnum() {
+        return ConfirmMode.valueByLabel(getConfirmMode());
+    }
+
+    /**
+     * @return the maximum number of unconfirmed messages in async confirm mode
+     */
+    public String getConfirmWindow() {
+        return getPropertyAsString(CONFIRM_WINDOW, DEFAULT_CONFIRM_WINDOW_STRING);
+    }
+
+    public void setConfirmWindow(String confirmWindow) {
+        setProperty(CONFIRM_WINDOW, confirmWindow);
+    }
+
+    public int getConfirmWindowAsInt() {
+        if (getPropertyAsInt(CONFIRM_WINDOW) < 1) {
+            return DEFAULT_CONFIRM_WINDOW;
+        }
+        return getPropertyAsInt(CONFIRM_WINDOW);
+    }
+
+    public boolean getStampSendTime() {
+        return getPropertyAsBoolean(STAMP_SEND_TIME, DEFAULT_STAMP_SEND_TIME);
+    }
+
+    public void setStampSendTime(Boolean stampSendTime) {
+        setProperty(STAMP_SEND_TIME, stampSendTime);
+    }
+
+    /**
+     * @return the run id stamped into messages, consumers keep one latency histogram per run id
+     */
+    public String getRunId() {
+        return getPropertyAsString(RUN_ID);
+    }
+
+    public void setRunId(String runId) {
+        setProperty(RUN_ID, runId);
+    }
+
+    /**
+     * @return whether a publisher id and sequence number are stamped into every message, for consumers to detect
+     * lost, duplicated and reordered messages
+     */
+    public boolean getStampSequence() {
+        return getPropertyAsBoolean(STAMP_SEQUENCE, DEFAULT_STAMP_SEQUENCE);
+    }
+
+    public void setStampSequence(Boolean stampSequence) {
+        setProperty(STAMP_SEQUENCE, stampSequence);
+    }
+
+    /**
+     * @return whether messages are published as mandatory, the broker returns unroutable ones and the client metrics
+     * count them as returned
+     */
+    public boolean getMandatory() {
+        return getPropertyAsBoolean(MANDATORY, DEFAULT_MANDATORY);
+    }
+
+    public void setMandatory(Boolean mandatory) {
+        setProperty(MANDATORY, mandatory);
+    }
+
+    private String getRunIdOrDefault() {
+        return StringUtils.defaultIfBlank(getRunId(), MessageStamp.DEFAULT_RUN_ID);
+    }
+
+    /**
+     * In async mode confirms are handled by the publish pipeline, the sampler's own channel only declares the topology.
+     */
+    @Override
+    protected void configureChannel(ChannelConfigurationImpl channelConf) {
+        channelConf.setConfirmMode(getAsyncPublish() ? ConfirmMode.NONE : getConfirmModeAsEnum());
+        channelConf.setConfirmWindow(getConfirmWindowAsInt());
+    }
+
+    @Override
+    protected void cleanup() {
+        publishTemplate = null;
+        publisher = null;
+        schedule = null;
+        messageTimings = null;
+        compressor = null;
+        templateContext = null;
+        sentBody = null;
+        super.cleanup();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Open-loop schedules restart with the test.
+     */
+    @Override
+    public void testStarted() {
+        super.testStarted();
+        ArrivalSchedule.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Writes the messages still queued in the publish pipelines and stops them.
+     */
+    @Override
+    public void testEnded() {
+        PublishPipeline.shutdownAll();
+        super.testEnded();
+    }
+
     @Override
     public boolean interrupt() {
         cleanup();
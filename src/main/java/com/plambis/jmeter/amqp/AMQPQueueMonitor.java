@@ -0,0 +1,123 @@
+package com.plambis.jmeter.amqp;
+
+import com.plambis.jmeter.amqp.client.QueueMonitor;
+import com.plambis.jmeter.amqp.client.Shards;
+import com.rabbitmq.client.AMQP;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the depth of a list of queues with passive declares. Every sample inspects all queues, one sub-result per
+ * queue, over a connection shared by all monitor threads; run it in its own thread group with a timer to sample
+ * periodically.
+ * <p>
+ * The queue field holds a comma separated list of queues. With sharding on every queue is expanded to its shards.
+ * The counts are also stored in the variables {@code <queue>_messages} and {@code <queue>_consumers}.
+ */
+public class AMQPQueueMonitor extends AMQPSampler {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(AMQPQueueMonitor.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SampleResult sample(Entry entry) {
+        SampleResult result = new SampleResult();
+        result.setSampleLabel(getTitle());
+        result.setDataType(SampleResult.TEXT);
+        result.sampleStart();
+
+        QueueMonitor monitor = QueueMonitor.get(createChannelConfiguration());
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        StringBuilder summary = new StringBuilder();
+        long totalMessages = 0;
+        boolean successful = true;
+        for (String queueName : getMonitoredQueues()) {
+            SampleResult queueResult = new SampleResult();
+            queueResult.setSampleLabel(getTitle() + " " + queueName);
+            queueResult.setDataType(SampleResult.TEXT);
+            queueResult.sampleStart();
+            try {
+                AMQP.Queue.DeclareOk declareOk = monitor.inspect(queueName);
+                queueResult.sampleEnd();
+                String counts = "messages=" + declareOk.getMessageCount() + " consumers=" + declareOk.getConsumerCount();
+                queueResult.setResponseCodeOK();
+                queueResult.setResponseMessage(counts);
+                queueResult.setResponseData(counts, StandardCharsets.UTF_8.name());
+                queueResult.setSuccessful(true);
+                totalMessages += declareOk.getMessageCount();
+                summary.append(queueName).append(": ").append(counts).append("\n");
+                if (variables != null) {
+                    variables.put(queueName + "_messages", Integer.toString(declareOk.getMessageCount()));
+                    variables.put(queueName + "_consumers", Integer.toString(declareOk.getConsumerCount()));
+                }
+            } catch (Exception ex) {
+                queueResult.sampleEnd();
+                log.warn("Failed to inspect queue " + queueName, ex);
+                queueResult.setResponseCode("500");
+                queueResult.setResponseMessage(ex.toString());
+                queueResult.setSuccessful(false);
+                summary.append(queueName).append(": ").append(ex).append("\n");
+                successful = false;
+            }
+            result.addRawSubResult(queueResult);
+        }
+
+        result.sampleEnd();
+        result.setResponseData(summary.toString(), StandardCharsets.UTF_8.name());
+        result.setResponseMessage("messages=" + totalMessages);
+        result.setSuccessful(successful);
+        if (successful) {
+            result.setResponseCodeOK();
+        } else {
+            result.setResponseCode("500");
+        }
+        return result;
+    }
+
+    private List<String> getMonitoredQueues() {
+        List<String> queues = new ArrayList<>();
+        for (String queue : getQueue().split(",")) {
+            if (queue.trim().isEmpty()) {
+                continue;
+            }
+            if (getShardCountAsInt() < 1) {
+                queues.add(queue.trim());
+                continue;
+            }
+            for (int shard = 0; shard < getShardCountAsInt(); shard++) {
+                queues.add(Shards.name(queue.trim(), shard));
+            }
+        }
+        return queues;
+    }
+
+    /**
+     * The monitor never publishes.
+     */
+    @Override
+    public Boolean getUseTx() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Closes the shared monitor connections.
+     */
+    @Override
+    public void testEnded() {
+        QueueMonitor.closeAll();
+        super.testEnded();
+    }
+}
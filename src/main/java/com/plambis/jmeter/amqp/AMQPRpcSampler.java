@@ -0,0 +1,206 @@
+package com.plambis.jmeter.amqp;
+
+import com.plambis.jmeter.amqp.client.MessagePublisher;
+import com.plambis.jmeter.amqp.client.PublishTemplate;
+import com.plambis.jmeter.amqp.client.RpcClient;
+import com.plambis.jmeter.amqp.client.RpcEchoResponder;
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ConfirmMode;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Request/reply sampler. Every sample publishes "Number of samples to Aggregate" requests back to back over direct
+ * reply-to and waits for all replies; the sample time is the round trip from the first request to the last reply.
+ * <p>
+ * Message source, routing and properties are those of the publisher; reply-to and correlation id are set per request.
+ * Confirms and transactions are not used, the reply is the acknowledgement.
+ */
+public class AMQPRpcSampler extends AMQPPublisher {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(AMQPRpcSampler.class);
+
+    //++ These are JMX names, and must not be changed
+    public static final int DEFAULT_REPLY_TIMEOUT = 5000;
+    public static final String DEFAULT_REPLY_TIMEOUT_STRING = Integer.toString(DEFAULT_REPLY_TIMEOUT);
+    private final static String REPLY_TIMEOUT = "AMQPRpcSampler.ReplyTimeout";
+
+    public static final boolean DEFAULT_ECHO_RESPONDER = false;
+    private final static String ECHO_RESPONDER = "AMQPRpcSampler.EchoResponder";
+
+    private transient RpcClient rpcClient;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SampleResult sample(Entry e) {
+        SampleResult result = new SampleResult();
+        result.setSampleLabel(getName());
+        result.setSuccessful(false);
+        result.setResponseCode("500");
+
+        PublishTemplate template;
+        try {
+            initClient();
+            if (getEchoResponder()) {
+                RpcEchoResponder.startOnce(createChannelConfiguration());
+            }
+            if (rpcClient == null) {
+                rpcClient = new RpcClient(getMessageClient());
+            }
+            template = getPublishTemplate();
+        } catch (Exception ex) {
+            log.error("Failed to initialize request/reply channel : ", ex);
+            result.setResponseMessage(ex.toString());
+            return result;
+        }
+        MessagePublisher publisher = getPublisher();
+
+        result.setSampleLabel(getTitle());
+        result.setDataType(SampleResult.TEXT);
+
+        int loop = getIterationsAsInt();
+        List<RpcClient.Call> calls = new ArrayList<>(loop);
+        long sentBytes = 0;
+        result.sampleStart();
+        try {
+            for (int i = 0; i < loop; i++) {
+                byte[] body = template.getBody();
+                calls.add(rpcClient.call(template.getExchangeName(), template.getRoutingKey(body),
+                        publisher.getProperties(System.nanoTime()), body));
+                sentBytes += body.length;
+            }
+            RpcClient.awaitAll(calls, getReplyTimeoutAsInt());
+            result.sampleEnd();
+
+            result.setResponseCodeOK();
+            result.setResponseMessage("OK");
+            result.setSuccessful(true);
+        } catch (TimeoutException ex) {
+            result.sampleEnd();
+            int missing = rpcClient.cancel(calls);
+            result.setResponseCode("504");
+            result.setResponseMessage(missing + " of " + calls.size() + " replies missing after " + getReplyTimeout() + " ms");
+        } catch (Exception ex) {
+            result.sampleEnd();
+            rpcClient.cancel(calls);
+            log.debug(ex.getMessage(), ex);
+            result.setResponseCode("000");
+            result.setResponseMessage(ex.toString());
+        }
+        result.setSentBytes(sentBytes);
+        applyReplies(result, calls);
+        return result;
+    }
+
+    private static void applyReplies(SampleResult result, List<RpcClient.Call> calls) {
+        int replies = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+        byte[] lastReply = null;
+        long receivedBytes = 0;
+        for (RpcClient.Call call : calls) {
+            if (!call.isReplied()) {
+                continue;
+            }
+            replies++;
+            totalNanos += call.getRoundTripNanos();
+            maxNanos = Math.max(maxNanos, call.getRoundTripNanos());
+            lastReply = call.getReply();
+            receivedBytes += lastReply.length;
+        }
+        if (lastReply != null) {
+            result.setResponseData(lastReply);
+        }
+        result.setBytes(receivedBytes);
+        StringBuilder headers = new StringBuilder();
+        headers.append("Rpc-Requests: ").append(calls.size()).append("\n");
+        headers.append("Rpc-Replies: ").append(replies).append("\n");
+        if (replies > 0) {
+            headers.append("Rpc-RTT-Avg-Micros: ").append(TimeUnit.NANOSECONDS.toMicros(totalNanos / replies)).append("\n");
+            headers.append("Rpc-RTT-Max-Micros: ").append(TimeUnit.NANOSECONDS.toMicros(maxNanos)).append("\n");
+        }
+        result.setResponseHeaders(headers.toString());
+    }
+
+    /**
+     * @return how long a sample waits for its replies, in milliseconds
+     */
+    public String getReplyTimeout() {
+        return getPropertyAsString(REPLY_TIMEOUT, DEFAULT_REPLY_TIMEOUT_STRING);
+    }
+
+    public void setReplyTimeout(String replyTimeout) {
+        setProperty(REPLY_TIMEOUT, replyTimeout);
+    }
+
+    public int getReplyTimeoutAsInt() {
+        if (getPropertyAsInt(REPLY_TIMEOUT) < 1) {
+            return DEFAULT_REPLY_TIMEOUT;
+        }
+        return getPropertyAsInt(REPLY_TIMEOUT);
+    }
+
+    /**
+     * @return whether a local responder echoes the requests of the queue back, for tests without an RPC server
+     */
+    public boolean getEchoResponder() {
+        return getPropertyAsBoolean(ECHO_RESPONDER, DEFAULT_ECHO_RESPONDER);
+    }
+
+    public void setEchoResponder(Boolean echoResponder) {
+        setProperty(ECHO_RESPONDER, echoResponder);
+    }
+
+    /**
+     * Requests are published by the sampler thread, which waits for their replies anyway.
+     */
+    @Override
+    public boolean getAsyncPublish() {
+        return false;
+    }
+
+    /**
+     * Requests are never published in a transaction, the reply would only be sent after the commit.
+     */
+    @Override
+    public Boolean getUseTx() {
+        return false;
+    }
+
+    @Override
+    protected void configureChannel(ChannelConfigurationImpl channelConf) {
+        super.configureChannel(channelConf);
+        channelConf.setConfirmMode(ConfirmMode.NONE);
+    }
+
+    @Override
+    protected void cleanup() {
+        if (rpcClient != null) {
+            rpcClient.close();
+            rpcClient = null;
+        }
+        super.cleanup();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Stops the echo responders.
+     */
+    @Override
+    public void testEnded() {
+        RpcEchoResponder.stopAll();
+        super.testEnded();
+    }
+}
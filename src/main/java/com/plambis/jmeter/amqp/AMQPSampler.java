@@ -5,9 +5,16 @@ import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
 import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
 import com.plambis.jmeter.amqp.client.conf.ExchangeConfigurationImpl;
 import com.plambis.jmeter.amqp.client.conf.QueueConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ShardStrategy;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import com.plambis.jmeter.amqp.client.payload.MappedPayloadCorpus;
+import com.plambis.jmeter.amqp.client.payload.PayloadBufferPool;
+import org.apache.jmeter.config.Argument;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.testelement.TestStateListener;
 import org.apache.jmeter.testelement.ThreadListener;
+import org.apache.jmeter.testelement.property.FunctionProperty;
 import org.apache.jmeter.testelement.property.TestElementProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,11 +24,15 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-public abstract class AMQPSampler extends AbstractSampler implements ThreadListener {
+public abstract class AMQPSampler extends AbstractSampler implements ThreadListener, TestStateListener {
     private static final Logger log = LoggerFactory.getLogger(AMQPSampler.class);
 
+    /** Samplers between testStarted and testEnded, the last one to end releases the shared resources. */
+    private static final AtomicInteger RUNNING_ELEMENTS = new AtomicInteger();
+
     public static final boolean DEFAULT_EXCHANGE_DURABLE = true;
     public static final boolean DEFAULT_EXCHANGE_AUTO_DELETE = true;
     public static final boolean DEFAULT_EXCHANGE_REDECLARE = false;
@@ -36,6 +47,37 @@ public abstract class AMQPSampler extends AbstractSampler implements ThreadListe
     public static final int DEFAULT_ITERATIONS = 1;
     public static final String DEFAULT_ITERATIONS_STRING = Integer.toString(DEFAULT_ITERATIONS);
 
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 0; // dedicated connection per thread
+    public static final String DEFAULT_CONNECTION_POOL_SIZE_STRING = Integer.toString(DEFAULT_CONNECTION_POOL_SIZE);
+
+    public static final int DEFAULT_CHANNELS_PER_CONNECTION = 100;
+    public static final String DEFAULT_CHANNELS_PER_CONNECTION_STRING = Integer.toString(DEFAULT_CHANNELS_PER_CONNECTION);
+
+    public static final boolean DEFAULT_USE_NIO = false;
+
+    public static final int DEFAULT_NIO_THREADS = 0; // client default
+    public static final String DEFAULT_NIO_THREADS_STRING = Integer.toString(DEFAULT_NIO_THREADS);
+
+    public static final int DEFAULT_NIO_BUFFER_SIZE = 0; // client default
+    public static final String DEFAULT_NIO_BUFFER_SIZE_STRING = Integer.toString(DEFAULT_NIO_BUFFER_SIZE);
+
+    public static final int DEFAULT_DISPATCH_THREADS = 0; // dispatch pool per connection
+    public static final String DEFAULT_DISPATCH_THREADS_STRING = Integer.toString(DEFAULT_DISPATCH_THREADS);
+
+    public static final boolean DEFAULT_USE_LOOPBACK = false;
+
+    public static final boolean DEFAULT_USE_RECOVERY = false;
+
+    public static final int DEFAULT_RECOVERY_INITIAL_DELAY = 1000;
+    public static final String DEFAULT_RECOVERY_INITIAL_DELAY_STRING = Integer.toString(DEFAULT_RECOVERY_INITIAL_DELAY);
+
+    public static final int DEFAULT_RECOVERY_MAX_DELAY = 30000;
+    public static final String DEFAULT_RECOVERY_MAX_DELAY_STRING = Integer.toString(DEFAULT_RECOVERY_MAX_DELAY);
+
+    public static final int DEFAULT_SHARD_COUNT = 0; // no sharding
+    public static final String DEFAULT_SHARD_COUNT_STRING = Integer.toString(DEFAULT_SHARD_COUNT);
+    public static final String DEFAULT_SHARD_STRATEGY = ShardStrategy.ROUND_ROBIN.getLabel();
+
     //++ These are JMX names, and must not be changed
     protected static final String EXCHANGE = "AMQPSampler.Exchange";
     protected static final String EXCHANGE_TYPE = "AMQPSampler.ExchangeType";
@@ -52,6 +94,16 @@ public abstract class AMQPSampler extends AbstractSampler implements ThreadListe
     protected static final String PASSWORD = "AMQPSampler.Password";
     private static final String TIMEOUT = "AMQPSampler.Timeout";
     private static final String ITERATIONS = "AMQPSampler.Iterations";
+    private static final String CONNECTION_POOL_SIZE = "AMQPSampler.ConnectionPoolSize";
+    private static final String CHANNELS_PER_CONNECTION = "AMQPSampler.ChannelsPerConnection";
+    private static final String USE_NIO = "AMQPSampler.UseNio";
+    private static final String NIO_THREADS = "AMQPSampler.NioThreads";
+    private static final String NIO_BUFFER_SIZE = "AMQPSampler.NioBufferSize";
+    private static final String DISPATCH_THREADS = "AMQPSampler.DispatchThreads";
+    private static final String USE_LOOPBACK = "AMQPSampler.Loopback";
+    private static final String USE_RECOVERY = "AMQPSampler.Recovery";
+    private static final String RECOVERY_INITIAL_DELAY = "AMQPSampler.RecoveryInitialDelay";
+    private static final String RECOVERY_MAX_DELAY = "AMQPSampler.RecoveryMaxDelay";
 
     protected static final String QUEUE = "AMQPSampler.Queue";
     private static final String QUEUE_DURABLE = "AMQPSampler.QueueDurable";
@@ -60,6 +112,8 @@ public abstract class AMQPSampler extends AbstractSampler implements ThreadListe
     private static final String QUEUE_AUTO_DELETE = "AMQPSampler.QueueAutoDelete";
     protected static final String ROUTING_KEY = "AMQPSampler.RoutingKey";
     private static final String QUEUE_ARGUMENTS = "AMQPSampler.QueueArguments";
+    private static final String SHARD_COUNT = "AMQPSampler.ShardCount";
+    private static final String SHARD_STRATEGY = "AMQPSampler.ShardStrategy";
 
     private transient AMQPClient amqpClient;
 
@@ -71,29 +125,84 @@ public abstract class AMQPSampler extends AbstractSampler implements ThreadListe
         return true;
     }
 
-    private ChannelConfiguration createChannelConfiguration() {
+    protected ChannelConfiguration createChannelConfiguration() {
         ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl(getVirtualHost(), getHosts(), getPortAsInt(), getUsername(), getPassword(), getUseTx());
         channelConf.setTimeout(getTimeoutAsInt());
         channelConf.setRoutingKey(getRoutingKey());
         channelConf.setUseSslProtocol(connectionSSL());
+        channelConf.setConnectionPoolSize(getConnectionPoolSizeAsInt());
+        channelConf.setChannelsPerConnection(getChannelsPerConnectionAsInt());
+        channelConf.setUseNio(getUseNio());
+        channelConf.setNioThreads(getNioThreadsAsInt());
+        channelConf.setNioBufferSize(getNioBufferSizeAsInt());
+        channelConf.setDispatchThreads(getDispatchThreadsAsInt());
+        channelConf.setUseLoopback(getUseLoopback());
+        channelConf.setUseRecovery(getUseRecovery());
+        channelConf.setRecoveryInitialDelay(getRecoveryInitialDelayAsInt());
+        channelConf.setRecoveryMaxDelay(getRecoveryMaxDelayAsInt());
+        channelConf.setShardCount(getShardCountAsInt());
+        channelConf.setShardStrategy(getShardStrategyAsEnum());
+        channelConf.setShard(getShardCountAsInt() > 0 ? getAssignedShard() : -1);
 
         QueueConfigurationImpl queueConf = new QueueConfigurationImpl(getQueue(), queueDurable(), queueExclusive(), queueAutoDelete());
         queueConf.setRedeclare(getQueueRedeclare());
         queueConf.addQueueArguments(getQueueArguments().getArgumentsAsMap());
         channelConf.setQueueConfiguration(queueConf);
 
-        ExchangeConfigurationImpl exchangeConf = new ExchangeConfigurationImpl(getExchange(), getExchangeType(), getExchangeDurable(), getExchangeAutoDelete());
+        String exchangeType = getShardCountAsInt() > 0 && getShardStrategyAsEnum() == ShardStrategy.CONSISTENT_HASH
+                ? ShardStrategy.CONSISTENT_HASH_EXCHANGE_TYPE : getExchangeType();
+        ExchangeConfigurationImpl exchangeConf = new ExchangeConfigurationImpl(getExchange(), exchangeType, getExchangeDurable(), getExchangeAutoDelete());
         exchangeConf.addExchangeArguments(getExchangeArgumentsAsMap());
         exchangeConf.setRedeclare(getExchangeRedeclare());
         channelConf.setExchangeConfiguration(exchangeConf);
 
+        configureChannel(channelConf);
         return channelConf;
     }
 
+    /**
+     * Hook for samplers that need additional channel settings.
+     *
+     * @param channelConf the channel configuration built from the common sampler properties
+     */
+    protected void configureChannel(ChannelConfigurationImpl channelConf) {
+    }
+
+    /**
+     * @return the shard the thread consumes from, or -1 when it publishes to all shards
+     */
+    protected int getAssignedShard() {
+        return -1;
+    }
+
     protected Map<String, Object> getExchangeArgumentsAsMap() {
         return getExchangeArguments().getArgumentsAsMap().entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,Map.Entry::getValue));
     }
 
+    /**
+     * @return whether the property contains JMeter variables or functions and has to be evaluated on every use
+     */
+    protected boolean isDynamic(String key) {
+        return getProperty(key) instanceof FunctionProperty;
+    }
+
+    /**
+     * @return whether any name or value of the arguments contains JMeter variables or functions
+     */
+    protected static boolean isDynamic(Arguments arguments) {
+        if (arguments == null) {
+            return false;
+        }
+        for (int i = 0; i < arguments.getArgumentCount(); i++) {
+            Argument argument = arguments.getArgument(i);
+            if (argument.getProperty(Argument.NAME) instanceof FunctionProperty
+                    || argument.getProperty(Argument.VALUE) instanceof FunctionProperty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * @return a string for the sampleResult Title
      */
@@ -129,6 +238,162 @@ public abstract class AMQPSampler extends AbstractSampler implements ThreadListe
         return getPropertyAsInt(ITERATIONS);
     }
 
+    public String getConnectionPoolSize() {
+        return getPropertyAsString(CONNECTION_POOL_SIZE, DEFAULT_CONNECTION_POOL_SIZE_STRING);
+    }
+
+    public void setConnectionPoolSize(String s) {
+        setProperty(CONNECTION_POOL_SIZE, s);
+    }
+
+    /**
+     * @return the number of shared connections, or 0 when every thread opens its own connection
+     */
+    protected int getConnectionPoolSizeAsInt() {
+        return Math.max(0, getPropertyAsInt(CONNECTION_POOL_SIZE, DEFAULT_CONNECTION_POOL_SIZE));
+    }
+
+    public String getChannelsPerConnection() {
+        return getPropertyAsString(CHANNELS_PER_CONNECTION, DEFAULT_CHANNELS_PER_CONNECTION_STRING);
+    }
+
+    public void setChannelsPerConnection(String s) {
+        setProperty(CHANNELS_PER_CONNECTION, s);
+    }
+
+    protected int getChannelsPerConnectionAsInt() {
+        if (getPropertyAsInt(CHANNELS_PER_CONNECTION) < 1) {
+            return DEFAULT_CHANNELS_PER_CONNECTION;
+        }
+        return getPropertyAsInt(CHANNELS_PER_CONNECTION);
+    }
+
+    public boolean getUseNio() {
+        return getPropertyAsBoolean(USE_NIO, DEFAULT_USE_NIO);
+    }
+
+    public void setUseNio(Boolean useNio) {
+        setProperty(USE_NIO, useNio);
+    }
+
+    public String getNioThreads() {
+        return getPropertyAsString(NIO_THREADS, DEFAULT_NIO_THREADS_STRING);
+    }
+
+    public void setNioThreads(String s) {
+        setProperty(NIO_THREADS, s);
+    }
+
+    protected int getNioThreadsAsInt() {
+        return Math.max(0, getPropertyAsInt(NIO_THREADS, DEFAULT_NIO_THREADS));
+    }
+
+    public String getNioBufferSize() {
+        return getPropertyAsString(NIO_BUFFER_SIZE, DEFAULT_NIO_BUFFER_SIZE_STRING);
+    }
+
+    public void setNioBufferSize(String s) {
+        setProperty(NIO_BUFFER_SIZE, s);
+    }
+
+    protected int getNioBufferSizeAsInt() {
+        return Math.max(0, getPropertyAsInt(NIO_BUFFER_SIZE, DEFAULT_NIO_BUFFER_SIZE));
+    }
+
+    /**
+     * @return whether the sampler talks to the in-process loopback broker, to measure the overhead of the plugin itself
+     */
+    public boolean getUseLoopback() {
+        return getPropertyAsBoolean(USE_LOOPBACK, DEFAULT_USE_LOOPBACK);
+    }
+
+    public void setUseLoopback(Boolean useLoopback) {
+        setProperty(USE_LOOPBACK, useLoopback);
+    }
+
+    /**
+     * @return whether lost connections are recovered with their topology and consumers instead of failing the thread
+     */
+    public boolean getUseRecovery() {
+        return getPropertyAsBoolean(USE_RECOVERY, DEFAULT_USE_RECOVERY);
+    }
+
+    public void setUseRecovery(Boolean useRecovery) {
+        setProperty(USE_RECOVERY, useRecovery);
+    }
+
+    public String getRecoveryInitialDelay() {
+        return getPropertyAsString(RECOVERY_INITIAL_DELAY, DEFAULT_RECOVERY_INITIAL_DELAY_STRING);
+    }
+
+    public void setRecoveryInitialDelay(String s) {
+        setProperty(RECOVERY_INITIAL_DELAY, s);
+    }
+
+    protected int getRecoveryInitialDelayAsInt() {
+        if (getPropertyAsInt(RECOVERY_INITIAL_DELAY) < 1) {
+            return DEFAULT_RECOVERY_INITIAL_DELAY;
+        }
+        return getPropertyAsInt(RECOVERY_INITIAL_DELAY);
+    }
+
+    public String getRecoveryMaxDelay() {
+        return getPropertyAsString(RECOVERY_MAX_DELAY, DEFAULT_RECOVERY_MAX_DELAY_STRING);
+    }
+
+    public void setRecoveryMaxDelay(String s) {
+        setProperty(RECOVERY_MAX_DELAY, s);
+    }
+
+    protected int getRecoveryMaxDelayAsInt() {
+        if (getPropertyAsInt(RECOVERY_MAX_DELAY) < 1) {
+            return DEFAULT_RECOVERY_MAX_DELAY;
+        }
+        return Math.max(getRecoveryInitialDelayAsInt(), getPropertyAsInt(RECOVERY_MAX_DELAY));
+    }
+
+    public String getDispatchThreads() {
+        return getPropertyAsString(DISPATCH_THREADS, DEFAULT_DISPATCH_THREADS_STRING);
+    }
+
+    public void setDispatchThreads(String s) {
+        setProperty(DISPATCH_THREADS, s);
+    }
+
+    /**
+     * @return the number of consumer dispatch threads shared by all connections, 0 for a dispatch pool per connection
+     */
+    protected int getDispatchThreadsAsInt() {
+        return Math.max(0, getPropertyAsInt(DISPATCH_THREADS, DEFAULT_DISPATCH_THREADS));
+    }
+
+    public String getShardCount() {
+        return getPropertyAsString(SHARD_COUNT, DEFAULT_SHARD_COUNT_STRING);
+    }
+
+    public void setShardCount(String s) {
+        setProperty(SHARD_COUNT, s);
+    }
+
+    /**
+     * @return the number of shard queues, 0 when sharding is off
+     */
+    public int getShardCountAsInt() {
+        return Math.max(0, getPropertyAsInt(SHARD_COUNT, DEFAULT_SHARD_COUNT));
+    }
+
+    public String getShardStrategy() {
+        return getPropertyAsString(SHARD_STRATEGY, DEFAULT_SHARD_STRATEGY);
+    }
+
+    public void setShardStrategy(String s) {
+        setProperty(SHARD_STRATEGY, s);
+    }
+
+    public ShardStrategy getShardStrategyAsEnum() {
+        return ShardStrategy.valueByLabel(getShardStrategy());
+    }
+
     public String getExchange() {
         return getPropertyAsString(EXCHANGE);
     }
@@ -341,10 +606,61 @@ public abstract class AMQPSampler extends AbstractSampler implements ThreadListe
         log.info("AMQPSampler.threadStarted called");
     }
 
+    /**
+     * Forgets the topology declared by the previous test, so every queue, exchange and binding is declared once again,
+     * restarts the shard statistics and starts the periodic client metrics summary.
+     */
+    @Override
+    public void testStarted() {
+        if (RUNNING_ELEMENTS.getAndIncrement() > 0) {
+            return;
+        }
+        TopologyCoordinator.reset();
+        ShardStats.reset();
+        ClientMetrics.get().start();
+    }
+
+    @Override
+    public void testStarted(String host) {
+        testStarted();
+    }
+
+    /**
+     * Subclasses finish their own work, such as purging queues, before calling this. The shared connections, factories
+     * and buffers are released once, when the last sampler of the test has ended, so no sampler finds them shut down
+     * by another one.
+     */
+    @Override
+    public void testEnded() {
+        if (RUNNING_ELEMENTS.decrementAndGet() > 0) {
+            return;
+        }
+        RUNNING_ELEMENTS.set(0);
+        ShardStats.report();
+        ClientMetrics.get().stop();
+        LoopbackBroker.shutdownAll();
+        AMQPConnectionPool.shutdownAll();
+        AMQPConnectionFactory.shutdown();
+        PayloadBufferPool.clear();
+        MappedPayloadCorpus.clear();
+    }
+
+    @Override
+    public void testEnded(String host) {
+        testEnded();
+    }
+
     protected AMQPClient getMessageClient() {
         return amqpClient;
     }
 
+    /**
+     * Replaces the client of the thread, for benchmarks running the sampler against a stand-in channel.
+     */
+    void setMessageClient(AMQPClient client) {
+        amqpClient = client;
+    }
+
     public void setExchangeArguments(Arguments exchangeArguments) {
         setProperty(new TestElementProperty(EXCHANGE_ARGUMENTS, exchangeArguments));
     }
@@ -1,35 +1,52 @@
 package com.plambis.jmeter.amqp.client;
 
 import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
-import com.plambis.jmeter.amqp.client.conf.ExchangeConfiguration;
-import com.plambis.jmeter.amqp.client.conf.QueueConfiguration;
-import com.rabbitmq.client.Address;
+import com.plambis.jmeter.amqp.client.conf.ConfirmMode;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import org.apache.commons.lang3.StringUtils;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.ShutdownSignalException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
-import java.util.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
+import java.util.function.IntSupplier;
 
 public class AMQPClient {
     private static final Logger log = LoggerFactory.getLogger(AMQPClient.class);
-    private static final int DEFAULT_HEARTBEAT = 1;
 
     private final transient ChannelConfiguration channelConf;
+    private final transient Channel providedChannel;
     private transient Connection connection;
     private transient Channel channel;
+    private transient ChannelLease lease;
+    private transient ConfirmTracker confirmTracker;
+    private transient RecoveryTracker recoveryTracker;
+    private transient Connection recoveringConnection;
+    private final transient List<IntSupplier> inFlightCounters = new CopyOnWriteArrayList<>();
 
     public AMQPClient(ChannelConfiguration channelConf) throws KeyManagementException, TimeoutException, NoSuchAlgorithmException,
             IOException {
         log.debug("Channel configuration: {}", channelConf);
         this.channelConf = channelConf;
+        this.providedChannel = null;
+        initChannel();
+    }
+
+    /**
+     * Works on a channel opened elsewhere, for example an in-process stand-in used by benchmarks. The client declares
+     * the topology on it as usual but never opens or closes a connection.
+     */
+    public AMQPClient(ChannelConfiguration channelConf, Channel channel) throws KeyManagementException, TimeoutException,
+            NoSuchAlgorithmException, IOException {
+        this.channelConf = channelConf;
+        this.providedChannel = channel;
         initChannel();
     }
 
@@ -47,68 +64,80 @@ public class AMQPClient {
             log.warn("channel " + getChannel().getChannelNumber()
                     + " closed unexpectedly: ", getChannel().getCloseReason());
             channel = null; // so we re-open it below
+            unregisterRecoveryTracker();
+            releaseLease();
         }
 
         if (getChannel() == null) {
-            channel = createChannel();
+            channel = openChannel();
+            channel.addReturnListener(returned -> ClientMetrics.get().markReturned());
+            if (channelConf.useRecovery()) {
+                registerRecoveryTracker();
+            }
 
-            declareQueue();
-
-            declareExchange();
-
-            declareBindings(channelConf.getQueueConfiguration().getQueueName(), channelConf.getExchangeConfiguration().getExchangeName(),
-                    channelConf.getRoutingKey());
+            TopologyCoordinator.declare(channel, channelConf);
         }
 
         if (channelConf.useTx()) {
             channel.txSelect();
         }
+        if (channelConf.getConfirmMode() != ConfirmMode.NONE) {
+            initConfirms();
+        }
         return true;
     }
 
-    private void declareBindings(String queueName, String exchangeName, String routingKey) throws IOException {
-        if (StringUtils.isBlank(queueName) || StringUtils.isBlank(exchangeName)) {
-            log.warn("There no queue or exchange configured!");
+    private void initConfirms() throws IOException {
+        if (channelConf.useTx()) {
+            log.warn("Publisher confirms can not be combined with transactions, confirm mode {} is ignored",
+                    channelConf.getConfirmMode());
             return;
         }
-        channel.queueBind(queueName, exchangeName, routingKey);
-        log.info("bound queue: {} to exchange {} routing key {} ", queueName, exchangeName,
-                routingKey
-        );
+        int window = channelConf.getConfirmMode() == ConfirmMode.SYNC ? 1 : channelConf.getConfirmWindow();
+        channel.confirmSelect();
+        confirmTracker = new ConfirmTracker(window);
+        channel.addConfirmListener(confirmTracker);
+        log.info("Enabled publisher confirms on channel {} with window {}", channel.getChannelNumber(), confirmTracker.getWindow());
     }
 
-    private void declareExchange() throws IOException {
-        ExchangeConfiguration exchangeConf = channelConf.getExchangeConfiguration();
-        if (StringUtils.isBlank(exchangeConf.getExchangeName())) {
-            log.warn("There no exchange configured!");
+    /**
+     * Listens on the connection rather than the channel: the connection notifies its recovery listeners only after
+     * the topology and the consumers are recovered, while the channel's listeners run before that.
+     */
+    private void registerRecoveryTracker() {
+        if (!(connection instanceof Recoverable)) {
             return;
         }
-        //Use a named exchange
-        if (exchangeConf.redeclare()) {
-            deleteExchange();
-        }
-
-        channel.exchangeDeclare(exchangeConf.getExchangeName(), exchangeConf.getType(), exchangeConf.isDurable(),
-                exchangeConf.isAutoDelete(), exchangeConf.getExchangeArguments());
-        log.info("Declared exchange: {}", exchangeConf.getExchangeName());
+        recoveryTracker = new RecoveryTracker(this, Thread.currentThread().getName() + " channel "
+                + channel.getChannelNumber());
+        recoveringConnection = connection;
+        recoveringConnection.addShutdownListener(recoveryTracker);
+        ((Recoverable) recoveringConnection).addRecoveryListener(recoveryTracker);
     }
 
-    private void declareQueue() throws IOException {
-        QueueConfiguration queueConf = channelConf.getQueueConfiguration();
-        if (StringUtils.isBlank(queueConf.getQueueName())) {
-            log.warn("There no queue configured!");
+    /**
+     * Pooled and shared connections outlive the client, so its listeners are removed from them.
+     */
+    private void unregisterRecoveryTracker() {
+        if (recoveringConnection == null) {
             return;
         }
-        if (queueConf.redeclare()) {
-            deleteQueue();
-        }
-
-        channel.queueDeclare(queueConf.getQueueName(), queueConf.isDurable(), queueConf.isExclusive(), queueConf.isAutoDelete(),
-                queueConf.getQueueArguments());
-        log.info("Declared queue: {}", queueConf.getQueueName());
+        recoveringConnection.removeShutdownListener(recoveryTracker);
+        ((Recoverable) recoveringConnection).removeRecoveryListener(recoveryTracker);
+        recoveringConnection = null;
     }
 
     public void cleanup() {
+        if (recoveryTracker != null) {
+            recoveryTracker.report();
+            unregisterRecoveryTracker();
+        }
+        if (lease != null) {
+            releaseLease();
+            channel = null;
+            connection = null;
+            return;
+        }
         if (connection == null || !connection.isOpen()) {
             return;
         }
@@ -119,6 +148,14 @@ public class AMQPClient {
         }
     }
 
+    private void releaseLease() {
+        if (lease == null) {
+            return;
+        }
+        lease.release();
+        lease = null;
+    }
+
     public void commitTransaction() throws IOException {
         if (!channelConf.useTx()) {
             log.warn("We do not use transactions at all!");
@@ -127,71 +164,134 @@ public class AMQPClient {
         channel.txCommit();
     }
 
-    private Channel createChannel() throws IOException, NoSuchAlgorithmException, KeyManagementException, TimeoutException {
-        log.info("Creating channel " + channelConf.getVirtualHost() + ":" + channelConf.getPort());
-
-        if (connection == null || !connection.isOpen()) {
-            createConnection();
+    /**
+     * Registers the next message with the confirm tracker, blocking while the confirm window is full.
+     * Does nothing when the channel is not in confirm mode.
+     *
+     * @param sendNanos the {@link System#nanoTime()} the confirm latency is measured from
+     */
+    public void beforePublish(long sendNanos) throws IOException, TimeoutException {
+        if (confirmTracker == null) {
+            return;
         }
-
-        Channel channel = connection.createChannel();
-        if (!channel.isOpen()) {
-            log.error("Failed to open channel: {}", channel.getCloseReason().getLocalizedMessage());
+        try {
+            confirmTracker.beforePublish(channel.getNextPublishSeqNo(), sendNanos, channelConf.getTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for publisher confirms");
         }
-        return channel;
     }
 
-    private void createConnection() throws NoSuchAlgorithmException, KeyManagementException, IOException, TimeoutException {
-        ConnectionFactory factory = new ConnectionFactory();
-        factory.setRequestedHeartbeat(DEFAULT_HEARTBEAT);
-        factory.setConnectionTimeout(channelConf.getTimeout());
-        factory.setVirtualHost(channelConf.getVirtualHost());
-        factory.setUsername(channelConf.getUsername());
-        factory.setPassword(channelConf.getPassword());
-        if (channelConf.useSslProtocol()) {
-            factory.useSslProtocol("TLS");
+    /**
+     * Waits until all published messages are confirmed.
+     *
+     * @return the confirms received since the previous call, or null when the channel is not in confirm mode
+     */
+    public ConfirmStats waitForConfirms() throws IOException, TimeoutException {
+        if (confirmTracker == null) {
+            return null;
         }
+        try {
+            confirmTracker.awaitAll(channelConf.getTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for publisher confirms");
+        }
+        return confirmTracker.drainStats();
+    }
+
+    /**
+     * Counts the consumer's deliveries that are not acknowledged yet as in flight when the connection is lost.
+     */
+    public void addInFlightCounter(IntSupplier counter) {
+        inFlightCounters.add(counter);
+    }
 
-        log.info("RabbitMQ ConnectionFactory using:"
-                + "\n\t virtual host: " + channelConf.getVirtualHost()
-                + "\n\t host: " + channelConf.getHosts()
-                + "\n\t port: " + channelConf.getPort()
-                + "\n\t username: " + channelConf.getUsername()
-                + "\n\t password: " + channelConf.getPassword()
-                + "\n\t timeout: " + channelConf.getTimeout()
-                + "\n\t heartbeat: " + factory.getRequestedHeartbeat()
-                + "\nin " + this
-        );
+    public void removeInFlightCounter(IntSupplier counter) {
+        inFlightCounters.remove(counter);
+    }
 
-        List<Address> addresses = channelConf.getHosts().stream().map(host -> new Address(host, channelConf.getPort())).collect(
-                Collectors.toList());
-        log.info("Using hosts: " + channelConf.getHosts() + " addresses: " + addresses);
+    /**
+     * @return the unconfirmed publishes and unacknowledged deliveries of the client
+     */
+    int getInFlight() {
+        int inFlight = confirmTracker == null ? 0 : confirmTracker.getOutstanding();
+        for (IntSupplier counter : inFlightCounters) {
+            inFlight += counter.getAsInt();
+        }
+        return inFlight;
+    }
 
-        connection = factory.newConnection(addresses);
+    /**
+     * @return the publishes whose confirms were lost with the connection
+     */
+    int abandonConfirms() {
+        return confirmTracker == null ? 0 : confirmTracker.abandonOutstanding();
     }
 
-    private void deleteQueue() {
-        // use a different channel since channel closes on exception.
-        try (Channel channel = createChannel()) {
-            log.info("Deleting queue " + channelConf.getQueueConfiguration().getQueueName());
-            channel.queueDelete(channelConf.getQueueConfiguration().getQueueName());
-        } catch (Exception ex) {
-            log.debug(ex.getMessage(), ex);
-            // ignore it.
+    /**
+     * Waits up to the timeout for the channel to be recovered when the failure is a lost connection and recovery is
+     * on, so a thread does not spin through failing samples during the outage.
+     *
+     * @param failure the failure of the last publish or consume, the shutdown is looked up among its causes
+     * @return whether the channel is being recovered and the thread can go on; false when recovery is off or the
+     * channel was closed for another reason
+     */
+    public boolean awaitRecovery(Throwable failure, long timeoutMillis) {
+        if (recoveryTracker == null) {
+            return false;
         }
+        Throwable cause = failure;
+        while (cause != null && !(cause instanceof ShutdownSignalException)) {
+            cause = cause.getCause();
+        }
+        if (cause == null || !RecoveryTracker.isRecoverable((ShutdownSignalException) cause)) {
+            return false;
+        }
+        try {
+            recoveryTracker.awaitRecovery(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
     }
 
-    private void deleteExchange() {
-        // use a different channel since channel closes on exception.
-        try (Channel channel = createChannel()) {
-            log.info("Deleting exchange " + channelConf.getExchangeConfiguration().getExchangeName());
-            channel.exchangeDelete(channelConf.getExchangeConfiguration().getExchangeName());
-        } catch (Exception ex) {
-            log.debug(ex.getMessage(), ex);
+    private Channel openChannel() throws IOException, NoSuchAlgorithmException, KeyManagementException, TimeoutException {
+        if (providedChannel != null) {
+            return providedChannel;
+        }
+        if (channelConf.getConnectionPoolSize() < 1) {
+            return createChannel();
         }
+        log.info("Leasing pooled channel " + channelConf.getVirtualHost() + ":" + channelConf.getPort());
+        lease = AMQPConnectionPool.acquire(channelConf);
+        connection = lease.getConnection();
+        return lease.getChannel();
+    }
+
+    private Channel createChannel() throws IOException, NoSuchAlgorithmException, KeyManagementException, TimeoutException {
+        log.info("Creating channel " + channelConf.getVirtualHost() + ":" + channelConf.getPort());
+
+        if (connection == null || !connection.isOpen()) {
+            connection = AMQPConnectionFactory.newConnection(channelConf);
+        }
+
+        Channel channel = connection.createChannel();
+        if (!channel.isOpen()) {
+            log.error("Failed to open channel: {}", channel.getCloseReason().getLocalizedMessage());
+        }
+        return channel;
+    }
+
+    /**
+     * @return the queue this client consumes from, the shard queue when sharding is on
+     */
+    public String getQueueName() {
+        return Shards.queueName(channelConf);
     }
 
     public void queuePurge() throws IOException {
-        getChannel().queuePurge(channelConf.getQueueConfiguration().getQueueName());
+        getChannel().queuePurge(getQueueName());
     }
 }
@@ -0,0 +1,258 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import com.rabbitmq.client.Address;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryDelayHandler;
+import com.rabbitmq.client.impl.nio.NioParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Opens broker connections for a {@link ChannelConfiguration}. Shared by dedicated clients and the connection pool.
+ * <p>
+ * With NIO or a shared dispatch pool the {@link ConnectionFactory} is cached per configuration, because connections
+ * only share the NIO threads and the consumer dispatch executor of the factory they were created by. The cached
+ * factories and their executors are discarded by {@link #shutdown()} at test end.
+ * <p>
+ * Automatic recovery is off unless the configuration enables it; recovering connections retry with an exponential
+ * backoff between the configured initial and maximum delay.
+ */
+public final class AMQPConnectionFactory {
+    private static final Logger log = LoggerFactory.getLogger(AMQPConnectionFactory.class);
+    private static final int DEFAULT_HEARTBEAT = 1;
+
+    private static final ConcurrentMap<FactoryKey, SharedFactory> FACTORIES = new ConcurrentHashMap<>();
+
+    private AMQPConnectionFactory() {
+    }
+
+    public static Connection newConnection(ChannelConfiguration channelConf) throws NoSuchAlgorithmException, KeyManagementException,
+            IOException, TimeoutException {
+        if (channelConf.useLoopback()) {
+            log.info("Using loopback broker for virtual host {}", channelConf.getVirtualHost());
+            return LoopbackBroker.newConnection(channelConf.getVirtualHost());
+        }
+        ConnectionFactory factory;
+        if (channelConf.useNio() || channelConf.getDispatchThreads() > 0) {
+            factory = getSharedFactory(channelConf);
+        } else {
+            factory = createFactory(channelConf);
+        }
+
+        List<Address> addresses = channelConf.getHosts().stream().map(host -> new Address(host, channelConf.getPort())).collect(
+                Collectors.toList());
+        log.info("Using hosts: " + channelConf.getHosts() + " addresses: " + addresses);
+
+        Connection connection = factory.newConnection(addresses);
+        connection.addBlockedListener(ClientMetrics.get().newBlockedListener());
+        if (connection instanceof Recoverable) {
+            ((Recoverable) connection).addRecoveryListener(ClientMetrics.get().newRecoveryListener());
+        }
+        return connection;
+    }
+
+    private static ConnectionFactory createFactory(ChannelConfiguration channelConf) throws NoSuchAlgorithmException,
+            KeyManagementException {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setRequestedHeartbeat(DEFAULT_HEARTBEAT);
+        factory.setConnectionTimeout(channelConf.getTimeout());
+        factory.setVirtualHost(channelConf.getVirtualHost());
+        factory.setUsername(channelConf.getUsername());
+        factory.setPassword(channelConf.getPassword());
+        factory.setMetricsCollector(ClientMetrics.get());
+        factory.setAutomaticRecoveryEnabled(channelConf.useRecovery());
+        factory.setTopologyRecoveryEnabled(channelConf.useRecovery());
+        if (channelConf.useRecovery()) {
+            factory.setRecoveryDelayHandler(backoff(channelConf.getRecoveryInitialDelay(), channelConf.getRecoveryMaxDelay()));
+        }
+        if (channelConf.useSslProtocol()) {
+            factory.useSslProtocol("TLS");
+        }
+
+        log.info("RabbitMQ ConnectionFactory using:"
+                + "\n\t virtual host: " + channelConf.getVirtualHost()
+                + "\n\t host: " + channelConf.getHosts()
+                + "\n\t port: " + channelConf.getPort()
+                + "\n\t username: " + channelConf.getUsername()
+                + "\n\t password: " + channelConf.getPassword()
+                + "\n\t timeout: " + channelConf.getTimeout()
+                + "\n\t heartbeat: " + factory.getRequestedHeartbeat()
+                + "\n\t nio: " + channelConf.useNio()
+                + "\n\t dispatch threads: " + channelConf.getDispatchThreads()
+                + "\n\t recovery: " + (channelConf.useRecovery() ? channelConf.getRecoveryInitialDelay() + "-"
+                        + channelConf.getRecoveryMaxDelay() + " ms backoff" : "off")
+        );
+        return factory;
+    }
+
+    /**
+     * @return delays doubling from the initial delay with every attempt, up to the maximum delay
+     */
+    private static RecoveryDelayHandler backoff(long initialDelay, long maxDelay) {
+        return attempts -> Math.min(maxDelay, initialDelay << Math.min(Math.max(0, attempts), 20));
+    }
+
+    private static ConnectionFactory getSharedFactory(ChannelConfiguration channelConf) throws NoSuchAlgorithmException,
+            KeyManagementException {
+        FactoryKey key = new FactoryKey(channelConf);
+        SharedFactory shared = FACTORIES.get(key);
+        if (shared != null) {
+            return shared.factory;
+        }
+        synchronized (FACTORIES) {
+            shared = FACTORIES.get(key);
+            if (shared == null) {
+                shared = new SharedFactory(createFactory(channelConf), channelConf);
+                FACTORIES.put(key, shared);
+            }
+            return shared.factory;
+        }
+    }
+
+    /**
+     * Discards the cached factories and stops their shared executors. Connections still open keep running on the
+     * executors until they are closed.
+     */
+    public static void shutdown() {
+        synchronized (FACTORIES) {
+            for (SharedFactory shared : FACTORIES.values()) {
+                shared.shutdown();
+            }
+            FACTORIES.clear();
+        }
+    }
+
+    /**
+     * The factory settings of a configuration, compared field by field like the connection pool key, so the password
+     * is not joined into a key string.
+     */
+    private static final class FactoryKey {
+        private final String virtualHost;
+        private final String username;
+        private final String password;
+        private final boolean useSslProtocol;
+        private final int timeout;
+        private final boolean useNio;
+        private final int nioThreads;
+        private final int nioBufferSize;
+        private final int dispatchThreads;
+        private final boolean useRecovery;
+        private final int recoveryInitialDelay;
+        private final int recoveryMaxDelay;
+
+        private FactoryKey(ChannelConfiguration channelConf) {
+            this.virtualHost = channelConf.getVirtualHost();
+            this.username = channelConf.getUsername();
+            this.password = channelConf.getPassword();
+            this.useSslProtocol = channelConf.useSslProtocol();
+            this.timeout = channelConf.getTimeout();
+            this.useNio = channelConf.useNio();
+            this.nioThreads = channelConf.getNioThreads();
+            this.nioBufferSize = channelConf.getNioBufferSize();
+            this.dispatchThreads = channelConf.getDispatchThreads();
+            this.useRecovery = channelConf.useRecovery();
+            this.recoveryInitialDelay = channelConf.getRecoveryInitialDelay();
+            this.recoveryMaxDelay = channelConf.getRecoveryMaxDelay();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FactoryKey other = (FactoryKey) o;
+            return useSslProtocol == other.useSslProtocol
+                    && timeout == other.timeout
+                    && useNio == other.useNio
+                    && nioThreads == other.nioThreads
+                    && nioBufferSize == other.nioBufferSize
+                    && dispatchThreads == other.dispatchThreads
+                    && useRecovery == other.useRecovery
+                    && recoveryInitialDelay == other.recoveryInitialDelay
+                    && recoveryMaxDelay == other.recoveryMaxDelay
+                    && Objects.equals(virtualHost, other.virtualHost)
+                    && Objects.equals(username, other.username)
+                    && Objects.equals(password, other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(virtualHost, username, password, useSslProtocol, timeout, useNio, nioThreads,
+                    nioBufferSize, dispatchThreads, useRecovery, recoveryInitialDelay, recoveryMaxDelay);
+        }
+    }
+
+    private static final class SharedFactory {
+        private final ConnectionFactory factory;
+        private final ExecutorService nioExecutor;
+        private final ExecutorService dispatchExecutor;
+
+        private SharedFactory(ConnectionFactory factory, ChannelConfiguration channelConf) {
+            this.factory = factory;
+            if (channelConf.useNio()) {
+                NioParams nioParams = new NioParams();
+                if (channelConf.getNioThreads() > 0) {
+                    nioParams.setNbIoThreads(channelConf.getNioThreads());
+                }
+                if (channelConf.getNioBufferSize() > 0) {
+                    nioParams.setReadByteBufferSize(channelConf.getNioBufferSize());
+                    nioParams.setWriteByteBufferSize(channelConf.getNioBufferSize());
+                }
+                nioExecutor = Executors.newCachedThreadPool(daemonThreads("amqp-nio"));
+                nioParams.setNioExecutor(nioExecutor);
+                factory.useNio();
+                factory.setNioParams(nioParams);
+                log.info("Using NIO with {} I/O threads and {} byte buffers", nioParams.getNbIoThreads(),
+                        nioParams.getReadByteBufferSize());
+            } else {
+                nioExecutor = null;
+            }
+            if (channelConf.getDispatchThreads() > 0) {
+                dispatchExecutor = Executors.newFixedThreadPool(channelConf.getDispatchThreads(), daemonThreads("amqp-dispatch"));
+                factory.setSharedExecutor(dispatchExecutor);
+                log.info("Dispatching consumers of all connections on {} shared threads", channelConf.getDispatchThreads());
+            } else {
+                dispatchExecutor = null;
+            }
+        }
+
+        private void shutdown() {
+            if (nioExecutor != null) {
+                nioExecutor.shutdown();
+            }
+            if (dispatchExecutor != null) {
+                dispatchExecutor.shutdown();
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
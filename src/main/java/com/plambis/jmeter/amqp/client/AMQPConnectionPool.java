@@ -0,0 +1,261 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Multiplexes the channels of many sampler threads over a bounded number of connections.
+ * <p>
+ * Pools are shared across threads and keyed by the {@link ConnectionKey} of the {@link ChannelConfiguration} (virtual
+ * host, hosts, port, credentials, SSL, timeout, loopback, NIO, dispatch threads and recovery) and the pool sizing, so
+ * a loopback and a broker sampler, or a NIO and a blocking one, never share connections. Each lease owns one channel; the
+ * connections stay open when the last lease is released and are closed by {@link #shutdownAll()} at test end.
+ */
+public final class AMQPConnectionPool {
+    private static final Logger log = LoggerFactory.getLogger(AMQPConnectionPool.class);
+
+    private static final ConcurrentMap<PoolKey, AMQPConnectionPool> POOLS = new ConcurrentHashMap<>();
+
+    private final PoolKey key;
+    private final ChannelConfiguration channelConf;
+    private final int maxConnections;
+    private final int channelsPerConnection;
+
+    // guarded by this
+    private final List<PooledConnection> connections = new ArrayList<>();
+    private int leases;
+    private int connecting;
+    private boolean closed;
+
+    private AMQPConnectionPool(PoolKey key, ChannelConfiguration channelConf) {
+        this.key = key;
+        this.channelConf = channelConf;
+        this.maxConnections = Math.max(1, channelConf.getConnectionPoolSize());
+        this.channelsPerConnection = Math.max(1, channelConf.getChannelsPerConnection());
+    }
+
+    /**
+     * Leases a new channel from the pool matching the configuration, creating the pool on first use. Blocks up to
+     * the configured timeout when every connection already carries its maximum number of channels.
+     */
+    public static ChannelLease acquire(ChannelConfiguration channelConf) throws IOException, NoSuchAlgorithmException,
+            KeyManagementException, TimeoutException {
+        PoolKey key = new PoolKey(channelConf);
+        while (true) {
+            AMQPConnectionPool pool = POOLS.computeIfAbsent(key, k -> new AMQPConnectionPool(k, channelConf));
+            ChannelLease lease = pool.lease();
+            if (lease != null) {
+                return lease;
+            }
+            // the pool was shut down in the meantime, pick up a fresh one
+        }
+    }
+
+    private ChannelLease lease() throws IOException, NoSuchAlgorithmException, KeyManagementException,
+            TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(channelConf.getTimeout());
+        while (true) {
+            PooledConnection target;
+            synchronized (this) {
+                if (closed) {
+                    return null;
+                }
+                target = selectConnection();
+                if (target == null && connections.size() + connecting < maxConnections) {
+                    connecting++;
+                } else if (target == null) {
+                    awaitChange(deadline);
+                    continue;
+                } else {
+                    // reserve the channel slot, the channel itself is opened outside the lock
+                    target.channels++;
+                    leases++;
+                }
+            }
+            if (target == null) {
+                openConnection();
+                continue;
+            }
+            return openChannel(target);
+        }
+    }
+
+    /**
+     * @return the least loaded open connection with a free channel, or null when a new connection should be
+     * opened or every connection is full
+     */
+    private PooledConnection selectConnection() {
+        connections.removeIf(pooled -> !pooled.connection.isOpen() && pooled.channels == 0);
+
+        PooledConnection best = null;
+        for (PooledConnection pooled : connections) {
+            if (pooled.connection.isOpen() && pooled.channels < channelsPerConnection
+                    && (best == null || pooled.channels < best.channels)) {
+                best = pooled;
+            }
+        }
+        if (best != null && (best.channels == 0 || connections.size() + connecting >= maxConnections)) {
+            return best;
+        }
+        return connections.size() + connecting < maxConnections ? null : best;
+    }
+
+    private void awaitChange(long deadline) throws IOException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new IOException("No free channel in pool " + key + " within " + channelConf.getTimeout() + " ms ("
+                    + maxConnections + " connections x " + channelsPerConnection + " channels)");
+        }
+        try {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a pooled channel");
+        }
+    }
+
+    /**
+     * Opens a connection for a slot reserved by the caller, without holding the pool lock so that leases on the
+     * existing connections are not held up by the handshake.
+     */
+    private void openConnection() throws IOException, NoSuchAlgorithmException, KeyManagementException,
+            TimeoutException {
+        Connection connection = null;
+        try {
+            log.info("Opening pooled connection for {}", key);
+            connection = AMQPConnectionFactory.newConnection(channelConf);
+        } finally {
+            boolean discard;
+            synchronized (this) {
+                connecting--;
+                discard = closed;
+                if (connection != null && !closed) {
+                    connections.add(new PooledConnection(connection));
+                }
+                notifyAll();
+            }
+            if (connection != null && discard) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private ChannelLease openChannel(PooledConnection target) throws IOException {
+        Channel channel = null;
+        try {
+            channel = target.connection.createChannel();
+            if (channel == null) {
+                throw new IOException("Connection " + target.connection + " has no channel numbers left");
+            }
+        } finally {
+            if (channel == null) {
+                release(target);
+            }
+        }
+        log.debug("Leased channel {} on {}", channel.getChannelNumber(), target.connection);
+        return new ChannelLease(this, target, channel);
+    }
+
+    synchronized void release(PooledConnection pooled) {
+        pooled.channels--;
+        leases--;
+        notifyAll();
+    }
+
+    /**
+     * Closes the connections of every pool, called once the test has ended.
+     */
+    public static void shutdownAll() {
+        for (AMQPConnectionPool pool : POOLS.values()) {
+            POOLS.remove(pool.key, pool);
+            pool.close();
+        }
+    }
+
+    private void close() {
+        List<PooledConnection> open;
+        int remaining;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(connections);
+            connections.clear();
+            remaining = leases;
+            notifyAll();
+        }
+        for (PooledConnection each : open) {
+            closeQuietly(each.connection);
+        }
+        log.info("Closed connection pool {} ({} leases still open)", key, remaining);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            log.error("Failed to close pooled connection", e);
+        }
+    }
+
+    static final class PooledConnection {
+        final Connection connection;
+        int channels;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static final class PoolKey {
+        private final ConnectionKey connection;
+        private final int connectionPoolSize;
+        private final int channelsPerConnection;
+
+        private PoolKey(ChannelConfiguration channelConf) {
+            this.connection = new ConnectionKey(channelConf);
+            this.connectionPoolSize = channelConf.getConnectionPoolSize();
+            this.channelsPerConnection = channelConf.getChannelsPerConnection();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PoolKey other = (PoolKey) o;
+            return connectionPoolSize == other.connectionPoolSize
+                    && channelsPerConnection == other.channelsPerConnection
+                    && connection.equals(other.connection);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connection, connectionPoolSize, channelsPerConnection);
+        }
+
+        @Override
+        public String toString() {
+            return connection.toString();
+        }
+    }
+}
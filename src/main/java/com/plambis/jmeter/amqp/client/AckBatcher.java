@@ -0,0 +1,90 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acknowledges deliveries with {@code multiple=true} every N deliveries or every T milliseconds, whichever comes
+ * first. The pending acknowledgements must be flushed before the channel is closed.
+ */
+public class AckBatcher {
+    private static final Logger log = LoggerFactory.getLogger(AckBatcher.class);
+
+    private final AMQPClient client;
+    private final int batchSize;
+    private final long intervalNanos;
+
+    private long lastDeliveryTag;
+    private int pending;
+    private long firstPendingAt;
+
+    public AckBatcher(AMQPClient client, int batchSize, long intervalMillis) {
+        this.client = client;
+        this.batchSize = Math.max(1, batchSize);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized void ack(long deliveryTag) throws IOException {
+        lastDeliveryTag = deliveryTag;
+        if (pending++ == 0) {
+            firstPendingAt = System.nanoTime();
+        }
+        if (pending >= batchSize || System.nanoTime() - firstPendingAt >= intervalNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * Flushes the pending acknowledgements if the oldest one has waited for the interval.
+     */
+    public synchronized void flushIfDue() throws IOException {
+        if (pending > 0 && System.nanoTime() - firstPendingAt >= intervalNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * @return milliseconds until the pending acknowledgements are due, or {@code Long.MAX_VALUE} when nothing is pending
+     */
+    public synchronized long millisUntilDue() {
+        if (pending == 0) {
+            return Long.MAX_VALUE;
+        }
+        long remaining = intervalNanos - (System.nanoTime() - firstPendingAt);
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    /**
+     * @return the deliveries waiting for their acknowledgement
+     */
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    public synchronized void flush() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        client.getChannel().basicAck(lastDeliveryTag, pending > 1);
+        log.debug("Acknowledged {} deliveries up to {}", pending, lastDeliveryTag);
+        pending = 0;
+    }
+
+    /**
+     * Flushes the pending acknowledgements, ignoring a channel that is already gone.
+     */
+    public void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to flush pending acknowledgements", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.schedule.ArrivalSchedule;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes a batch of messages through a {@link MessagePublisher}, keeping at most the confirm window of messages
+ * unconfirmed. The batch blocks only when the window is full and ends once every message is committed or confirmed.
+ */
+public class BatchPublisher {
+    private final MessagePublisher publisher;
+
+    public BatchPublisher(MessagePublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    public BatchResult publish(PublishTemplate template, int count) throws IOException, TimeoutException {
+        return publish(template, count, null);
+    }
+
+    /**
+     * @param schedule open-loop send times, or null to publish every message as soon as the previous one is sent
+     */
+    public BatchResult publish(PublishTemplate template, int count, ArrivalSchedule schedule) throws IOException,
+            TimeoutException {
+        return publish(template, count, schedule, null);
+    }
+
+    /**
+     * @param timings records the publish time of every message, measured from its send time, or null
+     */
+    public BatchResult publish(PublishTemplate template, int count, ArrivalSchedule schedule, MessageTimings timings)
+            throws IOException, TimeoutException {
+        long bytes = 0;
+        long start = System.nanoTime();
+        long maxLagNanos = 0;
+        for (int idx = 0; idx < count; idx++) {
+            long sendNanos;
+            if (schedule == null) {
+                sendNanos = System.nanoTime();
+            } else {
+                sendNanos = schedule.nextDueNanos();
+                ArrivalSchedule.awaitDue(sendNanos);
+                maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - sendNanos);
+                if (idx == 0) {
+                    start = sendNanos;
+                }
+            }
+            byte[] body = template.getBody();
+            publisher.publish(template.getExchangeName(), template.getRoutingKey(body), body, sendNanos);
+            template.recordPublished(body);
+            if (timings != null) {
+                timings.record(idx, sendNanos, System.nanoTime() - sendNanos);
+            }
+            bytes += body.length;
+        }
+        publisher.commitTransaction();
+        ConfirmStats confirms = publisher.waitForConfirms();
+        return new BatchResult(count, bytes, start, System.nanoTime() - start, confirms, schedule == null ? -1 : maxLagNanos);
+    }
+}
@@ -0,0 +1,64 @@
+package com.plambis.jmeter.amqp.client;
+
+/**
+ * Outcome of one windowed publishing batch.
+ */
+public class BatchResult {
+    private final int messages;
+    private final long bytes;
+    private final long startNanos;
+    private final long elapsedNanos;
+    private final ConfirmStats confirms;
+    private final long maxScheduleLagNanos;
+
+    public BatchResult(int messages, long bytes, long startNanos, long elapsedNanos, ConfirmStats confirms,
+            long maxScheduleLagNanos) {
+        this.messages = messages;
+        this.bytes = bytes;
+        this.startNanos = startNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.confirms = confirms;
+        this.maxScheduleLagNanos = maxScheduleLagNanos;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the batch started at, the due time of its first message in open-loop mode
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the confirms of the batch, or null when the channel is not in confirm mode
+     */
+    public ConfirmStats getConfirms() {
+        return confirms;
+    }
+
+    /**
+     * @return how far the batch fell behind its schedule at worst, or -1 when it was not published open-loop
+     */
+    public long getMaxScheduleLagNanos() {
+        return maxScheduleLagNanos;
+    }
+
+    public double getMessagesPerSecond() {
+        return elapsedNanos == 0 ? 0 : messages * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes * 1_000_000_000.0 / elapsedNanos;
+    }
+}
@@ -0,0 +1,48 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A channel borrowed from an {@link AMQPConnectionPool}. The channel is closed on release, so per-channel state such as
+ * transactions never leaks into the next lease.
+ */
+public final class ChannelLease {
+    private static final Logger log = LoggerFactory.getLogger(ChannelLease.class);
+
+    private final AMQPConnectionPool pool;
+    private final AMQPConnectionPool.PooledConnection pooled;
+    private final Channel channel;
+    private boolean released;
+
+    ChannelLease(AMQPConnectionPool pool, AMQPConnectionPool.PooledConnection pooled, Channel channel) {
+        this.pool = pool;
+        this.pooled = pooled;
+        this.channel = channel;
+    }
+
+    public Connection getConnection() {
+        return pooled.connection;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (Exception e) {
+            log.debug("Failed to close leased channel", e);
+        }
+        pool.release(pooled);
+    }
+}
@@ -0,0 +1,418 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.impl.AbstractMetricsCollector;
+import org.apache.jmeter.util.JMeterUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side counters shared by all connections of the JVM: the amqp-client {@code MetricsCollector} events plus the
+ * plugin's own confirm, return, byte, blocked-time and recovery counters. Counters are striped {@link LongAdder}s, so recording
+ * does not contend between sampler threads.
+ * <p>
+ * The counters are exposed as an MXBean and summarized in the log every {@value #INTERVAL_PROPERTY} seconds
+ * (JMeter property, default {@value #DEFAULT_INTERVAL_SECONDS}, 0 disables the summary) while a test runs.
+ */
+public final class ClientMetrics extends AbstractMetricsCollector implements ClientMetricsMXBean {
+    private static final Logger log = LoggerFactory.getLogger(ClientMetrics.class);
+
+    public static final String OBJECT_NAME = "com.plambis.jmeter.amqp:type=ClientMetrics";
+    public static final String INTERVAL_PROPERTY = "amqp.metrics.interval";
+    public static final int DEFAULT_INTERVAL_SECONDS = 10;
+
+    private static final ClientMetrics INSTANCE = new ClientMetrics();
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder channels = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder publishedBytes = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder confirmTimeouts = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder consumedBytes = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicLong blockedConnections = new AtomicLong();
+    private final LongAdder connectionRecoveries = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+    private final LongAdder recoveryDowntimeNanos = new LongAdder();
+    private final LongAdder recoveryInFlight = new LongAdder();
+
+    // guarded by this
+    private ScheduledExecutorService reporter;
+    private Snapshot previous;
+
+    private ClientMetrics() {
+        registerMBean();
+    }
+
+    public static ClientMetrics get() {
+        return INSTANCE;
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException | RuntimeException e) {
+            log.warn("Failed to register client metrics MBean " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Starts the periodic log summary, if it is not running yet.
+     */
+    public synchronized void start() {
+        int interval = JMeterUtils.getPropDefault(INTERVAL_PROPERTY, DEFAULT_INTERVAL_SECONDS);
+        if (reporter != null || interval < 1) {
+            return;
+        }
+        previous = snapshot();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "amqp-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::logSummary, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic log summary and logs a last one.
+     */
+    public synchronized void stop() {
+        if (reporter == null) {
+            return;
+        }
+        reporter.shutdownNow();
+        reporter = null;
+        logSummary();
+    }
+
+    private synchronized void logSummary() {
+        Snapshot current = snapshot();
+        double seconds = Math.max(1, current.nanoTime - previous.nanoTime) / 1e9;
+        log.info(String.format("AMQP client: %d connections, %d channels | published %.0f msg/s %.0f B/s (%d failed) | "
+                        + "confirmed %.0f/s nacked %d timed out %d returned %d | consumed %.0f msg/s %.0f B/s, acked %.0f/s rejected %d | "
+                        + "blocked %d ms, %d connection(s) blocked now | recovered %d connection(s), %d client(s) after %d ms down",
+                connections.sum(), channels.sum(),
+                (current.published - previous.published) / seconds, (current.publishedBytes - previous.publishedBytes) / seconds,
+                current.publishFailures - previous.publishFailures,
+                (current.confirmed - previous.confirmed) / seconds, current.nacked - previous.nacked,
+                current.confirmTimeouts - previous.confirmTimeouts,
+                current.returned - previous.returned,
+                (current.consumed - previous.consumed) / seconds, (current.consumedBytes - previous.consumedBytes) / seconds,
+                (current.acknowledged - previous.acknowledged) / seconds, current.rejected - previous.rejected,
+                TimeUnit.NANOSECONDS.toMillis(current.blockedNanos - previous.blockedNanos), blockedConnections.get(),
+                current.connectionRecoveries - previous.connectionRecoveries, current.recoveries - previous.recoveries,
+                TimeUnit.NANOSECONDS.toMillis(current.recoveryDowntimeNanos - previous.recoveryDowntimeNanos)));
+        previous = current;
+    }
+
+    private Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * @return a listener adding the time the connection is blocked by the broker's flow control to the blocked time
+     */
+    public BlockedListener newBlockedListener() {
+        return new BlockedTimeListener();
+    }
+
+    /**
+     * @return a listener counting the automatic recoveries of the connection
+     */
+    public RecoveryListener newRecoveryListener() {
+        return new RecoveryCountListener();
+    }
+
+    // ++ amqp-client MetricsCollector events
+
+    @Override
+    protected void incrementConnectionCount(Connection connection) {
+        connections.increment();
+    }
+
+    @Override
+    protected void decrementConnectionCount(Connection connection) {
+        connections.decrement();
+    }
+
+    @Override
+    protected void incrementChannelCount(Channel channel) {
+        channels.increment();
+    }
+
+    @Override
+    protected void decrementChannelCount(Channel channel) {
+        channels.decrement();
+    }
+
+    @Override
+    protected void markPublishedMessage() {
+        published.increment();
+    }
+
+    @Override
+    protected void markMessagePublishFailed() {
+        publishFailures.increment();
+    }
+
+    @Override
+    protected void markConsumedMessage() {
+        consumed.increment();
+    }
+
+    // confirms and returns are counted by the plugin's own events below
+
+    @Override
+    protected void markMessagePublishAcknowledged() {
+    }
+
+    @Override
+    protected void markMessagePublishNotAcknowledged() {
+    }
+
+    @Override
+    protected void markPublishedMessageUnrouted() {
+    }
+
+    @Override
+    protected void markAcknowledgedMessage() {
+        acknowledged.increment();
+    }
+
+    @Override
+    protected void markRejectedMessage() {
+        rejected.increment();
+    }
+
+    // ++ plugin events
+
+    public void markPublishedBytes(int bytes) {
+        publishedBytes.add(bytes);
+    }
+
+    public void markConsumedBytes(int bytes) {
+        consumedBytes.add(bytes);
+    }
+
+    public void markConfirmed(int count) {
+        confirmed.add(count);
+    }
+
+    public void markNacked(int count) {
+        nacked.add(count);
+    }
+
+    /**
+     * @param count the messages written off because their confirm did not arrive within the timeout
+     */
+    public void markConfirmTimedOut(int count) {
+        confirmTimeouts.add(count);
+    }
+
+    public void markReturned() {
+        returned.increment();
+    }
+
+    /**
+     * @param downtimeNanos how long the client could not publish or consume
+     * @param inFlight      the messages unconfirmed or unacknowledged when the connection was lost
+     */
+    public void markRecovered(long downtimeNanos, int inFlight) {
+        recoveries.increment();
+        recoveryDowntimeNanos.add(downtimeNanos);
+        recoveryInFlight.add(inFlight);
+    }
+
+    // ++ MXBean
+
+    @Override
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    @Override
+    public long getChannels() {
+        return channels.sum();
+    }
+
+    @Override
+    public long getPublishedMessages() {
+        return published.sum();
+    }
+
+    @Override
+    public long getPublishFailures() {
+        return publishFailures.sum();
+    }
+
+    @Override
+    public long getPublishedBytes() {
+        return publishedBytes.sum();
+    }
+
+    @Override
+    public long getConfirmedMessages() {
+        return confirmed.sum();
+    }
+
+    @Override
+    public long getNackedMessages() {
+        return nacked.sum();
+    }
+
+    @Override
+    public long getConfirmTimeouts() {
+        return confirmTimeouts.sum();
+    }
+
+    @Override
+    public long getReturnedMessages() {
+        return returned.sum();
+    }
+
+    @Override
+    public long getConsumedMessages() {
+        return consumed.sum();
+    }
+
+    @Override
+    public long getConsumedBytes() {
+        return consumedBytes.sum();
+    }
+
+    @Override
+    public long getAcknowledgedMessages() {
+        return acknowledged.sum();
+    }
+
+    @Override
+    public long getRejectedMessages() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum());
+    }
+
+    @Override
+    public long getBlockedConnections() {
+        return blockedConnections.get();
+    }
+
+    @Override
+    public long getConnectionRecoveries() {
+        return connectionRecoveries.sum();
+    }
+
+    @Override
+    public long getRecoveries() {
+        return recoveries.sum();
+    }
+
+    @Override
+    public long getRecoveryDowntimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(recoveryDowntimeNanos.sum());
+    }
+
+    @Override
+    public long getRecoveryInFlightMessages() {
+        return recoveryInFlight.sum();
+    }
+
+    private final class BlockedTimeListener implements BlockedListener {
+        private long blockedSince = -1; // guarded by this
+
+        @Override
+        public synchronized void handleBlocked(String reason) {
+            if (blockedSince < 0) {
+                blockedSince = System.nanoTime();
+                blockedConnections.incrementAndGet();
+                log.warn("Connection blocked by the broker: {}", reason);
+            }
+        }
+
+        @Override
+        public synchronized void handleUnblocked() {
+            if (blockedSince >= 0) {
+                blockedNanos.add(System.nanoTime() - blockedSince);
+                blockedConnections.decrementAndGet();
+                blockedSince = -1;
+                log.info("Connection unblocked by the broker");
+            }
+        }
+    }
+
+    private final class RecoveryCountListener implements RecoveryListener {
+        @Override
+        public void handleRecovery(Recoverable recoverable) {
+            connectionRecoveries.increment();
+        }
+
+        @Override
+        public void handleRecoveryStarted(Recoverable recoverable) {
+        }
+    }
+
+    private static final class Snapshot {
+        private final long nanoTime = System.nanoTime();
+        private final long published;
+        private final long publishFailures;
+        private final long publishedBytes;
+        private final long confirmed;
+        private final long nacked;
+        private final long confirmTimeouts;
+        private final long returned;
+        private final long consumed;
+        private final long consumedBytes;
+        private final long acknowledged;
+        private final long rejected;
+        private final long blockedNanos;
+        private final long connectionRecoveries;
+        private final long recoveries;
+        private final long recoveryDowntimeNanos;
+
+        private Snapshot(ClientMetrics metrics) {
+            published = metrics.published.sum();
+            publishFailures = metrics.publishFailures.sum();
+            publishedBytes = metrics.publishedBytes.sum();
+            confirmed = metrics.confirmed.sum();
+            nacked = metrics.nacked.sum();
+            confirmTimeouts = metrics.confirmTimeouts.sum();
+            returned = metrics.returned.sum();
+            consumed = metrics.consumed.sum();
+            consumedBytes = metrics.consumedBytes.sum();
+            acknowledged = metrics.acknowledged.sum();
+            rejected = metrics.rejected.sum();
+            blockedNanos = metrics.blockedNanos.sum();
+            connectionRecoveries = metrics.connectionRecoveries.sum();
+            recoveries = metrics.recoveries.sum();
+            recoveryDowntimeNanos = metrics.recoveryDowntimeNanos.sum();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.plambis.jmeter.amqp.client;
+
+/**
+ * Client-side counters of all AMQP samplers in the JVM, registered as
+ * {@value ClientMetrics#OBJECT_NAME}. Counters are cumulative since the JVM started.
+ */
+public interface ClientMetricsMXBean {
+    long getConnections();
+
+    long getChannels();
+
+    long getPublishedMessages();
+
+    long getPublishFailures();
+
+    long getPublishedBytes();
+
+    long getConfirmedMessages();
+
+    long getNackedMessages();
+
+    long getConfirmTimeouts();
+
+    long getReturnedMessages();
+
+    long getConsumedMessages();
+
+    long getConsumedBytes();
+
+    long getAcknowledgedMessages();
+
+    long getRejectedMessages();
+
+    long getBlockedMillis();
+
+    long getBlockedConnections();
+
+    long getConnectionRecoveries();
+
+    long getRecoveries();
+
+    long getRecoveryDowntimeMillis();
+
+    long getRecoveryInFlightMessages();
+}
@@ -0,0 +1,55 @@
+package com.plambis.jmeter.amqp.client;
+
+/**
+ * Confirms received for one sample.
+ */
+public class ConfirmStats {
+    private final long acks;
+    private final long nacks;
+    private final long totalLatencyNanos;
+    private final long maxLatencyNanos;
+    private final long[] latencyPercentilesMicros;
+
+    public ConfirmStats(long acks, long nacks, long totalLatencyNanos, long maxLatencyNanos, long[] latencyPercentilesMicros) {
+        this.acks = acks;
+        this.nacks = nacks;
+        this.totalLatencyNanos = totalLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.latencyPercentilesMicros = latencyPercentilesMicros;
+    }
+
+    public long getAcks() {
+        return acks;
+    }
+
+    public long getNacks() {
+        return nacks;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * @param index index into {@link ConfirmTracker#PERCENTILES}
+     * @return the confirm latency at that percentile in microseconds
+     */
+    public long getLatencyPercentileMicros(int index) {
+        return latencyPercentilesMicros[index];
+    }
+
+    public long getAverageLatencyNanos() {
+        long confirmed = acks + nacks;
+        return confirmed == 0 ? 0 : totalLatencyNanos / confirmed;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfirmStats{" +
+                "acks=" + acks +
+                ", nacks=" + nacks +
+                ", averageLatencyNanos=" + getAverageLatencyNanos() +
+                ", maxLatencyNanos=" + maxLatencyNanos +
+                '}';
+    }
+}
@@ -0,0 +1,174 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.ConfirmListener;
+import org.HdrHistogram.Histogram;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks the outstanding delivery tags of a channel in confirm mode.
+ * <p>
+ * The publishing thread registers every message before it is sent and may block until the number of unconfirmed
+ * messages drops below the window; the connection thread completes them through the {@link ConfirmListener}.
+ */
+public class ConfirmTracker implements ConfirmListener {
+
+    /** Percentiles of the confirm latency reported in {@link ConfirmStats}, also used for per-message publish times. */
+    public static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    /**
+     * @return the report label of a percentile: P50 for 50.0, P99.9 for 99.9
+     */
+    public static String percentileLabel(double percentile) {
+        return "P" + (percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile));
+    }
+
+    private final int window;
+
+    // guarded by this
+    private final NavigableMap<Long, Long> outstanding = new TreeMap<>();
+    private long acks;
+    private long nacks;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private final Histogram latencyMicros = new Histogram(3);
+
+    public ConfirmTracker(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Blocks until the window has room for one more message, then records its publish time.
+     *
+     * @param deliveryTag the tag the channel will assign to the message, see {@code Channel.getNextPublishSeqNo()}
+     * @param sendNanos   the {@link System#nanoTime()} the confirm latency is measured from
+     */
+    public synchronized void beforePublish(long deliveryTag, long sendNanos, long timeoutMillis) throws InterruptedException,
+            TimeoutException {
+        awaitOutstanding(window - 1, timeoutMillis);
+        outstanding.put(deliveryTag, sendNanos);
+    }
+
+    /**
+     * Blocks until every published message has been confirmed.
+     */
+    public synchronized void awaitAll(long timeoutMillis) throws InterruptedException, TimeoutException {
+        awaitOutstanding(0, timeoutMillis);
+    }
+
+    /**
+     * @return the confirms received since the previous call
+     */
+    public synchronized ConfirmStats drainStats() {
+        long[] percentiles = new long[PERCENTILES.length];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            percentiles[i] = latencyMicros.getValueAtPercentile(PERCENTILES[i]);
+        }
+        ConfirmStats stats = new ConfirmStats(acks, nacks, totalLatencyNanos, maxLatencyNanos, percentiles);
+        latencyMicros.reset();
+        acks = 0;
+        nacks = 0;
+        totalLatencyNanos = 0;
+        maxLatencyNanos = 0;
+        return stats;
+    }
+
+    public synchronized int getOutstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * Forgets the outstanding messages once their channel was recovered: the new channel numbers its messages from 1
+     * and never confirms the old ones.
+     *
+     * @return the number of messages whose confirm is lost
+     */
+    public synchronized int abandonOutstanding() {
+        int abandoned = outstanding.size();
+        outstanding.clear();
+        notifyAll();
+        return abandoned;
+    }
+
+    private void awaitOutstanding(int limit, long timeoutMillis) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (outstanding.size() > limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                int expired = expireOutstanding();
+                throw new TimeoutException(expired + " message(s) not confirmed within " + timeoutMillis + " ms");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    /**
+     * Writes off the outstanding messages of a sample that timed out, so neither their late confirms nor the confirms
+     * counted so far are reported by the next sample.
+     *
+     * @return the number of messages counted as timed out
+     */
+    private int expireOutstanding() {
+        int expired = outstanding.size();
+        outstanding.clear();
+        drainStats();
+        ClientMetrics.get().markConfirmTimedOut(expired);
+        notifyAll();
+        return expired;
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        confirm(deliveryTag, multiple, true);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        confirm(deliveryTag, multiple, false);
+    }
+
+    private synchronized void confirm(long deliveryTag, boolean multiple, boolean ack) {
+        long now = System.nanoTime();
+        int count = 0;
+        if (multiple) {
+            Iterator<Map.Entry<Long, Long>> it = outstanding.headMap(deliveryTag, true).entrySet().iterator();
+            while (it.hasNext()) {
+                record(now - it.next().getValue(), ack);
+                it.remove();
+                count++;
+            }
+        } else {
+            Long publishedAt = outstanding.remove(deliveryTag);
+            if (publishedAt != null) {
+                record(now - publishedAt, ack);
+                count++;
+            }
+        }
+        if (ack) {
+            ClientMetrics.get().markConfirmed(count);
+        } else {
+            ClientMetrics.get().markNacked(count);
+        }
+        notifyAll();
+    }
+
+    private void record(long latencyNanos, boolean ack) {
+        if (ack) {
+            acks++;
+        } else {
+            nacks++;
+        }
+        totalLatencyNanos += latencyNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+}
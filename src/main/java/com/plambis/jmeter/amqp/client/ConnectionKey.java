@@ -0,0 +1,88 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The connection part of a {@link ChannelConfiguration}: everything that decides where and how a connection is
+ * opened (virtual host, hosts, port, credentials, SSL, timeout, loopback, NIO, dispatch threads and recovery).
+ * Connections opened for equal keys are interchangeable, so shared connections are looked up by it.
+ */
+public final class ConnectionKey {
+    private final String virtualHost;
+    private final List<String> hosts;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final boolean useSslProtocol;
+    private final int timeout;
+    private final boolean useLoopback;
+    private final boolean useNio;
+    private final int nioThreads;
+    private final int nioBufferSize;
+    private final int dispatchThreads;
+    private final boolean useRecovery;
+    private final int recoveryInitialDelay;
+    private final int recoveryMaxDelay;
+
+    public ConnectionKey(ChannelConfiguration channelConf) {
+        this.virtualHost = channelConf.getVirtualHost();
+        this.hosts = new ArrayList<>(channelConf.getHosts());
+        this.port = channelConf.getPort();
+        this.username = channelConf.getUsername();
+        this.password = channelConf.getPassword();
+        this.useSslProtocol = channelConf.useSslProtocol();
+        this.timeout = channelConf.getTimeout();
+        this.useLoopback = channelConf.useLoopback();
+        this.useNio = channelConf.useNio();
+        this.nioThreads = channelConf.getNioThreads();
+        this.nioBufferSize = channelConf.getNioBufferSize();
+        this.dispatchThreads = channelConf.getDispatchThreads();
+        this.useRecovery = channelConf.useRecovery();
+        this.recoveryInitialDelay = channelConf.getRecoveryInitialDelay();
+        this.recoveryMaxDelay = channelConf.getRecoveryMaxDelay();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ConnectionKey other = (ConnectionKey) o;
+        return port == other.port
+                && useSslProtocol == other.useSslProtocol
+                && timeout == other.timeout
+                && useLoopback == other.useLoopback
+                && useNio == other.useNio
+                && nioThreads == other.nioThreads
+                && nioBufferSize == other.nioBufferSize
+                && dispatchThreads == other.dispatchThreads
+                && useRecovery == other.useRecovery
+                && recoveryInitialDelay == other.recoveryInitialDelay
+                && recoveryMaxDelay == other.recoveryMaxDelay
+                && Objects.equals(virtualHost, other.virtualHost)
+                && Objects.equals(hosts, other.hosts)
+                && Objects.equals(username, other.username)
+                && Objects.equals(password, other.password);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(virtualHost, hosts, port, username, password, useSslProtocol, timeout, useLoopback, useNio,
+                nioThreads, nioBufferSize, dispatchThreads, useRecovery, recoveryInitialDelay, recoveryMaxDelay);
+    }
+
+    /**
+     * @return the user, hosts and virtual host, never the password
+     */
+    @Override
+    public String toString() {
+        return username + "@" + (useLoopback ? "loopback" : hosts + ":" + port) + virtualHost + (useNio ? " (nio)" : "");
+    }
+}
@@ -0,0 +1,97 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects publish-to-consume latencies of all consumer threads, one histogram per latency report file and publisher
+ * run id. Values are recorded in microseconds.
+ */
+public final class EndToEndLatencyRecorder {
+    private static final Logger log = LoggerFactory.getLogger(EndToEndLatencyRecorder.class);
+
+    private static final String UNKNOWN_RUN = "unknown";
+    private static final String NO_REPORT_FILE = "";
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, Histogram>> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private EndToEndLatencyRecorder() {
+    }
+
+    /**
+     * @param reportFile the latency report file of the consumer, blank when it only logs the latencies
+     */
+    public static void record(String reportFile, String runId, long latencyNanos) {
+        ConcurrentMap<String, Histogram> runs = get(HISTOGRAMS, StringUtils.isBlank(reportFile) ? NO_REPORT_FILE
+                : reportFile, k -> new ConcurrentHashMap<>());
+        get(runs, runId == null ? UNKNOWN_RUN : runId, k -> new ConcurrentHistogram(3))
+                .recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, latencyNanos)));
+    }
+
+    public static void reset() {
+        HISTOGRAMS.clear();
+    }
+
+    /**
+     * Logs the percentiles of every run recorded so far for the report file and optionally writes the full
+     * distributions to it. The recorded values are cleared, so the report is produced once even if several consumers
+     * sharing the file end the test, while consumers with another file still get their own runs.
+     *
+     * @param reportFile file for the percentile distributions, blank to only log them
+     */
+    public static void report(String reportFile) {
+        boolean logOnly = StringUtils.isBlank(reportFile);
+        ConcurrentMap<String, Histogram> runs = HISTOGRAMS.remove(logOnly ? NO_REPORT_FILE : reportFile);
+        if (runs == null || runs.isEmpty()) {
+            return;
+        }
+        Map<String, Histogram> histograms = new TreeMap<>(runs);
+
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            log.info("End-to-end latency for run {}: {}", entry.getKey(), summary(entry.getValue()));
+        }
+        if (logOnly) {
+            return;
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream(reportFile, true), true, "UTF-8")) {
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                out.println("# run " + entry.getKey() + " end-to-end latency (ms)");
+                entry.getValue().outputPercentileDistribution(out, 1000.0);
+            }
+            log.info("End-to-end latency written to {}", reportFile);
+        } catch (IOException e) {
+            log.error("Failed to write end-to-end latency to " + reportFile, e);
+        }
+    }
+
+    /**
+     * Looks the value up before computing it, as computeIfAbsent locks its bin even when the key is present.
+     */
+    private static <V> V get(ConcurrentMap<String, V> map, String key, Function<String, V> factory) {
+        V value = map.get(key);
+        return value != null ? value : map.computeIfAbsent(key, factory);
+    }
+
+    private static String summary(Histogram histogram) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("count=").append(histogram.getTotalCount());
+        for (double percentile : ConfirmTracker.PERCENTILES) {
+            sb.append(", ").append(ConfirmTracker.percentileLabel(percentile)).append("=").append(histogram.getValueAtPercentile(percentile)).append("us");
+        }
+        sb.append(", max=").append(histogram.getMaxValue()).append("us");
+        return sb.toString();
+    }
+}
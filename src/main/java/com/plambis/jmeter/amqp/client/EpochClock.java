@@ -0,0 +1,24 @@
+package com.plambis.jmeter.amqp.client;
+
+/**
+ * Wall clock with nanosecond resolution: epoch time captured once, advanced by {@link System#nanoTime()}.
+ * Values are comparable between JVMs as long as their system clocks are synchronized.
+ */
+public final class EpochClock {
+    private static final long BASE_EPOCH_NANOS = System.currentTimeMillis() * 1_000_000L;
+    private static final long BASE_NANO_TIME = System.nanoTime();
+
+    private EpochClock() {
+    }
+
+    public static long nanos() {
+        return toEpochNanos(System.nanoTime());
+    }
+
+    /**
+     * @return the epoch time in nanoseconds of a {@link System#nanoTime()} value
+     */
+    public static long toEpochNanos(long nanoTime) {
+        return BASE_EPOCH_NANOS + (nanoTime - BASE_NANO_TIME);
+    }
+}
@@ -3,5 +3,11 @@ package com.plambis.jmeter.amqp.client;
 import java.io.IOException;
 
 public interface MessageConsumer {
-    MessageData consumeMessages(String queueName, int nbMessages, boolean autoAck) throws IOException;
+    /**
+     * @param timeoutMillis how long to wait for a message, if the consumer can wait at all
+     * @return the next message, or null when the queue had no message for us
+     */
+    MessageData consumeMessages(long timeoutMillis) throws IOException;
+
+    void close();
 }
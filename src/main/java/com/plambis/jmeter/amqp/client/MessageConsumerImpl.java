@@ -1,72 +1,57 @@
 package com.plambis.jmeter.amqp.client;
 
-import com.rabbitmq.client.AMQP;
-import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.GetResponse;
 
 import java.io.IOException;
-import java.util.Map;
+import java.util.function.IntSupplier;
 
+/**
+ * Pull consumer, one synchronous basic.get per message.
+ */
 public class MessageConsumerImpl implements MessageConsumer{
 
     private final AMQPClient client;
-
-    public MessageConsumerImpl(AMQPClient client) {
+    private final String queueName;
+    private final AckBatcher acks;
+    private final IntSupplier inFlight;
+
+    /**
+     * @param acks acknowledges the deliveries, null to consume in auto-ack mode
+     */
+    public MessageConsumerImpl(AMQPClient client, String queueName, int prefetchCount, AckBatcher acks) throws IOException {
         this.client = client;
-    }
-
-
-    @Override
-    public MessageData consumeMessages(String queueName, int prefetchCount, boolean autoAck) throws IOException {
-        client.getChannel().basicQos(prefetchCount);
-
-        GetResponse response = client.getChannel().basicGet(queueName, autoAck);
-
-        if (!autoAck){
-            client.getChannel().basicAck(response.getEnvelope().getDeliveryTag(), false);
+        this.queueName = queueName;
+        this.acks = acks;
+        this.inFlight = acks == null ? null : acks::getPending;
+        if (inFlight != null) {
+            client.addInFlightCounter(inFlight);
         }
-        return new MessageDataImpl(response);
+        client.getChannel().basicQos(prefetchCount);
     }
 
-    private static class MessageDataImpl implements  MessageData {
-        private static final String TIMESTAMP_PARAMETER = "Timestamp";
-        private static final String EXCHANGE_PARAMETER = "Exchange";
-        private static final String ROUTING_KEY_PARAMETER = "Routing Key";
-        private static final String DELIVERY_TAG_PARAMETER = "Delivery Tag";
-
-        private final GetResponse response;
 
-        private MessageDataImpl(GetResponse response) {
-            this.response = response;
-        }
-
-        @Override
-        public byte[] getBody() {
-            return response.getBody();
-        }
-
-        @Override
-        public int getMessageCount() {
-            return  response.getMessageCount();
+    @Override
+    public MessageData consumeMessages(long timeoutMillis) throws IOException {
+        GetResponse response = client.getChannel().basicGet(queueName, acks == null);
+        if (response == null) {
+            if (acks != null) {
+                acks.flushIfDue();
+            }
+            return null;
         }
 
-        @Override
-        public String getHeaders() {
-            return formatHeaders(response.getEnvelope(),response.getProps());
+        if (acks != null){
+            acks.ack(response.getEnvelope().getDeliveryTag());
         }
+        ClientMetrics.get().markConsumedBytes(response.getBody().length);
+        return new MessageDataImpl(response.getEnvelope(), response.getProps(), response.getBody(), response.getMessageCount());
+    }
 
-        private String formatHeaders(Envelope envelope, AMQP.BasicProperties properties) {
-            Map<String, Object> headers = properties.getHeaders();
-            StringBuilder sb = new StringBuilder();
-            sb.append(TIMESTAMP_PARAMETER).append(": ")
-                    .append(properties.getTimestamp() != null ? properties.getTimestamp().getTime() : "").append("\n");
-            sb.append(EXCHANGE_PARAMETER).append(": ").append(envelope.getExchange()).append("\n");
-            sb.append(ROUTING_KEY_PARAMETER).append(": ").append(envelope.getRoutingKey()).append("\n");
-            sb.append(DELIVERY_TAG_PARAMETER).append(": ").append(envelope.getDeliveryTag()).append("\n");
-            for (Map.Entry<String, Object> entry : headers.entrySet()) {
-                sb.append(entry.getKey()).append(": ").append(headers.get(entry.getKey())).append("\n");
-            }
-            return sb.toString();
+    @Override
+    public void close() {
+        if (acks != null) {
+            acks.flushQuietly();
+            client.removeInFlightCounter(inFlight);
         }
     }
 }
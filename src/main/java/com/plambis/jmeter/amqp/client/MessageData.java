@@ -1,7 +1,42 @@
 package com.plambis.jmeter.amqp.client;
 
 public interface MessageData {
+    /** Message count of a delivery that carries none, as pushed deliveries do. */
+    int UNKNOWN_MESSAGE_COUNT = -1;
+
     byte[] getBody();
+
+    /**
+     * @return the messages left in the queue after this one, as counted by the broker, or
+     * {@link #UNKNOWN_MESSAGE_COUNT}
+     */
     int getMessageCount();
     String getHeaders();
+
+    /**
+     * @return the publisher send time in epoch nanoseconds, or -1 when the message carries no send time
+     */
+    long getSendTimeNanos();
+
+    String getRunId();
+
+    /**
+     * @return the id of the publisher thread that stamped the sequence number, null when the message carries none
+     */
+    String getPublisherId();
+
+    /**
+     * @return the sequence number stamped by the publisher, or -1 when the message carries none
+     */
+    long getSequence();
+
+    /**
+     * @return whether the broker delivered the message before, without it being acknowledged
+     */
+    boolean isRedelivered();
+
+    /**
+     * @return the content-encoding property of the message, null when it has none
+     */
+    String getContentEncoding();
 }
@@ -0,0 +1,86 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+
+import java.util.Map;
+
+class MessageDataImpl implements MessageData {
+    private static final String TIMESTAMP_PARAMETER = "Timestamp";
+    private static final String EXCHANGE_PARAMETER = "Exchange";
+    private static final String ROUTING_KEY_PARAMETER = "Routing Key";
+    private static final String DELIVERY_TAG_PARAMETER = "Delivery Tag";
+
+    private final Envelope envelope;
+    private final AMQP.BasicProperties properties;
+    private final byte[] body;
+    private final int messageCount;
+
+    MessageDataImpl(Envelope envelope, AMQP.BasicProperties properties, byte[] body, int messageCount) {
+        this.envelope = envelope;
+        this.properties = properties;
+        this.body = body;
+        this.messageCount = messageCount;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    @Override
+    public String getHeaders() {
+        return formatHeaders(envelope, properties);
+    }
+
+    @Override
+    public long getSendTimeNanos() {
+        return MessageStamp.getSendTimeNanos(properties);
+    }
+
+    @Override
+    public String getRunId() {
+        return MessageStamp.getRunId(properties);
+    }
+
+    @Override
+    public String getPublisherId() {
+        return MessageStamp.getPublisherId(properties);
+    }
+
+    @Override
+    public long getSequence() {
+        return MessageStamp.getSequence(properties);
+    }
+
+    @Override
+    public boolean isRedelivered() {
+        return envelope.isRedeliver();
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return properties.getContentEncoding();
+    }
+
+    private String formatHeaders(Envelope envelope, AMQP.BasicProperties properties) {
+        Map<String, Object> headers = properties.getHeaders();
+        StringBuilder sb = new StringBuilder();
+        sb.append(TIMESTAMP_PARAMETER).append(": ")
+                .append(properties.getTimestamp() != null ? properties.getTimestamp().getTime() : "").append("\n");
+        sb.append(EXCHANGE_PARAMETER).append(": ").append(envelope.getExchange()).append("\n");
+        sb.append(ROUTING_KEY_PARAMETER).append(": ").append(envelope.getRoutingKey()).append("\n");
+        sb.append(DELIVERY_TAG_PARAMETER).append(": ").append(envelope.getDeliveryTag()).append("\n");
+        if (headers != null) {
+            for (Map.Entry<String, Object> entry : headers.entrySet()) {
+                sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+}
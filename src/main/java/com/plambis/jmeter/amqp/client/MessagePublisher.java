@@ -1,8 +1,30 @@
 package com.plambis.jmeter.amqp.client;
 
+import com.rabbitmq.client.AMQP;
+
 import java.io.IOException;
+import java.util.concurrent.TimeoutException;
 
 public interface MessagePublisher {
-    void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes) throws IOException;
+    void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes) throws IOException, TimeoutException;
+
+    /**
+     * @param sendNanos the {@link System#nanoTime()} the message was due to be sent, latencies are measured from it
+     */
+    void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes, long sendNanos) throws IOException,
+            TimeoutException;
+
+    /**
+     * @param sendNanos the {@link System#nanoTime()} the message is sent, stamped into the headers when enabled
+     * @return the properties of a message sent at that time
+     */
+    AMQP.BasicProperties getProperties(long sendNanos);
+
+    /**
+     * @return whether the messages are published as mandatory, unroutable ones are then returned by the broker
+     */
+    boolean isMandatory();
+
     void commitTransaction() throws IOException;
+    ConfirmStats waitForConfirms() throws IOException, TimeoutException;
 }
@@ -1,13 +1,17 @@
 package com.plambis.jmeter.amqp.client;
 
 import com.plambis.jmeter.amqp.client.conf.MessagePublisherConfiguration;
+import com.plambis.jmeter.amqp.client.payload.PayloadTemplate;
+import com.plambis.jmeter.amqp.client.payload.TemplateContext;
 import com.rabbitmq.client.AMQP;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 public class MessagePublisherImpl implements MessagePublisher{
@@ -15,12 +19,69 @@ public class MessagePublisherImpl implements MessagePublisher{
     private final AMQPClient client;
     private final MessagePublisherConfiguration configuration;
 
+    private final AMQP.BasicProperties properties;
+    private final TemplateContext templateContext;
+    private final PayloadTemplate messageIdTemplate;
+    private final PayloadTemplate correlationIdTemplate;
+
     public MessagePublisherImpl(AMQPClient client, MessagePublisherConfiguration configuration) {
+        this(client, configuration, null);
+    }
+
+    /**
+     * @param templateContext renders the message id and correlation id when they contain placeholders, see
+     *                        {@link PayloadTemplate}; null to send them as they are
+     * @throws IllegalArgumentException when a placeholder is invalid
+     */
+    public MessagePublisherImpl(AMQPClient client, MessagePublisherConfiguration configuration,
+            TemplateContext templateContext) {
         this.client = client;
         this.configuration=configuration;
+        this.properties = buildProperties();
+        this.templateContext = templateContext;
+        this.messageIdTemplate = compileTemplate(configuration.getMessageId());
+        this.correlationIdTemplate = compileTemplate(configuration.getCorrelationId());
+    }
+
+    private PayloadTemplate compileTemplate(String value) {
+        if (templateContext == null || !PayloadTemplate.hasPlaceholders(value)) {
+            return null;
+        }
+        return PayloadTemplate.parse(value);
     }
 
-    private AMQP.BasicProperties getProperties() {
+    /**
+     * The configuration is immutable, so the properties are built once. Only the send time and sequence stamps and
+     * templated ids, when enabled, need fresh properties per message.
+     */
+    @Override
+    public AMQP.BasicProperties getProperties(long sendNanos) {
+        MessageSequence sequence = configuration.getSequence();
+        if (!configuration.isStampSendTime() && sequence == null && messageIdTemplate == null
+                && correlationIdTemplate == null) {
+            return properties;
+        }
+        AMQP.BasicProperties.Builder builder = properties.builder();
+        if (messageIdTemplate != null) {
+            builder.messageId(messageIdTemplate.renderString(templateContext));
+        }
+        if (correlationIdTemplate != null) {
+            builder.correlationId(correlationIdTemplate.renderString(templateContext));
+        }
+        if (configuration.isStampSendTime() || sequence != null) {
+            Map<String, Object> headers = new HashMap<>(properties.getHeaders());
+            if (configuration.isStampSendTime()) {
+                MessageStamp.stamp(headers, configuration.getRunId(), EpochClock.toEpochNanos(sendNanos));
+            }
+            if (sequence != null) {
+                MessageStamp.stampSequence(headers, sequence.getPublisherId(), sequence.next());
+            }
+            builder.headers(headers);
+        }
+        return builder.build();
+    }
+
+    private AMQP.BasicProperties buildProperties() {
         final AMQP.BasicProperties.Builder builder = new AMQP.BasicProperties.Builder();
 
         final int deliveryMode = configuration.isPersistent() ? 2 : 1;
@@ -32,6 +93,7 @@ public class MessagePublisherImpl implements MessagePublisher{
                 .correlationId(configuration.getCorrelationId())
                 .replyTo(configuration.getReplyToQueue())
                 .type(configuration.getMessageType())
+                .contentEncoding(configuration.getContentEncoding())
                 .headers(prepareHeaders());
         if (configuration.getMessageId() != null && !configuration.getMessageId().isEmpty()) {
             builder.messageId(configuration.getMessageId());
@@ -45,14 +107,33 @@ public class MessagePublisherImpl implements MessagePublisher{
     }
 
     @Override
-    public void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes) throws IOException {
+    public void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes) throws IOException, TimeoutException {
+        publish(exchangeName, messageRoutingKey, messageBytes, System.nanoTime());
+    }
+
+    @Override
+    public void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes, long sendNanos) throws IOException,
+            TimeoutException {
         log.debug("Try to write message to queue: {} using routing key {}", exchangeName, messageRoutingKey);
-        client.getChannel().basicPublish(exchangeName, messageRoutingKey, getProperties(), messageBytes);
-        log.info("Write message to queue: {} using routing key {}", exchangeName, messageRoutingKey);
+        client.beforePublish(sendNanos);
+        client.getChannel().basicPublish(exchangeName, messageRoutingKey, configuration.isMandatory(),
+                getProperties(sendNanos), messageBytes);
+        ClientMetrics.get().markPublishedBytes(messageBytes.length);
+        log.debug("Write message to queue: {} using routing key {}", exchangeName, messageRoutingKey);
+    }
+
+    @Override
+    public boolean isMandatory() {
+        return configuration.isMandatory();
     }
 
     @Override
     public void commitTransaction() throws IOException {
         client.commitTransaction();
     }
+
+    @Override
+    public ConfirmStats waitForConfirms() throws IOException, TimeoutException {
+        return client.waitForConfirms();
+    }
 }
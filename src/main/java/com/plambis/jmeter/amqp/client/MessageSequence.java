@@ -0,0 +1,25 @@
+package com.plambis.jmeter.amqp.client;
+
+/**
+ * The sequence numbers one publisher thread stamps into its messages, starting at 1. The publishers a thread creates
+ * share its sequence, so the numbers keep counting when they are rebuilt between samples.
+ */
+public final class MessageSequence {
+    private final String publisherId;
+    private long last;
+
+    /**
+     * @param publisherId identifies the publisher thread to consumers, unique within the test
+     */
+    public MessageSequence(String publisherId) {
+        this.publisherId = publisherId;
+    }
+
+    public String getPublisherId() {
+        return publisherId;
+    }
+
+    public long next() {
+        return ++last;
+    }
+}
@@ -0,0 +1,80 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.AMQP;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Headers the publisher stamps into messages so consumers can measure end-to-end latency and check the sequence of
+ * the messages they receive.
+ */
+public final class MessageStamp {
+    public static final String SEND_TIME_HEADER = "x-jmeter-send-time-ns";
+    public static final String RUN_ID_HEADER = "x-jmeter-run-id";
+    public static final String PUBLISHER_ID_HEADER = "x-jmeter-publisher-id";
+    public static final String SEQUENCE_HEADER = "x-jmeter-seq";
+
+    /** Run id used when the publisher does not configure one, unique per JVM. */
+    public static final String DEFAULT_RUN_ID = UUID.randomUUID().toString();
+
+    private MessageStamp() {
+    }
+
+    /**
+     * @param sendTimeNanos the send time in epoch nanoseconds, see {@link EpochClock}
+     */
+    public static void stamp(Map<String, Object> headers, String runId, long sendTimeNanos) {
+        headers.put(RUN_ID_HEADER, runId);
+        headers.put(SEND_TIME_HEADER, sendTimeNanos);
+    }
+
+    public static void stampSequence(Map<String, Object> headers, String publisherId, long sequence) {
+        headers.put(PUBLISHER_ID_HEADER, publisherId);
+        headers.put(SEQUENCE_HEADER, sequence);
+    }
+
+    /**
+     * @return the send time stamped by the publisher in epoch nanoseconds, or -1 when the message is not stamped
+     */
+    public static long getSendTimeNanos(AMQP.BasicProperties properties) {
+        return getLongHeader(properties, SEND_TIME_HEADER);
+    }
+
+    /**
+     * @return the sequence number stamped by the publisher, or -1 when the message is not stamped
+     */
+    public static long getSequence(AMQP.BasicProperties properties) {
+        return getLongHeader(properties, SEQUENCE_HEADER);
+    }
+
+    public static String getPublisherId(AMQP.BasicProperties properties) {
+        Object value = getHeader(properties, PUBLISHER_ID_HEADER);
+        return value == null ? null : value.toString();
+    }
+
+    private static long getLongHeader(AMQP.BasicProperties properties, String name) {
+        Object value = getHeader(properties, name);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    public static String getRunId(AMQP.BasicProperties properties) {
+        Object value = getHeader(properties, RUN_ID_HEADER);
+        return value == null ? null : value.toString();
+    }
+
+    private static Object getHeader(AMQP.BasicProperties properties, String name) {
+        Map<String, Object> headers = properties.getHeaders();
+        return headers == null ? null : headers.get(name);
+    }
+}
@@ -0,0 +1,98 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publish times of the messages of one batch, kept without an object per message: a histogram for the distribution
+ * and primitive arrays for the slowest messages. One instance is reused by all batches of a thread.
+ */
+public class MessageTimings {
+    private final Histogram latencyMicros = new Histogram(3);
+    private final int[] slowestIndexes;
+    private final long[] slowestStartNanos;
+    private final long[] slowestElapsedNanos;
+    private int slowestSize;
+
+    /**
+     * @param slowestCount how many of the slowest messages are kept individually
+     */
+    public MessageTimings(int slowestCount) {
+        slowestIndexes = new int[Math.max(0, slowestCount)];
+        slowestStartNanos = new long[slowestIndexes.length];
+        slowestElapsedNanos = new long[slowestIndexes.length];
+    }
+
+    public void reset() {
+        latencyMicros.reset();
+        slowestSize = 0;
+    }
+
+    /**
+     * @param index        the position of the message in its batch
+     * @param startNanos   the {@link System#nanoTime()} the message was due to be sent
+     * @param elapsedNanos the time until its publish returned
+     */
+    public void record(int index, long startNanos, long elapsedNanos) {
+        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        if (slowestIndexes.length == 0) {
+            return;
+        }
+        int slot;
+        if (slowestSize < slowestIndexes.length) {
+            slot = slowestSize++;
+        } else {
+            slot = 0;
+            for (int i = 1; i < slowestSize; i++) {
+                if (slowestElapsedNanos[i] < slowestElapsedNanos[slot]) {
+                    slot = i;
+                }
+            }
+            if (slowestElapsedNanos[slot] >= elapsedNanos) {
+                return;
+            }
+        }
+        slowestIndexes[slot] = index;
+        slowestStartNanos[slot] = startNanos;
+        slowestElapsedNanos[slot] = elapsedNanos;
+    }
+
+    public long getCount() {
+        return latencyMicros.getTotalCount();
+    }
+
+    public long getMinMicros() {
+        return latencyMicros.getMinValue();
+    }
+
+    public long getMaxMicros() {
+        return latencyMicros.getMaxValue();
+    }
+
+    public long getPercentileMicros(double percentile) {
+        return latencyMicros.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return the number of slowest messages kept, at most the configured count
+     */
+    public int getSlowestSize() {
+        return slowestSize;
+    }
+
+    /**
+     * Slowest messages are kept in no particular order.
+     */
+    public int getSlowestIndex(int i) {
+        return slowestIndexes[i];
+    }
+
+    public long getSlowestStartNanos(int i) {
+        return slowestStartNanos[i];
+    }
+
+    public long getSlowestElapsedNanos(int i) {
+        return slowestElapsedNanos[i];
+    }
+}
@@ -0,0 +1,92 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.payload.TemplateContext;
+
+import java.util.function.Supplier;
+
+/**
+ * The per-message parts of a publish (exchange, routing key and body), compiled once per thread.
+ * Static parts are evaluated once and reused; only dynamic parts are re-evaluated for every message.
+ */
+public class PublishTemplate {
+    private final Supplier<String> exchangeName;
+    private final Supplier<String> routingKey;
+    private final Supplier<byte[]> body;
+    private final ShardRouter shardRouter;
+    private final TemplateContext templateContext;
+
+    public PublishTemplate(Supplier<String> exchangeName, Supplier<String> routingKey, Supplier<byte[]> body) {
+        this(exchangeName, routingKey, body, null);
+    }
+
+    /**
+     * @param shardRouter spreads the messages across shards, null when sharding is off
+     */
+    public PublishTemplate(Supplier<String> exchangeName, Supplier<String> routingKey, Supplier<byte[]> body,
+            ShardRouter shardRouter) {
+        this(exchangeName, routingKey, body, shardRouter, null);
+    }
+
+    /**
+     * @param templateContext advanced to the next message before each body, so the body and the message properties
+     *                        render the same sequence number and corpus entry; null when nothing is templated
+     */
+    public PublishTemplate(Supplier<String> exchangeName, Supplier<String> routingKey, Supplier<byte[]> body,
+            ShardRouter shardRouter, TemplateContext templateContext) {
+        this.exchangeName = exchangeName;
+        this.routingKey = routingKey;
+        this.body = body;
+        this.shardRouter = shardRouter;
+        this.templateContext = templateContext;
+    }
+
+    /**
+     * @param dynamic  whether the value has to be evaluated for every message
+     * @param supplier evaluates the value
+     * @return the supplier itself when dynamic, otherwise a supplier of the value evaluated now
+     */
+    public static <T> Supplier<T> compile(boolean dynamic, Supplier<T> supplier) {
+        if (dynamic) {
+            return supplier;
+        }
+        T value = supplier.get();
+        return () -> value;
+    }
+
+    public String getExchangeName() {
+        return exchangeName.get();
+    }
+
+    public String getRoutingKey() {
+        return routingKey.get();
+    }
+
+    /**
+     * @return the routing key of the message, resolved to its shard when sharding is on
+     */
+    public String getRoutingKey(byte[] body) {
+        if (shardRouter == null) {
+            return routingKey.get();
+        }
+        return shardRouter.route(routingKey.get(), body);
+    }
+
+    /**
+     * Counts a message routed by {@link #getRoutingKey(byte[])} on its shard, call it once the message is published.
+     */
+    public void recordPublished(byte[] body) {
+        if (shardRouter != null) {
+            shardRouter.recordPublished(body.length);
+        }
+    }
+
+    /**
+     * Starts the next message: its body is evaluated first, then its properties.
+     */
+    public byte[] getBody() {
+        if (templateContext != null) {
+            templateContext.next();
+        }
+        return body.get();
+    }
+}
@@ -0,0 +1,192 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConsumerCancelledException;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Push consumer: registers one basic.consume subscription and hands deliveries to the sampler thread through a
+ * bounded buffer. The subscription always uses manual acknowledgements with a prefetch count equal to the buffer
+ * size, so the broker never has more deliveries outstanding than the buffer holds and the dispatch thread, which may
+ * be shared by many connections, never blocks. In auto-ack mode the deliveries are acknowledged in batches once the
+ * sampler took them.
+ * <p>
+ * When the channel recovers from a lost connection the subscription is registered again. Buffered deliveries that
+ * still wait for their acknowledgement are dropped then, the broker redelivers them.
+ */
+public class PushMessageConsumer implements MessageConsumer {
+    private static final Logger log = LoggerFactory.getLogger(PushMessageConsumer.class);
+
+    /** Buffer size, and prefetch count, used when the configured prefetch count is unlimited. */
+    public static final int DEFAULT_BUFFER_SIZE = 1000;
+    /** How long deliveries taken in auto-ack mode may wait for their batched acknowledgement. */
+    static final long AUTO_ACK_INTERVAL_MILLIS = 100;
+
+    private final AMQPClient client;
+    private final AckBatcher acks;
+    private final BlockingQueue<Delivery> buffer;
+    private final String consumerTag;
+    private final IntSupplier inFlight;
+    private final AtomicInteger requeued = new AtomicInteger();
+
+    private volatile ShutdownSignalException shutdownSignal;
+    private volatile boolean cancelled;
+
+    /**
+     * @param prefetchCount the buffer size and prefetch count, 0 for {@value #DEFAULT_BUFFER_SIZE}
+     * @param acks          acknowledges the deliveries, null to consume in auto-ack mode
+     */
+    public PushMessageConsumer(AMQPClient client, String queueName, int prefetchCount, AckBatcher acks) throws IOException {
+        this.client = client;
+        int bufferSize = prefetchCount > 0 ? prefetchCount : DEFAULT_BUFFER_SIZE;
+        if (acks != null && acks.getBatchSize() > bufferSize) {
+            log.warn("Ack batch size {} exceeds prefetch count {}, deliveries stall until the ack interval expires",
+                    acks.getBatchSize(), bufferSize);
+        }
+        this.acks = acks != null ? acks
+                : new AckBatcher(client, Math.max(1, bufferSize / 2), AUTO_ACK_INTERVAL_MILLIS);
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.inFlight = () -> buffer.size() + this.acks.getPending();
+        client.addInFlightCounter(inFlight);
+
+        Channel channel = client.getChannel();
+        channel.basicQos(bufferSize);
+        this.consumerTag = channel.basicConsume(queueName, false, new BufferingConsumer(channel));
+        log.info("Registered consumer {} on queue {} with prefetch count {}", consumerTag, queueName, bufferSize);
+    }
+
+    @Override
+    public MessageData consumeMessages(long timeoutMillis) throws IOException {
+        Delivery delivery = poll(timeoutMillis);
+        if (delivery == null) {
+            if (shutdownSignal != null) {
+                throw shutdownSignal;
+            }
+            if (cancelled) {
+                throw new ConsumerCancelledException();
+            }
+            return null;
+        }
+
+        acks.ack(delivery.getEnvelope().getDeliveryTag());
+        ClientMetrics.get().markConsumedBytes(delivery.getBody().length);
+        return new MessageDataImpl(delivery.getEnvelope(), delivery.getProperties(), delivery.getBody(),
+                MessageData.UNKNOWN_MESSAGE_COUNT);
+    }
+
+    /**
+     * Waits for the next delivery, flushing pending acknowledgements when they fall due while waiting: the broker may
+     * hold back further deliveries until they are acknowledged.
+     */
+    private Delivery poll(long timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (true) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                long wait = Math.min(remaining, acks.millisUntilDue());
+                Delivery delivery = buffer.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (delivery != null) {
+                    return delivery;
+                }
+                acks.flushIfDue();
+                if (System.nanoTime() - deadline >= 0) {
+                    return null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a delivery");
+        }
+    }
+
+    @Override
+    public void close() {
+        acks.flushQuietly();
+        Channel channel = client.getChannel();
+        if (channel != null && channel.isOpen() && shutdownSignal == null && !cancelled) {
+            try {
+                channel.basicCancel(consumerTag);
+            } catch (IOException e) {
+                log.debug("Failed to cancel consumer " + consumerTag, e);
+            }
+        }
+        buffer.clear();
+        client.removeInFlightCounter(inFlight);
+        if (requeued.get() > 0) {
+            log.warn("Consumer {} requeued {} deliveries its buffer could not take", consumerTag, requeued.get());
+        }
+    }
+
+    private class BufferingConsumer extends DefaultConsumer {
+
+        private BufferingConsumer(Channel channel) {
+            super(channel);
+        }
+
+        /**
+         * Never blocks: the prefetch count keeps the deliveries within the buffer size.
+         */
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            if (!buffer.offer(new Delivery(envelope, properties, body))) {
+                requeue(consumerTag, envelope);
+            }
+        }
+
+        /**
+         * Hands a delivery the buffer could not take back to the broker, which happens only when the prefetch count
+         * was changed on the channel behind the consumer's back.
+         */
+        private void requeue(String consumerTag, Envelope envelope) {
+            try {
+                getChannel().basicNack(envelope.getDeliveryTag(), false, true);
+                requeued.incrementAndGet();
+                log.debug("Consumer {} buffer full, requeued delivery {}", consumerTag, envelope.getDeliveryTag());
+            } catch (IOException | ShutdownSignalException e) {
+                // the delivery stays unacknowledged, the broker redelivers it once the channel is closed
+                log.warn("Consumer {} buffer full, failed to requeue delivery {}", consumerTag,
+                        envelope.getDeliveryTag(), e);
+            }
+        }
+
+        /**
+         * Also called when the subscription is registered again after a recovery.
+         */
+        @Override
+        public void handleConsumeOk(String consumerTag) {
+            super.handleConsumeOk(consumerTag);
+            if (shutdownSignal == null) {
+                return;
+            }
+            int dropped = buffer.size();
+            buffer.clear();
+            log.info("Consumer {} recovered, dropped {} unacknowledged buffered deliveries", consumerTag, dropped);
+            shutdownSignal = null;
+        }
+
+        @Override
+        public void handleCancel(String consumerTag) {
+            log.warn("Consumer {} cancelled by the broker", consumerTag);
+            cancelled = true;
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            shutdownSignal = sig;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reads queue depths with passive declares over one connection and channel per broker, shared by all monitor threads
+ * and separate from the connections under load. A passive declare of a missing queue closes the channel, it is
+ * reopened on the next inspection.
+ */
+public final class QueueMonitor {
+    private static final Logger log = LoggerFactory.getLogger(QueueMonitor.class);
+
+    private static final ConcurrentMap<String, QueueMonitor> MONITORS = new ConcurrentHashMap<>();
+
+    private final ChannelConfiguration channelConf;
+
+    // guarded by this
+    private Connection connection;
+    private Channel channel;
+
+    private QueueMonitor(ChannelConfiguration channelConf) {
+        this.channelConf = channelConf;
+    }
+
+    public static QueueMonitor get(ChannelConfiguration channelConf) {
+        String key = channelConf.getUsername() + "@" + channelConf.getHosts() + ":" + channelConf.getPort()
+                + channelConf.getVirtualHost() + " ssl=" + channelConf.useSslProtocol();
+        return MONITORS.computeIfAbsent(key, k -> new QueueMonitor(channelConf));
+    }
+
+    /**
+     * @return the message and consumer count of the queue
+     * @throws IOException when the queue does not exist or the broker can not be reached
+     */
+    public synchronized AMQP.Queue.DeclareOk inspect(String queueName) throws IOException, NoSuchAlgorithmException,
+            KeyManagementException, TimeoutException {
+        if (connection == null || !connection.isOpen()) {
+            connection = AMQPConnectionFactory.newConnection(channelConf);
+            channel = null;
+        }
+        if (channel == null || !channel.isOpen()) {
+            channel = connection.createChannel();
+        }
+        return channel.queueDeclarePassive(queueName);
+    }
+
+    private synchronized void close() {
+        if (connection == null || !connection.isOpen()) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            log.error("Failed to close monitor connection", e);
+        }
+    }
+
+    /**
+     * Closes the monitor connections at test end.
+     */
+    public static void closeAll() {
+        for (QueueMonitor monitor : MONITORS.values()) {
+            monitor.close();
+        }
+        MONITORS.clear();
+    }
+}
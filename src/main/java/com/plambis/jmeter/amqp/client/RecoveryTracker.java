@@ -0,0 +1,114 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the outages of one client's recovering connection: from the loss of the connection until it is recovered,
+ * including the redeclared topology and the re-registered consumers, the client can neither publish nor consume. The messages in flight when the connection was lost are
+ * unconfirmed publishes, which may or may not have reached the broker, and unacknowledged deliveries, which the broker
+ * redelivers.
+ */
+final class RecoveryTracker implements ShutdownListener, RecoveryListener {
+    private static final Logger log = LoggerFactory.getLogger(RecoveryTracker.class);
+
+    private final AMQPClient client;
+    private final String name;
+
+    // guarded by this
+    private long downSince = -1;
+    private int inFlight;
+    private int outages;
+    private long downtimeNanos;
+    private long maxDowntimeNanos;
+    private long inFlightTotal;
+
+    RecoveryTracker(AMQPClient client, String name) {
+        this.client = client;
+        this.name = name;
+    }
+
+    /**
+     * @return whether the shutdown is a lost connection, which automatic recovery reopens
+     */
+    static boolean isRecoverable(ShutdownSignalException cause) {
+        return cause.isHardError() && !cause.isInitiatedByApplication();
+    }
+
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        if (!isRecoverable(cause)) {
+            return;
+        }
+        int affected = client.getInFlight();
+        synchronized (this) {
+            if (downSince >= 0) {
+                return;
+            }
+            downSince = System.nanoTime();
+            inFlight = affected;
+        }
+        log.warn("{} lost its connection with {} message(s) in flight, waiting for recovery: {}", name, affected,
+                cause.getMessage());
+    }
+
+    @Override
+    public void handleRecoveryStarted(Recoverable recoverable) {
+        log.debug("{} starts recovering", name);
+    }
+
+    @Override
+    public void handleRecovery(Recoverable recoverable) {
+        long downtime;
+        int affected;
+        synchronized (this) {
+            if (downSince < 0) {
+                return;
+            }
+            downtime = System.nanoTime() - downSince;
+            affected = inFlight;
+            downSince = -1;
+            outages++;
+            downtimeNanos += downtime;
+            maxDowntimeNanos = Math.max(maxDowntimeNanos, downtime);
+            inFlightTotal += affected;
+            notifyAll();
+        }
+        int unconfirmed = client.abandonConfirms();
+        ClientMetrics.get().markRecovered(downtime, affected);
+        log.info("{} recovered after {} ms, {} message(s) were in flight, {} confirm(s) lost", name,
+                TimeUnit.NANOSECONDS.toMillis(downtime), affected, unconfirmed);
+    }
+
+    /**
+     * Waits while the connection is lost, at most for the timeout.
+     */
+    synchronized void awaitRecovery(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (downSince >= 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    /**
+     * Logs the outages of the client, if there were any.
+     */
+    synchronized void report() {
+        if (outages == 0 && downSince < 0) {
+            return;
+        }
+        log.info("{}: {} outage(s), {} ms down in total, longest {} ms, {} message(s) in flight{}", name, outages,
+                TimeUnit.NANOSECONDS.toMillis(downtimeNanos), TimeUnit.NANOSECONDS.toMillis(maxDowntimeNanos),
+                inFlightTotal, downSince >= 0 ? ", still down" : "");
+    }
+}
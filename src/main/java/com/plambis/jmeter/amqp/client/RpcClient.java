@@ -0,0 +1,184 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Request/reply over RabbitMQ direct reply-to. Requests are published with {@code reply-to} set to
+ * {@value #DIRECT_REPLY_TO}, the broker delivers the replies straight to the consumer of this channel without a
+ * reply queue.
+ * <p>
+ * Replies are matched to their request by correlation id, so any number of requests can be outstanding on the channel
+ * at the same time. Direct reply-to requires the reply consumer to be in auto-ack mode and to be registered on the
+ * publishing channel before the first request.
+ * <p>
+ * Requests are published as mandatory: a request no queue is bound for is returned by the broker and fails its call
+ * at once instead of waiting for the timeout.
+ */
+public class RpcClient {
+    private static final Logger log = LoggerFactory.getLogger(RpcClient.class);
+
+    public static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    private final Channel channel;
+    private final ConcurrentMap<String, Call> pending = new ConcurrentHashMap<>();
+    private final String correlationPrefix = UUID.randomUUID().toString() + "-";
+    private final String consumerTag;
+    private long sequence;
+
+    public RpcClient(AMQPClient client) throws IOException {
+        this.channel = client.getChannel();
+        this.consumerTag = channel.basicConsume(DIRECT_REPLY_TO, true, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+                ClientMetrics.get().markConsumedBytes(body.length);
+                Call call = properties.getCorrelationId() == null ? null : pending.remove(properties.getCorrelationId());
+                if (call == null) {
+                    log.debug("Dropping late or unknown reply {}", properties.getCorrelationId());
+                    return;
+                }
+                call.complete(body);
+            }
+
+            @Override
+            public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+                failAll(sig);
+            }
+        });
+        channel.addReturnListener(returned -> {
+            Call call = returned.getProperties().getCorrelationId() == null ? null
+                    : pending.remove(returned.getProperties().getCorrelationId());
+            if (call != null) {
+                call.reply.completeExceptionally(new IOException("Request returned by the broker: "
+                        + returned.getReplyCode() + " " + returned.getReplyText()));
+            }
+        });
+        log.info("Consuming direct replies on channel {}", channel.getChannelNumber());
+    }
+
+    /**
+     * Publishes a request without waiting for its reply. Only the sampler thread owning the channel may call this.
+     *
+     * @param properties the message properties, reply-to and correlation id are replaced
+     */
+    public Call call(String exchangeName, String routingKey, AMQP.BasicProperties properties, byte[] body) throws IOException {
+        String correlationId = correlationPrefix + (sequence++);
+        Call call = new Call(correlationId, System.nanoTime());
+        pending.put(correlationId, call);
+        try {
+            channel.basicPublish(exchangeName, routingKey, true, properties.builder()
+                    .replyTo(DIRECT_REPLY_TO)
+                    .correlationId(correlationId)
+                    .build(), body);
+        } catch (IOException | RuntimeException e) {
+            pending.remove(correlationId);
+            throw e;
+        }
+        ClientMetrics.get().markPublishedBytes(body.length);
+        return call;
+    }
+
+    /**
+     * Waits for the replies of all calls.
+     *
+     * @throws TimeoutException when a reply is missing after the timeout, its call is still pending
+     */
+    public static void awaitAll(List<Call> calls, long timeoutMillis) throws IOException, TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            CompletableFuture.allOf(calls.stream().map(call -> call.reply).toArray(CompletableFuture[]::new))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for replies");
+        } catch (ExecutionException e) {
+            throw new IOException("Request failed", e.getCause());
+        }
+    }
+
+    /**
+     * Forgets calls still waiting for a reply, their replies are dropped if they arrive later.
+     *
+     * @return the number of calls that were still pending
+     */
+    public int cancel(List<Call> calls) {
+        int cancelled = 0;
+        for (Call call : calls) {
+            if (pending.remove(call.correlationId, call)) {
+                call.reply.cancel(false);
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    private void failAll(Exception cause) {
+        for (Call call : pending.values()) {
+            if (pending.remove(call.correlationId, call)) {
+                call.reply.completeExceptionally(cause);
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            if (channel.isOpen()) {
+                channel.basicCancel(consumerTag);
+            }
+        } catch (IOException e) {
+            log.debug("Failed to cancel reply consumer", e);
+        }
+        failAll(new IOException("RPC client closed"));
+    }
+
+    /**
+     * One outstanding request.
+     */
+    public static final class Call {
+        private final String correlationId;
+        private final long sendNanos;
+        private final CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        private volatile long replyNanos;
+
+        private Call(String correlationId, long sendNanos) {
+            this.correlationId = correlationId;
+            this.sendNanos = sendNanos;
+        }
+
+        private void complete(byte[] body) {
+            replyNanos = System.nanoTime();
+            reply.complete(body);
+        }
+
+        public boolean isReplied() {
+            return reply.isDone() && !reply.isCompletedExceptionally();
+        }
+
+        /**
+         * @return the reply body, or null while the reply is missing
+         */
+        public byte[] getReply() {
+            return isReplied() ? reply.join() : null;
+        }
+
+        public long getRoundTripNanos() {
+            return isReplied() ? replyNanos - sendNanos : -1;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A local stand-in for an RPC server: consumes the requests of a queue, or of all its shards, and sends every body
+ * back to its reply-to address with the request's correlation id. Meant for trying out request/reply tests without a
+ * real service; one responder runs per broker and queue, on its own connection, until the test ends.
+ */
+public final class RpcEchoResponder {
+    private static final Logger log = LoggerFactory.getLogger(RpcEchoResponder.class);
+
+    private static final ConcurrentMap<String, Connection> RESPONDERS = new ConcurrentHashMap<>();
+
+    private RpcEchoResponder() {
+    }
+
+    /**
+     * Starts the responder for the queue of the configuration unless it is already running.
+     */
+    public static void startOnce(ChannelConfiguration channelConf) throws IOException, NoSuchAlgorithmException,
+            KeyManagementException, TimeoutException {
+        String queueName = channelConf.getQueueConfiguration().getQueueName();
+        String key = channelConf.getHosts() + ":" + channelConf.getPort() + channelConf.getVirtualHost() + "/" + queueName;
+        if (RESPONDERS.containsKey(key)) {
+            return;
+        }
+        synchronized (RESPONDERS) {
+            if (RESPONDERS.containsKey(key)) {
+                return;
+            }
+            Connection connection = AMQPConnectionFactory.newConnection(channelConf);
+            try {
+                Channel channel = connection.createChannel();
+                EchoConsumer consumer = new EchoConsumer(channel);
+                if (channelConf.getShardCount() < 1) {
+                    channel.basicConsume(queueName, true, consumer);
+                } else {
+                    for (int shard = 0; shard < channelConf.getShardCount(); shard++) {
+                        channel.basicConsume(Shards.name(queueName, shard), true, consumer);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                connection.abort();
+                throw e;
+            }
+            RESPONDERS.put(key, connection);
+            log.info("Started echo responder on {}", key);
+        }
+    }
+
+    /**
+     * Stops all responders at test end.
+     */
+    public static void stopAll() {
+        synchronized (RESPONDERS) {
+            for (Connection connection : RESPONDERS.values()) {
+                if (!connection.isOpen()) {
+                    continue;
+                }
+                try {
+                    connection.close();
+                } catch (IOException e) {
+                    log.error("Failed to close echo responder connection", e);
+                }
+            }
+            RESPONDERS.clear();
+        }
+    }
+
+    private static final class EchoConsumer extends DefaultConsumer {
+        private EchoConsumer(Channel channel) {
+            super(channel);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+                throws IOException {
+            if (properties.getReplyTo() == null) {
+                log.debug("Dropping request {} without reply-to", properties.getCorrelationId());
+                return;
+            }
+            AMQP.BasicProperties reply = new AMQP.BasicProperties.Builder()
+                    .correlationId(properties.getCorrelationId())
+                    .contentType(properties.getContentType())
+                    .build();
+            getChannel().basicPublish("", properties.getReplyTo(), reply, body);
+        }
+    }
+}
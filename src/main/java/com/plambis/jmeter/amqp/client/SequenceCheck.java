@@ -0,0 +1,25 @@
+package com.plambis.jmeter.amqp.client;
+
+/**
+ * How a received sequence number relates to the ones received before from the same publisher.
+ */
+public enum SequenceCheck {
+    /** Higher than every sequence number received so far, skipped numbers are gaps until they arrive. */
+    IN_ORDER("in-order"),
+    /** Fills a gap. */
+    OUT_OF_ORDER("out-of-order"),
+    /** Received before. */
+    DUPLICATE("duplicate"),
+    /** Older than the tracking window: it was counted missing, or is a duplicate. */
+    LATE("late");
+
+    private final String label;
+
+    SequenceCheck(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
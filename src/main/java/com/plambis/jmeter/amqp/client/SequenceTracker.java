@@ -0,0 +1,198 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Checks the sequence numbers the consumer threads receive, see {@link MessageStamp#SEQUENCE_HEADER}, for gaps,
+ * duplicates and reordering, one window per publisher.
+ * <p>
+ * A window is a bitmap of the last {@value #WINDOW_PROPERTY} sequence numbers (default {@value #DEFAULT_WINDOW})
+ * below the highest one received, 8 KB per publisher by default and no allocation per message. A number that leaves
+ * the window without being received counts as missing; one older than the window arrives late. Gaps are counted from
+ * the first number received, consumers may attach to a queue late.
+ */
+public final class SequenceTracker {
+    private static final Logger log = LoggerFactory.getLogger(SequenceTracker.class);
+
+    public static final String WINDOW_PROPERTY = "amqp.sequence.window";
+    public static final int DEFAULT_WINDOW = 65536;
+
+    private static final ConcurrentMap<String, Window> WINDOWS = new ConcurrentHashMap<>();
+
+    private SequenceTracker() {
+    }
+
+    public static SequenceCheck record(String publisherId, long sequence, boolean redelivered) {
+        return WINDOWS.computeIfAbsent(publisherId, k -> new Window(windowSize())).record(sequence, redelivered);
+    }
+
+    private static int windowSize() {
+        int size = Math.max(64, JMeterUtils.getPropDefault(WINDOW_PROPERTY, DEFAULT_WINDOW));
+        return (size + 63) & ~63;
+    }
+
+    public static void reset() {
+        WINDOWS.clear();
+    }
+
+    /**
+     * Logs the counts of every publisher tracked so far and clears them, so the report is produced once even if
+     * several consumers end the test. Messages still in flight at that time count as missing.
+     */
+    public static void report() {
+        List<String> publisherIds = new ArrayList<>(WINDOWS.keySet());
+        long received = 0;
+        long missing = 0;
+        long duplicates = 0;
+        long outOfOrder = 0;
+        long late = 0;
+        long redelivered = 0;
+        for (String publisherId : publisherIds) {
+            Window window = WINDOWS.remove(publisherId);
+            if (window == null) {
+                continue;
+            }
+            synchronized (window) {
+                long windowMissing = window.getMissing();
+                log.info("Sequence check for publisher {}: {}", publisherId, summary(window.received, windowMissing,
+                        window.duplicates, window.outOfOrder, window.late, window.redelivered));
+                received += window.received;
+                missing += windowMissing;
+                duplicates += window.duplicates;
+                outOfOrder += window.outOfOrder;
+                late += window.late;
+                redelivered += window.redelivered;
+            }
+        }
+        if (publisherIds.size() > 1) {
+            log.info("Sequence check for {} publishers: {}", publisherIds.size(),
+                    summary(received, missing, duplicates, outOfOrder, late, redelivered));
+        }
+    }
+
+    private static String summary(long received, long missing, long duplicates, long outOfOrder, long late,
+            long redelivered) {
+        return "received=" + received + ", missing=" + missing + ", duplicates=" + duplicates + ", outOfOrder="
+                + outOfOrder + ", late=" + late + ", redelivered=" + redelivered
+                + String.format(Locale.ROOT, " (%.3f%%)", received == 0 ? 0.0 : 100.0 * redelivered / received);
+    }
+
+    /**
+     * Bit {@code seq % size} is set when {@code seq} in {@code (highest - size, highest]} was received.
+     */
+    static final class Window {
+        private final long[] bits;
+        private final int size;
+        private long lowest;
+        private long highest;
+
+        private long received;
+        private long missing;
+        private long duplicates;
+        private long outOfOrder;
+        private long late;
+        private long redelivered;
+
+        Window(int size) {
+            this.size = size;
+            this.bits = new long[size / 64];
+        }
+
+        synchronized SequenceCheck record(long sequence, boolean redelivery) {
+            received++;
+            if (redelivery) {
+                redelivered++;
+            }
+            if (received == 1) {
+                lowest = sequence;
+                highest = sequence;
+                set(sequence);
+                return SequenceCheck.IN_ORDER;
+            }
+            if (sequence > highest) {
+                advance(sequence);
+                return SequenceCheck.IN_ORDER;
+            }
+            if (sequence <= highest - size) {
+                late++;
+                return SequenceCheck.LATE;
+            }
+            if (isSet(sequence)) {
+                duplicates++;
+                return SequenceCheck.DUPLICATE;
+            }
+            set(sequence);
+            outOfOrder++;
+            lowest = Math.min(lowest, sequence);
+            return SequenceCheck.OUT_OF_ORDER;
+        }
+
+        /**
+         * @return the numbers that left the window without arriving, plus those in the window not arrived yet
+         */
+        synchronized long getMissing() {
+            return missing + pending();
+        }
+
+        private void advance(long sequence) {
+            if (sequence - highest >= size) {
+                // the whole window leaves, and so do the numbers skipped beyond it
+                missing += pending() + (sequence - size - highest);
+                Arrays.fill(bits, 0L);
+            } else {
+                for (long next = highest + 1; next < sequence; next++) {
+                    evict(next);
+                }
+                evict(sequence);
+            }
+            highest = sequence;
+            set(sequence);
+        }
+
+        /**
+         * Frees the slot of {@code next} from the number one window size below it.
+         */
+        private void evict(long next) {
+            if (next - size >= lowest && !isSet(next)) {
+                missing++;
+            }
+            bits[slot(next) >>> 6] &= ~(1L << slot(next));
+        }
+
+        /**
+         * @return the numbers in the window that have not arrived yet
+         */
+        private long pending() {
+            long count = 0;
+            for (long sequence = Math.max(lowest, highest - size + 1); sequence <= highest; sequence++) {
+                if (!isSet(sequence)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private int slot(long sequence) {
+            return (int) Math.floorMod(sequence, (long) size);
+        }
+
+        private boolean isSet(long sequence) {
+            int slot = slot(sequence);
+            return (bits[slot >>> 6] & (1L << slot)) != 0;
+        }
+
+        private void set(long sequence) {
+            int slot = slot(sequence);
+            bits[slot >>> 6] |= 1L << slot;
+        }
+    }
+}
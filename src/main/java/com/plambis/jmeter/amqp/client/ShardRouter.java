@@ -0,0 +1,63 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ShardStrategy;
+
+/**
+ * Chooses the shard of every published message and turns the routing key template into the shard's routing key.
+ * Owned by a single thread.
+ */
+public class ShardRouter {
+    /** The hash strategy hashes at most this many leading body bytes, so large bodies cost no more than small ones. */
+    public static final int HASH_PREFIX_BYTES = 64;
+
+    private final ShardStrategy strategy;
+    private final int shardCount;
+    private final int threadNumber;
+    private long sequence;
+    /** The shard of the last routed message, -1 when the broker picks it. */
+    private int lastShard = -1;
+
+    /**
+     * @param threadNumber round-robin starts at this thread's shard so threads do not move in lockstep
+     */
+    public ShardRouter(ShardStrategy strategy, int shardCount, int threadNumber) {
+        this.strategy = strategy;
+        this.shardCount = shardCount;
+        this.threadNumber = threadNumber;
+        this.sequence = threadNumber;
+    }
+
+    public String route(String routingKey, byte[] body) {
+        switch (strategy) {
+            case CONSISTENT_HASH:
+                // the broker hashes the routing key, so it has to differ from message to message
+                lastShard = -1;
+                return Shards.name(routingKey, ((long) threadNumber << 32) + sequence++);
+            case HASH:
+                lastShard = (hashPrefix(body) & Integer.MAX_VALUE) % shardCount;
+                return Shards.name(routingKey, lastShard);
+            case ROUND_ROBIN:
+            default:
+                lastShard = (int) (sequence++ % shardCount);
+                return Shards.name(routingKey, lastShard);
+        }
+    }
+
+    /**
+     * Counts the last routed message on its shard, once it has been published.
+     */
+    public void recordPublished(int bytes) {
+        if (lastShard >= 0) {
+            ShardStats.recordPublished(lastShard, bytes);
+        }
+    }
+
+    private static int hashPrefix(byte[] body) {
+        int length = Math.min(body.length, HASH_PREFIX_BYTES);
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + body[i];
+        }
+        return hash;
+    }
+}
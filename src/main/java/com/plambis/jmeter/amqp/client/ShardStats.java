@@ -0,0 +1,122 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Messages and bytes published to and consumed from every shard during a test, logged once at test end.
+ * Messages routed by an x-consistent-hash exchange are only counted on the consumer side.
+ * <p>
+ * The counters are held in arrays indexed by shard, grown only when a higher shard shows up, so recording a message
+ * takes no lock.
+ */
+public final class ShardStats {
+    private static final Logger log = LoggerFactory.getLogger(ShardStats.class);
+
+    private static volatile Counters[] published = new Counters[0];
+    private static volatile Counters[] consumed = new Counters[0];
+    private static volatile long startedAt = System.nanoTime();
+
+    private ShardStats() {
+    }
+
+    public static synchronized void reset() {
+        published = new Counters[0];
+        consumed = new Counters[0];
+        startedAt = System.nanoTime();
+    }
+
+    public static void recordPublished(int shard, int bytes) {
+        Counters[] counters = published;
+        if (shard >= counters.length) {
+            counters = grow(true, shard);
+        }
+        counters[shard].add(bytes);
+    }
+
+    public static void recordConsumed(int shard, int bytes) {
+        Counters[] counters = consumed;
+        if (shard >= counters.length) {
+            counters = grow(false, shard);
+        }
+        counters[shard].add(bytes);
+    }
+
+    /**
+     * @return the messages counted as published to the shard since the last reset or report
+     */
+    static long getPublished(int shard) {
+        Counters[] counters = published;
+        return shard < counters.length ? counters[shard].messages.sum() : 0;
+    }
+
+    private static synchronized Counters[] grow(boolean publishing, int shard) {
+        Counters[] counters = publishing ? published : consumed;
+        if (shard < counters.length) {
+            return counters;
+        }
+        Counters[] grown = Arrays.copyOf(counters, shard + 1);
+        for (int i = counters.length; i < grown.length; i++) {
+            grown[i] = new Counters();
+        }
+        if (publishing) {
+            published = grown;
+        } else {
+            consumed = grown;
+        }
+        return grown;
+    }
+
+    /**
+     * Logs the throughput of every shard and clears the counters, so several samplers ending the same test report
+     * only once.
+     */
+    public static void report() {
+        Counters[] publishedCounters;
+        Counters[] consumedCounters;
+        synchronized (ShardStats.class) {
+            publishedCounters = published;
+            consumedCounters = consumed;
+            published = new Counters[0];
+            consumed = new Counters[0];
+        }
+        double seconds = Math.max(1, System.nanoTime() - startedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+        report("published to", publishedCounters, seconds);
+        report("consumed from", consumedCounters, seconds);
+    }
+
+    private static void report(String direction, Counters[] counters, double seconds) {
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        boolean any = false;
+        for (int shard = 0; shard < counters.length; shard++) {
+            long messages = counters[shard].messages.sum();
+            if (messages == 0) {
+                continue;
+            }
+            any = true;
+            long bytes = counters[shard].bytes.sum();
+            min = Math.min(min, messages);
+            max = Math.max(max, messages);
+            log.info(String.format("Shard %d %s: %d messages, %d bytes, %.1f msg/s, %.1f bytes/s", shard, direction,
+                    messages, bytes, messages / seconds, bytes / seconds));
+        }
+        if (any) {
+            log.info("Shard imbalance {}: busiest shard has {} messages, quietest {}", direction, max, min);
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        private void add(int size) {
+            messages.increment();
+            bytes.add(size);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+import com.plambis.jmeter.amqp.client.conf.ShardStrategy;
+
+/**
+ * Resolves the queue names and binding keys of sharded topologies. Names are templates in which {@value #PLACEHOLDER}
+ * is replaced by the shard number; a name without the placeholder gets the shard number appended after a dot.
+ */
+public final class Shards {
+    public static final String PLACEHOLDER = "{shard}";
+
+    /** Binding key of a shard queue on an x-consistent-hash exchange: its weight in the hash ring. */
+    private static final String CONSISTENT_HASH_WEIGHT = "1";
+
+    private Shards() {
+    }
+
+    public static String name(String template, long shard) {
+        if (template == null || template.isEmpty()) {
+            return template;
+        }
+        if (template.contains(PLACEHOLDER)) {
+            return template.replace(PLACEHOLDER, Long.toString(shard));
+        }
+        return template + "." + shard;
+    }
+
+    /**
+     * @return the shards the channel declares: its own shard when it has one, otherwise all of them
+     */
+    public static int[] shards(ChannelConfiguration channelConf) {
+        if (channelConf.getShard() >= 0) {
+            return new int[]{channelConf.getShard()};
+        }
+        int[] shards = new int[channelConf.getShardCount()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = i;
+        }
+        return shards;
+    }
+
+    /**
+     * @return the queue the channel consumes from, the configured queue when sharding is off
+     */
+    public static String queueName(ChannelConfiguration channelConf) {
+        String queueName = channelConf.getQueueConfiguration().getQueueName();
+        if (channelConf.getShardCount() < 1 || channelConf.getShard() < 0) {
+            return queueName;
+        }
+        return name(queueName, channelConf.getShard());
+    }
+
+    public static String bindingKey(ChannelConfiguration channelConf, int shard) {
+        if (channelConf.getShardStrategy() == ShardStrategy.CONSISTENT_HASH) {
+            return CONSISTENT_HASH_WEIGHT;
+        }
+        return name(channelConf.getRoutingKey(), shard);
+    }
+}
@@ -0,0 +1,242 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+import com.plambis.jmeter.amqp.client.conf.ExchangeConfiguration;
+import com.plambis.jmeter.amqp.client.conf.QueueConfiguration;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Declares queues, exchanges and bindings once per test instead of once per thread, and runs teardown actions such as
+ * purge once per test.
+ * <p>
+ * Every declaration is cached by its broker and configuration. The first thread declares it, threads needing the same
+ * declaration meanwhile wait for the outcome, and later threads skip it. A failed declaration is forgotten so the next
+ * thread tries again. Exclusive queues belong to a single connection and are still declared by every thread.
+ * Sharded topologies declare one queue and binding per shard, see {@link Shards}.
+ * The caches are cleared when a test starts.
+ * <p>
+ * Automatic recovery only restores the entities a connection declared itself. With recovery on, every declaration is
+ * therefore repeated once on each further connection, without deleting redeclared entities again.
+ */
+public final class TopologyCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(TopologyCoordinator.class);
+
+    private static final ConcurrentMap<Object, CompletableFuture<Void>> DECLARED = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Boolean> TORN_DOWN = new ConcurrentHashMap<>();
+
+    private TopologyCoordinator() {
+    }
+
+    /**
+     * Forgets all declarations and teardown actions of the previous test.
+     */
+    public static void reset() {
+        DECLARED.clear();
+        TORN_DOWN.clear();
+    }
+
+    /**
+     * Declares the queue, exchange and binding of the configuration unless an earlier thread of this test did.
+     *
+     * @param channel the channel of the calling thread, used for the declarations
+     */
+    public static void declare(Channel channel, ChannelConfiguration channelConf) throws IOException {
+        String broker = broker(channelConf);
+        ExchangeConfiguration exchangeConf = channelConf.getExchangeConfiguration();
+
+        if (StringUtils.isBlank(exchangeConf.getExchangeName())) {
+            log.warn("There no exchange configured!");
+        } else {
+            once(channel, channelConf, "exchange " + broker + "/" + exchangeConf.getExchangeName() + " "
+                    + exchangeConf.getType() + " " + exchangeConf.isDurable() + " " + exchangeConf.isAutoDelete() + " "
+                    + exchangeConf.getExchangeArguments(), redeclare -> declareExchange(channel, exchangeConf, redeclare));
+        }
+
+        String queueName = channelConf.getQueueConfiguration().getQueueName();
+        if (channelConf.getShardCount() < 1) {
+            declareQueueAndBinding(channel, broker, channelConf, queueName, channelConf.getRoutingKey());
+            return;
+        }
+        for (int shard : Shards.shards(channelConf)) {
+            declareQueueAndBinding(channel, broker, channelConf, Shards.name(queueName, shard),
+                    Shards.bindingKey(channelConf, shard));
+        }
+    }
+
+    private static void declareQueueAndBinding(Channel channel, String broker, ChannelConfiguration channelConf,
+            String queueName, String routingKey) throws IOException {
+        QueueConfiguration queueConf = channelConf.getQueueConfiguration();
+        String exchangeName = channelConf.getExchangeConfiguration().getExchangeName();
+
+        if (StringUtils.isBlank(queueName)) {
+            log.warn("There no queue configured!");
+        } else if (queueConf.isExclusive()) {
+            declareQueue(channel, queueConf, queueName, true);
+        } else {
+            once(channel, channelConf, "queue " + broker + "/" + queueName + " " + queueConf.isDurable() + " "
+                    + queueConf.isAutoDelete() + " " + queueConf.getQueueArguments(),
+                    redeclare -> declareQueue(channel, queueConf, queueName, redeclare));
+        }
+
+        if (StringUtils.isBlank(queueName) || StringUtils.isBlank(exchangeName)) {
+            log.warn("There no queue or exchange configured!");
+        } else if (queueConf.isExclusive()) {
+            bind(channel, queueName, exchangeName, routingKey);
+        } else {
+            once(channel, channelConf, "binding " + broker + "/" + queueName + " " + exchangeName + " " + routingKey,
+                    redeclare -> bind(channel, queueName, exchangeName, routingKey));
+        }
+    }
+
+    /**
+     * Purges the configured queue, or all its shards, through a short-lived connection, once per test and queue.
+     */
+    public static void purgeOnce(ChannelConfiguration channelConf) throws IOException, NoSuchAlgorithmException,
+            KeyManagementException, TimeoutException {
+        String template = channelConf.getQueueConfiguration().getQueueName();
+        if (StringUtils.isBlank(template)) {
+            return;
+        }
+        List<String> queueNames = new ArrayList<>();
+        if (channelConf.getShardCount() < 1) {
+            queueNames.add(template);
+        } else {
+            for (int shard = 0; shard < channelConf.getShardCount(); shard++) {
+                queueNames.add(Shards.name(template, shard));
+            }
+        }
+        String broker = broker(channelConf);
+        queueNames.removeIf(queueName -> TORN_DOWN.putIfAbsent("purge " + broker + "/" + queueName, Boolean.TRUE) != null);
+        if (queueNames.isEmpty()) {
+            return;
+        }
+        Connection connection = AMQPConnectionFactory.newConnection(channelConf);
+        try {
+            Channel channel = connection.createChannel();
+            for (String queueName : queueNames) {
+                log.info("Purging queue {}", queueName);
+                channel.queuePurge(queueName);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the cache key of the broker, loopback virtual hosts are distinct from those of the configured hosts
+     */
+    private static String broker(ChannelConfiguration channelConf) {
+        String broker = channelConf.getHosts() + ":" + channelConf.getPort() + channelConf.getVirtualHost();
+        return channelConf.useLoopback() ? "loopback:" + broker : broker;
+    }
+
+    /**
+     * Declares once per test and, with recovery on, once per connection. The connection declaring first is marked
+     * done with the test-wide declaration, the others declare again without the redeclare delete.
+     */
+    private static void once(Channel channel, ChannelConfiguration channelConf, String key,
+            RepeatableDeclaration declaration) throws IOException {
+        Object connectionKey = channelConf.useRecovery() ? Arrays.asList(channel.getConnection(), key) : null;
+        once(key, () -> {
+            declaration.run(true);
+            if (connectionKey != null) {
+                DECLARED.putIfAbsent(connectionKey, CompletableFuture.completedFuture(null));
+            }
+        });
+        if (connectionKey != null) {
+            once(connectionKey, () -> declaration.run(false));
+        }
+    }
+
+    private static void once(Object key, Declaration declaration) throws IOException {
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        CompletableFuture<Void> existing = DECLARED.putIfAbsent(key, created);
+        if (existing == null) {
+            try {
+                declaration.run();
+                created.complete(null);
+            } catch (IOException | RuntimeException e) {
+                DECLARED.remove(key, created);
+                created.completeExceptionally(e);
+                throw e;
+            }
+            return;
+        }
+        try {
+            existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + key);
+        } catch (ExecutionException e) {
+            throw new IOException("Declaration of " + key + " failed in another thread", e.getCause());
+        }
+    }
+
+    private static void declareQueue(Channel channel, QueueConfiguration queueConf, String queueName, boolean redeclare)
+            throws IOException {
+        if (redeclare && queueConf.redeclare()) {
+            // use a different channel since channel closes on exception.
+            try (Channel deleteChannel = channel.getConnection().createChannel()) {
+                log.info("Deleting queue " + queueName);
+                deleteChannel.queueDelete(queueName);
+            } catch (Exception ex) {
+                log.debug(ex.getMessage(), ex);
+                // ignore it.
+            }
+        }
+        channel.queueDeclare(queueName, queueConf.isDurable(), queueConf.isExclusive(), queueConf.isAutoDelete(),
+                queueConf.getQueueArguments());
+        log.info("Declared queue: {}", queueName);
+    }
+
+    private static void declareExchange(Channel channel, ExchangeConfiguration exchangeConf, boolean redeclare)
+            throws IOException {
+        if (redeclare && exchangeConf.redeclare()) {
+            // use a different channel since channel closes on exception.
+            try (Channel deleteChannel = channel.getConnection().createChannel()) {
+                log.info("Deleting exchange " + exchangeConf.getExchangeName());
+                deleteChannel.exchangeDelete(exchangeConf.getExchangeName());
+            } catch (Exception ex) {
+                log.debug(ex.getMessage(), ex);
+            }
+        }
+        channel.exchangeDeclare(exchangeConf.getExchangeName(), exchangeConf.getType(), exchangeConf.isDurable(),
+                exchangeConf.isAutoDelete(), exchangeConf.getExchangeArguments());
+        log.info("Declared exchange: {}", exchangeConf.getExchangeName());
+    }
+
+    private static void bind(Channel channel, String queueName, String exchangeName, String routingKey) throws IOException {
+        channel.queueBind(queueName, exchangeName, routingKey);
+        log.info("bound queue: {} to exchange {} routing key {} ", queueName, exchangeName, routingKey);
+    }
+
+    @FunctionalInterface
+    private interface RepeatableDeclaration {
+        /**
+         * @param redeclare false when the entity was already declared, and possibly deleted first, on another connection
+         */
+        void run(boolean redeclare) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Declaration {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,86 @@
+package com.plambis.jmeter.amqp.client.async;
+
+import com.plambis.jmeter.amqp.client.ConfirmStats;
+import com.plambis.jmeter.amqp.client.MessagePublisher;
+import com.rabbitmq.client.AMQP;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hands the messages of a sampler thread to a {@link PublishPipeline} instead of writing them itself. A batch is
+ * complete once its messages are enqueued, or once they are confirmed when the pipeline uses publisher confirms.
+ * Without confirms, messages the writer failed to publish are reported by the next batch of the thread.
+ * <p>
+ * Message properties are taken from the wrapped publisher; transactions are not supported.
+ */
+public class AsyncMessagePublisher implements MessagePublisher {
+    private final MessagePublisher delegate;
+    private final PublishPipeline pipeline;
+    private final long timeoutMillis;
+    private PublishTicket ticket = new PublishTicket();
+
+    public AsyncMessagePublisher(MessagePublisher delegate, PublishPipeline pipeline, long timeoutMillis) {
+        this.delegate = delegate;
+        this.pipeline = pipeline;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes) throws IOException, TimeoutException {
+        publish(exchangeName, messageRoutingKey, messageBytes, System.nanoTime());
+    }
+
+    @Override
+    public void publish(String exchangeName, String messageRoutingKey, byte[] messageBytes, long sendNanos) throws IOException,
+            TimeoutException {
+        pipeline.submit(new PendingMessage(exchangeName, messageRoutingKey, isMandatory(), getProperties(sendNanos),
+                messageBytes, sendNanos, ticket), timeoutMillis);
+    }
+
+    @Override
+    public AMQP.BasicProperties getProperties(long sendNanos) {
+        return delegate.getProperties(sendNanos);
+    }
+
+    @Override
+    public boolean isMandatory() {
+        return delegate.isMandatory();
+    }
+
+    @Override
+    public void commitTransaction() {
+        // messages are published on the pipeline's channel, which never uses transactions
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A batch whose confirms time out leaves its ticket behind, so late confirms do not count towards the next batch.
+     */
+    @Override
+    public ConfirmStats waitForConfirms() throws IOException, TimeoutException {
+        if (!pipeline.usesConfirms()) {
+            long failures = ticket.drainFailures();
+            if (failures > 0) {
+                throw new IOException(failures + " message(s) of earlier samples could not be published");
+            }
+            return null;
+        }
+        try {
+            ConfirmStats stats = ticket.awaitConfirms(timeoutMillis);
+            long failures = ticket.drainFailures();
+            if (failures > 0) {
+                throw new IOException(failures + " message(s) could not be published or lost their confirm");
+            }
+            return stats;
+        } catch (TimeoutException e) {
+            ticket = new PublishTicket();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for publisher confirms");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.plambis.jmeter.amqp.client.async;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * A message handed from a sampler thread to a {@link PublishPipeline} writer.
+ */
+final class PendingMessage {
+    final String exchangeName;
+    final String routingKey;
+    final boolean mandatory;
+    final AMQP.BasicProperties properties;
+    final byte[] body;
+    final long sendNanos;
+    final PublishTicket ticket;
+
+    PendingMessage(String exchangeName, String routingKey, boolean mandatory, AMQP.BasicProperties properties, byte[] body,
+            long sendNanos, PublishTicket ticket) {
+        this.exchangeName = exchangeName;
+        this.routingKey = routingKey;
+        this.mandatory = mandatory;
+        this.properties = properties;
+        this.body = body;
+        this.sendNanos = sendNanos;
+        this.ticket = ticket;
+    }
+}
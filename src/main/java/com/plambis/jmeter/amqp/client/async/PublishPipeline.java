@@ -0,0 +1,337 @@
+package com.plambis.jmeter.amqp.client.async;
+
+import com.plambis.jmeter.amqp.client.AMQPConnectionFactory;
+import com.plambis.jmeter.amqp.client.ClientMetrics;
+import com.plambis.jmeter.amqp.client.ConnectionKey;
+import com.plambis.jmeter.amqp.client.conf.ChannelConfiguration;
+import com.plambis.jmeter.amqp.client.conf.ConfirmMode;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes on behalf of sampler threads: they enqueue messages into a {@link RingBuffer} and return, a dedicated
+ * writer thread drains it and publishes on its own connection and channel. A slow socket write then stalls the writer
+ * instead of the virtual users, and a few sampler threads can keep the connection busy.
+ * <p>
+ * The writer drains up to {@link #MAX_BATCH} messages per wake-up. With NIO on, the frames of a drained batch are
+ * queued to the I/O thread and written together. The blocking socket transport of the client flushes every publish
+ * and has no way to defer it, so there the writer still publishes and flushes message by message.
+ * <p>
+ * Pipelines are shared by all threads with the same {@link ConnectionKey}, confirm mode, window and ring size, thread
+ * N uses writer N modulo the number of writers. They are shut down at test end by {@link #shutdownAll()}, after the messages still queued are written.
+ */
+public final class PublishPipeline implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(PublishPipeline.class);
+
+    private static final ConcurrentMap<PipelineKey, PublishPipeline> PIPELINES = new ConcurrentHashMap<>();
+    private static final AtomicInteger WRITER_NUMBERS = new AtomicInteger();
+
+    static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FULL_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final String name;
+    private final ChannelConfiguration channelConf;
+    private final boolean confirms;
+    private final int window;
+    private final RingBuffer<PendingMessage> ring;
+    private final Thread writer;
+    private volatile boolean parked;
+    private volatile boolean running = true;
+
+    // only used by the writer, and the confirm listener for the unconfirmed messages
+    private Connection connection;
+    private Channel channel;
+    private final ConcurrentNavigableMap<Long, PendingMessage> unconfirmed = new ConcurrentSkipListMap<>();
+    private final Semaphore windowPermits;
+
+    private PublishPipeline(String name, ChannelConfiguration channelConf, ConfirmMode confirmMode, int window, int ringSize) {
+        this.name = name;
+        this.channelConf = channelConf;
+        this.confirms = confirmMode != ConfirmMode.NONE;
+        this.window = confirmMode == ConfirmMode.SYNC ? 1 : Math.max(1, window);
+        this.windowPermits = new Semaphore(this.window);
+        this.ring = new RingBuffer<>(ringSize);
+        this.writer = new Thread(this, name);
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Returns the pipeline of the calling thread, starting it on first use.
+     *
+     * @param confirmMode whether, and how many, messages the writer keeps unconfirmed
+     * @param writers     the number of pipelines the threads with this configuration are spread over
+     */
+    public static PublishPipeline get(ChannelConfiguration channelConf, ConfirmMode confirmMode, int window, int ringSize,
+            int writers, int threadNumber) {
+        int writerIndex = Math.floorMod(threadNumber, Math.max(1, writers));
+        PipelineKey key = new PipelineKey(channelConf, confirmMode, window, ringSize, writerIndex);
+        return PIPELINES.computeIfAbsent(key, k -> {
+            PublishPipeline pipeline = new PublishPipeline("amqp-writer-" + WRITER_NUMBERS.incrementAndGet(), channelConf,
+                    confirmMode, window, ringSize);
+            pipeline.writer.start();
+            log.info("Started publish pipeline {} for {} with {} slots", pipeline.name, k, pipeline.ring.capacity());
+            return pipeline;
+        });
+    }
+
+    public boolean usesConfirms() {
+        return confirms;
+    }
+
+    /**
+     * Enqueues a message, waiting up to the timeout while the ring is full.
+     */
+    void submit(PendingMessage message, long timeoutMillis) throws IOException, TimeoutException {
+        if (!running) {
+            throw new IOException("Publish pipeline " + name + " is shut down");
+        }
+        message.ticket.submitted();
+        if (!ring.offer(message)) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            do {
+                if (System.nanoTime() - deadline >= 0) {
+                    message.ticket.failed();
+                    throw new TimeoutException("Publish pipeline " + name + " full for " + timeoutMillis + " ms");
+                }
+                LockSupport.parkNanos(this, FULL_BACKOFF_NANOS);
+                if (Thread.interrupted()) {
+                    message.ticket.failed();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for room in publish pipeline " + name);
+                }
+            } while (!ring.offer(message));
+        }
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running || !ring.isEmpty()) {
+            PendingMessage message = ring.poll();
+            if (message == null) {
+                parked = true;
+                if (running && ring.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                parked = false;
+                continue;
+            }
+            int batch = 0;
+            do {
+                write(message);
+            } while (++batch < MAX_BATCH && (message = ring.poll()) != null);
+        }
+        awaitUnconfirmed();
+        closeConnection();
+        log.info("Stopped publish pipeline {}", name);
+    }
+
+    private void write(PendingMessage message) {
+        long tag = -1;
+        try {
+            Channel channel = openChannel();
+            if (confirms) {
+                if (!windowPermits.tryAcquire(channelConf.getTimeout(), TimeUnit.MILLISECONDS)) {
+                    throw new TimeoutException(window + " message(s) not confirmed within " + channelConf.getTimeout() + " ms");
+                }
+                tag = channel.getNextPublishSeqNo();
+                unconfirmed.put(tag, message);
+            }
+            channel.basicPublish(message.exchangeName, message.routingKey, message.mandatory, message.properties,
+                    message.body);
+            ClientMetrics.get().markPublishedBytes(message.body.length);
+            if (!confirms) {
+                message.ticket.written();
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (tag < 0 || unconfirmed.remove(tag, message)) {
+                if (tag >= 0) {
+                    windowPermits.release();
+                }
+                message.ticket.failed();
+            }
+            log.debug("Publish pipeline {} failed to write message", name, e);
+        }
+    }
+
+    private Channel openChannel() throws Exception {
+        if (channel != null && channel.isOpen()) {
+            return channel;
+        }
+        if (connection == null || !connection.isOpen()) {
+            connection = AMQPConnectionFactory.newConnection(channelConf);
+        }
+        Channel opened = connection.createChannel();
+        opened.addReturnListener(returned -> ClientMetrics.get().markReturned());
+        if (confirms) {
+            opened.confirmSelect();
+            opened.addConfirmListener(new ConfirmListener() {
+                @Override
+                public void handleAck(long deliveryTag, boolean multiple) {
+                    confirm(deliveryTag, multiple, true);
+                }
+
+                @Override
+                public void handleNack(long deliveryTag, boolean multiple) {
+                    confirm(deliveryTag, multiple, false);
+                }
+            });
+            opened.addShutdownListener(cause -> failUnconfirmed());
+        }
+        log.info("Publish pipeline {} writing on channel {}", name, opened.getChannelNumber());
+        channel = opened;
+        return channel;
+    }
+
+    private void confirm(long deliveryTag, boolean multiple, boolean ack) {
+        long now = System.nanoTime();
+        int count = 0;
+        if (multiple) {
+            Iterator<Map.Entry<Long, PendingMessage>> it = unconfirmed.headMap(deliveryTag, true).entrySet().iterator();
+            while (it.hasNext()) {
+                PendingMessage message = it.next().getValue();
+                it.remove();
+                message.ticket.confirmed(now - message.sendNanos, ack);
+                count++;
+            }
+        } else {
+            PendingMessage message = unconfirmed.remove(deliveryTag);
+            if (message != null) {
+                message.ticket.confirmed(now - message.sendNanos, ack);
+                count++;
+            }
+        }
+        windowPermits.release(count);
+        if (ack) {
+            ClientMetrics.get().markConfirmed(count);
+        } else {
+            ClientMetrics.get().markNacked(count);
+        }
+    }
+
+    /**
+     * Confirms of a closed channel never arrive, its unconfirmed messages are failed.
+     */
+    private void failUnconfirmed() {
+        int count = 0;
+        for (Long tag : unconfirmed.keySet()) {
+            PendingMessage message = unconfirmed.remove(tag);
+            if (message != null) {
+                message.ticket.failed();
+                count++;
+            }
+        }
+        windowPermits.release(count);
+        if (count > 0) {
+            log.warn("Publish pipeline {} lost the confirms of {} message(s)", name, count);
+        }
+    }
+
+    private void awaitUnconfirmed() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(channelConf.getTimeout());
+        while (!unconfirmed.isEmpty() && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null || !connection.isOpen()) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            log.error("Failed to close publish pipeline connection", e);
+        }
+    }
+
+    private void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Stops all pipelines at test end, once the messages already queued are written and confirmed.
+     */
+    public static void shutdownAll() {
+        for (PublishPipeline pipeline : PIPELINES.values()) {
+            pipeline.stop();
+        }
+        for (PublishPipeline pipeline : PIPELINES.values()) {
+            try {
+                pipeline.writer.join(TimeUnit.SECONDS.toMillis(10) + pipeline.channelConf.getTimeout());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        PIPELINES.clear();
+    }
+
+    private static final class PipelineKey {
+        private final ConnectionKey connection;
+        private final ConfirmMode confirmMode;
+        private final int window;
+        private final int ringSize;
+        private final int writerIndex;
+
+        private PipelineKey(ChannelConfiguration channelConf, ConfirmMode confirmMode, int window, int ringSize,
+                int writerIndex) {
+            this.connection = new ConnectionKey(channelConf);
+            this.confirmMode = confirmMode;
+            this.window = window;
+            this.ringSize = ringSize;
+            this.writerIndex = writerIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PipelineKey other = (PipelineKey) o;
+            return window == other.window
+                    && ringSize == other.ringSize
+                    && writerIndex == other.writerIndex
+                    && confirmMode == other.confirmMode
+                    && connection.equals(other.connection);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connection, confirmMode, window, ringSize, writerIndex);
+        }
+
+        @Override
+        public String toString() {
+            return connection + " confirms=" + confirmMode + "/" + window + " ring=" + ringSize + " writer=" + writerIndex;
+        }
+    }
+}
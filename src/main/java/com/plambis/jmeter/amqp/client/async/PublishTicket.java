@@ -0,0 +1,87 @@
+package com.plambis.jmeter.amqp.client.async;
+
+import com.plambis.jmeter.amqp.client.ConfirmStats;
+import com.plambis.jmeter.amqp.client.ConfirmTracker;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The outcome of the messages one sampler thread submitted to a pipeline: completed by the writer once a message is
+ * written, or confirmed when the pipeline uses publisher confirms, and awaited by the sampler thread.
+ */
+final class PublishTicket {
+    // guarded by this
+    private int pending;
+    private long acks;
+    private long nacks;
+    private long failures;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private final Histogram latencyMicros = new Histogram(3);
+
+    synchronized void submitted() {
+        pending++;
+    }
+
+    synchronized void written() {
+        pending--;
+        notifyAll();
+    }
+
+    synchronized void confirmed(long latencyNanos, boolean ack) {
+        pending--;
+        if (ack) {
+            acks++;
+        } else {
+            nacks++;
+        }
+        totalLatencyNanos += latencyNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        notifyAll();
+    }
+
+    synchronized void failed() {
+        pending--;
+        failures++;
+        notifyAll();
+    }
+
+    /**
+     * @return the messages that could not be written or whose confirm was lost since the previous call
+     */
+    synchronized long drainFailures() {
+        long drained = failures;
+        failures = 0;
+        return drained;
+    }
+
+    /**
+     * Blocks until every submitted message is confirmed or failed.
+     *
+     * @return the confirms received since the previous call
+     */
+    synchronized ConfirmStats awaitConfirms(long timeoutMillis) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (pending > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException(pending + " message(s) not confirmed within " + timeoutMillis + " ms");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        long[] percentiles = new long[ConfirmTracker.PERCENTILES.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            percentiles[i] = latencyMicros.getValueAtPercentile(ConfirmTracker.PERCENTILES[i]);
+        }
+        ConfirmStats stats = new ConfirmStats(acks, nacks, totalLatencyNanos, maxLatencyNanos, percentiles);
+        latencyMicros.reset();
+        acks = 0;
+        nacks = 0;
+        totalLatencyNanos = 0;
+        maxLatencyNanos = 0;
+        return stats;
+    }
+}
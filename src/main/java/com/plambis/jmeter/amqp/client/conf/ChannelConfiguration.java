@@ -24,4 +24,66 @@ public interface ChannelConfiguration {
     String getRoutingKey();
 
     boolean useTx();
+
+    int getConnectionPoolSize();
+
+    int getChannelsPerConnection();
+
+    ConfirmMode getConfirmMode();
+
+    int getConfirmWindow();
+
+    /**
+     * @return the number of shard queues, 0 when sharding is off
+     */
+    int getShardCount();
+
+    ShardStrategy getShardStrategy();
+
+    /**
+     * @return the shard this channel consumes from, or -1 when it publishes to all shards
+     */
+    int getShard();
+
+    /**
+     * @return whether connections use non-blocking I/O threads shared by all connections instead of one reader
+     * thread each
+     */
+    boolean useNio();
+
+    /**
+     * @return the number of NIO threads, 0 for the client default
+     */
+    int getNioThreads();
+
+    /**
+     * @return the NIO read and write buffer size in bytes, 0 for the client default
+     */
+    int getNioBufferSize();
+
+    /**
+     * @return the number of consumer dispatch threads shared by all connections, 0 for a dispatch pool per connection
+     */
+    int getDispatchThreads();
+
+    /**
+     * @return whether connections go to the in-process loopback broker instead of the configured hosts
+     */
+    boolean useLoopback();
+
+    /**
+     * @return whether lost connections are recovered automatically, together with their channels, queues, exchanges,
+     * bindings and consumers
+     */
+    boolean useRecovery();
+
+    /**
+     * @return the delay in milliseconds before the first recovery attempt, doubled for every further attempt
+     */
+    int getRecoveryInitialDelay();
+
+    /**
+     * @return the maximum delay in milliseconds between recovery attempts
+     */
+    int getRecoveryMaxDelay();
 }
@@ -28,6 +28,36 @@ public class ChannelConfigurationImpl implements ChannelConfiguration{
 
     private String routingKey;
 
+    private int connectionPoolSize;
+
+    private int channelsPerConnection;
+
+    private ConfirmMode confirmMode = ConfirmMode.NONE;
+
+    private int confirmWindow;
+
+    private int shardCount;
+
+    private ShardStrategy shardStrategy = ShardStrategy.ROUND_ROBIN;
+
+    private int shard = -1;
+
+    private boolean useNio;
+
+    private int nioThreads;
+
+    private int nioBufferSize;
+
+    private int dispatchThreads;
+
+    private boolean useLoopback;
+
+    private boolean useRecovery;
+
+    private int recoveryInitialDelay;
+
+    private int recoveryMaxDelay;
+
     public ChannelConfigurationImpl(String virtualHost, List<String> hosts, int port, String username, String password, boolean useTx) {
         this.virtualHost = virtualHost;
         this.hosts.addAll(hosts);
@@ -85,6 +115,141 @@ public class ChannelConfigurationImpl implements ChannelConfiguration{
         this.routingKey = routingKey;
     }
 
+    @Override
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    @Override
+    public int getChannelsPerConnection() {
+        return channelsPerConnection;
+    }
+
+    public void setChannelsPerConnection(int channelsPerConnection) {
+        this.channelsPerConnection = channelsPerConnection;
+    }
+
+    @Override
+    public ConfirmMode getConfirmMode() {
+        return confirmMode;
+    }
+
+    public void setConfirmMode(ConfirmMode confirmMode) {
+        this.confirmMode = confirmMode;
+    }
+
+    @Override
+    public int getConfirmWindow() {
+        return confirmWindow;
+    }
+
+    public void setConfirmWindow(int confirmWindow) {
+        this.confirmWindow = confirmWindow;
+    }
+
+    @Override
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    @Override
+    public ShardStrategy getShardStrategy() {
+        return shardStrategy;
+    }
+
+    public void setShardStrategy(ShardStrategy shardStrategy) {
+        this.shardStrategy = shardStrategy;
+    }
+
+    @Override
+    public int getShard() {
+        return shard;
+    }
+
+    public void setShard(int shard) {
+        this.shard = shard;
+    }
+
+    @Override
+    public boolean useNio() {
+        return useNio;
+    }
+
+    public void setUseNio(boolean useNio) {
+        this.useNio = useNio;
+    }
+
+    @Override
+    public int getNioThreads() {
+        return nioThreads;
+    }
+
+    public void setNioThreads(int nioThreads) {
+        this.nioThreads = nioThreads;
+    }
+
+    @Override
+    public int getNioBufferSize() {
+        return nioBufferSize;
+    }
+
+    public void setNioBufferSize(int nioBufferSize) {
+        this.nioBufferSize = nioBufferSize;
+    }
+
+    @Override
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    public void setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads;
+    }
+
+    @Override
+    public boolean useLoopback() {
+        return useLoopback;
+    }
+
+    public void setUseLoopback(boolean useLoopback) {
+        this.useLoopback = useLoopback;
+    }
+
+    @Override
+    public boolean useRecovery() {
+        return useRecovery;
+    }
+
+    public void setUseRecovery(boolean useRecovery) {
+        this.useRecovery = useRecovery;
+    }
+
+    @Override
+    public int getRecoveryInitialDelay() {
+        return recoveryInitialDelay;
+    }
+
+    public void setRecoveryInitialDelay(int recoveryInitialDelay) {
+        this.recoveryInitialDelay = recoveryInitialDelay;
+    }
+
+    @Override
+    public int getRecoveryMaxDelay() {
+        return recoveryMaxDelay;
+    }
+
+    public void setRecoveryMaxDelay(int recoveryMaxDelay) {
+        this.recoveryMaxDelay = recoveryMaxDelay;
+    }
+
     @Override
     public QueueConfiguration getQueueConfiguration() {
         return queueConfiguration;
@@ -117,6 +282,21 @@ public class ChannelConfigurationImpl implements ChannelConfiguration{
                 ", queueConfiguration=" + queueConfiguration +
                 ", exchangeConfiguration=" + exchangeConfiguration +
                 ", routingKey='" + routingKey + '\'' +
+                ", connectionPoolSize=" + connectionPoolSize +
+                ", channelsPerConnection=" + channelsPerConnection +
+                ", confirmMode=" + confirmMode +
+                ", confirmWindow=" + confirmWindow +
+                ", shardCount=" + shardCount +
+                ", shardStrategy=" + shardStrategy +
+                ", shard=" + shard +
+                ", useNio=" + useNio +
+                ", nioThreads=" + nioThreads +
+                ", nioBufferSize=" + nioBufferSize +
+                ", dispatchThreads=" + dispatchThreads +
+                ", useLoopback=" + useLoopback +
+                ", useRecovery=" + useRecovery +
+                ", recoveryInitialDelay=" + recoveryInitialDelay +
+                ", recoveryMaxDelay=" + recoveryMaxDelay +
                 '}';
     }
 }
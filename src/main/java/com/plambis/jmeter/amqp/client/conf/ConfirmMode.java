@@ -0,0 +1,41 @@
+package com.plambis.jmeter.amqp.client.conf;
+
+/**
+ * How a publisher waits for broker confirms.
+ */
+public enum ConfirmMode {
+    /** No publisher confirms, messages are fire-and-forget (or transactional). */
+    NONE("none"),
+    /** Every message waits for its confirm before the next one is published. */
+    SYNC("sync"),
+    /** Up to a window of messages may be unconfirmed, the sample waits for all of them at the end. */
+    ASYNC("async");
+
+    private final String label;
+
+    ConfirmMode(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static String[] labels() {
+        ConfirmMode[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static ConfirmMode valueByLabel(String label) {
+        for (ConfirmMode mode : values()) {
+            if (mode.getLabel().equalsIgnoreCase(label)) {
+                return mode;
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,39 @@
+package com.plambis.jmeter.amqp.client.conf;
+
+/**
+ * How a consumer obtains messages from its queue.
+ */
+public enum ConsumeMode {
+    /** One synchronous basic.get round-trip per sample. */
+    PULL("pull"),
+    /** A basic.consume subscription feeding a bounded buffer the sampler takes from. */
+    PUSH("push");
+
+    private final String label;
+
+    ConsumeMode(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static String[] labels() {
+        ConsumeMode[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static ConsumeMode valueByLabel(String label) {
+        for (ConsumeMode mode : values()) {
+            if (mode.getLabel().equalsIgnoreCase(label)) {
+                return mode;
+            }
+        }
+        return PULL;
+    }
+}
@@ -1,5 +1,7 @@
 package com.plambis.jmeter.amqp.client.conf;
 
+import com.plambis.jmeter.amqp.client.MessageSequence;
+
 import java.util.Map;
 
 public interface MessagePublisherConfiguration {
@@ -17,4 +19,23 @@ public interface MessagePublisherConfiguration {
 
     Map<String, String> getHeaders();
 
+    boolean isStampSendTime();
+
+    String getRunId();
+
+    /**
+     * @return the sequence numbers stamped into the messages, null when they are not stamped
+     */
+    MessageSequence getSequence();
+
+    /**
+     * @return the content-encoding of the published bodies, null when they are not encoded
+     */
+    String getContentEncoding();
+
+    /**
+     * @return whether messages are published as mandatory, so the broker returns those no queue is bound for
+     */
+    boolean isMandatory();
+
 }
@@ -1,5 +1,7 @@
 package com.plambis.jmeter.amqp.client.conf;
 
+import com.plambis.jmeter.amqp.client.MessageSequence;
+
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -20,6 +22,16 @@ public class MessagePublisherConfigurationImpl  implements  MessagePublisherConf
 
     private final boolean persistent;
 
+    private boolean stampSendTime;
+
+    private String runId;
+
+    private String contentEncoding;
+
+    private MessageSequence sequence;
+
+    private boolean mandatory;
+
     public MessagePublisherConfigurationImpl(String contentType, String correlationId, String replyToQueue, String messageType, String messageId, boolean persistent) {
         this.contentType = contentType;
         this.correlationId = correlationId;
@@ -53,6 +65,46 @@ public class MessagePublisherConfigurationImpl  implements  MessagePublisherConf
         return persistent;
     }
 
+    public boolean isStampSendTime() {
+        return stampSendTime;
+    }
+
+    public void setStampSendTime(boolean stampSendTime) {
+        this.stampSendTime = stampSendTime;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public MessageSequence getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(MessageSequence sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public boolean isMandatory() {
+        return mandatory;
+    }
+
+    public void setMandatory(boolean mandatory) {
+        this.mandatory = mandatory;
+    }
+
     public void addHeaders(Map<String, String> msgHeaders){
         this.headers.putAll(msgHeaders);
     }
@@ -0,0 +1,41 @@
+package com.plambis.jmeter.amqp.client.conf;
+
+/**
+ * Which per-message timings an aggregated publisher sample carries.
+ */
+public enum MessageTimingMode {
+    /** Only the sample as a whole is timed. */
+    NONE("none"),
+    /** Min, max and percentiles of the message publish times as response headers. */
+    HISTOGRAM("histogram"),
+    /** The histogram headers plus one sub-result for each of the slowest messages. */
+    SLOWEST("slowest");
+
+    private final String label;
+
+    MessageTimingMode(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static String[] labels() {
+        MessageTimingMode[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static MessageTimingMode valueByLabel(String label) {
+        for (MessageTimingMode mode : values()) {
+            if (mode.getLabel().equalsIgnoreCase(label)) {
+                return mode;
+            }
+        }
+        return NONE;
+    }
+}
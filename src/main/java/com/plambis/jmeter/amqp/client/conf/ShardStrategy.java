@@ -0,0 +1,46 @@
+package com.plambis.jmeter.amqp.client.conf;
+
+/**
+ * How a publisher spreads messages across the shard queues.
+ */
+public enum ShardStrategy {
+    /** Every message goes to the next shard in turn. */
+    ROUND_ROBIN("round-robin"),
+    /**
+     * The shard is chosen by a hash of the first {@value com.plambis.jmeter.amqp.client.ShardRouter#HASH_PREFIX_BYTES}
+     * body bytes, bodies starting alike always go to the same shard.
+     */
+    HASH("hash"),
+    /** The broker picks the shard: the exchange is declared as x-consistent-hash and hashes the routing key. */
+    CONSISTENT_HASH("x-consistent-hash");
+
+    public static final String CONSISTENT_HASH_EXCHANGE_TYPE = "x-consistent-hash";
+
+    private final String label;
+
+    ShardStrategy(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static String[] labels() {
+        ShardStrategy[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static ShardStrategy valueByLabel(String label) {
+        for (ShardStrategy strategy : values()) {
+            if (strategy.getLabel().equalsIgnoreCase(label)) {
+                return strategy;
+            }
+        }
+        return ROUND_ROBIN;
+    }
+}
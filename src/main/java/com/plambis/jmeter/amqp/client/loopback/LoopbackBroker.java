@@ -0,0 +1,184 @@
+package com.plambis.jmeter.amqp.client.loopback;
+
+import com.rabbitmq.client.Connection;
+import org.apache.jmeter.util.JMeterUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-JVM stand-in for a broker virtual host. Connections to it hand out channels whose publishes go straight into
+ * bounded in-memory queues, routed by the rules of the declared exchange types, and whose gets and consumers read
+ * from them. Running a plan against it shows the message rate the sampler stack itself can sustain.
+ * <p>
+ * Queues hold {@code x-max-length} messages, or {@value #CAPACITY_PROPERTY} (default {@value #DEFAULT_CAPACITY}).
+ * A publish to a full queue waits up to {@value #PUBLISH_TIMEOUT_PROPERTY} ms (default
+ * {@value #DEFAULT_PUBLISH_TIMEOUT}) and is then dropped, negatively confirmed in confirm mode.
+ * <p>
+ * Nothing survives the test: {@link #shutdownAll()} closes all loopback connections and forgets the virtual hosts.
+ */
+public final class LoopbackBroker {
+    private static final Logger log = LoggerFactory.getLogger(LoopbackBroker.class);
+
+    public static final String CAPACITY_PROPERTY = "amqp.loopback.capacity";
+    public static final int DEFAULT_CAPACITY = 100000;
+    public static final String PUBLISH_TIMEOUT_PROPERTY = "amqp.loopback.publish.timeout";
+    public static final int DEFAULT_PUBLISH_TIMEOUT = 1000;
+
+    static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+    private static final String MAX_LENGTH_ARGUMENT = "x-max-length";
+
+    private static final ConcurrentMap<String, LoopbackBroker> BROKERS = new ConcurrentHashMap<>();
+
+    private final String virtualHost;
+    private final ConcurrentMap<String, LoopbackExchange> exchanges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LoopbackQueue> queues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LoopbackChannel> replyChannels = new ConcurrentHashMap<>();
+    private final List<LoopbackConnection> connections = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    final int capacity = JMeterUtils.getPropDefault(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+    final long publishTimeoutMillis = JMeterUtils.getPropDefault(PUBLISH_TIMEOUT_PROPERTY, DEFAULT_PUBLISH_TIMEOUT);
+
+    private LoopbackBroker(String virtualHost) {
+        this.virtualHost = virtualHost;
+        for (String type : new String[]{LoopbackExchange.DIRECT, LoopbackExchange.FANOUT, LoopbackExchange.TOPIC,
+                LoopbackExchange.HEADERS}) {
+            exchanges.put("amq." + type, new LoopbackExchange("amq." + type, type));
+        }
+    }
+
+    public static Connection newConnection(String virtualHost) {
+        LoopbackBroker broker = BROKERS.computeIfAbsent(virtualHost, LoopbackBroker::new);
+        LoopbackConnection connection = new LoopbackConnection(broker, "loopback-" + broker.sequence.incrementAndGet());
+        broker.connections.add(connection);
+        return connection.proxy();
+    }
+
+    /**
+     * Closes every loopback connection and discards all virtual hosts with their queues.
+     */
+    public static void shutdownAll() {
+        for (LoopbackBroker broker : BROKERS.values()) {
+            for (LoopbackConnection connection : broker.connections) {
+                connection.close(true);
+            }
+            long dropped = broker.queues.values().stream().mapToLong(queue -> queue.dropped.get()).sum();
+            if (dropped > 0) {
+                log.warn("Loopback virtual host {} dropped {} message(s) on full queues", broker.virtualHost, dropped);
+            }
+        }
+        BROKERS.clear();
+    }
+
+    void connectionClosed(LoopbackConnection connection) {
+        connections.remove(connection);
+    }
+
+    String nextName(String prefix) {
+        return prefix + sequence.incrementAndGet();
+    }
+
+    // exchanges
+
+    void declareExchange(String name, String type) throws IOException {
+        LoopbackExchange existing = exchanges.putIfAbsent(name, new LoopbackExchange(name, type));
+        if (existing != null && !existing.type.equals(type)) {
+            throw new IOException("PRECONDITION_FAILED - inequivalent arg 'type' for exchange '" + name + "': received '"
+                    + type + "' but current is '" + existing.type + "'");
+        }
+    }
+
+    LoopbackExchange exchange(String name) throws IOException {
+        LoopbackExchange exchange = exchanges.get(name);
+        if (exchange == null) {
+            throw new IOException("NOT_FOUND - no exchange '" + name + "' in vhost '" + virtualHost + "'");
+        }
+        return exchange;
+    }
+
+    void deleteExchange(String name) {
+        exchanges.remove(name);
+    }
+
+    // queues
+
+    LoopbackQueue declareQueue(String name, boolean exclusive, boolean autoDelete, Map<String, Object> arguments) {
+        return queues.computeIfAbsent(name, k -> new LoopbackQueue(k, exclusive, autoDelete, capacity(arguments)));
+    }
+
+    private int capacity(Map<String, Object> arguments) {
+        Object maxLength = arguments == null ? null : arguments.get(MAX_LENGTH_ARGUMENT);
+        if (maxLength == null) {
+            return capacity;
+        }
+        try {
+            return Integer.parseInt(maxLength.toString().trim());
+        } catch (NumberFormatException e) {
+            return capacity;
+        }
+    }
+
+    LoopbackQueue queue(String name) throws IOException {
+        LoopbackQueue queue = queues.get(name);
+        if (queue == null) {
+            throw new IOException("NOT_FOUND - no queue '" + name + "' in vhost '" + virtualHost + "'");
+        }
+        return queue;
+    }
+
+    int deleteQueue(String name) {
+        LoopbackQueue queue = queues.remove(name);
+        if (queue == null) {
+            return 0;
+        }
+        for (LoopbackExchange exchange : exchanges.values()) {
+            exchange.unbindAll(queue);
+        }
+        return queue.purge();
+    }
+
+    // routing
+
+    /**
+     * @return the queues the message goes to, empty when it is unroutable
+     * @throws IOException when the exchange does not exist
+     */
+    List<LoopbackQueue> route(String exchangeName, String routingKey, Map<String, Object> headers) throws IOException {
+        if (exchangeName.isEmpty()) {
+            List<LoopbackQueue> routed = new ArrayList<>(1);
+            LoopbackQueue queue = queues.get(routingKey);
+            if (queue != null) {
+                routed.add(queue);
+            }
+            return routed;
+        }
+        return exchange(exchangeName).route(routingKey, headers);
+    }
+
+    /**
+     * Registers the channel consuming its direct replies.
+     *
+     * @return the reply-to address requests of the channel are published with
+     */
+    String registerReplyChannel(LoopbackChannel channel) {
+        String address = DIRECT_REPLY_TO + "." + nextName("");
+        replyChannels.put(address, channel);
+        return address;
+    }
+
+    void unregisterReplyChannel(String address) {
+        replyChannels.remove(address);
+    }
+
+    LoopbackChannel replyChannel(String address) {
+        return replyChannels.get(address);
+    }
+}
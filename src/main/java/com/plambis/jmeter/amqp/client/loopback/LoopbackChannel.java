@@ -0,0 +1,748 @@
+package com.plambis.jmeter.amqp.client.loopback;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.CancelCallback;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmCallback;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.ConsumerShutdownSignalCallback;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.Return;
+import com.rabbitmq.client.ReturnCallback;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.impl.AMQImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Channel} of a {@link LoopbackConnection}, implemented as a dynamic proxy so it follows the client's
+ * interface. Supports what the samplers use: topology declaration, publishing with transactions, confirms and
+ * mandatory returns, basic.get, consumers with prefetch, acknowledgements and direct reply-to. Operations beyond that,
+ * such as exchange to exchange bindings, fail with an {@link IOException}.
+ * <p>
+ * Confirms are sent as soon as the message is in its queues, from the publishing thread. Each consumer is fed by a
+ * daemon thread of its own; deliveries to the consumers of one channel never overlap, like with the real client.
+ */
+final class LoopbackChannel implements InvocationHandler {
+    private static final Logger log = LoggerFactory.getLogger(LoopbackChannel.class);
+
+    private static final String REPLY_ADDRESS_PREFIX = LoopbackBroker.DIRECT_REPLY_TO + ".";
+    private static final int NO_ROUTE = 312;
+    private static final long POLL_MILLIS = 100;
+
+    private final LoopbackConnection connection;
+    private final LoopbackBroker broker;
+    final int number;
+    private final Channel proxy;
+
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private final List<ReturnListener> returnListeners = new CopyOnWriteArrayList<>();
+    private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, Dispatcher> dispatchers = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Unacked> unacked = new ConcurrentSkipListMap<>();
+    private final AtomicLong deliveryTags = new AtomicLong();
+    private final Object dispatchLock = new Object();
+
+    private volatile ShutdownSignalException closeReason;
+    private volatile int prefetchCount;
+    private volatile Consumer defaultConsumer;
+    private List<LoopbackMessage> transaction;
+    private long nextPublishSeqNo;
+    private volatile LoopbackQueue replyQueue;
+    private String replyAddress;
+
+    LoopbackChannel(LoopbackConnection connection, int number) {
+        this.connection = connection;
+        this.broker = connection.broker;
+        this.number = number;
+        this.proxy = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+                new Class<?>[]{Channel.class, Recoverable.class}, this);
+    }
+
+    Channel proxy() {
+        return proxy;
+    }
+
+    private boolean isOpen() {
+        return closeReason == null;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        switch (name) {
+            case "getChannelNumber":
+                return number;
+            case "getConnection":
+                return connection.proxy();
+            case "isOpen":
+                return isOpen();
+            case "getCloseReason":
+                return closeReason;
+            case "close":
+            case "abort":
+                close(new ShutdownSignalException(false, true, null, this.proxy));
+                return null;
+            case "addShutdownListener":
+                shutdownListeners.add((ShutdownListener) args[0]);
+                return null;
+            case "removeShutdownListener":
+                shutdownListeners.remove(args[0]);
+                return null;
+            case "notifyListeners":
+                return null;
+            case "addRecoveryListener":
+            case "removeRecoveryListener":
+                // loopback channels are never lost, so there is nothing to recover
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "LoopbackChannel{" + number + "}";
+            default:
+        }
+        if (!isOpen()) {
+            throw new AlreadyClosedException(closeReason);
+        }
+        if (name.endsWith("NoWait")) {
+            call(name.substring(0, name.length() - "NoWait".length()), args);
+            return null;
+        }
+        return call(name, args);
+    }
+
+    private Object call(String name, Object[] args) throws IOException {
+        switch (name) {
+            case "addReturnListener":
+                return addReturnListener(args[0]);
+            case "removeReturnListener":
+                return returnListeners.remove(args[0]);
+            case "clearReturnListeners":
+                returnListeners.clear();
+                return null;
+            case "addConfirmListener":
+                return addConfirmListener(args);
+            case "removeConfirmListener":
+                return confirmListeners.remove(args[0]);
+            case "clearConfirmListeners":
+                confirmListeners.clear();
+                return null;
+            case "getDefaultConsumer":
+                return defaultConsumer;
+            case "setDefaultConsumer":
+                defaultConsumer = (Consumer) args[0];
+                return null;
+            case "basicQos":
+                prefetchCount = (Integer) args[args.length == 3 ? 1 : 0];
+                return new AMQImpl.Basic.QosOk();
+            case "basicPublish":
+                basicPublish(args);
+                return null;
+            case "basicGet":
+                return basicGet((String) args[0], (Boolean) args[1]);
+            case "basicConsume":
+                return basicConsume(args);
+            case "basicCancel":
+                basicCancel((String) args[0]);
+                return null;
+            case "basicAck":
+                settle((Long) args[0], (Boolean) args[1], false);
+                return null;
+            case "basicNack":
+                settle((Long) args[0], (Boolean) args[1], (Boolean) args[2]);
+                return null;
+            case "basicReject":
+                settle((Long) args[0], false, (Boolean) args[1]);
+                return null;
+            case "basicRecover":
+                recover();
+                return new AMQImpl.Basic.RecoverOk();
+            case "exchangeDeclare":
+                return exchangeDeclare(args);
+            case "exchangeDeclarePassive":
+                passive(() -> broker.exchange((String) args[0]));
+                return new AMQImpl.Exchange.DeclareOk();
+            case "exchangeDelete":
+                broker.deleteExchange((String) args[0]);
+                return new AMQImpl.Exchange.DeleteOk();
+            case "queueDeclare":
+                return queueDeclare(args);
+            case "queueDeclarePassive":
+                LoopbackQueue queue = passive(() -> broker.queue((String) args[0]));
+                return new AMQImpl.Queue.DeclareOk(queue.name, queue.size(), queue.consumers.get());
+            case "queueBind":
+                broker.exchange((String) args[1]).bind(broker.queue((String) args[0]), (String) args[2],
+                        args.length > 3 ? arguments(args[3]) : null);
+                return new AMQImpl.Queue.BindOk();
+            case "queueUnbind":
+                broker.exchange((String) args[1]).unbind(broker.queue((String) args[0]), (String) args[2]);
+                return new AMQImpl.Queue.UnbindOk();
+            case "queuePurge":
+                return new AMQImpl.Queue.PurgeOk(broker.queue((String) args[0]).purge());
+            case "queueDelete":
+                return new AMQImpl.Queue.DeleteOk(broker.deleteQueue((String) args[0]));
+            case "messageCount":
+                return (long) broker.queue((String) args[0]).size();
+            case "consumerCount":
+                return (long) broker.queue((String) args[0]).consumers.get();
+            case "confirmSelect":
+                synchronized (this) {
+                    if (nextPublishSeqNo == 0) {
+                        nextPublishSeqNo = 1;
+                    }
+                }
+                return new AMQImpl.Confirm.SelectOk();
+            case "getNextPublishSeqNo":
+                synchronized (this) {
+                    return nextPublishSeqNo;
+                }
+            case "waitForConfirms":
+                return true;
+            case "waitForConfirmsOrDie":
+                return null;
+            case "txSelect":
+                synchronized (this) {
+                    if (transaction == null) {
+                        transaction = new ArrayList<>();
+                    }
+                }
+                return new AMQImpl.Tx.SelectOk();
+            case "txCommit":
+                txCommit();
+                return new AMQImpl.Tx.CommitOk();
+            case "txRollback":
+                synchronized (this) {
+                    if (transaction != null) {
+                        transaction.clear();
+                    }
+                }
+                return new AMQImpl.Tx.RollbackOk();
+            default:
+                throw new IOException("NOT_IMPLEMENTED - Channel." + name + " is not supported by the loopback broker");
+        }
+    }
+
+    // publishing
+
+    private ReturnListener addReturnListener(Object listener) {
+        ReturnListener returnListener;
+        if (listener instanceof ReturnListener) {
+            returnListener = (ReturnListener) listener;
+        } else {
+            ReturnCallback callback = (ReturnCallback) listener;
+            returnListener = (replyCode, replyText, exchange, routingKey, properties, body) ->
+                    callback.handle(new Return(replyCode, replyText, exchange, routingKey, properties, body));
+        }
+        returnListeners.add(returnListener);
+        return returnListener;
+    }
+
+    private ConfirmListener addConfirmListener(Object[] args) {
+        ConfirmListener confirmListener;
+        if (args.length == 1) {
+            confirmListener = (ConfirmListener) args[0];
+        } else {
+            ConfirmCallback ack = (ConfirmCallback) args[0];
+            ConfirmCallback nack = (ConfirmCallback) args[1];
+            confirmListener = new ConfirmListener() {
+                @Override
+                public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+                    ack.handle(deliveryTag, multiple);
+                }
+
+                @Override
+                public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+                    nack.handle(deliveryTag, multiple);
+                }
+            };
+        }
+        confirmListeners.add(confirmListener);
+        return confirmListener;
+    }
+
+    /**
+     * basicPublish(exchange, routingKey, [mandatory, [immediate,]] props, body)
+     */
+    private synchronized void basicPublish(Object[] args) throws IOException {
+        String exchangeName = (String) args[0];
+        String routingKey = (String) args[1];
+        boolean mandatory = args.length > 4 && (Boolean) args[2];
+        AMQP.BasicProperties properties = (AMQP.BasicProperties) args[args.length - 2];
+        byte[] body = (byte[]) args[args.length - 1];
+        if (properties != null && LoopbackBroker.DIRECT_REPLY_TO.equals(properties.getReplyTo())) {
+            if (replyAddress == null) {
+                throw new IOException("PRECONDITION_FAILED - fast reply consumer does not exist");
+            }
+            properties = properties.builder().replyTo(replyAddress).build();
+        }
+        LoopbackMessage message = new LoopbackMessage(exchangeName, routingKey, properties, body, false);
+        if (transaction != null) {
+            transaction.add(message);
+            return;
+        }
+        long seqNo = nextPublishSeqNo;
+        if (seqNo > 0) {
+            nextPublishSeqNo++;
+        }
+        boolean stored = deliver(message, mandatory);
+        if (seqNo > 0) {
+            for (ConfirmListener listener : confirmListeners) {
+                if (stored) {
+                    listener.handleAck(seqNo, false);
+                } else {
+                    listener.handleNack(seqNo, false);
+                }
+            }
+        }
+    }
+
+    private synchronized void txCommit() throws IOException {
+        if (transaction == null) {
+            throw new IOException("PRECONDITION_FAILED - channel is not transactional");
+        }
+        for (LoopbackMessage message : transaction) {
+            deliver(message, false);
+        }
+        transaction.clear();
+    }
+
+    /**
+     * @return false when a queue the message is routed to stayed full, the message is dropped there
+     */
+    private boolean deliver(LoopbackMessage message, boolean mandatory) throws IOException {
+        List<LoopbackQueue> queues;
+        if (message.exchangeName.isEmpty() && message.routingKey.startsWith(REPLY_ADDRESS_PREFIX)) {
+            LoopbackChannel replyChannel = broker.replyChannel(message.routingKey);
+            queues = new ArrayList<>(1);
+            if (replyChannel != null) {
+                queues.add(replyChannel.replyQueue);
+            }
+        } else {
+            queues = broker.route(message.exchangeName, message.routingKey,
+                    message.properties == null ? null : message.properties.getHeaders());
+        }
+        if (queues.isEmpty()) {
+            if (mandatory) {
+                for (ReturnListener listener : returnListeners) {
+                    listener.handleReturn(NO_ROUTE, "NO_ROUTE", message.exchangeName, message.routingKey,
+                            message.properties, message.body);
+                }
+            }
+            return true;
+        }
+        boolean stored = true;
+        try {
+            for (LoopbackQueue queue : queues) {
+                stored &= queue.offer(message, broker.publishTimeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a full loopback queue");
+        }
+        return stored;
+    }
+
+    // consuming
+
+    private GetResponse basicGet(String queueName, boolean autoAck) throws IOException {
+        LoopbackQueue queue = broker.queue(queueName);
+        LoopbackMessage message = queue.poll();
+        if (message == null) {
+            return null;
+        }
+        long deliveryTag = deliveryTags.incrementAndGet();
+        if (!autoAck) {
+            unacked.put(deliveryTag, new Unacked(queue, message, null));
+        }
+        return new GetResponse(envelope(deliveryTag, message), message.properties, message.body, queue.size());
+    }
+
+    /**
+     * basicConsume(queue, [autoAck, [consumerTag | arguments, [noLocal, exclusive, arguments,]]] consumer)
+     */
+    private String basicConsume(Object[] args) throws IOException {
+        if (!(args[args.length - 1] instanceof Consumer)) {
+            args = withCallbackConsumer(args);
+        }
+        String queueName = (String) args[0];
+        boolean autoAck = args.length > 2 && (Boolean) args[1];
+        String consumerTag = args.length > 3 && args[2] instanceof String ? (String) args[2] : "";
+        Consumer consumer = (Consumer) args[args.length - 1];
+
+        LoopbackQueue queue;
+        if (LoopbackBroker.DIRECT_REPLY_TO.equals(queueName)) {
+            if (!autoAck) {
+                throw new IOException("PRECONDITION_FAILED - reply consumer cannot acknowledge");
+            }
+            synchronized (this) {
+                if (replyAddress != null) {
+                    throw new IOException("PRECONDITION_FAILED - reply consumer already set");
+                }
+                replyQueue = new LoopbackQueue(queueName, true, true, broker.capacity);
+                replyAddress = broker.registerReplyChannel(this);
+            }
+            queue = replyQueue;
+        } else {
+            queue = broker.queue(queueName);
+        }
+        if (consumerTag.isEmpty()) {
+            consumerTag = broker.nextName("amq.ctag-");
+        }
+        Dispatcher dispatcher = new Dispatcher(consumerTag, queue, consumer, autoAck, prefetchCount);
+        if (dispatchers.putIfAbsent(consumerTag, dispatcher) != null) {
+            throw new IOException("NOT_ALLOWED - attempt to reuse consumer tag '" + consumerTag + "'");
+        }
+        queue.consumers.incrementAndGet();
+        consumer.handleConsumeOk(consumerTag);
+        dispatcher.start();
+        return consumerTag;
+    }
+
+    /**
+     * Replaces the trailing deliver, cancel and shutdown callbacks by a single {@link Consumer} invoking them.
+     */
+    private Object[] withCallbackConsumer(Object[] args) {
+        int first = args.length - 1;
+        while (first > 0 && !(args[first] instanceof DeliverCallback)) {
+            first--;
+        }
+        DeliverCallback deliver = (DeliverCallback) args[first];
+        CancelCallback cancel = null;
+        ConsumerShutdownSignalCallback shutdown = null;
+        for (int i = first + 1; i < args.length; i++) {
+            if (args[i] instanceof CancelCallback) {
+                cancel = (CancelCallback) args[i];
+            } else if (args[i] instanceof ConsumerShutdownSignalCallback) {
+                shutdown = (ConsumerShutdownSignalCallback) args[i];
+            }
+        }
+        Object[] consumerArgs = Arrays.copyOf(args, first + 1);
+        consumerArgs[first] = new CallbackConsumer(deliver, cancel, shutdown);
+        return consumerArgs;
+    }
+
+    private void basicCancel(String consumerTag) throws IOException {
+        Dispatcher dispatcher = dispatchers.remove(consumerTag);
+        if (dispatcher == null) {
+            throw new IOException("Unknown consumerTag " + consumerTag);
+        }
+        dispatcher.stop();
+        consumerRemoved(dispatcher);
+        dispatcher.consumer.handleCancelOk(consumerTag);
+    }
+
+    private void consumerRemoved(Dispatcher dispatcher) {
+        LoopbackQueue queue = dispatcher.queue;
+        if (queue == replyQueue) {
+            synchronized (this) {
+                broker.unregisterReplyChannel(replyAddress);
+                replyAddress = null;
+                replyQueue = null;
+            }
+        } else if (queue.consumers.decrementAndGet() == 0 && queue.autoDelete) {
+            broker.deleteQueue(queue.name);
+        }
+    }
+
+    private void settle(long deliveryTag, boolean multiple, boolean requeue) throws IOException {
+        if (!multiple) {
+            Unacked settled = unacked.remove(deliveryTag);
+            if (settled == null) {
+                close(new ShutdownSignalException(false, false, null, proxy));
+                throw new IOException("PRECONDITION_FAILED - unknown delivery tag " + deliveryTag);
+            }
+            settled.settle(requeue);
+            return;
+        }
+        Iterator<Unacked> it = unacked.headMap(deliveryTag, true).values().iterator();
+        while (it.hasNext()) {
+            Unacked settled = it.next();
+            it.remove();
+            settled.settle(requeue);
+        }
+    }
+
+    private void recover() {
+        Iterator<Unacked> it = unacked.values().iterator();
+        while (it.hasNext()) {
+            Unacked settled = it.next();
+            it.remove();
+            settled.settle(true);
+        }
+    }
+
+    private static Envelope envelope(long deliveryTag, LoopbackMessage message) {
+        return new Envelope(deliveryTag, message.redelivered, message.exchangeName, message.routingKey);
+    }
+
+    // topology
+
+    /**
+     * exchangeDeclare(exchange, type, [durable, [autoDelete, [internal,] arguments]])
+     */
+    private Object exchangeDeclare(Object[] args) throws IOException {
+        String type = args[1] instanceof BuiltinExchangeType ? ((BuiltinExchangeType) args[1]).getType() : (String) args[1];
+        broker.declareExchange((String) args[0], type);
+        return new AMQImpl.Exchange.DeclareOk();
+    }
+
+    /**
+     * queueDeclare() or queueDeclare(queue, durable, exclusive, autoDelete, arguments)
+     */
+    private Object queueDeclare(Object[] args) {
+        String queueName;
+        boolean exclusive;
+        boolean autoDelete;
+        Map<String, Object> arguments = null;
+        if (args == null || args.length == 0) {
+            queueName = "";
+            exclusive = true;
+            autoDelete = true;
+        } else {
+            queueName = (String) args[0];
+            exclusive = (Boolean) args[2];
+            autoDelete = (Boolean) args[3];
+            arguments = arguments(args[4]);
+        }
+        if (queueName.isEmpty()) {
+            queueName = broker.nextName("amq.gen-");
+        }
+        LoopbackQueue queue = broker.declareQueue(queueName, exclusive, autoDelete, arguments);
+        if (queue.exclusive) {
+            connection.exclusiveQueueDeclared(queue.name);
+        }
+        return new AMQImpl.Queue.DeclareOk(queue.name, queue.size(), queue.consumers.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> arguments(Object arguments) {
+        return (Map<String, Object>) arguments;
+    }
+
+    /**
+     * A failed passive declare closes the channel, like on a broker.
+     */
+    private <T> T passive(Lookup<T> lookup) throws IOException {
+        try {
+            return lookup.get();
+        } catch (IOException e) {
+            close(new ShutdownSignalException(false, false, null, proxy));
+            throw e;
+        }
+    }
+
+    private interface Lookup<T> {
+        T get() throws IOException;
+    }
+
+    // shutdown
+
+    /**
+     * Stops the consumers and requeues the messages they did not acknowledge.
+     */
+    void close(ShutdownSignalException reason) {
+        synchronized (this) {
+            if (!isOpen()) {
+                return;
+            }
+            closeReason = reason;
+        }
+        for (Dispatcher dispatcher : dispatchers.values()) {
+            dispatcher.stop();
+        }
+        for (Dispatcher dispatcher : dispatchers.values()) {
+            dispatchers.remove(dispatcher.consumerTag);
+            consumerRemoved(dispatcher);
+            try {
+                dispatcher.consumer.handleShutdownSignal(dispatcher.consumerTag, reason);
+            } catch (RuntimeException e) {
+                log.warn("Consumer {} failed to handle the shutdown of channel {}", dispatcher.consumerTag, number, e);
+            }
+        }
+        recover();
+        connection.channelClosed(this);
+        for (ShutdownListener listener : shutdownListeners) {
+            try {
+                listener.shutdownCompleted(reason);
+            } catch (RuntimeException e) {
+                log.warn("Shutdown listener of channel {} failed", number, e);
+            }
+        }
+    }
+
+    /**
+     * A delivered message not acknowledged yet, and the prefetch credit it holds.
+     */
+    private static final class Unacked {
+        private final LoopbackQueue queue;
+        private final LoopbackMessage message;
+        private final Semaphore credit;
+
+        private Unacked(LoopbackQueue queue, LoopbackMessage message, Semaphore credit) {
+            this.queue = queue;
+            this.message = message;
+            this.credit = credit;
+        }
+
+        private void settle(boolean requeue) {
+            if (requeue) {
+                queue.requeue(message);
+            }
+            if (credit != null) {
+                credit.release();
+            }
+        }
+    }
+
+    /**
+     * Feeds one consumer from its queue on a daemon thread, holding back while its prefetch count is used up.
+     */
+    private final class Dispatcher implements Runnable {
+        private final String consumerTag;
+        private final LoopbackQueue queue;
+        private final Consumer consumer;
+        private final boolean autoAck;
+        private final Semaphore credit;
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private Dispatcher(String consumerTag, LoopbackQueue queue, Consumer consumer, boolean autoAck, int prefetch) {
+            this.consumerTag = consumerTag;
+            this.queue = queue;
+            this.consumer = consumer;
+            this.autoAck = autoAck;
+            this.credit = !autoAck && prefetch > 0 ? new Semaphore(prefetch) : null;
+            this.thread = new Thread(this, "amqp-loopback-" + number + "-" + consumerTag);
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        /**
+         * The thread notices within {@value #POLL_MILLIS} ms, a delivery in progress is completed.
+         */
+        private void stop() {
+            running = false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    if (credit != null && !credit.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                    LoopbackMessage message = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (message == null) {
+                        if (credit != null) {
+                            credit.release();
+                        }
+                        continue;
+                    }
+                    dispatch(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void dispatch(LoopbackMessage message) {
+            long deliveryTag = deliveryTags.incrementAndGet();
+            if (!autoAck) {
+                unacked.put(deliveryTag, new Unacked(queue, message, credit));
+            }
+            synchronized (dispatchLock) {
+                if (!running) {
+                    Unacked undelivered = unacked.remove(deliveryTag);
+                    if (undelivered != null) {
+                        undelivered.settle(true);
+                    } else if (autoAck) {
+                        queue.requeue(message);
+                    }
+                    return;
+                }
+                try {
+                    consumer.handleDelivery(consumerTag, envelope(deliveryTag, message), message.properties, message.body);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Consumer {} of channel {} failed to handle a delivery", consumerTag, number, e);
+                }
+            }
+        }
+    }
+
+    private static final class CallbackConsumer implements Consumer {
+        private final DeliverCallback deliver;
+        private final CancelCallback cancel;
+        private final ConsumerShutdownSignalCallback shutdown;
+
+        private CallbackConsumer(DeliverCallback deliver, CancelCallback cancel, ConsumerShutdownSignalCallback shutdown) {
+            this.deliver = deliver;
+            this.cancel = cancel;
+            this.shutdown = shutdown;
+        }
+
+        @Override
+        public void handleConsumeOk(String consumerTag) {
+        }
+
+        @Override
+        public void handleCancelOk(String consumerTag) {
+        }
+
+        @Override
+        public void handleCancel(String consumerTag) throws IOException {
+            if (cancel != null) {
+                cancel.handle(consumerTag);
+            }
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            if (shutdown != null) {
+                shutdown.handleShutdownSignal(consumerTag, sig);
+            }
+        }
+
+        @Override
+        public void handleRecoverOk(String consumerTag) {
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+                throws IOException {
+            deliver.handle(consumerTag, new Delivery(envelope, properties, body));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.plambis.jmeter.amqp.client.loopback;
+
+import com.rabbitmq.client.BlockedCallback;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ExceptionHandler;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.UnblockedCallback;
+import com.rabbitmq.client.impl.DefaultExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Connection} to a {@link LoopbackBroker}, implemented as a dynamic proxy so it follows the client's interface.
+ * Exclusive queues declared through its channels are deleted when it closes. It is never blocked by the broker.
+ */
+final class LoopbackConnection implements InvocationHandler {
+    private static final Logger log = LoggerFactory.getLogger(LoopbackConnection.class);
+
+    private static final int CHANNEL_MAX = 2047;
+    private static final ExceptionHandler EXCEPTION_HANDLER = new DefaultExceptionHandler();
+
+    final LoopbackBroker broker;
+    private final String name;
+    private final Connection proxy;
+    private final AtomicInteger channelNumbers = new AtomicInteger();
+    private final List<LoopbackChannel> channels = new CopyOnWriteArrayList<>();
+    private final List<String> exclusiveQueues = new CopyOnWriteArrayList<>();
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private volatile ShutdownSignalException closeReason;
+    private volatile String id;
+
+    LoopbackConnection(LoopbackBroker broker, String name) {
+        this.broker = broker;
+        this.name = name;
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class, Recoverable.class}, this);
+    }
+
+    Connection proxy() {
+        return proxy;
+    }
+
+    boolean isOpen() {
+        return closeReason == null;
+    }
+
+    void exclusiveQueueDeclared(String queueName) {
+        exclusiveQueues.add(queueName);
+    }
+
+    void channelClosed(LoopbackChannel channel) {
+        channels.remove(channel);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "createChannel":
+                return createChannel(args);
+            case "openChannel":
+                return Optional.ofNullable(createChannel(args));
+            case "isOpen":
+                return isOpen();
+            case "close":
+                close(true);
+                return null;
+            case "abort":
+                close(false);
+                return null;
+            case "getCloseReason":
+                return closeReason;
+            case "addShutdownListener":
+                shutdownListeners.add((ShutdownListener) args[0]);
+                return null;
+            case "removeShutdownListener":
+                shutdownListeners.remove(args[0]);
+                return null;
+            case "addBlockedListener":
+                return args.length == 1 ? null : blockedListener((BlockedCallback) args[0], (UnblockedCallback) args[1]);
+            case "removeBlockedListener":
+                return true;
+            case "clearBlockedListeners":
+            case "notifyListeners":
+                return null;
+            case "addRecoveryListener":
+            case "removeRecoveryListener":
+                // loopback connections are never lost, so there is nothing to recover
+                return null;
+            case "getExceptionHandler":
+                return EXCEPTION_HANDLER;
+            case "getChannelMax":
+                return CHANNEL_MAX;
+            case "getFrameMax":
+            case "getHeartbeat":
+            case "getPort":
+                return 0;
+            case "getAddress":
+                return InetAddress.getLoopbackAddress();
+            case "getClientProperties":
+            case "getServerProperties":
+                return Collections.emptyMap();
+            case "getClientProvidedName":
+                return name;
+            case "getId":
+                return id;
+            case "setId":
+                id = (String) args[0];
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "LoopbackConnection{" + name + "}";
+            default:
+                throw new IOException("NOT_IMPLEMENTED - Connection." + method.getName()
+                        + " is not supported by the loopback broker");
+        }
+    }
+
+    /**
+     * createChannel([channelNumber])
+     *
+     * @return null when the requested number is taken or no channel numbers are left
+     */
+    private synchronized Channel createChannel(Object[] args) {
+        if (!isOpen()) {
+            throw closeReason;
+        }
+        int number;
+        if (args != null && args.length == 1) {
+            number = (Integer) args[0];
+            if (number < 1 || channelInUse(number)) {
+                return null;
+            }
+        } else {
+            do {
+                number = channelNumbers.incrementAndGet();
+            } while (number <= CHANNEL_MAX && channelInUse(number));
+        }
+        if (number > CHANNEL_MAX) {
+            return null;
+        }
+        LoopbackChannel channel = new LoopbackChannel(this, number);
+        channels.add(channel);
+        return channel.proxy();
+    }
+
+    private boolean channelInUse(int number) {
+        for (LoopbackChannel channel : channels) {
+            if (channel.number == number) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static BlockedListener blockedListener(BlockedCallback blocked, UnblockedCallback unblocked) {
+        return new BlockedListener() {
+            @Override
+            public void handleBlocked(String reason) throws java.io.IOException {
+                blocked.handle(reason);
+            }
+
+            @Override
+            public void handleUnblocked() throws java.io.IOException {
+                unblocked.handle();
+            }
+        };
+    }
+
+    void close(boolean initiatedByApplication) {
+        if (!isOpen()) {
+            return;
+        }
+        ShutdownSignalException reason = new ShutdownSignalException(true, initiatedByApplication, null, proxy);
+        closeReason = reason;
+        for (LoopbackChannel channel : channels) {
+            channel.close(reason);
+        }
+        for (String queueName : exclusiveQueues) {
+            broker.deleteQueue(queueName);
+        }
+        broker.connectionClosed(this);
+        for (ShutdownListener listener : shutdownListeners) {
+            try {
+                listener.shutdownCompleted(reason);
+            } catch (RuntimeException e) {
+                log.warn("Shutdown listener of {} failed", name, e);
+            }
+        }
+    }
+}
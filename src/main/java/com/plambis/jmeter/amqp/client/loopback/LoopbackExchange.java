@@ -0,0 +1,167 @@
+package com.plambis.jmeter.amqp.client.loopback;
+
+import com.plambis.jmeter.amqp.client.conf.ShardStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An exchange with the routing rules of its type: direct, fanout, topic, headers and x-consistent-hash. Unknown types
+ * route like direct.
+ */
+final class LoopbackExchange {
+    static final String DIRECT = "direct";
+    static final String FANOUT = "fanout";
+    static final String TOPIC = "topic";
+    static final String HEADERS = "headers";
+
+    final String name;
+    final String type;
+    private final List<Binding> bindings = new CopyOnWriteArrayList<>();
+
+    LoopbackExchange(String name, String type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    void bind(LoopbackQueue queue, String bindingKey, Map<String, Object> arguments) {
+        for (Binding binding : bindings) {
+            if (binding.queue == queue && binding.key.equals(bindingKey)) {
+                return;
+            }
+        }
+        bindings.add(new Binding(queue, bindingKey, arguments));
+    }
+
+    void unbind(LoopbackQueue queue, String bindingKey) {
+        bindings.removeIf(binding -> binding.queue == queue && binding.key.equals(bindingKey));
+    }
+
+    void unbindAll(LoopbackQueue queue) {
+        bindings.removeIf(binding -> binding.queue == queue);
+    }
+
+    /**
+     * @return the queues the message is routed to, each at most once
+     */
+    List<LoopbackQueue> route(String routingKey, Map<String, Object> headers) {
+        List<LoopbackQueue> queues = new ArrayList<>(2);
+        if (ShardStrategy.CONSISTENT_HASH_EXCHANGE_TYPE.equals(type)) {
+            LoopbackQueue queue = routeByHash(routingKey);
+            if (queue != null) {
+                queues.add(queue);
+            }
+            return queues;
+        }
+        String[] routingWords = TOPIC.equals(type) ? routingKey.split("\\.", -1) : null;
+        for (Binding binding : bindings) {
+            if (!queues.contains(binding.queue) && matches(binding, routingKey, routingWords, headers)) {
+                queues.add(binding.queue);
+            }
+        }
+        return queues;
+    }
+
+    private boolean matches(Binding binding, String routingKey, String[] routingWords, Map<String, Object> headers) {
+        switch (type) {
+            case FANOUT:
+                return true;
+            case TOPIC:
+                return matchesTopic(binding.words, 0, routingWords, 0);
+            case HEADERS:
+                return matchesHeaders(binding.arguments, headers);
+            case DIRECT:
+            default:
+                return binding.key.equals(routingKey);
+        }
+    }
+
+    /**
+     * '*' matches exactly one word, '#' zero or more words.
+     */
+    private static boolean matchesTopic(String[] pattern, int p, String[] words, int w) {
+        if (p == pattern.length) {
+            return w == words.length;
+        }
+        if ("#".equals(pattern[p])) {
+            for (int skip = w; skip <= words.length; skip++) {
+                if (matchesTopic(pattern, p + 1, words, skip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (w == words.length) {
+            return false;
+        }
+        return ("*".equals(pattern[p]) || pattern[p].equals(words[w])) && matchesTopic(pattern, p + 1, words, w + 1);
+    }
+
+    private static boolean matchesHeaders(Map<String, Object> arguments, Map<String, Object> headers) {
+        if (arguments == null) {
+            return true;
+        }
+        boolean any = "any".equals(String.valueOf(arguments.get("x-match")));
+        boolean matchedAny = false;
+        for (Map.Entry<String, Object> argument : arguments.entrySet()) {
+            if (argument.getKey().startsWith("x-")) {
+                continue;
+            }
+            Object value = headers == null ? null : headers.get(argument.getKey());
+            boolean matched = value != null && String.valueOf(value).equals(String.valueOf(argument.getValue()));
+            if (matched && any) {
+                return true;
+            }
+            if (!matched && !any) {
+                return false;
+            }
+            matchedAny |= matched;
+        }
+        return !any || matchedAny;
+    }
+
+    /**
+     * Like the x-consistent-hash exchange, binding keys are weights and the routing key is hashed onto them.
+     */
+    private LoopbackQueue routeByHash(String routingKey) {
+        int totalWeight = 0;
+        for (Binding binding : bindings) {
+            totalWeight += binding.weight;
+        }
+        if (totalWeight == 0) {
+            return null;
+        }
+        int point = Math.floorMod(routingKey.hashCode() * 0x9E3779B9, totalWeight);
+        for (Binding binding : bindings) {
+            point -= binding.weight;
+            if (point < 0) {
+                return binding.queue;
+            }
+        }
+        return null;
+    }
+
+    private static final class Binding {
+        private final LoopbackQueue queue;
+        private final String key;
+        private final String[] words;
+        private final Map<String, Object> arguments;
+        private final int weight;
+
+        private Binding(LoopbackQueue queue, String key, Map<String, Object> arguments) {
+            this.queue = queue;
+            this.key = key;
+            this.words = key.split("\\.", -1);
+            this.arguments = arguments;
+            int parsed;
+            try {
+                parsed = Math.max(0, Integer.parseInt(key.trim()));
+            } catch (NumberFormatException e) {
+                parsed = 1;
+            }
+            this.weight = parsed;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.plambis.jmeter.amqp.client.loopback;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * A message stored in a {@link LoopbackQueue}. The body array is shared with the publisher, which never reuses it.
+ */
+final class LoopbackMessage {
+    final String exchangeName;
+    final String routingKey;
+    final AMQP.BasicProperties properties;
+    final byte[] body;
+    final boolean redelivered;
+
+    LoopbackMessage(String exchangeName, String routingKey, AMQP.BasicProperties properties, byte[] body,
+            boolean redelivered) {
+        this.exchangeName = exchangeName;
+        this.routingKey = routingKey;
+        this.properties = properties;
+        this.body = body;
+        this.redelivered = redelivered;
+    }
+
+    LoopbackMessage redelivery() {
+        return redelivered ? this : new LoopbackMessage(exchangeName, routingKey, properties, body, true);
+    }
+}
@@ -0,0 +1,64 @@
+package com.plambis.jmeter.amqp.client.loopback;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded in-memory queue. Publishers wait while it is full, like a publisher blocked by broker flow control, and
+ * drop the message once the channel timeout expires.
+ */
+final class LoopbackQueue {
+    final String name;
+    final boolean exclusive;
+    final boolean autoDelete;
+    private final BlockingQueue<LoopbackMessage> messages;
+    final AtomicInteger consumers = new AtomicInteger();
+    final AtomicLong dropped = new AtomicLong();
+
+    LoopbackQueue(String name, boolean exclusive, boolean autoDelete, int capacity) {
+        this.name = name;
+        this.exclusive = exclusive;
+        this.autoDelete = autoDelete;
+        this.messages = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    boolean offer(LoopbackMessage message, long timeoutMillis) throws InterruptedException {
+        if (messages.offer(message) || messages.offer(message, timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    LoopbackMessage poll() {
+        return messages.poll();
+    }
+
+    LoopbackMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return messages.poll(timeout, unit);
+    }
+
+    /**
+     * Puts a rejected or unacknowledged message back, at the tail of the queue.
+     */
+    void requeue(LoopbackMessage message) {
+        if (!messages.offer(message.redelivery())) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    int size() {
+        return messages.size();
+    }
+
+    int purge() {
+        int purged = 0;
+        while (messages.poll() != null) {
+            purged++;
+        }
+        return purged;
+    }
+}
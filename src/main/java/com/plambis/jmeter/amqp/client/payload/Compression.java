@@ -0,0 +1,98 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+/**
+ * Payload compression codecs, labelled with the content-encoding they publish. LZ4 and zstd need lz4-java and
+ * zstd-jni on the JMeter classpath, gzip and deflate use the JDK.
+ */
+public enum Compression {
+    NONE("none") {
+        @Override
+        public PayloadCodec newCodec(int level) {
+            return null;
+        }
+    },
+    GZIP("gzip") {
+        @Override
+        public PayloadCodec newCodec(int level) {
+            return new DeflateCodec(getLabel(), true, level);
+        }
+    },
+    DEFLATE("deflate") {
+        @Override
+        public PayloadCodec newCodec(int level) {
+            return new DeflateCodec(getLabel(), false, level);
+        }
+    },
+    LZ4("lz4") {
+        @Override
+        public PayloadCodec newCodec(int level) {
+            try {
+                return new Lz4Codec(getLabel(), level);
+            } catch (NoClassDefFoundError e) {
+                throw new IllegalArgumentException("lz4 compression needs lz4-java on the JMeter classpath", e);
+            }
+        }
+    },
+    ZSTD("zstd") {
+        @Override
+        public PayloadCodec newCodec(int level) {
+            try {
+                return new ZstdCodec(getLabel(), level);
+            } catch (NoClassDefFoundError | UnsatisfiedLinkError e) {
+                throw new IllegalArgumentException("zstd compression needs zstd-jni on the JMeter classpath", e);
+            }
+        }
+    };
+
+    private final String label;
+
+    Compression(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the content-encoding of compressed messages, null when they are not compressed
+     */
+    public String getEncoding() {
+        return this == NONE ? null : label;
+    }
+
+    /**
+     * @param level the compression level, 0 for the codec default
+     * @return a codec for a single thread, null for {@link #NONE}
+     * @throws IllegalArgumentException when the codec library is missing
+     */
+    public abstract PayloadCodec newCodec(int level);
+
+    public static String[] labels() {
+        Compression[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static Compression valueByLabel(String label) {
+        for (Compression compression : values()) {
+            if (compression.getLabel().equalsIgnoreCase(label)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the codec of a message's content-encoding, or {@link #NONE} when it is missing or not one of ours
+     */
+    public static Compression byEncoding(String contentEncoding) {
+        if (contentEncoding == null) {
+            return NONE;
+        }
+        return valueByLabel(contentEncoding.trim());
+    }
+}
@@ -0,0 +1,41 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+/**
+ * How message boundaries are found in corpus files.
+ */
+public enum CorpusFormat {
+    /** Every line is a message, the line feed is not part of it. */
+    LINES("lines"),
+    /** Every file is one message, e.g. a directory of recorded messages. */
+    FILE_PER_MESSAGE("file per message"),
+    /** Every message is preceded by its length as a 4 byte big-endian integer. */
+    LENGTH_PREFIXED("length prefixed");
+
+    private final String label;
+
+    CorpusFormat(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static String[] labels() {
+        CorpusFormat[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static CorpusFormat valueByLabel(String label) {
+        for (CorpusFormat format : values()) {
+            if (format.getLabel().equalsIgnoreCase(label)) {
+                return format;
+            }
+        }
+        return LINES;
+    }
+}
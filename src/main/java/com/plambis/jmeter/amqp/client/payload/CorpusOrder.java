@@ -0,0 +1,41 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+/**
+ * Order in which publishers walk through a corpus.
+ */
+public enum CorpusOrder {
+    /** All threads share one cursor, every message is sent once per pass. */
+    SEQUENTIAL("sequential"),
+    /** Every message is picked at random. */
+    RANDOM("random"),
+    /** Every thread walks the corpus with its own cursor, starting at a thread-specific offset. */
+    PER_THREAD("per thread");
+
+    private final String label;
+
+    CorpusOrder(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static String[] labels() {
+        CorpusOrder[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static CorpusOrder valueByLabel(String label) {
+        for (CorpusOrder order : values()) {
+            if (order.getLabel().equalsIgnoreCase(label)) {
+                return order;
+            }
+        }
+        return SEQUENTIAL;
+    }
+}
@@ -0,0 +1,44 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hands out the messages of a {@link MappedPayloadCorpus} in the configured order.
+ */
+public class CorpusPayloadSource implements PayloadSource {
+    private final MappedPayloadCorpus corpus;
+    private final CorpusOrder order;
+    private int cursor;
+
+    /**
+     * @param threadNumber used as the start offset in {@link CorpusOrder#PER_THREAD} order
+     */
+    public CorpusPayloadSource(MappedPayloadCorpus corpus, CorpusOrder order, int threadNumber) {
+        this.corpus = corpus;
+        this.order = order;
+        this.cursor = Math.abs(threadNumber) % corpus.size();
+    }
+
+    @Override
+    public byte[] nextPayload() {
+        return corpus.get(nextIndex());
+    }
+
+    private int nextIndex() {
+        switch (order) {
+            case RANDOM:
+                return ThreadLocalRandom.current().nextInt(corpus.size());
+            case PER_THREAD:
+                int index = cursor;
+                cursor = (cursor + 1) % corpus.size();
+                return index;
+            case SEQUENTIAL:
+            default:
+                return corpus.nextSequentialIndex();
+        }
+    }
+
+    public MappedPayloadCorpus getCorpus() {
+        return corpus;
+    }
+}
@@ -0,0 +1,108 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * gzip and deflate (zlib) on one reused {@link Deflater} and {@link Inflater}, so compressing a message allocates
+ * only its result. gzip members are written with a minimal header; decoding accepts any gzip member.
+ */
+final class DeflateCodec implements PayloadCodec {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final String encoding;
+    private final boolean gzip;
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater();
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[8192];
+
+    DeflateCodec(String encoding, boolean gzip, int level) {
+        this.encoding = encoding;
+        this.gzip = gzip;
+        this.deflater = new Deflater(level == 0 ? Deflater.DEFAULT_COMPRESSION : level, gzip);
+    }
+
+    @Override
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public byte[] encode(byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int length = gzip ? GZIP_HEADER.length : 0;
+        while (!deflater.finished()) {
+            ensureCapacity(length + 1);
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        if (!gzip) {
+            return Arrays.copyOf(buffer, length);
+        }
+        ensureCapacity(length + GZIP_TRAILER_LENGTH);
+        System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+        crc.reset();
+        crc.update(raw);
+        writeIntLE(buffer, length, (int) crc.getValue());
+        writeIntLE(buffer, length + 4, raw.length);
+        return Arrays.copyOf(buffer, length + GZIP_TRAILER_LENGTH);
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded) throws IOException {
+        if (gzip) {
+            return decodeGzip(encoded);
+        }
+        inflater.reset();
+        inflater.setInput(encoded);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                ensureCapacity(length + 1);
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated deflate body");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflate body: " + e.getMessage(), e);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private byte[] decodeGzip(byte[] encoded) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(encoded), buffer.length)) {
+            int length = 0;
+            int read;
+            do {
+                ensureCapacity(length + 1);
+                read = in.read(buffer, length, buffer.length - length);
+                length += Math.max(0, read);
+            } while (read >= 0);
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private static void writeIntLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >>> 8);
+        target[offset + 2] = (byte) (value >>> 16);
+        target[offset + 3] = (byte) (value >>> 24);
+    }
+}
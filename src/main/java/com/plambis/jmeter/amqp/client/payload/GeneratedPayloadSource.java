@@ -0,0 +1,21 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Payloads with sizes drawn from a {@link SizeDistribution}, backed by {@link PayloadBufferPool}.
+ */
+public class GeneratedPayloadSource implements PayloadSource {
+    private final SizeDistribution.SizeSampler sizes;
+
+    public GeneratedPayloadSource(SizeDistribution distribution, String parameters) {
+        this.sizes = distribution.parse(parameters);
+    }
+
+    @Override
+    public byte[] nextPayload() {
+        Random random = ThreadLocalRandom.current();
+        return PayloadBufferPool.get(sizes.nextSize(random));
+    }
+}
@@ -0,0 +1,101 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 frame format, readable by the lz4 command line tool and other frame decoders. Frames are written straight into a
+ * reused buffer as independent 64 KB blocks with the content size in the descriptor; levels above 0 use the high
+ * compression compressor.
+ */
+final class Lz4Codec implements PayloadCodec {
+    private static final int MAGIC = 0x184D2204;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /** Version 01, independent blocks, content size present. */
+    private static final byte FLG = 0x68;
+    /** 64 KB maximum block size. */
+    private static final byte BD = 0x40;
+    private static final int DESCRIPTOR_OFFSET = 4;
+    private static final int DESCRIPTOR_LENGTH = 10;
+    private static final int UNCOMPRESSED_BLOCK = 0x80000000;
+
+    private final String encoding;
+    private final LZ4Compressor compressor;
+    private final XXHash32 hash = XXHashFactory.fastestInstance().hash32();
+    private byte[] buffer = new byte[8192];
+
+    Lz4Codec(String encoding, int level) {
+        this.encoding = encoding;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = level > 0 ? factory.highCompressor(level) : factory.fastCompressor();
+    }
+
+    @Override
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public byte[] encode(byte[] raw) {
+        int blocks = Math.max(1, (raw.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        ensureCapacity(DESCRIPTOR_OFFSET + DESCRIPTOR_LENGTH + 1 + blocks * (4 + compressor.maxCompressedLength(BLOCK_SIZE)) + 4);
+        writeIntLE(buffer, 0, MAGIC);
+        buffer[DESCRIPTOR_OFFSET] = FLG;
+        buffer[DESCRIPTOR_OFFSET + 1] = BD;
+        writeIntLE(buffer, DESCRIPTOR_OFFSET + 2, raw.length);
+        writeIntLE(buffer, DESCRIPTOR_OFFSET + 6, 0);
+        int length = DESCRIPTOR_OFFSET + DESCRIPTOR_LENGTH;
+        buffer[length++] = (byte) (hash.hash(buffer, DESCRIPTOR_OFFSET, DESCRIPTOR_LENGTH, 0) >>> 8);
+        for (int offset = 0; offset < raw.length; offset += BLOCK_SIZE) {
+            int blockLength = Math.min(BLOCK_SIZE, raw.length - offset);
+            int compressed = compressor.compress(raw, offset, blockLength, buffer, length + 4,
+                    compressor.maxCompressedLength(blockLength));
+            if (compressed >= blockLength) {
+                writeIntLE(buffer, length, UNCOMPRESSED_BLOCK | blockLength);
+                System.arraycopy(raw, offset, buffer, length + 4, blockLength);
+                length += 4 + blockLength;
+            } else {
+                writeIntLE(buffer, length, compressed);
+                length += 4 + compressed;
+            }
+        }
+        writeIntLE(buffer, length, 0); // end mark
+        return Arrays.copyOf(buffer, length + 4);
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded) throws IOException {
+        try (LZ4FrameInputStream in = new LZ4FrameInputStream(new ByteArrayInputStream(encoded))) {
+            int length = 0;
+            int read;
+            do {
+                ensureCapacity(length + 1);
+                read = in.read(buffer, length, buffer.length - length);
+                length += Math.max(0, read);
+            } while (read >= 0);
+            return Arrays.copyOf(buffer, length);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid lz4 body: " + e.getMessage(), e);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private static void writeIntLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >>> 8);
+        target[offset + 2] = (byte) (value >>> 16);
+        target[offset + 3] = (byte) (value >>> 24);
+    }
+}
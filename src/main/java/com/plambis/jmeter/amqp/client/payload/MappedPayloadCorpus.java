@@ -0,0 +1,270 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Recorded messages memory-mapped from one or more files. Message boundaries are indexed once when the corpus is
+ * opened; the corpus is shared by all threads using the same paths and format until {@link #clear()} forgets it at
+ * test end.
+ * <p>
+ * Every file is mapped as a whole, so a single file must be smaller than 2 GB. Bigger corpora have to be split into
+ * several files or a directory. In the file per message format, files below {@value #MAPPED_FILE_MIN_BYTES} bytes are
+ * read into shared heap arenas of up to {@value #ARENA_BYTES} bytes instead: a directory of many small recorded
+ * messages would otherwise use a mapping, and at least a page, per message.
+ */
+public final class MappedPayloadCorpus {
+    private static final Logger log = LoggerFactory.getLogger(MappedPayloadCorpus.class);
+
+    private static final ConcurrentMap<String, MappedPayloadCorpus> CORPORA = new ConcurrentHashMap<>();
+
+    static final int MAPPED_FILE_MIN_BYTES = 1024 * 1024;
+    static final int ARENA_BYTES = 64 * 1024 * 1024;
+
+    private final String description;
+    /** The mapped files and the heap arenas of small files, indexed by {@link #fileIndexes}. */
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private int[] fileIndexes = new int[1024];
+    private int[] offsets = new int[1024];
+    private int[] lengths = new int[1024];
+    private int size;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private MappedPayloadCorpus(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Opens, or reuses, the corpus for a comma separated list of files and directories.
+     */
+    public static MappedPayloadCorpus open(String paths, CorpusFormat format) throws IOException {
+        String key = format + ":" + paths;
+        try {
+            return CORPORA.computeIfAbsent(key, k -> {
+                try {
+                    return load(paths, format);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Forgets the opened corpora, so the next test indexes the files again and the mappings can be released.
+     */
+    public static void clear() {
+        CORPORA.clear();
+    }
+
+    private static MappedPayloadCorpus load(String paths, CorpusFormat format) throws IOException {
+        MappedPayloadCorpus corpus = new MappedPayloadCorpus(paths + " (" + format.getLabel() + ")");
+        List<Path> files = resolve(paths);
+        if (format == CorpusFormat.FILE_PER_MESSAGE) {
+            corpus.indexFilePerMessage(files);
+        } else {
+            for (Path file : files) {
+                corpus.index(file, format);
+            }
+        }
+        if (corpus.size == 0) {
+            throw new IOException("No messages found in corpus " + corpus.description);
+        }
+        log.info("Indexed {} messages in {} file(s) of corpus {}, held in {} buffer(s)", corpus.size, files.size(),
+                corpus.description, corpus.buffers.size());
+        return corpus;
+    }
+
+    private static List<Path> resolve(String paths) throws IOException {
+        List<Path> resolved = new ArrayList<>();
+        for (String each : paths.split(",")) {
+            if (each.trim().isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(each.trim());
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> children = Files.list(path)) {
+                    resolved.addAll(children.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+                }
+            } else if (Files.isRegularFile(path)) {
+                resolved.add(path);
+            } else {
+                throw new IOException("Corpus file " + path + " does not exist");
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Maps the large files and packs the small ones into heap arenas, keeping the messages in file order.
+     */
+    private void indexFilePerMessage(List<Path> files) throws IOException {
+        List<Path> arenaFiles = new ArrayList<>();
+        List<Integer> arenaFileLengths = new ArrayList<>();
+        int arenaIndex = -1;
+        int arenaLength = 0;
+        for (Path file : files) {
+            long length = Files.size(file);
+            if (length >= MAPPED_FILE_MIN_BYTES) {
+                MappedByteBuffer buffer = map(file);
+                add(buffers.size(), 0, buffer.limit());
+                buffers.add(buffer);
+                continue;
+            }
+            if (arenaIndex < 0 || arenaLength + length > ARENA_BYTES) {
+                fillArena(arenaIndex, arenaFiles, arenaFileLengths, arenaLength);
+                arenaFiles.clear();
+                arenaFileLengths.clear();
+                arenaIndex = buffers.size();
+                arenaLength = 0;
+                buffers.add(null); // filled once the arena is complete
+            }
+            add(arenaIndex, arenaLength, (int) length);
+            arenaFiles.add(file);
+            arenaFileLengths.add((int) length);
+            arenaLength += (int) length;
+        }
+        fillArena(arenaIndex, arenaFiles, arenaFileLengths, arenaLength);
+    }
+
+    private void fillArena(int arenaIndex, List<Path> files, List<Integer> fileLengths, int length) throws IOException {
+        if (arenaIndex < 0) {
+            return;
+        }
+        byte[] arena = new byte[length];
+        int position = 0;
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            int fileLength = fileLengths.get(i);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer target = ByteBuffer.wrap(arena, position, fileLength);
+                while (target.hasRemaining() && channel.read(target) >= 0) {
+                    // a file channel may return fewer bytes than asked for
+                }
+                if (target.hasRemaining() || channel.size() != fileLength) {
+                    throw new IOException("Corpus file " + file + " changed while it was read");
+                }
+            }
+            position += fileLength;
+        }
+        buffers.set(arenaIndex, ByteBuffer.wrap(arena));
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Corpus file " + file + " is bigger than 2 GB, split it into several files");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private void index(Path file, CorpusFormat format) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int fileIndex = buffers.size();
+        buffers.add(buffer);
+        int limit = buffer.limit();
+
+        switch (format) {
+            case LENGTH_PREFIXED:
+                int position = 0;
+                while (position + 4 <= limit) {
+                    int length = buffer.getInt(position);
+                    if (length < 0 || length > limit - position - 4) {
+                        throw new IOException("Corrupt length prefix " + length + " at offset " + position + " of " + file);
+                    }
+                    add(fileIndex, position + 4, length);
+                    position += 4 + length;
+                }
+                break;
+            case LINES:
+            default:
+                int start = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        addLine(fileIndex, buffer, start, i);
+                        start = i + 1;
+                    }
+                }
+                addLine(fileIndex, buffer, start, limit);
+                break;
+        }
+    }
+
+    private void addLine(int fileIndex, ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end > start) {
+            add(fileIndex, start, end - start);
+        }
+    }
+
+    private void add(int fileIndex, int offset, int length) {
+        if (size == offsets.length) {
+            fileIndexes = Arrays.copyOf(fileIndexes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        fileIndexes[size] = fileIndex;
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    int bufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * @return the next index of the cursor shared by all threads
+     */
+    public int nextSequentialIndex() {
+        return (int) (sequence.getAndIncrement() % size);
+    }
+
+    /**
+     * Copies one message out of the mapped files. The AMQP client only publishes byte arrays, so this copy is the
+     * only heap allocation per message.
+     */
+    public byte[] get(int index) {
+        byte[] payload = new byte[lengths[index]];
+        ByteBuffer slice = buffers.get(fileIndexes[index]).duplicate();
+        slice.position(offsets[index]);
+        slice.get(payload);
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
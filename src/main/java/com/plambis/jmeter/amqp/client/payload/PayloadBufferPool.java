@@ -0,0 +1,85 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only payload buffers shared by all threads, one per distinct size, filled from a block of random bytes
+ * generated once. The buffers are never written after creation, so publishing them concurrently is safe.
+ * <p>
+ * Pooled buffers are capped at {@value #MAX_POOLED_MB_PROPERTY} MB (default {@value #DEFAULT_MAX_POOLED_MB}); sizes
+ * beyond the budget get a fresh buffer copied from the random block, which still avoids generating random content per
+ * message. {@link #clear()} releases the buffers at test end.
+ */
+public final class PayloadBufferPool {
+    private static final Logger log = LoggerFactory.getLogger(PayloadBufferPool.class);
+
+    public static final String MAX_POOLED_MB_PROPERTY = "amqp.payload.pool.mb";
+    public static final int DEFAULT_MAX_POOLED_MB = 256;
+    private static final int FILL_SIZE = 1024 * 1024;
+
+    private static final byte[] FILL = new byte[FILL_SIZE];
+    private static final ConcurrentMap<Integer, byte[]> BUFFERS = new ConcurrentHashMap<>();
+    private static final AtomicLong POOLED_BYTES = new AtomicLong();
+    private static final AtomicBoolean EXHAUSTED = new AtomicBoolean();
+    private static volatile long maxPooledBytes = -1;
+
+    static {
+        new Random(FILL_SIZE).nextBytes(FILL);
+    }
+
+    private PayloadBufferPool() {
+    }
+
+    public static byte[] get(int size) {
+        byte[] buffer = BUFFERS.get(size);
+        if (buffer != null) {
+            return buffer;
+        }
+        if (POOLED_BYTES.get() + size > getMaxPooledBytes()) {
+            if (EXHAUSTED.compareAndSet(false, true)) {
+                log.warn("Payload buffer pool budget of {} MB exhausted, further sizes are allocated per message; "
+                        + "raise {} to pool them", getMaxPooledBytes() / (1024 * 1024), MAX_POOLED_MB_PROPERTY);
+            }
+            return fill(size);
+        }
+        return BUFFERS.computeIfAbsent(size, s -> {
+            POOLED_BYTES.addAndGet(s);
+            return fill(s);
+        });
+    }
+
+    /**
+     * Releases the pooled buffers, the budget is read again on next use.
+     */
+    public static void clear() {
+        BUFFERS.clear();
+        POOLED_BYTES.set(0);
+        EXHAUSTED.set(false);
+        maxPooledBytes = -1;
+    }
+
+    private static long getMaxPooledBytes() {
+        long max = maxPooledBytes;
+        if (max < 0) {
+            max = JMeterUtils.getPropDefault(MAX_POOLED_MB_PROPERTY, DEFAULT_MAX_POOLED_MB) * 1024L * 1024;
+            maxPooledBytes = max;
+        }
+        return max;
+    }
+
+    private static byte[] fill(int size) {
+        byte[] buffer = new byte[size];
+        for (int offset = 0; offset < size; offset += FILL_SIZE) {
+            System.arraycopy(FILL, 0, buffer, offset, Math.min(FILL_SIZE, size - offset));
+        }
+        return buffer;
+    }
+}
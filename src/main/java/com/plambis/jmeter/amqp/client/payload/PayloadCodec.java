@@ -0,0 +1,21 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.io.IOException;
+
+/**
+ * Compresses message bodies for one {@code content-encoding}. Instances keep reusable native state and buffers and are
+ * used by a single thread.
+ */
+public interface PayloadCodec {
+    /**
+     * @return the content-encoding the compressed bodies are published with
+     */
+    String getEncoding();
+
+    byte[] encode(byte[] raw) throws IOException;
+
+    /**
+     * @throws IOException when the body is not valid for the encoding
+     */
+    byte[] decode(byte[] encoded) throws IOException;
+}
@@ -0,0 +1,107 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+/**
+ * Compresses the message bodies of one publisher thread and counts raw bytes, compressed bytes and the time spent in
+ * the codec since the last {@link #reset()}.
+ * <p>
+ * Static bodies are compressed once. A body that is the same array as the previous one, such as the read-only pooled
+ * buffers of {@link GeneratedPayloadSource}, reuses its compressed form as well.
+ */
+public final class PayloadCompressor {
+    private final PayloadCodec codec;
+
+    private byte[] lastRaw;
+    private byte[] lastEncoded;
+
+    private long rawBytes;
+    private long encodedBytes;
+    private long codecNanos;
+
+    public PayloadCompressor(PayloadCodec codec) {
+        this.codec = codec;
+    }
+
+    public String getEncoding() {
+        return codec.getEncoding();
+    }
+
+    /**
+     * @param dynamic whether the body has to be evaluated for every message
+     * @param body    supplies the raw body
+     * @return a supplier of compressed bodies, compressed once when the body is static
+     */
+    public Supplier<byte[]> compile(boolean dynamic, Supplier<byte[]> body) throws IOException {
+        if (dynamic) {
+            return () -> compress(body.get());
+        }
+        byte[] raw = body.get();
+        byte[] encoded = encode(raw);
+        return () -> {
+            rawBytes += raw.length;
+            encodedBytes += encoded.length;
+            return encoded;
+        };
+    }
+
+    /**
+     * @throws UncheckedIOException when the codec fails
+     */
+    public byte[] compress(byte[] raw) {
+        byte[] encoded;
+        if (raw == lastRaw) {
+            encoded = lastEncoded;
+        } else {
+            try {
+                encoded = encode(raw);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lastRaw = raw;
+            lastEncoded = encoded;
+        }
+        rawBytes += raw.length;
+        encodedBytes += encoded.length;
+        return encoded;
+    }
+
+    private byte[] encode(byte[] raw) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return codec.encode(raw);
+        } finally {
+            codecNanos += System.nanoTime() - start;
+        }
+    }
+
+    public void reset() {
+        rawBytes = 0;
+        encodedBytes = 0;
+        codecNanos = 0;
+    }
+
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /**
+     * @return raw bytes per compressed byte, 0 before the first message
+     */
+    public double getRatio() {
+        return encodedBytes == 0 ? 0 : (double) rawBytes / encodedBytes;
+    }
+
+    /**
+     * @return the time spent compressing on the publisher thread, part of the sample time
+     */
+    public long getCodecNanos() {
+        return codecNanos;
+    }
+}
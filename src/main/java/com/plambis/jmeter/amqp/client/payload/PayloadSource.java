@@ -0,0 +1,8 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+/**
+ * Supplies message bodies to a publisher. Instances are used by a single sampler thread.
+ */
+public interface PayloadSource {
+    byte[] nextPayload();
+}
@@ -0,0 +1,110 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message template parsed once into literal byte segments and typed {@code {{placeholder}}}s, see
+ * {@link TemplatePlaceholder}. Rendering writes the segments into the reusable buffer of a {@link TemplateContext}, so
+ * a message costs one array of its exact size and no intermediate strings.
+ * <p>
+ * Literals are UTF-8 encoded. Text between {@code {{} and {@code }}} always is a placeholder, JMeter's {@code ${...}}
+ * is left alone and evaluated before the template is parsed.
+ */
+public final class PayloadTemplate {
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final TemplateSegment[] segments;
+    private final boolean usesCorpus;
+
+    private PayloadTemplate(TemplateSegment[] segments, boolean usesCorpus) {
+        this.segments = segments;
+        this.usesCorpus = usesCorpus;
+    }
+
+    /**
+     * @return whether the text contains a placeholder and has to be rendered as a template
+     */
+    public static boolean hasPlaceholders(String text) {
+        if (text == null) {
+            return false;
+        }
+        int open = text.indexOf(OPEN);
+        return open >= 0 && text.indexOf(CLOSE, open + OPEN.length()) >= 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException when a placeholder is unknown or has an invalid argument
+     */
+    public static PayloadTemplate parse(String text) {
+        List<TemplateSegment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean usesCorpus = false;
+        int position = 0;
+        while (position < text.length()) {
+            int open = text.indexOf(OPEN, position);
+            int close = open < 0 ? -1 : text.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                literal.append(text, position, text.length());
+                break;
+            }
+            literal.append(text, position, open);
+            String expression = text.substring(open + OPEN.length(), close).trim();
+            int colon = expression.indexOf(':');
+            String name = colon < 0 ? expression : expression.substring(0, colon).trim();
+            String argument = colon < 0 ? "" : expression.substring(colon + 1).trim();
+            TemplatePlaceholder placeholder = TemplatePlaceholder.valueByLabel(name);
+            if (placeholder == null) {
+                throw new IllegalArgumentException("Unknown placeholder " + OPEN + expression + CLOSE);
+            }
+            addLiteral(segments, literal);
+            try {
+                segments.add(placeholder.compile(argument));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid argument of " + OPEN + expression + CLOSE, e);
+            }
+            usesCorpus |= placeholder == TemplatePlaceholder.CORPUS;
+            position = close + CLOSE.length();
+        }
+        addLiteral(segments, literal);
+        return new PayloadTemplate(segments.toArray(new TemplateSegment[0]), usesCorpus);
+    }
+
+    private static void addLiteral(List<TemplateSegment> segments, StringBuilder literal) {
+        if (literal.length() == 0) {
+            return;
+        }
+        byte[] bytes = literal.toString().getBytes(StandardCharsets.UTF_8);
+        segments.add(context -> context.write(bytes, 0, bytes.length));
+        literal.setLength(0);
+    }
+
+    /**
+     * @return whether the template reads corpus entries
+     */
+    public boolean usesCorpus() {
+        return usesCorpus;
+    }
+
+    public byte[] render(TemplateContext context) {
+        writeTo(context);
+        return context.toBytes();
+    }
+
+    /**
+     * Renders message properties such as the message id.
+     */
+    public String renderString(TemplateContext context) {
+        writeTo(context);
+        return context.toUtf8String();
+    }
+
+    private void writeTo(TemplateContext context) {
+        context.reset();
+        for (TemplateSegment segment : segments) {
+            segment.write(context);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Payload size distributions. Parameters are comma separated:
+ * <ul>
+ * <li>fixed: {@code size}</li>
+ * <li>uniform: {@code min,max}</li>
+ * <li>lognormal: {@code median,sigma[,max]}</li>
+ * <li>empirical: {@code size:weight,size:weight,...}</li>
+ * </ul>
+ */
+public enum SizeDistribution {
+    FIXED("fixed") {
+        @Override
+        public SizeSampler parse(String parameters) {
+            int size = parseSize(split(parameters, 1)[0]);
+            return random -> size;
+        }
+    },
+    UNIFORM("uniform") {
+        @Override
+        public SizeSampler parse(String parameters) {
+            String[] values = split(parameters, 2);
+            int min = parseSize(values[0]);
+            int max = parseSize(values[1]);
+            if (max < min) {
+                throw new IllegalArgumentException("Uniform size distribution needs min <= max: " + parameters);
+            }
+            return random -> min + random.nextInt(max - min + 1);
+        }
+    },
+    LOGNORMAL("lognormal") {
+        @Override
+        public SizeSampler parse(String parameters) {
+            String[] values = split(parameters, 2);
+            double mu = Math.log(parseSize(values[0]));
+            double sigma = Double.parseDouble(values[1].trim());
+            int max = values.length > 2 ? parseSize(values[2]) : DEFAULT_MAX_SIZE;
+            return random -> (int) Math.min(max, Math.round(Math.exp(mu + sigma * random.nextGaussian())));
+        }
+    },
+    EMPIRICAL("empirical") {
+        @Override
+        public SizeSampler parse(String parameters) {
+            String[] buckets = split(parameters, 1);
+            int[] sizes = new int[buckets.length];
+            double[] cumulative = new double[buckets.length];
+            double total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                String[] bucket = buckets[i].split(":");
+                if (bucket.length != 2) {
+                    throw new IllegalArgumentException("Empirical size buckets are size:weight, got " + buckets[i]);
+                }
+                sizes[i] = parseSize(bucket[0]);
+                total += Double.parseDouble(bucket[1].trim());
+                cumulative[i] = total;
+            }
+            double weights = total;
+            return random -> {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * weights);
+                return sizes[Math.min(sizes.length - 1, index < 0 ? -index - 1 : index)];
+            };
+        }
+    };
+
+    /** Upper bound of the lognormal distribution when none is configured. */
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private final String label;
+
+    SizeDistribution(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public abstract SizeSampler parse(String parameters);
+
+    public static String[] labels() {
+        SizeDistribution[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static SizeDistribution valueByLabel(String label) {
+        for (SizeDistribution distribution : values()) {
+            if (distribution.getLabel().equalsIgnoreCase(label)) {
+                return distribution;
+            }
+        }
+        return FIXED;
+    }
+
+    private static String[] split(String parameters, int required) {
+        String[] values = parameters == null ? new String[0] : parameters.split(",");
+        if (values.length < required || values[0].trim().isEmpty()) {
+            throw new IllegalArgumentException("Expected at least " + required + " size parameter(s), got '" + parameters + "'");
+        }
+        return values;
+    }
+
+    private static int parseSize(String value) {
+        int size = Integer.parseInt(value.trim());
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative payload size " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Draws payload sizes in bytes.
+     */
+    @FunctionalInterface
+    public interface SizeSampler {
+        int nextSize(Random random);
+    }
+}
@@ -0,0 +1,126 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The per-thread state {@link PayloadTemplate}s render with: the message sequence number, the thread number, the
+ * corpus entry of the current message and a render buffer that is reused for every message.
+ * <p>
+ * {@link #next()} starts a new message; the body, message id and correlation id rendered until the next call share its
+ * sequence number and corpus entry.
+ */
+public final class TemplateContext {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_LONG_DIGITS = 20;
+
+    private final int threadNumber;
+    private PayloadSource corpus;
+    private long sequence;
+    private byte[] corpusEntry;
+
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    public TemplateContext(int threadNumber) {
+        this.threadNumber = threadNumber;
+    }
+
+    /**
+     * @param corpus supplies the entries of the corpus placeholders
+     */
+    public void setCorpus(PayloadSource corpus) {
+        this.corpus = corpus;
+    }
+
+    /**
+     * Starts the next message.
+     */
+    public void next() {
+        sequence++;
+        corpusEntry = null;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getThreadNumber() {
+        return threadNumber;
+    }
+
+    byte[] getCorpusEntry() {
+        if (corpus == null) {
+            throw new IllegalStateException("The corpus placeholder needs corpus files");
+        }
+        if (corpusEntry == null) {
+            corpusEntry = corpus.nextPayload();
+        }
+        return corpusEntry;
+    }
+
+    // render buffer
+
+    void reset() {
+        length = 0;
+    }
+
+    byte[] toBytes() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    String toUtf8String() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    void write(byte[] source, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(source, offset, buffer, length, count);
+        length += count;
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(length + 1);
+        buffer[length++] = (byte) value;
+    }
+
+    void writeLong(long value) {
+        ensureCapacity(length + MAX_LONG_DIGITS);
+        if (value == Long.MIN_VALUE) {
+            byte[] min = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+            write(min, 0, min.length);
+            return;
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Writes the lowest {@code digits} hex digits of the value, zero padded.
+     */
+    void writeHex(long value, int digits) {
+        ensureCapacity(length + digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        length += digits;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The placeholders of a {@link PayloadTemplate}, written as {@code {{label}}} or {@code {{label:argument}}}.
+ * Numbers are written in decimal without allocating, all values are ASCII.
+ */
+public enum TemplatePlaceholder {
+    /** Sequence number of the message in the thread, starting at 1. */
+    SEQUENCE("seq") {
+        @Override
+        TemplateSegment compile(String argument) {
+            return context -> context.writeLong(context.getSequence());
+        }
+    },
+    /** JMeter thread number. */
+    THREAD("thread") {
+        @Override
+        TemplateSegment compile(String argument) {
+            return context -> context.writeLong(context.getThreadNumber());
+        }
+    },
+    /** {@link System#nanoTime()} when the message is rendered. */
+    NANOS("nanos") {
+        @Override
+        TemplateSegment compile(String argument) {
+            return context -> context.writeLong(System.nanoTime());
+        }
+    },
+    /** Epoch milliseconds when the message is rendered. */
+    MILLIS("millis") {
+        @Override
+        TemplateSegment compile(String argument) {
+            return context -> context.writeLong(System.currentTimeMillis());
+        }
+    },
+    /** A random int; {@code {{randomInt:max}}} from 0 and {@code {{randomInt:min,max}}} within the bounds, inclusive. */
+    RANDOM_INT("randomInt") {
+        @Override
+        TemplateSegment compile(String argument) {
+            if (argument.isEmpty()) {
+                return context -> context.writeLong(ThreadLocalRandom.current().nextInt());
+            }
+            String[] bounds = argument.split(",");
+            long min = bounds.length > 1 ? Integer.parseInt(bounds[0].trim()) : 0;
+            long max = Integer.parseInt(bounds[bounds.length - 1].trim());
+            if (max < min) {
+                throw new IllegalArgumentException("randomInt needs min <= max: " + argument);
+            }
+            return context -> context.writeLong(ThreadLocalRandom.current().nextLong(min, max + 1));
+        }
+    },
+    /** A random (version 4) UUID. */
+    UUID("uuid") {
+        @Override
+        TemplateSegment compile(String argument) {
+            return context -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+                long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+                context.writeHex(msb >>> 32, 8);
+                context.writeByte('-');
+                context.writeHex(msb >>> 16, 4);
+                context.writeByte('-');
+                context.writeHex(msb, 4);
+                context.writeByte('-');
+                context.writeHex(lsb >>> 48, 4);
+                context.writeByte('-');
+                context.writeHex(lsb, 12);
+            };
+        }
+    },
+    /**
+     * The corpus entry of the message, or with {@code {{corpus:n}}} its n-th comma separated field, counted from 0.
+     * All corpus placeholders of a message read the same entry.
+     */
+    CORPUS("corpus") {
+        @Override
+        TemplateSegment compile(String argument) {
+            if (argument.isEmpty()) {
+                return context -> {
+                    byte[] entry = context.getCorpusEntry();
+                    context.write(entry, 0, entry.length);
+                };
+            }
+            int field = Integer.parseInt(argument.trim());
+            if (field < 0) {
+                throw new IllegalArgumentException("Negative corpus field " + field);
+            }
+            return context -> writeField(context, context.getCorpusEntry(), field);
+        }
+    };
+
+    private static final byte FIELD_SEPARATOR = ',';
+
+    private final String label;
+
+    TemplatePlaceholder(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @param argument the text after the colon, empty when there is none
+     * @throws IllegalArgumentException when the argument is invalid
+     */
+    abstract TemplateSegment compile(String argument);
+
+    public static String[] labels() {
+        TemplatePlaceholder[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    /**
+     * @return the placeholder, or null when the label is unknown
+     */
+    public static TemplatePlaceholder valueByLabel(String label) {
+        for (TemplatePlaceholder placeholder : values()) {
+            if (placeholder.getLabel().equalsIgnoreCase(label)) {
+                return placeholder;
+            }
+        }
+        return null;
+    }
+
+    private static void writeField(TemplateContext context, byte[] entry, int field) {
+        int start = 0;
+        for (int i = 0; i < field; i++) {
+            while (start < entry.length && entry[start] != FIELD_SEPARATOR) {
+                start++;
+            }
+            if (start == entry.length) {
+                return; // fewer fields, writes nothing
+            }
+            start++;
+        }
+        int end = start;
+        while (end < entry.length && entry[end] != FIELD_SEPARATOR) {
+            end++;
+        }
+        context.write(entry, start, end - start);
+    }
+}
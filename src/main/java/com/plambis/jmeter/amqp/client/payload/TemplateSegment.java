@@ -0,0 +1,10 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+/**
+ * A literal part or a placeholder of a {@link PayloadTemplate}, written into the render buffer of a
+ * {@link TemplateContext}.
+ */
+@FunctionalInterface
+interface TemplateSegment {
+    void write(TemplateContext context);
+}
@@ -0,0 +1,74 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Zstandard frames with the content size stored, so decoding allocates the result once. Frames without a content
+ * size, as written by streaming compressors, are decoded as a stream into a reused buffer.
+ */
+final class ZstdCodec implements PayloadCodec {
+    private static final int DEFAULT_LEVEL = 3;
+    private static final long MAX_DECODED_SIZE = Integer.MAX_VALUE - 8;
+
+    private final String encoding;
+    private final int level;
+    private byte[] buffer = new byte[8192];
+
+    ZstdCodec(String encoding, int level) {
+        this.encoding = encoding;
+        this.level = level == 0 ? DEFAULT_LEVEL : level;
+        // loads the native library now rather than on the first message
+        Zstd.maxCompressionLevel();
+    }
+
+    @Override
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public byte[] encode(byte[] raw) throws IOException {
+        try {
+            return Zstd.compress(raw, level);
+        } catch (RuntimeException e) {
+            throw new IOException("zstd compression failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded) throws IOException {
+        try {
+            // 0 stands for an empty frame as well as for a frame without content size
+            long size = Zstd.decompressedSize(encoded);
+            if (size == 0) {
+                return decodeStream(encoded);
+            }
+            if (size < 0 || size > MAX_DECODED_SIZE) {
+                throw new IOException("zstd body without a usable content size: " + size);
+            }
+            return Zstd.decompress(encoded, (int) size);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid zstd body: " + e.getMessage(), e);
+        }
+    }
+
+    private byte[] decodeStream(byte[] encoded) throws IOException {
+        try (ZstdInputStream in = new ZstdInputStream(new ByteArrayInputStream(encoded))) {
+            int length = 0;
+            int read;
+            do {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                read = in.read(buffer, length, buffer.length - length);
+                length += Math.max(0, read);
+            } while (read >= 0);
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.plambis.jmeter.amqp.client.schedule;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop send times shared by all threads of a publisher. Every message takes the next ticket, a single atomic
+ * increment, and is due at the time the rate profile reaches that many messages, regardless of how long earlier
+ * publishes took. Latency measured from the due time instead of the actual send time therefore includes the time a
+ * message waited behind a slow publish (coordinated omission).
+ */
+public final class ArrivalSchedule {
+    private static final ConcurrentMap<String, ArrivalSchedule> SCHEDULES = new ConcurrentHashMap<>();
+
+    private final double[] startSeconds;
+    private final double[] startCounts;
+    private final double[] startRates;
+    private final double[] slopes;
+    private final AtomicLong tickets = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param segments  the rate segments, in order
+     * @param finalRate the rate kept after the last segment, must be positive
+     */
+    ArrivalSchedule(List<Segment> segments, double finalRate) {
+        if (finalRate <= 0) {
+            throw new IllegalArgumentException("The final rate must be positive: " + finalRate);
+        }
+        int size = segments.size() + 1;
+        startSeconds = new double[size];
+        startCounts = new double[size];
+        startRates = new double[size];
+        slopes = new double[size];
+        double seconds = 0;
+        double count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            startSeconds[i] = seconds;
+            startCounts[i] = count;
+            startRates[i] = segment.from;
+            slopes[i] = (segment.to - segment.from) / segment.seconds;
+            seconds += segment.seconds;
+            count += segment.seconds * (segment.from + segment.to) / 2;
+        }
+        startSeconds[size - 1] = seconds;
+        startCounts[size - 1] = count;
+        startRates[size - 1] = finalRate;
+        slopes[size - 1] = 0;
+    }
+
+    /**
+     * @return the schedule shared by all threads publishing with the same key, created on first use
+     * @throws IllegalArgumentException when the parameters do not match the profile
+     */
+    public static ArrivalSchedule shared(String key, RateProfile profile, String parameters) {
+        return SCHEDULES.computeIfAbsent(profile.getLabel() + ":" + parameters + ":" + key, k -> profile.parse(parameters));
+    }
+
+    /**
+     * Forgets the schedules of the previous test, the next test starts from ticket 0 again.
+     */
+    public static void reset() {
+        SCHEDULES.clear();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the next message is due at
+     */
+    public long nextDueNanos() {
+        return startNanos + (long) (secondsOf(tickets.getAndIncrement()) * 1_000_000_000L);
+    }
+
+    /**
+     * Sleeps until the due time, returns immediately when it already passed.
+     */
+    public static void awaitDue(long dueNanos) throws InterruptedIOException {
+        long remaining;
+        while ((remaining = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the next scheduled publish");
+            }
+        }
+    }
+
+    private double secondsOf(long ticket) {
+        int segment = startCounts.length - 1;
+        while (segment > 0 && startCounts[segment] > ticket) {
+            segment--;
+        }
+        double count = ticket - startCounts[segment];
+        double rate = startRates[segment];
+        double slope = slopes[segment];
+        double seconds;
+        if (Math.abs(slope) < 1e-12) {
+            seconds = rate == 0 ? 0 : count / rate;
+        } else {
+            // count = rate * t + slope * t^2 / 2
+            seconds = (-rate + Math.sqrt(Math.max(0, rate * rate + 2 * slope * count))) / slope;
+        }
+        return startSeconds[segment] + seconds;
+    }
+
+    static final class Segment {
+        private final double from;
+        private final double to;
+        private final double seconds;
+
+        Segment(double from, double to, double seconds) {
+            this.from = from;
+            this.to = to;
+            this.seconds = seconds;
+        }
+    }
+}
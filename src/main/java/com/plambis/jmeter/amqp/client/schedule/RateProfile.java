@@ -0,0 +1,108 @@
+package com.plambis.jmeter.amqp.client.schedule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Target publish rate over time, in messages per second across all threads. Parameters are comma separated:
+ * <ul>
+ * <li>constant: {@code rate}</li>
+ * <li>ramp: {@code from,to,seconds}, the rate then stays at {@code to}</li>
+ * <li>step: {@code rate:seconds,rate:seconds,...}, the last rate is kept once all steps are over</li>
+ * </ul>
+ */
+public enum RateProfile {
+    CONSTANT("constant") {
+        @Override
+        public ArrivalSchedule parse(String parameters) {
+            double rate = parseRate(split(parameters, 1)[0]);
+            return new ArrivalSchedule(new ArrayList<>(), rate);
+        }
+    },
+    RAMP("ramp") {
+        @Override
+        public ArrivalSchedule parse(String parameters) {
+            String[] values = split(parameters, 3);
+            double from = parseRate(values[0]);
+            double to = parseRate(values[1]);
+            double seconds = parseSeconds(values[2]);
+            List<ArrivalSchedule.Segment> segments = new ArrayList<>();
+            segments.add(new ArrivalSchedule.Segment(from, to, seconds));
+            return new ArrivalSchedule(segments, to);
+        }
+    },
+    STEP("step") {
+        @Override
+        public ArrivalSchedule parse(String parameters) {
+            String[] steps = split(parameters, 1);
+            List<ArrivalSchedule.Segment> segments = new ArrayList<>();
+            double rate = 0;
+            for (String step : steps) {
+                String[] values = step.split(":");
+                if (values.length != 2) {
+                    throw new IllegalArgumentException("Rate steps are rate:seconds, got " + step);
+                }
+                rate = parseRate(values[0]);
+                segments.add(new ArrivalSchedule.Segment(rate, rate, parseSeconds(values[1])));
+            }
+            return new ArrivalSchedule(segments, rate);
+        }
+    };
+
+    private final String label;
+
+    RateProfile(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the parameters do not match the profile
+     */
+    public abstract ArrivalSchedule parse(String parameters);
+
+    public static String[] labels() {
+        RateProfile[] values = values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].getLabel();
+        }
+        return labels;
+    }
+
+    public static RateProfile valueByLabel(String label) {
+        for (RateProfile profile : values()) {
+            if (profile.getLabel().equalsIgnoreCase(label)) {
+                return profile;
+            }
+        }
+        return CONSTANT;
+    }
+
+    private static String[] split(String parameters, int minimum) {
+        String[] values = parameters == null ? new String[0] : parameters.trim().split("\\s*,\\s*");
+        if (values.length < minimum || values[0].isEmpty()) {
+            throw new IllegalArgumentException("Expected at least " + minimum + " parameter(s), got '" + parameters + "'");
+        }
+        return values;
+    }
+
+    private static double parseRate(String value) {
+        double rate = Double.parseDouble(value.trim());
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate must not be negative: " + value);
+        }
+        return rate;
+    }
+
+    private static double parseSeconds(String value) {
+        double seconds = Double.parseDouble(value.trim());
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + value);
+        }
+        return seconds;
+    }
+}
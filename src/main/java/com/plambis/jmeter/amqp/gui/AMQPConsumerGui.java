@@ -6,7 +6,9 @@ import javax.swing.JCheckBox;
 import javax.swing.JPanel;
 
 import com.plambis.jmeter.amqp.AMQPConsumer;
+import com.plambis.jmeter.amqp.client.conf.ConsumeMode;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jorphan.gui.JLabeledChoice;
 import org.apache.jorphan.gui.JLabeledTextField;
 
 public class AMQPConsumerGui extends AMQPSamplerGui {
@@ -15,10 +17,17 @@ public class AMQPConsumerGui extends AMQPSamplerGui {
 
     protected JLabeledTextField receiveTimeout = new JLabeledTextField("Receive Timeout");
     protected JLabeledTextField prefetchCount = new JLabeledTextField("Prefetch Count");
+    protected JLabeledTextField latencyReportFile = new JLabeledTextField("Latency Report File");
+    private final JLabeledChoice consumeMode = new JLabeledChoice("Consume Mode", ConsumeMode.labels());
 
     private final JCheckBox purgeQueue = new JCheckBox("Purge Queue", false);
     private final JCheckBox autoAck = new JCheckBox("Auto ACK", true);
+    protected JLabeledTextField ackBatchSize = new JLabeledTextField("Ack Batch Size");
+    protected JLabeledTextField ackBatchInterval = new JLabeledTextField("Ack Batch Interval (ms)");
     private final JCheckBox readResponse = new JCheckBox("Read Response", AMQPConsumer.DEFAULT_READ_RESPONSE);
+    protected JLabeledTextField bodyMaxBytes = new JLabeledTextField("Max Body Bytes (0 = all)");
+    protected JLabeledTextField bodySampleRate = new JLabeledTextField("Body Sample Rate (0-1)");
+    private final JCheckBox formatHeaders = new JCheckBox("Format Headers", AMQPConsumer.DEFAULT_FORMAT_HEADERS);
     private final JCheckBox useTx = new JCheckBox("Use Transactions?", AMQPConsumer.DEFAULT_USE_TX);
 
     private JPanel mainPanel;
@@ -36,12 +45,19 @@ public class AMQPConsumerGui extends AMQPSamplerGui {
         prefetchCount.setPreferredSize(new Dimension(100, 25));
         useTx.setPreferredSize(new Dimension(100, 25));
 
+        mainPanel.add(consumeMode);
         mainPanel.add(receiveTimeout);
         mainPanel.add(prefetchCount);
         mainPanel.add(purgeQueue);
         mainPanel.add(autoAck);
+        mainPanel.add(ackBatchSize);
+        mainPanel.add(ackBatchInterval);
         mainPanel.add(readResponse);
+        mainPanel.add(bodyMaxBytes);
+        mainPanel.add(bodySampleRate);
+        mainPanel.add(formatHeaders);
         mainPanel.add(useTx);
+        mainPanel.add(latencyReportFile);
     }
 
     @Override
@@ -60,10 +76,17 @@ public class AMQPConsumerGui extends AMQPSamplerGui {
         AMQPConsumer sampler = (AMQPConsumer) element;
 
         readResponse.setSelected(sampler.getReadResponseAsBoolean());
+        bodyMaxBytes.setText(sampler.getBodyMaxBytes());
+        bodySampleRate.setText(sampler.getBodySampleRate());
+        formatHeaders.setSelected(sampler.getFormatHeaders());
         prefetchCount.setText(sampler.getPrefetchCount());
         receiveTimeout.setText(sampler.getReceiveTimeout());
+        consumeMode.setText(sampler.getConsumeMode());
+        latencyReportFile.setText(sampler.getLatencyReportFile());
         purgeQueue.setSelected(sampler.purgeQueue());
         autoAck.setSelected(sampler.autoAck());
+        ackBatchSize.setText(sampler.getAckBatchSize());
+        ackBatchInterval.setText(sampler.getAckBatchInterval());
         useTx.setSelected(sampler.getUseTx());
     }
 
@@ -74,10 +97,17 @@ public class AMQPConsumerGui extends AMQPSamplerGui {
     public void clearGui() {
         super.clearGui();
         readResponse.setSelected(AMQPConsumer.DEFAULT_READ_RESPONSE);
+        bodyMaxBytes.setText(AMQPConsumer.DEFAULT_BODY_MAX_BYTES_STRING);
+        bodySampleRate.setText(AMQPConsumer.DEFAULT_BODY_SAMPLE_RATE_STRING);
+        formatHeaders.setSelected(AMQPConsumer.DEFAULT_FORMAT_HEADERS);
         prefetchCount.setText(AMQPConsumer.DEFAULT_PREFETCH_COUNT_STRING);
         receiveTimeout.setText("");
+        consumeMode.setText(AMQPConsumer.DEFAULT_CONSUME_MODE);
+        latencyReportFile.setText("");
         purgeQueue.setSelected(false);
         autoAck.setSelected(true);
+        ackBatchSize.setText(AMQPConsumer.DEFAULT_ACK_BATCH_SIZE_STRING);
+        ackBatchInterval.setText(AMQPConsumer.DEFAULT_ACK_BATCH_INTERVAL_STRING);
         useTx.setSelected(AMQPConsumer.DEFAULT_USE_TX);
     }
 
@@ -101,11 +131,18 @@ public class AMQPConsumerGui extends AMQPSamplerGui {
         configureTestElement(sampler);
         super.modifyTestElement(sampler);
         sampler.setReadResponse(readResponse.isSelected());
+        sampler.setBodyMaxBytes(bodyMaxBytes.getText());
+        sampler.setBodySampleRate(bodySampleRate.getText());
+        sampler.setFormatHeaders(formatHeaders.isSelected());
         sampler.setPrefetchCount(prefetchCount.getText());
 
         sampler.setReceiveTimeout(receiveTimeout.getText());
+        sampler.setConsumeMode(consumeMode.getText());
+        sampler.setLatencyReportFile(latencyReportFile.getText());
         sampler.setPurgeQueue(purgeQueue.isSelected());
         sampler.setAutoAck(autoAck.isSelected());
+        sampler.setAckBatchSize(ackBatchSize.getText());
+        sampler.setAckBatchInterval(ackBatchInterval.getText());
         sampler.setUseTx(useTx.isSelected());
     }
 
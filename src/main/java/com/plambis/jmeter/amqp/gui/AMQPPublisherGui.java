@@ -5,9 +5,17 @@ import java.awt.Dimension;
 import javax.swing.*;
 
 import com.plambis.jmeter.amqp.AMQPPublisher;
+import com.plambis.jmeter.amqp.client.conf.ConfirmMode;
+import com.plambis.jmeter.amqp.client.conf.MessageTimingMode;
+import com.plambis.jmeter.amqp.client.payload.Compression;
+import com.plambis.jmeter.amqp.client.payload.CorpusFormat;
+import com.plambis.jmeter.amqp.client.payload.CorpusOrder;
+import com.plambis.jmeter.amqp.client.payload.SizeDistribution;
+import com.plambis.jmeter.amqp.client.schedule.RateProfile;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.config.gui.ArgumentsPanel;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jorphan.gui.JLabeledChoice;
 import org.apache.jorphan.gui.JLabeledTextArea;
 import org.apache.jorphan.gui.JLabeledTextField;
 
@@ -27,11 +35,14 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
 
     private JPanel mainPanel;
 
-    /*
-    private static final String[] CONFIG_CHOICES = {"File", "Static"};
-    private final JLabeledRadio configChoice = new JLabeledRadio("Message Source", CONFIG_CHOICES);
-    private final FilePanel messageFile = new FilePanel("Filename", ALL_FILES);
-    */
+    private JLabeledChoice messageSource = new JLabeledChoice("Message Source", AMQPPublisher.MESSAGE_SOURCES);
+    private JLabeledTextField corpusPath = new JLabeledTextField("Corpus Files/Directories");
+    private JLabeledChoice corpusFormat = new JLabeledChoice("Corpus Format", CorpusFormat.labels());
+    private JLabeledChoice corpusOrder = new JLabeledChoice("Corpus Order", CorpusOrder.labels());
+    private JLabeledChoice payloadSizeDistribution = new JLabeledChoice("Payload Size Distribution", SizeDistribution.labels());
+    private JLabeledTextField payloadSizeParameters = new JLabeledTextField("Payload Size Parameters");
+    private JLabeledChoice compression = new JLabeledChoice("Compression", Compression.labels());
+    private JLabeledTextField compressionLevel = new JLabeledTextField("Compression Level (0 = default)");
     private JLabeledTextArea message = new JLabeledTextArea("Message Content");
     private JLabeledTextField messageRoutingKey = new JLabeledTextField("Routing Key");
     private JLabeledTextField messageType = new JLabeledTextField("Message Type");
@@ -42,6 +53,20 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
 
     private JCheckBox persistent = new JCheckBox("Persistent?", AMQPPublisher.DEFAULT_PERSISTENT);
     private JCheckBox useTx = new JCheckBox("Use Transactions?", AMQPPublisher.DEFAULT_USE_TX);
+    private JLabeledChoice confirmMode = new JLabeledChoice("Confirm Mode", ConfirmMode.labels());
+    private JLabeledTextField confirmWindow = new JLabeledTextField("Confirm Window");
+    private JCheckBox stampSendTime = new JCheckBox("Stamp Send Time?", AMQPPublisher.DEFAULT_STAMP_SEND_TIME);
+    private JLabeledTextField runId = new JLabeledTextField("Run Id");
+    private JCheckBox stampSequence = new JCheckBox("Stamp Sequence?", AMQPPublisher.DEFAULT_STAMP_SEQUENCE);
+    private JCheckBox mandatory = new JCheckBox("Mandatory?", AMQPPublisher.DEFAULT_MANDATORY);
+    private JCheckBox openLoop = new JCheckBox("Open Loop?", AMQPPublisher.DEFAULT_OPEN_LOOP);
+    private JLabeledChoice rateProfile = new JLabeledChoice("Rate Profile", RateProfile.labels());
+    private JLabeledTextField rateProfileParameters = new JLabeledTextField("Rate (msg/s)");
+    private JLabeledChoice messageTimings = new JLabeledChoice("Per-Message Timings", MessageTimingMode.labels());
+    private JLabeledTextField slowestMessages = new JLabeledTextField("Slowest Messages");
+    private JCheckBox asyncPublish = new JCheckBox("Async Publish?", AMQPPublisher.DEFAULT_ASYNC_PUBLISH);
+    private JLabeledTextField asyncRingSize = new JLabeledTextField("Async Ring Size");
+    private JLabeledTextField asyncWriters = new JLabeledTextField("Async Writers");
 
     private ArgumentsPanel headers = new ArgumentsPanel("Headers");
 
@@ -73,6 +98,20 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
 
         persistent.setSelected(sampler.getPersistent());
         useTx.setSelected(sampler.getUseTx());
+        confirmMode.setText(sampler.getConfirmMode());
+        confirmWindow.setText(sampler.getConfirmWindow());
+        stampSendTime.setSelected(sampler.getStampSendTime());
+        runId.setText(sampler.getRunId());
+        stampSequence.setSelected(sampler.getStampSequence());
+        mandatory.setSelected(sampler.getMandatory());
+        openLoop.setSelected(sampler.getOpenLoop());
+        rateProfile.setText(sampler.getRateProfile());
+        rateProfileParameters.setText(sampler.getRateProfileParameters());
+        messageTimings.setText(sampler.getMessageTimingsMode());
+        slowestMessages.setText(sampler.getSlowestMessages());
+        asyncPublish.setSelected(sampler.getAsyncPublish());
+        asyncRingSize.setText(sampler.getAsyncRingSize());
+        asyncWriters.setText(sampler.getAsyncWriters());
 
         messageRoutingKey.setText(sampler.getMessageRoutingKey());
         messageType.setText(sampler.getMessageType());
@@ -81,6 +120,14 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
         correlationId.setText(sampler.getCorrelationId());
         messageId.setText(sampler.getMessageId());
         message.setText(sampler.getMessage());
+        messageSource.setText(sampler.getMessageSource());
+        corpusPath.setText(sampler.getCorpusPath());
+        corpusFormat.setText(sampler.getCorpusFormat());
+        corpusOrder.setText(sampler.getCorpusOrder());
+        payloadSizeDistribution.setText(sampler.getPayloadSizeDistribution());
+        payloadSizeParameters.setText(sampler.getPayloadSizeParameters());
+        compression.setText(sampler.getCompression());
+        compressionLevel.setText(sampler.getCompressionLevel());
         configureHeaders(sampler);
     }
 
@@ -107,9 +154,31 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
 
         sampler.setPersistent(persistent.isSelected());
         sampler.setUseTx(useTx.isSelected());
+        sampler.setConfirmMode(confirmMode.getText());
+        sampler.setConfirmWindow(confirmWindow.getText());
+        sampler.setStampSendTime(stampSendTime.isSelected());
+        sampler.setRunId(runId.getText());
+        sampler.setStampSequence(stampSequence.isSelected());
+        sampler.setMandatory(mandatory.isSelected());
+        sampler.setOpenLoop(openLoop.isSelected());
+        sampler.setRateProfile(rateProfile.getText());
+        sampler.setRateProfileParameters(rateProfileParameters.getText());
+        sampler.setMessageTimingsMode(messageTimings.getText());
+        sampler.setSlowestMessages(slowestMessages.getText());
+        sampler.setAsyncPublish(asyncPublish.isSelected());
+        sampler.setAsyncRingSize(asyncRingSize.getText());
+        sampler.setAsyncWriters(asyncWriters.getText());
 
         sampler.setMessageRoutingKey(messageRoutingKey.getText());
         sampler.setMessage(message.getText());
+        sampler.setMessageSource(messageSource.getText());
+        sampler.setCorpusPath(corpusPath.getText());
+        sampler.setCorpusFormat(corpusFormat.getText());
+        sampler.setCorpusOrder(corpusOrder.getText());
+        sampler.setPayloadSizeDistribution(payloadSizeDistribution.getText());
+        sampler.setPayloadSizeParameters(payloadSizeParameters.getText());
+        sampler.setCompression(compression.getText());
+        sampler.setCompressionLevel(compressionLevel.getText());
         sampler.setMessageType(messageType.getText());
         sampler.setReplyToQueue(replyToQueue.getText());
         sampler.setCorrelationId(correlationId.getText());
@@ -131,6 +200,15 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
         super.init();
         persistent.setPreferredSize(new Dimension(100, 25));
         useTx.setPreferredSize(new Dimension(100, 25));
+        confirmWindow.setPreferredSize(new Dimension(100, 25));
+        stampSendTime.setPreferredSize(new Dimension(100, 25));
+        runId.setPreferredSize(new Dimension(100, 25));
+        stampSequence.setPreferredSize(new Dimension(100, 25));
+        mandatory.setPreferredSize(new Dimension(100, 25));
+        rateProfileParameters.setPreferredSize(new Dimension(100, 25));
+        slowestMessages.setPreferredSize(new Dimension(100, 25));
+        asyncRingSize.setPreferredSize(new Dimension(100, 25));
+        asyncWriters.setPreferredSize(new Dimension(100, 25));
         messageRoutingKey.setPreferredSize(new Dimension(100, 25));
         messageType.setPreferredSize(new Dimension(100, 25));
         replyToQueue.setPreferredSize(new Dimension(100, 25));
@@ -138,9 +216,26 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
         contentType.setPreferredSize(new Dimension(100, 25));
         messageId.setPreferredSize(new Dimension(100, 25));
         message.setPreferredSize(new Dimension(400, 150));
+        corpusPath.setPreferredSize(new Dimension(400, 25));
+        payloadSizeParameters.setPreferredSize(new Dimension(400, 25));
+        compressionLevel.setPreferredSize(new Dimension(100, 25));
 
         mainPanel.add(persistent);
         mainPanel.add(useTx);
+        mainPanel.add(confirmMode);
+        mainPanel.add(confirmWindow);
+        mainPanel.add(stampSendTime);
+        mainPanel.add(runId);
+        mainPanel.add(stampSequence);
+        mainPanel.add(mandatory);
+        mainPanel.add(openLoop);
+        mainPanel.add(rateProfile);
+        mainPanel.add(rateProfileParameters);
+        mainPanel.add(messageTimings);
+        mainPanel.add(slowestMessages);
+        mainPanel.add(asyncPublish);
+        mainPanel.add(asyncRingSize);
+        mainPanel.add(asyncWriters);
         mainPanel.add(messageRoutingKey);
         mainPanel.add(messageType);
         mainPanel.add(replyToQueue);
@@ -148,7 +243,15 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
         mainPanel.add(contentType);
         mainPanel.add(messageId);
         mainPanel.add(headers);
+        mainPanel.add(messageSource);
         mainPanel.add(message);
+        mainPanel.add(corpusPath);
+        mainPanel.add(corpusFormat);
+        mainPanel.add(corpusOrder);
+        mainPanel.add(payloadSizeDistribution);
+        mainPanel.add(payloadSizeParameters);
+        mainPanel.add(compression);
+        mainPanel.add(compressionLevel);
     }
 
     /**
@@ -159,6 +262,20 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
         super.clearGui();
         persistent.setSelected(AMQPPublisher.DEFAULT_PERSISTENT);
         useTx.setSelected(AMQPPublisher.DEFAULT_USE_TX);
+        confirmMode.setText(AMQPPublisher.DEFAULT_CONFIRM_MODE);
+        confirmWindow.setText(AMQPPublisher.DEFAULT_CONFIRM_WINDOW_STRING);
+        stampSendTime.setSelected(AMQPPublisher.DEFAULT_STAMP_SEND_TIME);
+        runId.setText("");
+        stampSequence.setSelected(AMQPPublisher.DEFAULT_STAMP_SEQUENCE);
+        mandatory.setSelected(AMQPPublisher.DEFAULT_MANDATORY);
+        openLoop.setSelected(AMQPPublisher.DEFAULT_OPEN_LOOP);
+        rateProfile.setText(AMQPPublisher.DEFAULT_RATE_PROFILE);
+        rateProfileParameters.setText("");
+        messageTimings.setText(AMQPPublisher.DEFAULT_MESSAGE_TIMINGS);
+        slowestMessages.setText(AMQPPublisher.DEFAULT_SLOWEST_MESSAGES_STRING);
+        asyncPublish.setSelected(AMQPPublisher.DEFAULT_ASYNC_PUBLISH);
+        asyncRingSize.setText(AMQPPublisher.DEFAULT_ASYNC_RING_SIZE_STRING);
+        asyncWriters.setText(AMQPPublisher.DEFAULT_ASYNC_WRITERS_STRING);
         messageRoutingKey.setText("");
         messageType.setText("");
         replyToQueue.setText("");
@@ -167,6 +284,14 @@ public class AMQPPublisherGui extends AMQPSamplerGui {
         messageId.setText("");
         headers.clearGui();
         message.setText("");
+        messageSource.setText(AMQPPublisher.DEFAULT_MESSAGE_SOURCE);
+        corpusPath.setText("");
+        corpusFormat.setText(AMQPPublisher.DEFAULT_CORPUS_FORMAT);
+        corpusOrder.setText(AMQPPublisher.DEFAULT_CORPUS_ORDER);
+        payloadSizeDistribution.setText(AMQPPublisher.DEFAULT_PAYLOAD_SIZE_DISTRIBUTION);
+        payloadSizeParameters.setText("");
+        compression.setText(AMQPPublisher.DEFAULT_COMPRESSION);
+        compressionLevel.setText(AMQPPublisher.DEFAULT_COMPRESSION_LEVEL_STRING);
     }
 
     private void configureHeaders(AMQPPublisher sampler)
@@ -0,0 +1,67 @@
+package com.plambis.jmeter.amqp.gui;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import com.plambis.jmeter.amqp.AMQPQueueMonitor;
+import org.apache.jmeter.testelement.TestElement;
+
+public class AMQPQueueMonitorGui extends AMQPSamplerGui {
+
+    private static final long serialVersionUID = 1L;
+
+    private JPanel mainPanel;
+
+    public AMQPQueueMonitorGui() {
+        init();
+    }
+
+    /*
+     * Helper method to set up the GUI screen
+     */
+    @Override
+    protected void init() {
+        super.init();
+        mainPanel.add(new JLabel("Queue: comma separated queues to inspect with passive declares, "
+                + "nothing is declared, bound or consumed"));
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return "AMQP Queue Monitor";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TestElement createTestElement() {
+        AMQPQueueMonitor sampler = new AMQPQueueMonitor();
+        modifyTestElement(sampler);
+        return sampler;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modifyTestElement(TestElement te) {
+        AMQPQueueMonitor sampler = (AMQPQueueMonitor) te;
+        sampler.clear();
+        configureTestElement(sampler);
+        super.modifyTestElement(sampler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getLabelResource() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    protected void setMainPanel(JPanel panel) {
+        mainPanel = panel;
+    }
+}
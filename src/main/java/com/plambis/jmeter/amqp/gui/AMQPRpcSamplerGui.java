@@ -0,0 +1,86 @@
+package com.plambis.jmeter.amqp.gui;
+
+import java.awt.Dimension;
+
+import javax.swing.JCheckBox;
+import javax.swing.JPanel;
+
+import com.plambis.jmeter.amqp.AMQPRpcSampler;
+import org.apache.jorphan.gui.JLabeledTextField;
+import org.apache.jmeter.testelement.TestElement;
+
+/**
+ * The publisher GUI plus the request/reply settings. Reply-To Queue and Correlation Id are overridden per request.
+ */
+public class AMQPRpcSamplerGui extends AMQPPublisherGui {
+
+    private static final long serialVersionUID = 1L;
+
+    // set while the publisher GUI initializes, before the fields below
+    private JPanel mainPanel;
+
+    private JLabeledTextField replyTimeout = new JLabeledTextField("Reply Timeout");
+    private JCheckBox echoResponder = new JCheckBox("Echo Responder?", AMQPRpcSampler.DEFAULT_ECHO_RESPONDER);
+
+    public AMQPRpcSamplerGui() {
+        super();
+        replyTimeout.setPreferredSize(new Dimension(100, 25));
+        mainPanel.add(replyTimeout);
+        mainPanel.add(echoResponder);
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return "AMQP RPC Sampler";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        if (!(element instanceof AMQPRpcSampler)) return;
+        AMQPRpcSampler sampler = (AMQPRpcSampler) element;
+
+        replyTimeout.setText(sampler.getReplyTimeout());
+        echoResponder.setSelected(sampler.getEchoResponder());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TestElement createTestElement() {
+        AMQPRpcSampler sampler = new AMQPRpcSampler();
+        modifyTestElement(sampler);
+        return sampler;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modifyTestElement(TestElement te) {
+        super.modifyTestElement(te);
+        AMQPRpcSampler sampler = (AMQPRpcSampler) te;
+        sampler.setReplyTimeout(replyTimeout.getText());
+        sampler.setEchoResponder(echoResponder.isSelected());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearGui() {
+        super.clearGui();
+        replyTimeout.setText(AMQPRpcSampler.DEFAULT_REPLY_TIMEOUT_STRING);
+        echoResponder.setSelected(AMQPRpcSampler.DEFAULT_ECHO_RESPONDER);
+    }
+
+    @Override
+    protected void setMainPanel(JPanel panel) {
+        super.setMainPanel(panel);
+        mainPanel = panel;
+    }
+}
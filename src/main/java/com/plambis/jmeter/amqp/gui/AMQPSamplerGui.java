@@ -1,6 +1,7 @@
 package com.plambis.jmeter.amqp.gui;
 
 import com.plambis.jmeter.amqp.AMQPSampler;
+import com.plambis.jmeter.amqp.client.conf.ShardStrategy;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.config.gui.ArgumentsPanel;
 import org.apache.jmeter.gui.util.VerticalPanel;
@@ -28,6 +29,8 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
     private final JCheckBox queueExclusive = new JCheckBox("Exclusive", true);
     private final JCheckBox queueAutoDelete = new JCheckBox("Auto Delete?", true);
     private ArgumentsPanel queueArguments = new ArgumentsPanel("Queue Arguments");
+    protected JLabeledTextField shardCount = new JLabeledTextField("Shards (0 = off)");
+    protected JLabeledChoice shardStrategy = new JLabeledChoice("Shard Strategy", ShardStrategy.labels());
 
     protected JLabeledTextField exchange = new JLabeledTextField("Exchange");
     protected JLabeledChoice exchangeType = new JLabeledChoice("Exchange Type", new String[]{ "direct", "topic", "headers", "fanout"});
@@ -43,6 +46,16 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
     protected JLabeledTextField username = new JLabeledTextField("Username");
     protected JLabeledTextField password = new JLabeledTextField("Password");
     private final JCheckBox SSL = new JCheckBox("SSL?", false);
+    protected JLabeledTextField connectionPoolSize = new JLabeledTextField("Pooled Connections (0 = per thread)");
+    protected JLabeledTextField channelsPerConnection = new JLabeledTextField("Channels per Connection");
+    private final JCheckBox useNio = new JCheckBox("NIO?", AMQPSampler.DEFAULT_USE_NIO);
+    protected JLabeledTextField nioThreads = new JLabeledTextField("NIO Threads (0 = default)");
+    protected JLabeledTextField nioBufferSize = new JLabeledTextField("NIO Buffer Size (0 = default)");
+    protected JLabeledTextField dispatchThreads = new JLabeledTextField("Shared Dispatch Threads (0 = per connection)");
+    private final JCheckBox useLoopback = new JCheckBox("Loopback?", AMQPSampler.DEFAULT_USE_LOOPBACK);
+    private final JCheckBox useRecovery = new JCheckBox("Recovery?", AMQPSampler.DEFAULT_USE_RECOVERY);
+    protected JLabeledTextField recoveryInitialDelay = new JLabeledTextField("Recovery Initial Delay (ms)");
+    protected JLabeledTextField recoveryMaxDelay = new JLabeledTextField("Recovery Max Delay (ms)");
 
     private final JLabeledTextField iterations = new JLabeledTextField("Number of samples to Aggregate");
 
@@ -71,6 +84,8 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
         queueAutoDelete.setSelected(sampler.queueAutoDelete());
         queueRedeclare.setSelected(sampler.getQueueRedeclare());
         configureQueueArguments(sampler);
+        shardCount.setText(sampler.getShardCount());
+        shardStrategy.setText(sampler.getShardStrategy());
 
         timeout.setText(sampler.getTimeout());
         iterations.setText(sampler.getIterations());
@@ -81,6 +96,16 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
         username.setText(sampler.getUsername());
         password.setText(sampler.getPassword());
         SSL.setSelected(sampler.connectionSSL());
+        connectionPoolSize.setText(sampler.getConnectionPoolSize());
+        channelsPerConnection.setText(sampler.getChannelsPerConnection());
+        useNio.setSelected(sampler.getUseNio());
+        nioThreads.setText(sampler.getNioThreads());
+        nioBufferSize.setText(sampler.getNioBufferSize());
+        dispatchThreads.setText(sampler.getDispatchThreads());
+        useLoopback.setSelected(sampler.getUseLoopback());
+        useRecovery.setSelected(sampler.getUseRecovery());
+        recoveryInitialDelay.setText(sampler.getRecoveryInitialDelay());
+        recoveryMaxDelay.setText(sampler.getRecoveryMaxDelay());
         log.info("AMQPSamplerGui.configure() called");
     }
 
@@ -105,6 +130,8 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
         queueAutoDelete.setSelected(false);
         queueRedeclare.setSelected(AMQPSampler.DEFAULT_QUEUE_REDECLARE);
         queueArguments.clearGui();
+        shardCount.setText(AMQPSampler.DEFAULT_SHARD_COUNT_STRING);
+        shardStrategy.setText(AMQPSampler.DEFAULT_SHARD_STRATEGY);
 
         iterations.setText(AMQPSampler.DEFAULT_ITERATIONS_STRING);
 
@@ -115,6 +142,16 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
         password.setText("guest");
         SSL.setSelected(false);
         timeout.setText(AMQPSampler.DEFAULT_TIMEOUT_STRING);
+        connectionPoolSize.setText(AMQPSampler.DEFAULT_CONNECTION_POOL_SIZE_STRING);
+        channelsPerConnection.setText(AMQPSampler.DEFAULT_CHANNELS_PER_CONNECTION_STRING);
+        useNio.setSelected(AMQPSampler.DEFAULT_USE_NIO);
+        nioThreads.setText(AMQPSampler.DEFAULT_NIO_THREADS_STRING);
+        nioBufferSize.setText(AMQPSampler.DEFAULT_NIO_BUFFER_SIZE_STRING);
+        dispatchThreads.setText(AMQPSampler.DEFAULT_DISPATCH_THREADS_STRING);
+        useLoopback.setSelected(AMQPSampler.DEFAULT_USE_LOOPBACK);
+        useRecovery.setSelected(AMQPSampler.DEFAULT_USE_RECOVERY);
+        recoveryInitialDelay.setText(AMQPSampler.DEFAULT_RECOVERY_INITIAL_DELAY_STRING);
+        recoveryMaxDelay.setText(AMQPSampler.DEFAULT_RECOVERY_MAX_DELAY_STRING);
     }
 
     /**
@@ -140,6 +177,8 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
         sampler.setQueueAutoDelete(queueAutoDelete.isSelected());
         sampler.setQueueRedeclare(queueRedeclare.isSelected());
         sampler.setQueueArguments((Arguments) queueArguments.createTestElement());
+        sampler.setShardCount(shardCount.getText());
+        sampler.setShardStrategy(shardStrategy.getText());
 
         sampler.setTimeout(timeout.getText());
         sampler.setIterations(iterations.getText());
@@ -150,6 +189,16 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
         sampler.setUsername(username.getText());
         sampler.setPassword(password.getText());
         sampler.setConnectionSSL(SSL.isSelected());
+        sampler.setConnectionPoolSize(connectionPoolSize.getText());
+        sampler.setChannelsPerConnection(channelsPerConnection.getText());
+        sampler.setUseNio(useNio.isSelected());
+        sampler.setNioThreads(nioThreads.getText());
+        sampler.setNioBufferSize(nioBufferSize.getText());
+        sampler.setDispatchThreads(dispatchThreads.getText());
+        sampler.setUseLoopback(useLoopback.isSelected());
+        sampler.setUseRecovery(useRecovery.isSelected());
+        sampler.setRecoveryInitialDelay(recoveryInitialDelay.getText());
+        sampler.setRecoveryMaxDelay(recoveryMaxDelay.getText());
         log.info("AMQPSamplerGui.modifyTestElement() called, set user/pass to " + username.getText() + "/" + password.getText() + " on sampler " + sampler);
     }
 
@@ -246,6 +295,15 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
 
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 3;
+        queueSettings.add(shardCount, gridBagConstraints);
+
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 3;
+        gridBagConstraints.gridwidth = 2;
+        queueSettings.add(shardStrategy, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 4;
         gridBagConstraints.gridwidth = 3;
         gridBagConstraints.fill = GridBagConstraints.HORIZONTAL;
         queueSettings.add(queueArguments, gridBagConstraints);
@@ -293,6 +351,46 @@ public abstract class AMQPSamplerGui extends AbstractSamplerGui {
         gridBagConstraints.gridy = 5;
         serverSettings.add(timeout, gridBagConstraints);
 
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 6;
+        serverSettings.add(connectionPoolSize, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 7;
+        serverSettings.add(channelsPerConnection, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 8;
+        serverSettings.add(nioThreads, gridBagConstraints);
+
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 8;
+        serverSettings.add(useNio, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 9;
+        serverSettings.add(nioBufferSize, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 10;
+        serverSettings.add(dispatchThreads, gridBagConstraints);
+
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 10;
+        serverSettings.add(useLoopback, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 11;
+        serverSettings.add(recoveryInitialDelay, gridBagConstraints);
+
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 11;
+        serverSettings.add(useRecovery, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 12;
+        serverSettings.add(recoveryMaxDelay, gridBagConstraints);
+
         gridBagConstraintsCommon.gridx = 1;
         gridBagConstraintsCommon.gridy = 0;
 
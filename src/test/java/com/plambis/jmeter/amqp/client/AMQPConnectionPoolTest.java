@@ -0,0 +1,120 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Leases channels from pools of loopback connections.
+ */
+public class AMQPConnectionPoolTest {
+    private static final String VIRTUAL_HOST = "pool-test";
+
+    @After
+    public void shutdown() {
+        AMQPConnectionPool.shutdownAll();
+        LoopbackBroker.shutdownAll();
+    }
+
+    @Test
+    public void spreadsLeasesOverConnectionsBeforeSharingThem() throws Exception {
+        ChannelConfigurationImpl channelConf = channelConf(2, 2, 1000);
+        ChannelLease first = AMQPConnectionPool.acquire(channelConf);
+        ChannelLease second = AMQPConnectionPool.acquire(channelConf);
+        ChannelLease third = AMQPConnectionPool.acquire(channelConf);
+
+        assertNotSame(first.getConnection(), second.getConnection());
+        assertTrue(third.getConnection() == first.getConnection() || third.getConnection() == second.getConnection());
+        assertTrue(first.getChannel().isOpen() && second.getChannel().isOpen() && third.getChannel().isOpen());
+    }
+
+    @Test
+    public void releaseClosesTheChannelAndFreesItsSlot() throws Exception {
+        ChannelConfigurationImpl channelConf = channelConf(1, 1, 1000);
+        ChannelLease lease = AMQPConnectionPool.acquire(channelConf);
+        lease.release();
+        lease.release();
+        assertFalse(lease.getChannel().isOpen());
+
+        ChannelLease next = AMQPConnectionPool.acquire(channelConf);
+        assertSame(lease.getConnection(), next.getConnection());
+        assertTrue(next.getChannel().isOpen());
+    }
+
+    @Test
+    public void timesOutWhenEveryChannelIsLeased() throws Exception {
+        ChannelConfigurationImpl channelConf = channelConf(1, 1, 100);
+        AMQPConnectionPool.acquire(channelConf);
+        long start = System.nanoTime();
+        try {
+            AMQPConnectionPool.acquire(channelConf);
+            fail("expected the pool to be exhausted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("No free channel in pool"));
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void waitingLeaseGetsTheReleasedChannel() throws Exception {
+        ChannelConfigurationImpl channelConf = channelConf(1, 1, 5000);
+        ChannelLease lease = AMQPConnectionPool.acquire(channelConf);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            Future<ChannelLease> waiting = executor.submit(() -> {
+                started.countDown();
+                return AMQPConnectionPool.acquire(channelConf);
+            });
+            started.await();
+            Thread.sleep(50);
+            assertFalse(waiting.isDone());
+
+            lease.release();
+            assertSame(lease.getConnection(), waiting.get(5, TimeUnit.SECONDS).getConnection());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void keepsConnectionsOfDifferentTransportsApart() throws Exception {
+        ChannelConfigurationImpl blocking = channelConf(1, 10, 1000);
+        ChannelConfigurationImpl nio = channelConf(1, 10, 1000);
+        nio.setUseNio(true);
+        assertNotSame(AMQPConnectionPool.acquire(blocking).getConnection(),
+                AMQPConnectionPool.acquire(nio).getConnection());
+    }
+
+    @Test
+    public void shutdownClosesTheConnections() throws Exception {
+        ChannelLease lease = AMQPConnectionPool.acquire(channelConf(1, 1, 1000));
+        AMQPConnectionPool.shutdownAll();
+        assertFalse(lease.getConnection().isOpen());
+    }
+
+    private static ChannelConfigurationImpl channelConf(int connections, int channelsPerConnection, int timeout) {
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl(VIRTUAL_HOST,
+                Collections.singletonList("localhost"), 5672, "guest", "guest", false);
+        channelConf.setUseLoopback(true);
+        channelConf.setConnectionPoolSize(connections);
+        channelConf.setChannelsPerConnection(channelsPerConnection);
+        channelConf.setTimeout(timeout);
+        return channelConf;
+    }
+}
@@ -0,0 +1,98 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ExchangeConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.QueueConfigurationImpl;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import com.rabbitmq.client.Channel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records the acknowledgements a batcher sends on a loopback channel.
+ */
+public class AckBatcherTest {
+    private static final String VIRTUAL_HOST = "ack-test";
+
+    private final List<String> acks = Collections.synchronizedList(new ArrayList<>());
+    private AMQPClient client;
+
+    @Before
+    public void createClient() throws Exception {
+        TopologyCoordinator.reset();
+        Channel channel = LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel();
+        Channel recording = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("basicAck")) {
+                        acks.add(args[0] + (Boolean.TRUE.equals(args[1]) ? " multiple" : " single"));
+                        return null;
+                    }
+                    try {
+                        return method.invoke(channel, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl(VIRTUAL_HOST,
+                Collections.singletonList("localhost"), 5672, "guest", "guest", false);
+        channelConf.setUseLoopback(true);
+        channelConf.setQueueConfiguration(new QueueConfigurationImpl("acks", false, false, false));
+        channelConf.setExchangeConfiguration(new ExchangeConfigurationImpl("", "direct", false, false));
+        client = new AMQPClient(channelConf, recording);
+    }
+
+    @After
+    public void shutdown() {
+        LoopbackBroker.shutdownAll();
+    }
+
+    @Test
+    public void acknowledgesEveryBatchWithOneMultipleAck() throws Exception {
+        AckBatcher batcher = new AckBatcher(client, 3, 60000);
+        for (long tag = 1; tag <= 7; tag++) {
+            batcher.ack(tag);
+        }
+        assertEquals(Arrays.asList("3 multiple", "6 multiple"), acks);
+        assertEquals(1, batcher.getPending());
+
+        batcher.flush();
+        batcher.flush();
+        assertEquals(Arrays.asList("3 multiple", "6 multiple", "7 single"), acks);
+        assertEquals(0, batcher.getPending());
+    }
+
+    @Test
+    public void flushesWhenTheOldestAcknowledgementIsDue() throws Exception {
+        AckBatcher batcher = new AckBatcher(client, 100, 50);
+        batcher.ack(1);
+        batcher.ack(2);
+        batcher.flushIfDue();
+        assertTrue(acks.isEmpty());
+        assertTrue(batcher.millisUntilDue() <= 50);
+
+        Thread.sleep(60);
+        assertEquals(0, batcher.millisUntilDue());
+        batcher.flushIfDue();
+        assertEquals(Collections.singletonList("2 multiple"), acks);
+        assertEquals(Long.MAX_VALUE, batcher.millisUntilDue());
+    }
+
+    @Test
+    public void acknowledgesImmediatelyWithoutInterval() throws Exception {
+        AckBatcher batcher = new AckBatcher(client, 100, 0);
+        batcher.ack(1);
+        batcher.ack(2);
+        assertEquals(Arrays.asList("1 single", "2 single"), acks);
+    }
+}
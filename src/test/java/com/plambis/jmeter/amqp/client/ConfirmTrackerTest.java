@@ -0,0 +1,99 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConfirmTrackerTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void countsAcksAndNacksOfSingleAndMultipleConfirms() throws Exception {
+        ConfirmTracker tracker = new ConfirmTracker(10);
+        for (long tag = 1; tag <= 5; tag++) {
+            tracker.beforePublish(tag, System.nanoTime(), TIMEOUT_MILLIS);
+        }
+        tracker.handleAck(3, true);
+        tracker.handleNack(5, false);
+        tracker.handleAck(5, false);
+        assertEquals(1, tracker.getOutstanding());
+
+        ConfirmStats stats = tracker.drainStats();
+        assertEquals(3, stats.getAcks());
+        assertEquals(1, stats.getNacks());
+        assertEquals(0, tracker.drainStats().getAcks());
+    }
+
+    @Test
+    public void fullWindowBlocksUntilAConfirmArrives() throws Exception {
+        ConfirmTracker tracker = new ConfirmTracker(2);
+        tracker.beforePublish(1, System.nanoTime(), TIMEOUT_MILLIS);
+        tracker.beforePublish(2, System.nanoTime(), TIMEOUT_MILLIS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            Future<?> third = executor.submit(() -> {
+                started.countDown();
+                tracker.beforePublish(3, System.nanoTime(), TIMEOUT_MILLIS);
+                return null;
+            });
+            started.await();
+            Thread.sleep(50);
+            assertFalse(third.isDone());
+
+            tracker.handleAck(1, false);
+            third.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals(2, tracker.getOutstanding());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timeoutWritesOffTheOutstandingMessages() throws Exception {
+        ConfirmTracker tracker = new ConfirmTracker(10);
+        tracker.beforePublish(1, System.nanoTime(), TIMEOUT_MILLIS);
+        tracker.beforePublish(2, System.nanoTime(), TIMEOUT_MILLIS);
+        tracker.handleAck(1, false);
+        try {
+            tracker.awaitAll(20);
+            fail("expected the confirm of message 2 to time out");
+        } catch (TimeoutException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("1 message(s) not confirmed"));
+        }
+        assertEquals(0, tracker.getOutstanding());
+
+        // neither the late confirm nor the ack counted before the timeout reach the next sample
+        tracker.handleAck(2, false);
+        assertEquals(0, tracker.drainStats().getAcks());
+    }
+
+    @Test
+    public void abandoningWakesUpABlockedPublisher() throws Exception {
+        ConfirmTracker tracker = new ConfirmTracker(1);
+        tracker.beforePublish(1, System.nanoTime(), TIMEOUT_MILLIS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> blocked = executor.submit(() -> {
+                tracker.beforePublish(2, System.nanoTime(), TIMEOUT_MILLIS);
+                return null;
+            });
+            Thread.sleep(50);
+            assertEquals(1, tracker.abandonOutstanding());
+            blocked.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals(1, tracker.getOutstanding());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
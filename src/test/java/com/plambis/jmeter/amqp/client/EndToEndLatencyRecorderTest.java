@@ -0,0 +1,61 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EndToEndLatencyRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        EndToEndLatencyRecorder.reset();
+    }
+
+    @Test
+    public void reportsOnlyTheRunsOfItsOwnFile() throws Exception {
+        File first = new File(folder.getRoot(), "first.hgrm");
+        File second = new File(folder.getRoot(), "second.hgrm");
+        EndToEndLatencyRecorder.record(first.getPath(), "run-a", TimeUnit.MILLISECONDS.toNanos(5));
+        EndToEndLatencyRecorder.record(second.getPath(), "run-b", TimeUnit.MILLISECONDS.toNanos(7));
+
+        EndToEndLatencyRecorder.report(first.getPath());
+        EndToEndLatencyRecorder.report(second.getPath());
+
+        String firstReport = read(first);
+        assertTrue(firstReport, firstReport.contains("# run run-a "));
+        assertFalse(firstReport, firstReport.contains("run-b"));
+        String secondReport = read(second);
+        assertTrue(secondReport, secondReport.contains("# run run-b "));
+        assertFalse(secondReport, secondReport.contains("run-a"));
+    }
+
+    @Test
+    public void reportsSharedFilesOnce() throws Exception {
+        File shared = new File(folder.getRoot(), "shared.hgrm");
+        EndToEndLatencyRecorder.record(shared.getPath(), "run", TimeUnit.MILLISECONDS.toNanos(1));
+        EndToEndLatencyRecorder.record(shared.getPath(), null, TimeUnit.MILLISECONDS.toNanos(2));
+
+        EndToEndLatencyRecorder.report(shared.getPath());
+        String report = read(shared);
+        EndToEndLatencyRecorder.report(shared.getPath());
+
+        assertEquals(report, read(shared));
+        assertTrue(report, report.contains("# run run ") && report.contains("# run unknown "));
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ExchangeConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.QueueConfigurationImpl;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import com.rabbitmq.client.Channel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Consumes from the loopback broker, which honours the prefetch count of manually acknowledged subscriptions.
+ */
+public class PushMessageConsumerTest {
+    private static final String VIRTUAL_HOST = "push-test";
+    private static final String QUEUE = "push";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Channel control;
+
+    @Before
+    public void openControlChannel() throws Exception {
+        TopologyCoordinator.reset();
+        control = LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel();
+    }
+
+    @After
+    public void shutdown() {
+        LoopbackBroker.shutdownAll();
+    }
+
+    @Test
+    public void prefetchKeepsTheRestOfTheQueueAtTheBroker() throws Exception {
+        AMQPClient client = client(LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel());
+        publish(20);
+        PushMessageConsumer consumer = new PushMessageConsumer(client, QUEUE, 5, null);
+        try {
+            awaitQueueLength(15);
+            for (int i = 0; i < 20; i++) {
+                MessageData message = consumer.consumeMessages(TIMEOUT_MILLIS);
+                assertNotNull("message " + i, message);
+                assertEquals(Integer.toString(i), new String(message.getBody(), StandardCharsets.UTF_8));
+                assertEquals(MessageData.UNKNOWN_MESSAGE_COUNT, message.getMessageCount());
+            }
+            assertNull(consumer.consumeMessages(50));
+        } finally {
+            consumer.close();
+        }
+    }
+
+    @Test
+    public void autoAckModeAcknowledgesTakenDeliveries() throws Exception {
+        Channel channel = LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel();
+        AMQPClient client = client(channel);
+        publish(10);
+        PushMessageConsumer consumer = new PushMessageConsumer(client, QUEUE, 4, null);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull("message " + i, consumer.consumeMessages(TIMEOUT_MILLIS));
+        }
+        consumer.close();
+        channel.close();
+
+        // nothing comes back once the channel is gone: every taken delivery was acknowledged
+        assertEquals(0, control.messageCount(QUEUE));
+    }
+
+    @Test
+    public void requeuesDeliveriesTheBufferCannotTake() throws Exception {
+        // a channel ignoring basic.qos pushes the whole queue at once
+        AMQPClient client = client(withoutQos(LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel()));
+        publish(10);
+        PushMessageConsumer consumer = new PushMessageConsumer(client, QUEUE, 2, null);
+        try {
+            int consumed = 0;
+            while (consumer.consumeMessages(500) != null) {
+                consumed++;
+            }
+            assertEquals(10, consumed);
+        } finally {
+            consumer.close();
+        }
+    }
+
+    @Test
+    public void interruptWakesUpAWaitingConsume() throws Exception {
+        AMQPClient client = client(LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel());
+        PushMessageConsumer consumer = new PushMessageConsumer(client, QUEUE, 2, null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> waiting = executor.submit(() -> {
+                try {
+                    consumer.consumeMessages(TimeUnit.MINUTES.toMillis(1));
+                    fail("expected the wait to be interrupted");
+                } catch (InterruptedIOException expected) {
+                    assertTrue(Thread.currentThread().isInterrupted());
+                }
+                return null;
+            });
+            Thread.sleep(50);
+            executor.shutdownNow();
+            waiting.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private AMQPClient client(Channel channel) throws Exception {
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl(VIRTUAL_HOST,
+                Collections.singletonList("localhost"), 5672, "guest", "guest", false);
+        channelConf.setUseLoopback(true);
+        channelConf.setQueueConfiguration(new QueueConfigurationImpl(QUEUE, false, false, false));
+        channelConf.setExchangeConfiguration(new ExchangeConfigurationImpl("", "direct", false, false));
+        return new AMQPClient(channelConf, channel);
+    }
+
+    private void publish(int count) throws Exception {
+        control.queueDeclare(QUEUE, false, false, false, null);
+        for (int i = 0; i < count; i++) {
+            control.basicPublish("", QUEUE, null, Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void awaitQueueLength(long expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (control.messageCount(QUEUE) != expected && System.nanoTime() - deadline < 0) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, control.messageCount(QUEUE));
+    }
+
+    private static Channel withoutQos(Channel channel) {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("basicQos")) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(channel, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,157 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ExchangeConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.QueueConfigurationImpl;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sends requests over the loopback broker's direct reply-to to a responder that answers them in reverse order.
+ */
+public class RpcClientTest {
+    private static final String VIRTUAL_HOST = "rpc-test";
+    private static final String QUEUE = "rpc";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Channel responder;
+    private RpcClient rpcClient;
+
+    @Before
+    public void start() throws Exception {
+        TopologyCoordinator.reset();
+        responder = LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel();
+        responder.queueDeclare(QUEUE, false, false, false, null);
+
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl(VIRTUAL_HOST,
+                Collections.singletonList("localhost"), 5672, "guest", "guest", false);
+        channelConf.setUseLoopback(true);
+        channelConf.setQueueConfiguration(new QueueConfigurationImpl(QUEUE, false, false, false));
+        channelConf.setExchangeConfiguration(new ExchangeConfigurationImpl("", "direct", false, false));
+        rpcClient = new RpcClient(new AMQPClient(channelConf, LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel()));
+    }
+
+    @After
+    public void shutdown() {
+        rpcClient.close();
+        LoopbackBroker.shutdownAll();
+    }
+
+    @Test
+    public void matchesRepliesToTheirRequestsByCorrelationId() throws Exception {
+        answerInReverseOrder(3);
+        List<RpcClient.Call> calls = new ArrayList<>();
+        for (String request : Arrays.asList("a", "b", "c")) {
+            calls.add(rpcClient.call("", QUEUE, new AMQP.BasicProperties(), bytes(request)));
+        }
+        RpcClient.awaitAll(calls, TIMEOUT_MILLIS);
+
+        assertEquals("reply to a", text(calls.get(0).getReply()));
+        assertEquals("reply to b", text(calls.get(1).getReply()));
+        assertEquals("reply to c", text(calls.get(2).getReply()));
+        assertTrue(calls.get(0).getRoundTripNanos() >= calls.get(2).getRoundTripNanos());
+    }
+
+    @Test
+    public void missingRepliesTimeOutAndCanBeCancelled() throws Exception {
+        List<RpcClient.Call> calls = Collections.singletonList(
+                rpcClient.call("", QUEUE, new AMQP.BasicProperties(), bytes("unanswered")));
+        try {
+            RpcClient.awaitAll(calls, 20);
+            fail("expected the reply to time out");
+        } catch (TimeoutException expected) {
+            // nobody consumes the request queue yet
+        }
+        assertFalse(calls.get(0).isReplied());
+        assertNull(calls.get(0).getReply());
+        assertEquals(-1, calls.get(0).getRoundTripNanos());
+        assertEquals(1, rpcClient.cancel(calls));
+        assertEquals(0, rpcClient.cancel(calls));
+
+        // the late reply is dropped
+        answerInReverseOrder(1);
+        Thread.sleep(50);
+        assertFalse(calls.get(0).isReplied());
+    }
+
+    @Test
+    public void failsRequestsTheBrokerReturns() throws Exception {
+        List<RpcClient.Call> calls = Collections.singletonList(
+                rpcClient.call("", "no-such-queue", new AMQP.BasicProperties(), bytes("lost")));
+        try {
+            RpcClient.awaitAll(calls, TIMEOUT_MILLIS);
+            fail("expected the returned request to fail its call");
+        } catch (TimeoutException e) {
+            fail("the returned request waited for the timeout");
+        } catch (IOException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("Request returned by the broker: 312"));
+        }
+    }
+
+    @Test
+    public void closeFailsPendingCalls() throws Exception {
+        List<RpcClient.Call> calls = Collections.singletonList(
+                rpcClient.call("", QUEUE, new AMQP.BasicProperties(), bytes("pending")));
+        rpcClient.close();
+        try {
+            RpcClient.awaitAll(calls, TIMEOUT_MILLIS);
+            fail("expected the closed client to fail its calls");
+        } catch (IOException e) {
+            assertEquals("RPC client closed", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Collects the given number of requests, then answers the last one first.
+     */
+    private void answerInReverseOrder(int count) throws IOException {
+        List<Object[]> requests = new ArrayList<>();
+        responder.basicConsume(QUEUE, true, new DefaultConsumer(responder) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+                    byte[] body) throws IOException {
+                requests.add(new Object[]{properties, body});
+                if (requests.size() < count) {
+                    return;
+                }
+                for (int i = requests.size() - 1; i >= 0; i--) {
+                    AMQP.BasicProperties request = (AMQP.BasicProperties) requests.get(i)[0];
+                    AMQP.BasicProperties reply = new AMQP.BasicProperties.Builder()
+                            .correlationId(request.getCorrelationId())
+                            .build();
+                    getChannel().basicPublish("", request.getReplyTo(), reply,
+                            bytes("reply to " + text((byte[]) requests.get(i)[1])));
+                }
+                requests.clear();
+            }
+        });
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
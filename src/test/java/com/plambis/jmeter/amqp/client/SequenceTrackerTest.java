@@ -0,0 +1,94 @@
+package com.plambis.jmeter.amqp.client;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SequenceTrackerTest {
+
+    @After
+    public void reset() {
+        SequenceTracker.reset();
+    }
+
+    @Test
+    public void countsNothingMissingInOrder() {
+        SequenceTracker.Window window = new SequenceTracker.Window(64);
+        for (long sequence = 1; sequence <= 1000; sequence++) {
+            assertEquals(SequenceCheck.IN_ORDER, window.record(sequence, false));
+        }
+        assertEquals(0, window.getMissing());
+    }
+
+    @Test
+    public void startsAtTheFirstNumberReceived() {
+        SequenceTracker.Window window = new SequenceTracker.Window(64);
+        assertEquals(SequenceCheck.IN_ORDER, window.record(500, false));
+        assertEquals(SequenceCheck.IN_ORDER, window.record(501, false));
+        assertEquals(0, window.getMissing());
+    }
+
+    @Test
+    public void fillsGapsOutOfOrder() {
+        SequenceTracker.Window window = new SequenceTracker.Window(64);
+        window.record(1, false);
+        window.record(4, false);
+        assertEquals(2, window.getMissing());
+
+        assertEquals(SequenceCheck.OUT_OF_ORDER, window.record(3, false));
+        assertEquals(SequenceCheck.OUT_OF_ORDER, window.record(2, false));
+        assertEquals(0, window.getMissing());
+    }
+
+    @Test
+    public void detectsDuplicates() {
+        SequenceTracker.Window window = new SequenceTracker.Window(64);
+        window.record(1, false);
+        window.record(2, false);
+        assertEquals(SequenceCheck.DUPLICATE, window.record(2, true));
+        assertEquals(SequenceCheck.DUPLICATE, window.record(1, true));
+        assertEquals(0, window.getMissing());
+    }
+
+    @Test
+    public void countsNumbersLeavingTheWindowAsMissing() {
+        SequenceTracker.Window window = new SequenceTracker.Window(64);
+        window.record(1, false);
+        window.record(3, false);
+        for (long sequence = 4; sequence <= 200; sequence++) {
+            window.record(sequence, false);
+        }
+        assertEquals(1, window.getMissing());
+        assertEquals(SequenceCheck.LATE, window.record(2, false));
+        assertEquals(1, window.getMissing());
+    }
+
+    @Test
+    public void countsJumpsBeyondTheWindow() {
+        SequenceTracker.Window window = new SequenceTracker.Window(64);
+        window.record(1, false);
+        window.record(1001, false);
+        assertEquals(999, window.getMissing());
+        assertEquals(SequenceCheck.IN_ORDER, window.record(1002, false));
+        assertEquals(999, window.getMissing());
+    }
+
+    @Test
+    public void wrapsTheBitmapWithoutFalseDuplicates() {
+        SequenceTracker.Window window = new SequenceTracker.Window(64);
+        for (long sequence = 0; sequence < 64 * 10; sequence += 2) {
+            assertEquals(SequenceCheck.IN_ORDER, window.record(sequence + 1, false));
+            assertEquals(SequenceCheck.OUT_OF_ORDER, window.record(sequence, false));
+        }
+        assertEquals(0, window.getMissing());
+    }
+
+    @Test
+    public void tracksPublishersSeparately() {
+        assertEquals(SequenceCheck.IN_ORDER, SequenceTracker.record("a", 1, false));
+        assertEquals(SequenceCheck.IN_ORDER, SequenceTracker.record("b", 1, false));
+        assertEquals(SequenceCheck.DUPLICATE, SequenceTracker.record("a", 1, true));
+        assertEquals(SequenceCheck.IN_ORDER, SequenceTracker.record("b", 2, false));
+    }
+}
@@ -0,0 +1,97 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ShardStrategy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardRouterTest {
+    private static final byte[] BODY = "payload".getBytes(StandardCharsets.UTF_8);
+
+    @After
+    public void resetStats() {
+        ShardStats.reset();
+    }
+
+    @Test
+    public void roundRobinStartsAtTheThreadsShard() {
+        ShardRouter router = new ShardRouter(ShardStrategy.ROUND_ROBIN, 3, 1);
+        assertEquals("orders.1", router.route("orders", BODY));
+        assertEquals("orders.2", router.route("orders", BODY));
+        assertEquals("orders.0", router.route("orders", BODY));
+        assertEquals("orders.1", router.route("orders", BODY));
+    }
+
+    @Test
+    public void roundRobinFillsTheTemplate() {
+        ShardRouter router = new ShardRouter(ShardStrategy.ROUND_ROBIN, 2, 0);
+        assertEquals("order.0.created", router.route("order.{shard}.created", BODY));
+        assertEquals("order.1.created", router.route("order.{shard}.created", BODY));
+    }
+
+    @Test
+    public void hashSendsEqualBodiesToTheSameShard() {
+        ShardRouter router = new ShardRouter(ShardStrategy.HASH, 5, 0);
+        ShardRouter other = new ShardRouter(ShardStrategy.HASH, 5, 3);
+        for (int i = 0; i < 100; i++) {
+            byte[] body = ("message-" + i).getBytes(StandardCharsets.UTF_8);
+            String routingKey = router.route("orders", body);
+            assertEquals(routingKey, router.route("orders", body));
+            assertEquals(routingKey, other.route("orders", body));
+            int shard = Integer.parseInt(routingKey.substring("orders.".length()));
+            assertTrue(routingKey, shard >= 0 && shard < 5);
+        }
+    }
+
+    @Test
+    public void hashLooksOnlyAtTheBodyPrefix() {
+        ShardRouter router = new ShardRouter(ShardStrategy.HASH, 7, 0);
+        byte[] prefix = new byte[ShardRouter.HASH_PREFIX_BYTES];
+        Arrays.fill(prefix, (byte) 'x');
+        byte[] longer = Arrays.copyOf(prefix, 4096);
+        longer[longer.length - 1] = 'y';
+        assertEquals(router.route("orders", prefix), router.route("orders", longer));
+    }
+
+    @Test
+    public void countsOnlyPublishedMessages() {
+        ShardRouter router = new ShardRouter(ShardStrategy.ROUND_ROBIN, 2, 0);
+        router.route("orders", BODY);
+        assertEquals(0, ShardStats.getPublished(0));
+        router.recordPublished(BODY.length);
+        assertEquals(1, ShardStats.getPublished(0));
+        router.route("orders", BODY);
+        router.route("orders", BODY);
+        router.recordPublished(BODY.length);
+        assertEquals(2, ShardStats.getPublished(0));
+        assertEquals(0, ShardStats.getPublished(1));
+    }
+
+    @Test
+    public void doesNotCountMessagesTheBrokerRoutes() {
+        ShardRouter router = new ShardRouter(ShardStrategy.CONSISTENT_HASH, 2, 0);
+        router.route("orders", BODY);
+        router.recordPublished(BODY.length);
+        assertEquals(0, ShardStats.getPublished(0));
+        assertEquals(0, ShardStats.getPublished(1));
+    }
+
+    @Test
+    public void consistentHashVariesTheRoutingKeyAcrossThreads() {
+        ShardRouter first = new ShardRouter(ShardStrategy.CONSISTENT_HASH, 4, 0);
+        ShardRouter second = new ShardRouter(ShardStrategy.CONSISTENT_HASH, 4, 1);
+        Set<String> routingKeys = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            routingKeys.add(first.route("orders", BODY));
+            routingKeys.add(second.route("orders", BODY));
+        }
+        assertEquals(2000, routingKeys.size());
+    }
+}
@@ -0,0 +1,70 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.QueueConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ShardStrategy;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShardsTest {
+
+    @Test
+    public void replacesThePlaceholder() {
+        assertEquals("orders-3-in", Shards.name("orders-{shard}-in", 3));
+        assertEquals("7.7", Shards.name("{shard}.{shard}", 7));
+    }
+
+    @Test
+    public void appendsTheShardWithoutPlaceholder() {
+        assertEquals("orders.3", Shards.name("orders", 3));
+    }
+
+    @Test
+    public void leavesEmptyNamesAlone() {
+        assertEquals("", Shards.name("", 3));
+        assertNull(Shards.name(null, 3));
+    }
+
+    @Test
+    public void declaresAllShardsWithoutOwnShard() {
+        ChannelConfigurationImpl channelConf = channelConf(4, -1);
+        assertArrayEquals(new int[]{0, 1, 2, 3}, Shards.shards(channelConf));
+        assertEquals("orders", Shards.queueName(channelConf));
+    }
+
+    @Test
+    public void declaresAndConsumesItsOwnShard() {
+        ChannelConfigurationImpl channelConf = channelConf(4, 2);
+        assertArrayEquals(new int[]{2}, Shards.shards(channelConf));
+        assertEquals("orders.2", Shards.queueName(channelConf));
+    }
+
+    @Test
+    public void consumesTheConfiguredQueueWhenShardingIsOff() {
+        assertEquals("orders", Shards.queueName(channelConf(0, 2)));
+    }
+
+    @Test
+    public void bindsByRoutingKeyOrHashWeight() {
+        ChannelConfigurationImpl channelConf = channelConf(4, -1);
+        channelConf.setRoutingKey("order.{shard}.created");
+        assertEquals("order.1.created", Shards.bindingKey(channelConf, 1));
+
+        channelConf.setShardStrategy(ShardStrategy.CONSISTENT_HASH);
+        assertEquals("1", Shards.bindingKey(channelConf, 1));
+    }
+
+    private static ChannelConfigurationImpl channelConf(int shardCount, int shard) {
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl("/", Collections.singletonList("localhost"),
+                5672, "guest", "guest", false);
+        channelConf.setQueueConfiguration(new QueueConfigurationImpl("orders", false, false, false));
+        channelConf.setShardCount(shardCount);
+        channelConf.setShard(shard);
+        return channelConf;
+    }
+}
@@ -0,0 +1,111 @@
+package com.plambis.jmeter.amqp.client;
+
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ExchangeConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.QueueConfigurationImpl;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import com.rabbitmq.client.Channel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Declares on loopback channels that count the declarations sent through them.
+ */
+public class TopologyCoordinatorTest {
+    private static final String VIRTUAL_HOST = "topology-test";
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    @Before
+    public void reset() {
+        TopologyCoordinator.reset();
+    }
+
+    @After
+    public void shutdown() {
+        LoopbackBroker.shutdownAll();
+    }
+
+    @Test
+    public void declaresOncePerTestWithoutRecovery() throws Exception {
+        ChannelConfigurationImpl channelConf = channelConf(false);
+        TopologyCoordinator.declare(countingChannel(), channelConf);
+        TopologyCoordinator.declare(countingChannel(), channelConf);
+
+        assertEquals(1, count("exchangeDeclare"));
+        assertEquals(1, count("queueDeclare"));
+        assertEquals(1, count("queueBind"));
+    }
+
+    @Test
+    public void declaresOncePerConnectionWithRecovery() throws Exception {
+        ChannelConfigurationImpl channelConf = channelConf(true);
+        Channel first = countingChannel();
+        TopologyCoordinator.declare(first, channelConf);
+        TopologyCoordinator.declare(counting(first.getConnection().createChannel()), channelConf);
+        TopologyCoordinator.declare(countingChannel(), channelConf);
+
+        assertEquals(2, count("exchangeDeclare"));
+        assertEquals(2, count("queueDeclare"));
+        assertEquals(2, count("queueBind"));
+    }
+
+    @Test
+    public void deletesRedeclaredEntitiesOnlyOnce() throws Exception {
+        ChannelConfigurationImpl channelConf = channelConf(true);
+        ((QueueConfigurationImpl) channelConf.getQueueConfiguration()).setRedeclare(true);
+        Channel control = LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel();
+
+        TopologyCoordinator.declare(countingChannel(), channelConf);
+        control.basicPublish("orders", "created", null, new byte[1]);
+        TopologyCoordinator.declare(countingChannel(), channelConf);
+
+        assertEquals(2, count("queueDeclare"));
+        assertEquals(1, control.messageCount("orders.created"));
+    }
+
+    private int count(String method) {
+        AtomicInteger count = calls.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return a channel of a new loopback connection counting the calls on it
+     */
+    private Channel countingChannel() throws Exception {
+        return counting(LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel());
+    }
+
+    private Channel counting(Channel channel) {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    calls.computeIfAbsent(method.getName(), k -> new AtomicInteger()).incrementAndGet();
+                    try {
+                        return method.invoke(channel, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static ChannelConfigurationImpl channelConf(boolean useRecovery) {
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl(VIRTUAL_HOST,
+                Collections.singletonList("localhost"), 5672, "guest", "guest", false);
+        channelConf.setUseLoopback(true);
+        channelConf.setUseRecovery(useRecovery);
+        channelConf.setRoutingKey("created");
+        channelConf.setQueueConfiguration(new QueueConfigurationImpl("orders.created", false, false, false));
+        channelConf.setExchangeConfiguration(new ExchangeConfigurationImpl("orders", "direct", false, false));
+        return channelConf;
+    }
+}
@@ -0,0 +1,193 @@
+package com.plambis.jmeter.amqp.client.async;
+
+import com.plambis.jmeter.amqp.client.ConfirmStats;
+import com.plambis.jmeter.amqp.client.conf.ChannelConfigurationImpl;
+import com.plambis.jmeter.amqp.client.conf.ConfirmMode;
+import com.plambis.jmeter.amqp.client.loopback.LoopbackBroker;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the pipelines against the loopback broker, which they reach through the regular connection factory.
+ */
+public class PublishPipelineTest {
+    private static final String VIRTUAL_HOST = "pipeline-test";
+    private static final String QUEUE = "pipeline";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Channel channel;
+
+    @Before
+    public void declareQueue() throws Exception {
+        channel = LoopbackBroker.newConnection(VIRTUAL_HOST).createChannel();
+        channel.queueDeclare(QUEUE, false, false, false, null);
+    }
+
+    @After
+    public void shutdown() {
+        PublishPipeline.shutdownAll();
+        LoopbackBroker.shutdownAll();
+    }
+
+    @Test
+    public void writesMessagesInSubmitOrderThroughAFullRing() throws Exception {
+        PublishPipeline pipeline = pipeline(ConfirmMode.NONE, 4);
+        PublishTicket ticket = new PublishTicket();
+        for (int i = 0; i < 2000; i++) {
+            pipeline.submit(message("0:" + i, ticket), TIMEOUT_MILLIS);
+        }
+        PublishPipeline.shutdownAll();
+
+        assertEquals(0, ticket.drainFailures());
+        List<String> bodies = drainQueue();
+        assertEquals(2000, bodies.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            assertEquals("0:" + i, bodies.get(i));
+        }
+    }
+
+    @Test
+    public void keepsTheOrderOfEverySubmittingThread() throws Exception {
+        int threads = 4;
+        int perThread = 500;
+        PublishPipeline pipeline = pipeline(ConfirmMode.NONE, 8);
+        List<Thread> submitters = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread submitter = new Thread(() -> {
+                PublishTicket ticket = new PublishTicket();
+                try {
+                    for (int i = 0; i < perThread; i++) {
+                        pipeline.submit(message(thread + ":" + i, ticket), TIMEOUT_MILLIS);
+                    }
+                } catch (Exception e) {
+                    failures.add(e);
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        PublishPipeline.shutdownAll();
+
+        assertEquals(Collections.emptyList(), failures);
+        int[] expected = new int[threads];
+        List<String> bodies = drainQueue();
+        assertEquals(threads * perThread, bodies.size());
+        for (String body : bodies) {
+            String[] parts = body.split(":");
+            int thread = Integer.parseInt(parts[0]);
+            assertEquals("Message of thread " + thread, expected[thread], Integer.parseInt(parts[1]));
+            expected[thread]++;
+        }
+    }
+
+    @Test
+    public void confirmsEveryMessage() throws Exception {
+        PublishPipeline pipeline = pipeline(ConfirmMode.ASYNC, 16);
+        assertTrue(pipeline.usesConfirms());
+        PublishTicket ticket = new PublishTicket();
+        for (int i = 0; i < 500; i++) {
+            pipeline.submit(message("0:" + i, ticket), TIMEOUT_MILLIS);
+        }
+        ConfirmStats stats = ticket.awaitConfirms(TIMEOUT_MILLIS);
+
+        assertEquals(500, stats.getAcks());
+        assertEquals(0, stats.getNacks());
+        assertEquals(0, ticket.drainFailures());
+    }
+
+    @Test
+    public void shutdownWritesTheMessagesStillQueued() throws Exception {
+        PublishPipeline pipeline = pipeline(ConfirmMode.NONE, 4096);
+        PublishTicket ticket = new PublishTicket();
+        for (int i = 0; i < 3000; i++) {
+            pipeline.submit(message("0:" + i, ticket), TIMEOUT_MILLIS);
+        }
+        PublishPipeline.shutdownAll();
+
+        assertEquals(3000, drainQueue().size());
+        try {
+            pipeline.submit(message("late", ticket), TIMEOUT_MILLIS);
+            fail("A stopped pipeline must reject messages");
+        } catch (IOException expected) {
+            // shut down
+        }
+    }
+
+    @Test
+    public void submitTimesOutWhileTheRingStaysFull() throws Exception {
+        // a queue of one message stalls the writer on the second, the ring of two then fills up
+        channel.queueDeclare("stalled", false, false, false, Collections.singletonMap("x-max-length", 1));
+        PublishPipeline pipeline = pipeline(ConfirmMode.NONE, 2);
+        PublishTicket ticket = new PublishTicket();
+        int submitted = 0;
+        try {
+            while (submitted < 10) {
+                pipeline.submit(new PendingMessage("", "stalled", false, null, new byte[1], System.nanoTime(), ticket), 50);
+                submitted++;
+            }
+            fail("The ring never filled up");
+        } catch (TimeoutException expected) {
+            assertTrue("Submitted " + submitted, submitted >= 2);
+        }
+    }
+
+    @Test
+    public void sharesPipelinesOnlyBetweenEqualConnectionSettings() {
+        PublishPipeline pipeline = pipeline(ConfirmMode.NONE, 16);
+        assertSame(pipeline, pipeline(ConfirmMode.NONE, 16));
+
+        ChannelConfigurationImpl nio = channelConf();
+        nio.setUseNio(true);
+        assertNotSame(pipeline, PublishPipeline.get(nio, ConfirmMode.NONE, 16, 16, 1, 0));
+
+        ChannelConfigurationImpl recovering = channelConf();
+        recovering.setUseRecovery(true);
+        assertNotSame(pipeline, PublishPipeline.get(recovering, ConfirmMode.NONE, 16, 16, 1, 0));
+    }
+
+    private static PublishPipeline pipeline(ConfirmMode confirmMode, int ringSize) {
+        return PublishPipeline.get(channelConf(), confirmMode, 16, ringSize, 1, 0);
+    }
+
+    private static ChannelConfigurationImpl channelConf() {
+        ChannelConfigurationImpl channelConf = new ChannelConfigurationImpl(VIRTUAL_HOST,
+                Collections.singletonList("localhost"), 5672, "guest", "guest", false);
+        channelConf.setUseLoopback(true);
+        channelConf.setTimeout((int) TIMEOUT_MILLIS);
+        return channelConf;
+    }
+
+    private static PendingMessage message(String body, PublishTicket ticket) {
+        return new PendingMessage("", QUEUE, false, null, body.getBytes(StandardCharsets.UTF_8), System.nanoTime(), ticket);
+    }
+
+    private List<String> drainQueue() throws Exception {
+        List<String> bodies = new ArrayList<>();
+        GetResponse response;
+        while ((response = channel.basicGet(QUEUE, true)) != null) {
+            bodies.add(new String(response.getBody(), StandardCharsets.UTF_8));
+        }
+        return bodies;
+    }
+}
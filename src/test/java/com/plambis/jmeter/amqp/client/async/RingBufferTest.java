@@ -0,0 +1,124 @@
+package com.plambis.jmeter.amqp.client.async;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(2, new RingBuffer<Integer>(0).capacity());
+        assertEquals(2, new RingBuffer<Integer>(2).capacity());
+        assertEquals(8, new RingBuffer<Integer>(5).capacity());
+        assertEquals(1024, new RingBuffer<Integer>(1024).capacity());
+    }
+
+    @Test
+    public void pollsInOfferOrder() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(i), ring.poll());
+        }
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void rejectsOfferWhenFull() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+        assertFalse(ring.offer(5));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), ring.poll());
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        int next = 0;
+        for (int round = 0; round < 1000; round++) {
+            int batch = 1 + round % 4;
+            for (int i = 0; i < batch; i++) {
+                assertTrue(ring.offer(next + i));
+            }
+            for (int i = 0; i < batch; i++) {
+                assertEquals(Integer.valueOf(next + i), ring.poll());
+            }
+            assertTrue(ring.isEmpty());
+            next += batch;
+        }
+    }
+
+    @Test
+    public void keepsTheOrderOfEveryProducer() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 100_000;
+        RingBuffer<long[]> ring = new RingBuffer<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < perProducer; i++) {
+                    long[] element = {producer, i};
+                    while (!ring.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        long[] expected = new long[producers];
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (received < producers * perProducer) {
+            long[] element = ring.poll();
+            if (element == null) {
+                assertTrue("Producers stalled", System.currentTimeMillis() < deadline);
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) element[0];
+            assertEquals("Message of producer " + producer, expected[producer], element[1]);
+            expected[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(ring.isEmpty());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, expected[p]);
+        }
+    }
+}
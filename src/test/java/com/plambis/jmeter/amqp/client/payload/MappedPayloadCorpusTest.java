@@ -0,0 +1,118 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MappedPayloadCorpusTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clear() {
+        MappedPayloadCorpus.clear();
+    }
+
+    @Test
+    public void splitsLinesWithoutTheLineBreaks() throws Exception {
+        File file = write("lines.txt", "first\r\nsecond\n\nthird".getBytes(StandardCharsets.UTF_8));
+        MappedPayloadCorpus corpus = MappedPayloadCorpus.open(file.getPath(), CorpusFormat.LINES);
+        assertMessages(corpus, "first", "second", "third");
+    }
+
+    @Test
+    public void readsLengthPrefixedMessages() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 3 + 4 + 0 + 4 + 5);
+        buffer.putInt(3).put("abc".getBytes(StandardCharsets.UTF_8));
+        buffer.putInt(0);
+        buffer.putInt(5).put("hello".getBytes(StandardCharsets.UTF_8));
+        File file = write("prefixed.bin", buffer.array());
+        assertMessages(MappedPayloadCorpus.open(file.getPath(), CorpusFormat.LENGTH_PREFIXED), "abc", "", "hello");
+    }
+
+    @Test
+    public void rejectsALengthBeyondTheFile() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2);
+        buffer.putInt(Integer.MAX_VALUE).put((byte) 'a').put((byte) 'b');
+        File file = write("corrupt.bin", buffer.array());
+        try {
+            MappedPayloadCorpus.open(file.getPath(), CorpusFormat.LENGTH_PREFIXED);
+            fail("expected a corrupt length prefix");
+        } catch (IOException expected) {
+            // the length would reach past the end of the file
+        }
+    }
+
+    @Test
+    public void packsSmallFilesOfADirectoryIntoOneBufferInFileOrder() throws Exception {
+        File directory = folder.newFolder("recorded");
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            Files.write(new File(directory, String.format("%04d.json", i)).toPath(),
+                    ("{\"message\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+        }
+        MappedPayloadCorpus corpus = MappedPayloadCorpus.open(directory.getPath(), CorpusFormat.FILE_PER_MESSAGE);
+
+        assertEquals(count, corpus.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("{\"message\":" + i + "}", new String(corpus.get(i), StandardCharsets.UTF_8));
+        }
+        assertEquals(1, corpus.bufferCount());
+    }
+
+    @Test
+    public void mapsLargeFilesAndKeepsEveryFileInItsPlace() throws Exception {
+        File directory = folder.newFolder("mixed");
+        byte[] large = new byte[MappedPayloadCorpus.MAPPED_FILE_MIN_BYTES];
+        Arrays.fill(large, (byte) 'L');
+        Files.write(new File(directory, "a").toPath(), "small a".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, "b").toPath(), large);
+        Files.write(new File(directory, "c").toPath(), new byte[0]);
+        Files.write(new File(directory, "d").toPath(), "small d".getBytes(StandardCharsets.UTF_8));
+        MappedPayloadCorpus corpus = MappedPayloadCorpus.open(directory.getPath(), CorpusFormat.FILE_PER_MESSAGE);
+
+        assertEquals(4, corpus.size());
+        assertEquals("small a", new String(corpus.get(0), StandardCharsets.UTF_8));
+        assertArrayEquals(large, corpus.get(1));
+        assertEquals(0, corpus.get(2).length);
+        assertEquals("small d", new String(corpus.get(3), StandardCharsets.UTF_8));
+        assertEquals("small files share one arena", 2, corpus.bufferCount());
+    }
+
+    @Test
+    public void sharesTheCorpusUntilCleared() throws Exception {
+        File file = write("shared.txt", "one\ntwo".getBytes(StandardCharsets.UTF_8));
+        MappedPayloadCorpus corpus = MappedPayloadCorpus.open(file.getPath(), CorpusFormat.LINES);
+        assertSame(corpus, MappedPayloadCorpus.open(file.getPath(), CorpusFormat.LINES));
+        assertEquals(0, corpus.nextSequentialIndex());
+        assertEquals(1, corpus.nextSequentialIndex());
+        assertEquals(0, corpus.nextSequentialIndex());
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static void assertMessages(MappedPayloadCorpus corpus, String... messages) {
+        assertEquals(messages.length, corpus.size());
+        for (int i = 0; i < messages.length; i++) {
+            assertEquals(messages[i], new String(corpus.get(i), StandardCharsets.UTF_8));
+            assertEquals(messages[i].length(), corpus.length(i));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PayloadCodecTest {
+    /** Empty, tiny, compressible, incompressible and larger than one 64 KB lz4 block. */
+    private static final byte[][] BODIES = {
+            new byte[0],
+            "x".getBytes(StandardCharsets.UTF_8),
+            repeat("{\"order\":42,\"status\":\"created\"}", 100),
+            random(5000),
+            repeat("0123456789abcdef", 20000),
+    };
+
+    @Test
+    public void everyCodecRoundTrips() throws Exception {
+        for (Compression compression : Compression.values()) {
+            if (compression == Compression.NONE) {
+                continue;
+            }
+            for (int level : new int[]{0, 1}) {
+                PayloadCodec codec = compression.newCodec(level);
+                assertEquals(compression.getEncoding(), codec.getEncoding());
+                for (byte[] body : BODIES) {
+                    assertArrayEquals(compression + " level " + level + ", " + body.length + " bytes", body,
+                            codec.decode(codec.encode(body)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lz4FramesAreReadableByFrameDecoders() throws Exception {
+        PayloadCodec codec = Compression.LZ4.newCodec(0);
+        for (byte[] body : BODIES) {
+            assertArrayEquals(body, readAll(new LZ4FrameInputStream(new ByteArrayInputStream(codec.encode(body)))));
+        }
+    }
+
+    @Test
+    public void lz4DecodesFramesOfOtherEncoders() throws Exception {
+        PayloadCodec codec = Compression.LZ4.newCodec(0);
+        for (byte[] body : BODIES) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream out = new LZ4FrameOutputStream(encoded)) {
+                out.write(body);
+            }
+            assertArrayEquals(body, codec.decode(encoded.toByteArray()));
+        }
+    }
+
+    @Test
+    public void zstdDecodesStreamedFramesWithoutContentSize() throws Exception {
+        PayloadCodec codec = Compression.ZSTD.newCodec(0);
+        for (byte[] body : BODIES) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream out = new ZstdOutputStream(encoded)) {
+                out.write(body);
+            }
+            assertArrayEquals(body.length + " bytes", body, codec.decode(encoded.toByteArray()));
+        }
+    }
+
+    @Test
+    public void rejectsBodiesOfAnotherEncoding() throws Exception {
+        byte[] gzip = Compression.GZIP.newCodec(0).encode(BODIES[2]);
+        for (Compression compression : new Compression[]{Compression.LZ4, Compression.ZSTD, Compression.DEFLATE}) {
+            try {
+                compression.newCodec(0).decode(gzip);
+                fail(compression + " decoded a gzip body");
+            } catch (IOException expected) {
+                // not a body of this encoding
+            }
+        }
+    }
+
+    private static byte[] repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = input.read(chunk)) >= 0) {
+                out.write(chunk, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
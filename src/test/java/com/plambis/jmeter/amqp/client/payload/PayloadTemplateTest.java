@@ -0,0 +1,111 @@
+package com.plambis.jmeter.amqp.client.payload;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PayloadTemplateTest {
+    @Test
+    public void rendersSequenceAndThreadNumbers() {
+        PayloadTemplate template = PayloadTemplate.parse("{\"id\":{{seq}},\"thread\":{{ thread }}}");
+        TemplateContext context = new TemplateContext(7);
+        context.next();
+        assertEquals("{\"id\":1,\"thread\":7}", render(template, context));
+        context.next();
+        assertEquals("{\"id\":2,\"thread\":7}", render(template, context));
+        assertEquals("{\"id\":2,\"thread\":7}", template.renderString(context));
+    }
+
+    @Test
+    public void keepsLiteralsAndJMeterExpressions() {
+        PayloadTemplate template = PayloadTemplate.parse("café ${__threadNum} {{ unclosed");
+        assertEquals("café ${__threadNum} {{ unclosed", render(template, new TemplateContext(1)));
+        assertFalse(PayloadTemplate.hasPlaceholders("café ${__threadNum} {{ unclosed"));
+        assertTrue(PayloadTemplate.hasPlaceholders("{{seq}}"));
+    }
+
+    @Test
+    public void rendersRandomIntsWithinTheBounds() {
+        PayloadTemplate bounded = PayloadTemplate.parse("{{randomInt:-3,3}}");
+        PayloadTemplate fromZero = PayloadTemplate.parse("{{randomInt:2}}");
+        TemplateContext context = new TemplateContext(1);
+        for (int i = 0; i < 1000; i++) {
+            int value = Integer.parseInt(render(bounded, context));
+            assertTrue(Integer.toString(value), value >= -3 && value <= 3);
+            value = Integer.parseInt(render(fromZero, context));
+            assertTrue(Integer.toString(value), value >= 0 && value <= 2);
+        }
+    }
+
+    @Test
+    public void rendersVersion4Uuids() {
+        PayloadTemplate template = PayloadTemplate.parse("{{uuid}}");
+        TemplateContext context = new TemplateContext(1);
+        for (int i = 0; i < 100; i++) {
+            String uuid = render(template, context);
+            assertTrue(uuid, uuid.matches("[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}"));
+            assertEquals(uuid, UUID.fromString(uuid).toString());
+        }
+    }
+
+    @Test
+    public void corpusPlaceholdersOfAMessageShareItsEntry() {
+        PayloadTemplate template = PayloadTemplate.parse("{{corpus:1}}/{{corpus:0}}/{{corpus:5}}/{{corpus}}");
+        assertTrue(template.usesCorpus());
+        TemplateContext context = new TemplateContext(1);
+        Iterator<String> entries = Arrays.asList("a,b,c", "x,,z").iterator();
+        context.setCorpus(() -> entries.next().getBytes(StandardCharsets.UTF_8));
+
+        context.next();
+        assertEquals("b/a//a,b,c", render(template, context));
+        context.next();
+        assertEquals("/x//x,,z", render(template, context));
+    }
+
+    @Test
+    public void corpusPlaceholderNeedsACorpus() {
+        TemplateContext context = new TemplateContext(1);
+        context.next();
+        try {
+            PayloadTemplate.parse("{{corpus}}").render(context);
+            fail("expected the missing corpus to be reported");
+        } catch (IllegalStateException expected) {
+            // no corpus files configured
+        }
+    }
+
+    @Test
+    public void growsTheRenderBufferForLongMessages() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("{{seq}}-0123456789-");
+        }
+        TemplateContext context = new TemplateContext(1);
+        context.next();
+        assertEquals(text.toString().replace("{{seq}}", "1"), render(PayloadTemplate.parse(text.toString()), context));
+    }
+
+    @Test
+    public void rejectsUnknownPlaceholdersAndInvalidArguments() {
+        for (String text : new String[]{"{{nope}}", "{{randomInt:x}}", "{{randomInt:5,1}}", "{{corpus:-1}}"}) {
+            try {
+                PayloadTemplate.parse(text);
+                fail("expected " + text + " to be rejected");
+            } catch (IllegalArgumentException expected) {
+                // reported when the sampler compiles its template
+            }
+        }
+    }
+
+    private static String render(PayloadTemplate template, TemplateContext context) {
+        return new String(template.render(context), StandardCharsets.UTF_8);
+    }
+}
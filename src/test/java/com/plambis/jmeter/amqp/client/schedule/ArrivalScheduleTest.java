@@ -0,0 +1,105 @@
+package com.plambis.jmeter.amqp.client.schedule;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ArrivalScheduleTest {
+    private static final double TOLERANCE_SECONDS = 1e-6;
+
+    @After
+    public void reset() {
+        ArrivalSchedule.reset();
+    }
+
+    @Test
+    public void constantRateSpacesMessagesEvenly() {
+        double[] seconds = dueSeconds(RateProfile.CONSTANT.parse("100"), 201);
+        assertEquals(0.0, seconds[0], TOLERANCE_SECONDS);
+        assertEquals(0.01, seconds[1], TOLERANCE_SECONDS);
+        assertEquals(1.0, seconds[100], TOLERANCE_SECONDS);
+        assertEquals(2.0, seconds[200], TOLERANCE_SECONDS);
+    }
+
+    @Test
+    public void rampIntegratesTheRisingRate() {
+        // 0 to 100 msg/s over 10 s: n messages are due after sqrt(n / 5) s, 500 in total, then 100 msg/s
+        double[] seconds = dueSeconds(RateProfile.RAMP.parse("0,100,10"), 601);
+        assertEquals(0.0, seconds[0], TOLERANCE_SECONDS);
+        assertEquals(2.0, seconds[20], TOLERANCE_SECONDS);
+        assertEquals(5.0, seconds[125], TOLERANCE_SECONDS);
+        assertEquals(10.0, seconds[500], TOLERANCE_SECONDS);
+        assertEquals(11.0, seconds[600], TOLERANCE_SECONDS);
+    }
+
+    @Test
+    public void stepsKeepTheLastRate() {
+        // 10 msg/s for 2 s, 100 msg/s for 1 s, then 100 msg/s on
+        double[] seconds = dueSeconds(RateProfile.STEP.parse("10:2,100:1"), 221);
+        assertEquals(1.0, seconds[10], TOLERANCE_SECONDS);
+        assertEquals(2.0, seconds[20], TOLERANCE_SECONDS);
+        assertEquals(2.5, seconds[70], TOLERANCE_SECONDS);
+        assertEquals(3.0, seconds[120], TOLERANCE_SECONDS);
+        assertEquals(4.0, seconds[220], TOLERANCE_SECONDS);
+    }
+
+    @Test
+    public void dueTimesNeverDecrease() {
+        double[] seconds = dueSeconds(RateProfile.STEP.parse("1000:1,10:1,500:1"), 2000);
+        for (int i = 1; i < seconds.length; i++) {
+            assertTrue("Ticket " + i, seconds[i] >= seconds[i - 1]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroFinalRate() {
+        RateProfile.CONSTANT.parse("0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingRampParameters() {
+        RateProfile.RAMP.parse("0,100");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedStep() {
+        RateProfile.STEP.parse("10:2,100");
+    }
+
+    @Test
+    public void sharesOneSchedulePerKeyUntilReset() {
+        ArrivalSchedule schedule = ArrivalSchedule.shared("publisher", RateProfile.CONSTANT, "100");
+        assertSame(schedule, ArrivalSchedule.shared("publisher", RateProfile.CONSTANT, "100"));
+        assertNotSame(schedule, ArrivalSchedule.shared("other", RateProfile.CONSTANT, "100"));
+        assertNotSame(schedule, ArrivalSchedule.shared("publisher", RateProfile.CONSTANT, "200"));
+
+        ArrivalSchedule.reset();
+        assertNotSame(schedule, ArrivalSchedule.shared("publisher", RateProfile.CONSTANT, "100"));
+    }
+
+    @Test
+    public void awaitDueReturnsOncePassed() throws Exception {
+        long started = System.nanoTime();
+        ArrivalSchedule.awaitDue(started - TimeUnit.SECONDS.toNanos(1));
+        ArrivalSchedule.awaitDue(started + TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * @return the due times of the first tickets, in seconds after the first one
+     */
+    private static double[] dueSeconds(ArrivalSchedule schedule, int tickets) {
+        double[] seconds = new double[tickets];
+        long first = schedule.nextDueNanos();
+        for (int i = 1; i < tickets; i++) {
+            seconds[i] = (schedule.nextDueNanos() - first) / 1e9;
+        }
+        return seconds;
+    }
+}